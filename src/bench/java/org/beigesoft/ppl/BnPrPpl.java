@@ -0,0 +1,259 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.math.BigDecimal;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.paypal.api.payments.Payment;
+
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.log.ILog;
+import org.beigesoft.srv.NumStr;
+import org.beigesoft.acc.mdlp.AcStg;
+import org.beigesoft.acc.mdlp.Curr;
+import org.beigesoft.ws.mdlp.Buyer;
+import org.beigesoft.ws.mdlp.Cart;
+import org.beigesoft.ws.mdlp.CuOr;
+import org.beigesoft.ws.mdlp.CuOrGdLn;
+
+/**
+ * <p>PrPpl hot methods benchmarks with cart sizes 1..1000 lines.
+ * Lines are prepared as if they are loaded by SrPplLn.
+ * Run: mvn -Pbench test-compile exec:exec, results are written into
+ * target/bench.json, see src/bench/README.txt about baseline.</p>
+ *
+ * @author Yury Demidenko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BnPrPpl {
+
+  /**
+   * <p>Cart lines count.</p>
+   **/
+  @Param({"1", "10", "100", "1000"})
+  public int lns;
+
+  /**
+   * <p>If S.E.Seller's lines.</p>
+   **/
+  @Param({"false", "true"})
+  public boolean se;
+
+  /**
+   * <p>Tested processor.</p>
+   **/
+  private PrPpl prPpl;
+
+  /**
+   * <p>Request scoped vars.</p>
+   **/
+  private Map<String, Object> rvs;
+
+  /**
+   * <p>Request data.</p>
+   **/
+  private IReqDt rqDt;
+
+  /**
+   * <p>Cart.</p>
+   **/
+  private Cart cart;
+
+  /**
+   * <p>Loaded goods lines.</p>
+   **/
+  private List<CuOrGdLn> gls;
+
+  /**
+   * <p>Consolidated order.</p>
+   **/
+  private CuOr ord;
+
+  /**
+   * <p>Prepared payment.</p>
+   **/
+  private Payment pay;
+
+  /**
+   * <p>Prices to print.</p>
+   **/
+  private BigDecimal[] pris;
+
+  /**
+   * <p>Prepares data.</p>
+   * @throws Exception - an exception
+   **/
+  @Setup
+  public final void setup() throws Exception {
+    this.gls = new ArrayList<CuOrGdLn>();
+    this.pris = new BigDecimal[this.lns];
+    for (int i = 0; i < this.lns; i++) {
+      CuOrGdLn gl = new CuOrGdLn();
+      gl.setIid(Long.valueOf(i + 1));
+      gl.setNme("Good #" + i);
+      gl.setPri(new BigDecimal("12.35"));
+      gl.setQuan(BigDecimal.valueOf(i % 5 + 1));
+      gl.setSubt(gl.getPri().multiply(gl.getQuan()));
+      gl.setTot(gl.getSubt());
+      gl.setToTx(BigDecimal.ZERO);
+      this.gls.add(gl);
+      this.pris[i] = gl.getSubt();
+    }
+    this.prPpl = new PrPpl();
+    this.prPpl.setLog(prx(ILog.class));
+    this.prPpl.setNumStr(new NumStr());
+    FrmPpl frmPpl = new FrmPpl();
+    this.prPpl.setFrmPpl(frmPpl);
+    WrPay wrPay = new WrPay();
+    wrPay.setFrmPpl(frmPpl);
+    this.prPpl.setWrPay(wrPay);
+    this.rvs = new HashMap<String, Object>();
+    AcStg as = new AcStg();
+    as.setPrDp(2);
+    this.rvs.put("astg", as);
+    this.rqDt = prx(IReqDt.class);
+    this.cart = new Cart();
+    Buyer byr = new Buyer();
+    byr.setIid(1L);
+    this.cart.setBuyr(byr);
+    this.ord = makePplOrds();
+    Curr curr = new Curr();
+    curr.setStCo("USD");
+    this.ord.setCurr(curr);
+    this.ord.setPur(1L);
+    this.pay = this.prPpl.createPay(this.rvs, this.rqDt, this.ord, null);
+    if (!this.pay.toJSON().equals(payLd())) {
+      throw new IllegalStateException("Payload differs from SDK's one!");
+    }
+  }
+
+  /**
+   * <p>Consolidates order lines.</p>
+   * @return order
+   * @throws Exception - an exception
+   **/
+  @Benchmark
+  public final CuOr makePplOrds() throws Exception {
+    CuOr lns = new CuOr();
+    lns.setGoods(this.gls);
+    return this.prPpl.makePplOrds(this.rvs, this.cart, lns, this.se);
+  }
+
+  /**
+   * <p>Makes payment items.</p>
+   * @return payment
+   * @throws Exception - an exception
+   **/
+  @Benchmark
+  public final Payment createPay() throws Exception {
+    return this.prPpl.createPay(this.rvs, this.rqDt, this.ord, null);
+  }
+
+  /**
+   * <p>Serializes payment into JSON like SDK does.</p>
+   * @return JSON
+   **/
+  @Benchmark
+  public final String payJson() {
+    return this.pay.toJSON();
+  }
+
+  /**
+   * <p>Writes payment JSON by streaming writer.</p>
+   * @return JSON
+   * @throws Exception - an exception
+   **/
+  @Benchmark
+  public final String payLd() throws Exception {
+    return this.prPpl.crPayLd(this.rvs, this.rqDt, this.ord, null);
+  }
+
+  /**
+   * <p>Prints cart amounts.</p>
+   * @param pBh black hole
+   **/
+  @Benchmark
+  public final void prn(final Blackhole pBh) {
+    for (BigDecimal pri : this.pris) {
+      pBh.consume(this.prPpl.prn(pri, 2));
+    }
+  }
+
+  /**
+   * <p>Makes proxy that returns request data and default values.</p>
+   * @param <T> interface type
+   * @param pIfc interface
+   * @return proxy
+   **/
+  private <T> T prx(final Class<T> pIfc) {
+    return pIfc.cast(Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {pIfc}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          Class<?> rt = pMth.getReturnType();
+          if (rt == boolean.class) {
+            return Boolean.FALSE;
+          } else if (rt == StringBuffer.class) {
+            return new StringBuffer("https://localhost/wst");
+          } else if (rt == String.class && "getParam".equals(pMth
+            .getName())) {
+            return "pur";
+          }
+          return null;
+        }
+      }));
+  }
+}
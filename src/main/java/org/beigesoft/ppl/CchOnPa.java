@@ -0,0 +1,199 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Date;
+
+import org.beigesoft.ws.mdlp.Buyer;
+import org.beigesoft.ws.mdlp.OnlPay;
+
+/**
+ * <p>Write-through near-cache of OnlPay by buyer ID, TTL is payment
+ * expiry. It's updated after committing OnlPay changes and evicted on
+ * cancel/execute. It holds and returns copies. Client must treat hit
+ * as a hint, i.e. on mismatch (e.g. OnlPay was changed on other node)
+ * it reloads OnlPay from DB, and optimistic locking (VER) guards
+ * updating.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CchOnPa {
+
+  /**
+   * <p>Time to live, milliseconds, default 10 minutes.</p>
+   **/
+  private long ttl = 600000L;
+
+  /**
+   * <p>Maximum cached buyers, default 10000.</p>
+   **/
+  private int maxByr = 10000;
+
+  /**
+   * <p>Entries by buyer ID, access order LRU.</p>
+   **/
+  private final Map<Long, Ent> byrs =
+    new LinkedHashMap<Long, Ent>(256, 0.75f, true) {
+      private static final long serialVersionUID = 5118283617029718374L;
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, Ent> pEnt) {
+        return size() > CchOnPa.this.maxByr;
+      }
+    };
+
+  /**
+   * <p>Cache entry, immutable.</p>
+   **/
+  private static final class Ent {
+
+    /**
+     * <p>OnlPay's copy.</p>
+     **/
+    private final OnlPay onpa;
+
+    /**
+     * <p>Putting time, milliseconds.</p>
+     **/
+    private final long put;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pOnpa OnlPay's copy
+     * @param pPut putting time
+     **/
+    Ent(final OnlPay pOnpa, final long pPut) {
+      this.onpa = pOnpa;
+      this.put = pPut;
+    }
+  }
+
+  /**
+   * <p>Gets OnlPay.</p>
+   * @param pByr buyer ID
+   * @return OnlPay's copy or null
+   **/
+  public final OnlPay get(final Long pByr) {
+    Ent ent;
+    synchronized (this.byrs) {
+      ent = this.byrs.get(pByr);
+      if (ent != null && System.currentTimeMillis() - ent.put > this.ttl) {
+        this.byrs.remove(pByr);
+        ent = null;
+      }
+    }
+    if (ent == null) {
+      return null;
+    }
+    return cpy(ent.onpa);
+  }
+
+  /**
+   * <p>Puts committed OnlPay.</p>
+   * @param pOnpa OnlPay
+   **/
+  public final void put(final OnlPay pOnpa) {
+    Ent ent = new Ent(cpy(pOnpa), System.currentTimeMillis());
+    synchronized (this.byrs) {
+      this.byrs.put(pOnpa.getIid().getIid(), ent);
+    }
+  }
+
+  /**
+   * <p>Evicts OnlPay.</p>
+   * @param pByr buyer ID
+   **/
+  public final void evict(final Long pByr) {
+    synchronized (this.byrs) {
+      this.byrs.remove(pByr);
+    }
+  }
+
+  /**
+   * <p>Clears cache.</p>
+   **/
+  public final void clear() {
+    synchronized (this.byrs) {
+      this.byrs.clear();
+    }
+  }
+
+  /**
+   * <p>Makes copy.</p>
+   * @param pOnpa OnlPay
+   * @return copy
+   **/
+  private OnlPay cpy(final OnlPay pOnpa) {
+    OnlPay rz = new OnlPay();
+    Buyer byr = new Buyer();
+    byr.setIid(pOnpa.getIid().getIid());
+    rz.setIid(byr);
+    rz.setPur(pOnpa.getPur());
+    rz.setSelr(pOnpa.getSelr());
+    rz.setPayId(pOnpa.getPayId());
+    rz.setDat(new Date(pOnpa.getDat().getTime()));
+    rz.setVer(pOnpa.getVer());
+    rz.setIsNew(false);
+    return rz;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for ttl.</p>
+   * @return long
+   **/
+  public final long getTtl() {
+    return this.ttl;
+  }
+
+  /**
+   * <p>Setter for ttl.</p>
+   * @param pTtl reference
+   **/
+  public final void setTtl(final long pTtl) {
+    this.ttl = pTtl;
+  }
+
+  /**
+   * <p>Getter for maxByr.</p>
+   * @return int
+   **/
+  public final int getMaxByr() {
+    return this.maxByr;
+  }
+
+  /**
+   * <p>Setter for maxByr.</p>
+   * @param pMaxByr reference
+   **/
+  public final void setMaxByr(final int pMaxByr) {
+    this.maxByr = pMaxByr;
+  }
+}
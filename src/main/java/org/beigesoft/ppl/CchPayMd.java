@@ -0,0 +1,308 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.beigesoft.rdb.IOrm;
+import org.beigesoft.ws.mdlp.PayMd;
+import org.beigesoft.ws.mdlp.SePayMd;
+
+/**
+ * <p>Cache of PAYPAL payment methods - owner's PayMd and S.E.Sellers'
+ * SePayMd indexed by seller ID. Sellers cache is bounded (LRU).
+ * It's cleared by payment methods save/delete processors (PrEnPpl),
+ * otherwise an entry is reloaded after TTL, e.g. when it's edited
+ * on other node. Clearing is made inside editing transaction, so entries
+ * loaded during clrDl after clearing are not cached, i.e. they may
+ * hold not yet committed changes.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CchPayMd {
+
+  /**
+   * <p>Time to live, milliseconds, default 10 minutes.</p>
+   **/
+  private long ttl = 600000L;
+
+  /**
+   * <p>Entries loaded during this time after clearing are not cached,
+   * milliseconds, default 5 seconds.</p>
+   **/
+  private long clrDl = 5000L;
+
+  /**
+   * <p>Last clearing time, milliseconds.</p>
+   **/
+  private volatile long clrd;
+
+  /**
+   * <p>Bound statements service, if null then all sellers' PAYPAL
+   * methods are loaded by ORM and filtered.</p>
+   **/
+  private SrSqlPpl srSqlPpl;
+
+  /**
+   * <p>Maximum cached sellers, default 1000.</p>
+   **/
+  private int maxSel = 1000;
+
+  /**
+   * <p>Owner's payment methods.</p>
+   **/
+  private volatile Ent<PayMd> own;
+
+  /**
+   * <p>Sellers' payment methods, access order LRU.</p>
+   **/
+  private final Map<Long, Ent<SePayMd>> sels =
+    new LinkedHashMap<Long, Ent<SePayMd>>(64, 0.75f, true) {
+      private static final long serialVersionUID = -3541722810291318163L;
+      @Override
+      protected boolean removeEldestEntry(
+        final Map.Entry<Long, Ent<SePayMd>> pEnt) {
+        return size() > CchPayMd.this.maxSel;
+      }
+    };
+
+  /**
+   * <p>Cache entry, immutable.</p>
+   * @param <T> payment method type
+   **/
+  private static final class Ent<T extends PayMd> {
+
+    /**
+     * <p>Payment methods, unmodifiable.</p>
+     **/
+    private final List<T> pms;
+
+    /**
+     * <p>Loading time, milliseconds.</p>
+     **/
+    private final long lod;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pPms payment methods
+     * @param pLod loading time
+     **/
+    Ent(final List<T> pPms, final long pLod) {
+      this.pms = Collections.unmodifiableList(pPms);
+      this.lod = pLod;
+    }
+  }
+
+  /**
+   * <p>Gets owner's PAYPAL payment methods, it loads them if need.</p>
+   * @param pRvs request scoped vars
+   * @param pOrm ORM
+   * @return payment methods, unmodifiable
+   * @throws Exception - an exception
+   **/
+  public final List<PayMd> lazOwn(final Map<String, Object> pRvs,
+    final IOrm pOrm) throws Exception {
+    Ent<PayMd> ent = this.own;
+    long now = System.currentTimeMillis();
+    if (isStl(ent, now)) {
+      Map<String, Object> vs = new HashMap<String, Object>();
+      ent = new Ent<PayMd>(pOrm.retLstCnd(pRvs, vs, PayMd.class,
+        "where NME='PAYPAL'"), now);
+      this.own = ent;
+    }
+    return ent.pms;
+  }
+
+  /**
+   * <p>Gets seller's PAYPAL payment methods, it loads them if need.</p>
+   * @param pRvs request scoped vars
+   * @param pOrm ORM
+   * @param pSelId seller ID
+   * @return payment methods, unmodifiable
+   * @throws Exception - an exception
+   **/
+  public final List<SePayMd> lazSel(final Map<String, Object> pRvs,
+    final IOrm pOrm, final Long pSelId) throws Exception {
+    Ent<SePayMd> ent;
+    synchronized (this.sels) {
+      ent = this.sels.get(pSelId);
+    }
+    long now = System.currentTimeMillis();
+    if (isStl(ent, now)) {
+      Map<String, Object> vs = new HashMap<String, Object>();
+      List<SePayMd> pms = new ArrayList<SePayMd>();
+      if (this.srSqlPpl != null) {
+        PreparedStatement ps = this.srSqlPpl
+          .prp("select IID from SEPAYMD where NME='PAYPAL' and SEL=?");
+        ps.setLong(1, pSelId);
+        List<Long> ids = new ArrayList<Long>();
+        ResultSet rs = ps.executeQuery();
+        try {
+          while (rs.next()) {
+            ids.add(rs.getLong(1));
+          }
+        } finally {
+          rs.close();
+        }
+        for (Long id : ids) {
+          SePayMd pm = new SePayMd();
+          pm.setIid(id);
+          pOrm.refrEnt(pRvs, vs, pm);
+          pms.add(pm);
+        }
+      } else {
+        for (SePayMd pm : pOrm.retLstCnd(pRvs, vs, SePayMd.class,
+          "where NME='PAYPAL'")) {
+          if (pm.getSelr() != null
+            && pSelId.equals(pm.getSelr().getIid().getIid())) {
+            pms.add(pm);
+          }
+        }
+      }
+      ent = new Ent<SePayMd>(pms, now);
+      synchronized (this.sels) {
+        this.sels.put(pSelId, ent);
+      }
+    }
+    return ent.pms;
+  }
+
+  /**
+   * <p>Checks if entry must be reloaded.</p>
+   * @param pEnt entry or null
+   * @param pNow current time
+   * @return if it's null, expired or loaded right after clearing
+   **/
+  private boolean isStl(final Ent<?> pEnt, final long pNow) {
+    return pEnt == null || pNow - pEnt.lod > this.ttl
+      || pEnt.lod - this.clrd <= this.clrDl;
+  }
+
+  /**
+   * <p>Clears whole cache, e.g. after editing payment methods.</p>
+   **/
+  public final void clear() {
+    this.clrd = System.currentTimeMillis();
+    this.own = null;
+    synchronized (this.sels) {
+      this.sels.clear();
+    }
+  }
+
+  /**
+   * <p>Clears owner's entry.</p>
+   **/
+  public final void clearOwn() {
+    this.clrd = System.currentTimeMillis();
+    this.own = null;
+  }
+
+  /**
+   * <p>Clears seller's entry.</p>
+   * @param pSelId seller ID
+   **/
+  public final void clearSel(final Long pSelId) {
+    this.clrd = System.currentTimeMillis();
+    synchronized (this.sels) {
+      this.sels.remove(pSelId);
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for ttl.</p>
+   * @return long
+   **/
+  public final long getTtl() {
+    return this.ttl;
+  }
+
+  /**
+   * <p>Setter for ttl.</p>
+   * @param pTtl reference
+   **/
+  public final void setTtl(final long pTtl) {
+    this.ttl = pTtl;
+  }
+
+  /**
+   * <p>Getter for maxSel.</p>
+   * @return int
+   **/
+  public final int getMaxSel() {
+    return this.maxSel;
+  }
+
+  /**
+   * <p>Setter for maxSel.</p>
+   * @param pMaxSel reference
+   **/
+  public final void setMaxSel(final int pMaxSel) {
+    this.maxSel = pMaxSel;
+  }
+
+  /**
+   * <p>Getter for clrDl.</p>
+   * @return long
+   **/
+  public final long getClrDl() {
+    return this.clrDl;
+  }
+
+  /**
+   * <p>Setter for clrDl.</p>
+   * @param pClrDl reference
+   **/
+  public final void setClrDl(final long pClrDl) {
+    this.clrDl = pClrDl;
+  }
+
+  /**
+   * <p>Getter for srSqlPpl.</p>
+   * @return SrSqlPpl
+   **/
+  public final SrSqlPpl getSrSqlPpl() {
+    return this.srSqlPpl;
+  }
+
+  /**
+   * <p>Setter for srSqlPpl.</p>
+   * @param pSrSqlPpl reference
+   **/
+  public final void setSrSqlPpl(final SrSqlPpl pSrSqlPpl) {
+    this.srSqlPpl = pSrSqlPpl;
+  }
+}
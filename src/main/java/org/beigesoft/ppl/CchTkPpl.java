@@ -0,0 +1,454 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+
+import com.paypal.base.rest.APIContext;
+import com.paypal.base.rest.OAuthTokenCredential;
+import com.paypal.base.rest.PayPalRESTException;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.ws.mdlp.PayMd;
+
+/**
+ * <p>Cache of PayPal OAuth access tokens per credential
+ * (client ID, secret hash, mode). Token is reused until it's about to
+ * expire, it's refreshed in background before that. Only one thread
+ * refreshes given credential's token at the same time.
+ * SDK's OAuthTokenCredential holds own static tokens cache and returns
+ * cached token until it's expired, so its entry is evicted before
+ * refreshing, otherwise refreshing ahead of expiry gets the same token.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CchTkPpl {
+
+  /**
+   * <p>SDK's static tokens cache or null if SDK has not it.</p>
+   **/
+  private static final Map<?, ?> SDKTKNS = sdkTkns();
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Background refreshing starts when token's rest life is less than this,
+   * milliseconds, default 5 minutes.</p>
+   **/
+  private long refAhd = 300000L;
+
+  /**
+   * <p>Token with rest life less than this is not used, i.e. requester waits
+   * for refreshing, milliseconds, default 1 minute.</p>
+   **/
+  private long minLf = 60000L;
+
+  /**
+   * <p>Additional SDK configuration, e.g. timeouts.</p>
+   **/
+  private Map<String, String> cnf = new HashMap<String, String>();
+
+  /**
+   * <p>Metrics, NULL means no metrics.</p>
+   **/
+  private MtrPpl mtr;
+
+  /**
+   * <p>Tokens map.</p>
+   **/
+  private final ConcurrentHashMap<String, Tkn> tkns =
+    new ConcurrentHashMap<String, Tkn>();
+
+  /**
+   * <p>Background refresher, lazy.</p>
+   **/
+  private ExecutorService refrsr;
+
+  /**
+   * <p>Access token with its expiration time, immutable.</p>
+   **/
+  private static final class AcTk {
+
+    /**
+     * <p>Access token, e.g. "Bearer A21...".</p>
+     **/
+    private final String tkn;
+
+    /**
+     * <p>Expiration time, milliseconds.</p>
+     **/
+    private final long exp;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pTkn token
+     * @param pExp expiration time
+     **/
+    AcTk(final String pTkn, final long pExp) {
+      this.tkn = pTkn;
+      this.exp = pExp;
+    }
+  }
+
+  /**
+   * <p>Credential's token holder.</p>
+   **/
+  private final class Tkn {
+
+    /**
+     * <p>Client ID.</p>
+     **/
+    private final String clId;
+
+    /**
+     * <p>Client secret.</p>
+     **/
+    private final String sec;
+
+    /**
+     * <p>Mode, e.g. "sandbox".</p>
+     **/
+    private final String mde;
+
+    /**
+     * <p>Current token or null.</p>
+     **/
+    private volatile AcTk acTk;
+
+    /**
+     * <p>If background refreshing is in progress.</p>
+     **/
+    private final AtomicBoolean rfrsng = new AtomicBoolean(false);
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pClId client ID
+     * @param pSec secret
+     * @param pMde mode
+     **/
+    Tkn(final String pClId, final String pSec, final String pMde) {
+      this.clId = pClId;
+      this.sec = pSec;
+      this.mde = pMde;
+    }
+
+    /**
+     * <p>Gets valid token, it refreshes it if need.</p>
+     * @return access token
+     * @throws PayPalRESTException - an exception
+     **/
+    String get() throws PayPalRESTException {
+      AcTk at = this.acTk;
+      long now = System.currentTimeMillis();
+      if (at != null && at.exp - now > CchTkPpl.this.minLf) {
+        if (at.exp - now < CchTkPpl.this.refAhd
+          && this.rfrsng.compareAndSet(false, true)) {
+          lazRefrsr().execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                refresh(true);
+              } catch (Exception e) {
+                CchTkPpl.this.log.error(new HashMap<String, Object>(),
+                  CchTkPpl.class, "Background token refreshing failed!", e);
+              } finally {
+                Tkn.this.rfrsng.set(false);
+              }
+            }
+          });
+        }
+        return at.tkn;
+      }
+      return refresh(false);
+    }
+
+    /**
+     * <p>Fetches new token, only one thread does it at the same time.</p>
+     * @param pForc forced, otherwise it returns fresh token made
+     * by concurrent thread
+     * @return access token
+     * @throws PayPalRESTException - an exception
+     **/
+    synchronized String refresh(
+      final boolean pForc) throws PayPalRESTException {
+      AcTk at = this.acTk;
+      long now = System.currentTimeMillis();
+      if (!pForc && at != null && at.exp - now > CchTkPpl.this.minLf) {
+        return at.tkn;
+      }
+      if (SDKTKNS == null) {
+        if (pForc && at != null) {
+          //SDK's cached token can't be refreshed ahead:
+          return at.tkn;
+        }
+      } else {
+        //SDK's cache key is "clientID:clientSecret:refreshToken":
+        SDKTKNS.remove(this.clId + ":" + this.sec + ":null");
+      }
+      Map<String, String> cnfm = new HashMap<String, String>(
+        CchTkPpl.this.cnf);
+      cnfm.put("mode", this.mde);
+      OAuthTokenCredential crd = new OAuthTokenCredential(this.clId,
+        this.sec, cnfm);
+      long st = System.nanoTime();
+      String tkn;
+      try {
+        tkn = crd.getAccessToken();
+      } finally {
+        if (CchTkPpl.this.mtr != null) {
+          CchTkPpl.this.mtr.rec(MtrPpl.TKN, st);
+        }
+      }
+      //SDK's expiresIn is expiration time in seconds, not the rest life:
+      this.acTk = new AcTk(tkn, crd.expiresIn() * 1000L);
+      return tkn;
+    }
+  }
+
+  /**
+   * <p>Makes API context with cached token for given PayPal payment method
+   * (owner's PayMd or S.E.Seller's SePayMd).</p>
+   * @param pPayMd payment method
+   * @return API context
+   * @throws Exception - an exception
+   **/
+  public final APIContext apiCon(final PayMd pPayMd) throws Exception {
+    return apiCon(pPayMd.getSec1(), pPayMd.getSec2(), pPayMd.getMde());
+  }
+
+  /**
+   * <p>Makes API context with cached token.</p>
+   * @param pClId client ID
+   * @param pSec client secret
+   * @param pMde mode
+   * @return API context
+   * @throws Exception - an exception
+   **/
+  @SuppressWarnings("deprecation")
+  public final APIContext apiCon(final String pClId, final String pSec,
+    final String pMde) throws Exception {
+    String key = mkKey(pClId, pSec, pMde);
+    Tkn tkn = this.tkns.get(key);
+    if (tkn == null) {
+      tkn = new Tkn(pClId, pSec, pMde);
+      Tkn tknEx = this.tkns.putIfAbsent(key, tkn);
+      if (tknEx != null) {
+        tkn = tknEx;
+      }
+    }
+    APIContext rz = new APIContext(tkn.get());
+    rz.addConfigurations(this.cnf);
+    rz.setMode(pMde);
+    return rz;
+  }
+
+  /**
+   * <p>Evicts token, e.g. when PayPal rejected it (HTTP 401).</p>
+   * @param pPayMd payment method
+   * @throws Exception - an exception
+   **/
+  public final void evict(final PayMd pPayMd) throws Exception {
+    this.tkns.remove(mkKey(pPayMd.getSec1(), pPayMd.getSec2(),
+      pPayMd.getMde()));
+  }
+
+  /**
+   * <p>Evicts token if exception is HTTP 401.</p>
+   * @param pPayMd payment method
+   * @param pEx exception
+   * @return if evicted, i.e. credential may be changed
+   * @throws Exception - an exception
+   **/
+  public final boolean evict(final PayMd pPayMd,
+    final Exception pEx) throws Exception {
+    if (pEx instanceof PayPalRESTException
+      && ((PayPalRESTException) pEx).getResponsecode() == 401) {
+      evict(pPayMd);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * <p>Releases cache and background refresher.</p>
+   **/
+  public final synchronized void release() {
+    this.tkns.clear();
+    if (this.refrsr != null) {
+      this.refrsr.shutdown();
+      this.refrsr = null;
+    }
+  }
+
+  /**
+   * <p>Makes key (client ID, secret hash, mode).</p>
+   * @param pClId client ID
+   * @param pSec client secret
+   * @param pMde mode
+   * @return key
+   * @throws Exception - an exception
+   **/
+  private String mkKey(final String pClId, final String pSec,
+    final String pMde) throws Exception {
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    byte[] hsh = md.digest(pSec.getBytes("UTF-8"));
+    StringBuilder sb = new StringBuilder(pClId.length() + 80);
+    sb.append(pClId).append(':');
+    for (byte b : hsh) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+        .append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.append(':').append(pMde).toString();
+  }
+
+  /**
+   * <p>Gets SDK's static tokens cache.</p>
+   * @return cache or null if SDK has not it
+   **/
+  private static Map<?, ?> sdkTkns() {
+    try {
+      Field fld = OAuthTokenCredential.class
+        .getDeclaredField("ACCESS_TOKENS");
+      fld.setAccessible(true);
+      return (Map<?, ?>) fld.get(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * <p>Lazy gets background refresher.</p>
+   * @return refresher
+   **/
+  private synchronized ExecutorService lazRefrsr() {
+    if (this.refrsr == null) {
+      this.refrsr = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable pRun) {
+          Thread rz = new Thread(pRun, "PplTokenRefresher");
+          rz.setDaemon(true);
+          return rz;
+        }
+      });
+    }
+    return this.refrsr;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for cnf.</p>
+   * @return Map<String, String>
+   **/
+  public final Map<String, String> getCnf() {
+    return this.cnf;
+  }
+
+  /**
+   * <p>Setter for cnf.</p>
+   * @param pCnf reference
+   **/
+  public final void setCnf(final Map<String, String> pCnf) {
+    this.cnf = pCnf;
+  }
+
+  /**
+   * <p>Getter for refAhd.</p>
+   * @return long
+   **/
+  public final long getRefAhd() {
+    return this.refAhd;
+  }
+
+  /**
+   * <p>Setter for refAhd.</p>
+   * @param pRefAhd reference
+   **/
+  public final void setRefAhd(final long pRefAhd) {
+    this.refAhd = pRefAhd;
+  }
+
+  /**
+   * <p>Getter for minLf.</p>
+   * @return long
+   **/
+  public final long getMinLf() {
+    return this.minLf;
+  }
+
+  /**
+   * <p>Setter for minLf.</p>
+   * @param pMinLf reference
+   **/
+  public final void setMinLf(final long pMinLf) {
+    this.minLf = pMinLf;
+  }
+
+  /**
+   * <p>Getter for mtr.</p>
+   * @return MtrPpl
+   **/
+  public final MtrPpl getMtr() {
+    return this.mtr;
+  }
+
+  /**
+   * <p>Setter for mtr.</p>
+   * @param pMtr reference
+   **/
+  public final void setMtr(final MtrPpl pMtr) {
+    this.mtr = pMtr;
+  }
+}
@@ -0,0 +1,529 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+import com.paypal.api.payments.Payment;
+import com.paypal.api.payments.PaymentExecution;
+import com.paypal.base.ConnectionManager;
+import com.paypal.base.rest.APIContext;
+import com.paypal.base.rest.HttpMethod;
+import com.paypal.base.rest.PayPalResource;
+
+import org.beigesoft.exc.ExcCode;
+
+/**
+ * <p>PayPal connector with bounded pool of keep-alive connections.
+ * SDK makes new SSL context for every connection by default, so JDK
+ * can't reuse connection and TLS session. If sslShr, this connector sets
+ * SDK shared SSL context with only socket factory. Note that SDK's
+ * ConnectionManager is singleton, so this context is used by every
+ * PayPal SDK client loaded by the same class loader (i.e. JVM wide
+ * if SDK is in container's lib). Remote calls are made by
+ * bounded pool of threads with bounded queue (cnQu), so number of
+ * concurrent connections is bounded, a call that doesn't fit into queue
+ * is rejected as GrdPpl.BUSY without retries. Waiting for pool is
+ * measured and put into request scoped vars as "pplPlWt" (milliseconds).
+ * Canceling of timed out call doesn't interrupt blocked socket IO, so
+ * every attempt also sets connect and read timeouts of the connection
+ * itself not greater than remaining deadline, and SDK's own retries are
+ * off (http.Retry=1). Every operation has own deadline,
+ * transient failures (transport, 429, 5xx) are retried within deadline
+ * with exponential backoff and full jitter. Retries are limited by
+ * shared budget (token bucket of rtCap tokens), i.e. every transient
+ * failure takes a token, every success returns rtRat percents of token,
+ * and retry is allowed only while more than half of tokens are left, so
+ * retries can't amplify outage. Client must make non-idempotent call
+ * (create, execute) idempotent by API context's request ID
+ * (PayPal-Request-Id).</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CnPpl implements ICnPpl {
+
+  /**
+   * <p>Settings.</p>
+   **/
+  private PplStg stg;
+
+  /**
+   * <p>Pool, lazy.</p>
+   **/
+  private ThreadPoolExecutor pool;
+
+  /**
+   * <p>Count of calls.</p>
+   **/
+  private final AtomicLong wtCnt = new AtomicLong();
+
+  /**
+   * <p>Total pool waiting, nanoseconds.</p>
+   **/
+  private final AtomicLong wtTot = new AtomicLong();
+
+  /**
+   * <p>Maximum pool waiting, nanoseconds.</p>
+   **/
+  private final AtomicLong wtMax = new AtomicLong();
+
+  /**
+   * <p>Taken retry tokens, thousandths of token.</p>
+   **/
+  private final AtomicLong rtTkn = new AtomicLong();
+
+  /**
+   * <p>Count of retries.</p>
+   **/
+  private final AtomicLong rtCnt = new AtomicLong();
+
+  /**
+   * <p>SSL context that returns only socket factory.</p>
+   **/
+  private static final class SslCtxSpi extends SSLContextSpi {
+
+    /**
+     * <p>Base context.</p>
+     **/
+    private final SSLContext bse;
+
+    /**
+     * <p>Socket factory, lazy.</p>
+     **/
+    private volatile SSLSocketFactory sf;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pBse base context
+     **/
+    SslCtxSpi(final SSLContext pBse) {
+      this.bse = pBse;
+    }
+
+    @Override
+    protected void engineInit(final KeyManager[] pKms,
+      final TrustManager[] pTms,
+        final SecureRandom pSr) throws KeyManagementException {
+      this.bse.init(pKms, pTms, pSr);
+      this.sf = null;
+    }
+
+    @Override
+    protected SSLSocketFactory engineGetSocketFactory() {
+      SSLSocketFactory rz = this.sf;
+      if (rz == null) {
+        rz = this.bse.getSocketFactory();
+        this.sf = rz;
+      }
+      return rz;
+    }
+
+    @Override
+    protected SSLServerSocketFactory engineGetServerSocketFactory() {
+      return this.bse.getServerSocketFactory();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine() {
+      return this.bse.createSSLEngine();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine(final String pHost,
+      final int pPort) {
+      return this.bse.createSSLEngine(pHost, pPort);
+    }
+
+    @Override
+    protected SSLSessionContext engineGetServerSessionContext() {
+      return this.bse.getServerSessionContext();
+    }
+
+    @Override
+    protected SSLSessionContext engineGetClientSessionContext() {
+      return this.bse.getClientSessionContext();
+    }
+  }
+
+  /**
+   * <p>Creates payment.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPay payment to create
+   * @return created payment
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final Payment create(final Map<String, Object> pRvs,
+    final APIContext pApiCon, final Payment pPay) throws Exception {
+    return call(pRvs, pApiCon, new Callable<Payment>() {
+      @Override
+      public Payment call() throws Exception {
+        return pPay.create(pApiCon);
+      }
+    }, dln(this.stg.getCrTo()));
+  }
+
+  /**
+   * <p>Creates payment by prepared JSON payload the same way as
+   * SDK's Payment.create does.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPayLd payment to create JSON
+   * @return created payment
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final Payment create(final Map<String, Object> pRvs,
+    final APIContext pApiCon, final String pPayLd) throws Exception {
+    return call(pRvs, pApiCon, new Callable<Payment>() {
+      @Override
+      public Payment call() throws Exception {
+        Payment rz = PayPalResource.configureAndExecute(pApiCon,
+          HttpMethod.POST, "v1/payments/payment", pPayLd, Payment.class);
+        pApiCon.setRequestId(null);
+        return rz;
+      }
+    }, dln(this.stg.getCrTo()));
+  }
+
+  /**
+   * <p>Executes payment.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPay payment with ID
+   * @param pPayExec payment execution
+   * @return executed payment
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final Payment execute(final Map<String, Object> pRvs,
+    final APIContext pApiCon, final Payment pPay,
+      final PaymentExecution pPayExec) throws Exception {
+    return call(pRvs, pApiCon, new Callable<Payment>() {
+      @Override
+      public Payment call() throws Exception {
+        return pPay.execute(pApiCon, pPayExec);
+      }
+    }, dln(this.stg.getExTo()));
+  }
+
+  /**
+   * <p>Retrieves payment.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPayId payment ID
+   * @return payment
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final Payment get(final Map<String, Object> pRvs,
+    final APIContext pApiCon, final String pPayId) throws Exception {
+    return call(pRvs, pApiCon, new Callable<Payment>() {
+      @Override
+      public Payment call() throws Exception {
+        return Payment.get(pApiCon, pPayId);
+      }
+    }, dln(this.stg.getGtTo()));
+  }
+
+  /**
+   * <p>Makes SDK configuration (timeouts, pool size, end-point),
+   * it should be added into every API context and OAuth credential.</p>
+   * @return SDK configuration
+   **/
+  public final Map<String, String> mkCnf() {
+    Map<String, String> rz = new HashMap<String, String>();
+    rz.put("http.ConnectionTimeOut", String.valueOf(this.stg.getCnTo()));
+    rz.put("http.ReadTimeOut", String.valueOf(this.stg.getRdTo()));
+    rz.put("http.MaxConnection", String.valueOf(this.stg.getMaxCn()));
+    rz.put("http.Retry", "1");
+    if (this.stg.getEndPnt() != null) {
+      rz.put("service.EndPoint", this.stg.getEndPnt());
+      rz.put("oauth.EndPoint", this.stg.getEndPnt());
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Pre-initializes pool and SDK's shared SSL context, e.g. on
+   * application start.</p>
+   * @throws Exception - an exception
+   **/
+  public final void prewarm() throws Exception {
+    lazPool().prestartCoreThread();
+  }
+
+  /**
+   * <p>Releases pool.</p>
+   **/
+  public final synchronized void release() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+  }
+
+  /**
+   * <p>Makes remote idempotent call with retries within deadline.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pCall call
+   * @param pDln operation deadline, milliseconds
+   * @return payment
+   * @throws Exception - an exception
+   **/
+  private Payment call(final Map<String, Object> pRvs,
+    final APIContext pApiCon, final Callable<Payment> pCall,
+      final long pDln) throws Exception {
+    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pDln);
+    int att = 0;
+    while (true) {
+      long rmn = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+      Payment rz;
+      try {
+        //blocked socket IO is not interruptible:
+        pApiCon.addConfiguration("http.ConnectionTimeOut", String
+          .valueOf(Math.max(1L, Math.min(this.stg.getCnTo(), rmn))));
+        pApiCon.addConfiguration("http.ReadTimeOut", String
+          .valueOf(Math.max(1L, Math.min(this.stg.getRdTo(), rmn))));
+        rz = atmp(pRvs, pCall, rmn);
+      } catch (Exception ex) {
+        if (!GrdPpl.isFlr(ex)) {
+          throw ex;
+        }
+        boolean alw = tkRtr();
+        if (att >= this.stg.getRtMax() || !alw) {
+          throw ex;
+        }
+        //full jitter:
+        long bkf = ThreadLocalRandom.current().nextLong(
+          (long) this.stg.getRtBs() << att + 1);
+        rmn = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+        if (rmn - bkf < this.stg.getRtBs()) {
+          throw ex;
+        }
+        this.rtCnt.incrementAndGet();
+        pRvs.put("pplRtr", att + 1);
+        Thread.sleep(bkf);
+        att++;
+        continue;
+      }
+      long tkn = this.rtTkn.get();
+      while (tkn > 0L && !this.rtTkn.compareAndSet(tkn, Math.max(0L, tkn
+        - this.stg.getRtRat() * 10L))) {
+        tkn = this.rtTkn.get();
+      }
+      return rz;
+    }
+  }
+
+  /**
+   * <p>Takes retry token on transient failure.</p>
+   * @return if retry is allowed, i.e. more than half of tokens are left
+   **/
+  private boolean tkRtr() {
+    long cap = this.stg.getRtCap() * 1000L;
+    long tkn;
+    long tknNw;
+    do {
+      tkn = this.rtTkn.get();
+      tknNw = Math.min(cap, tkn + 1000L);
+    } while (!this.rtTkn.compareAndSet(tkn, tknNw));
+    return tknNw * 2L < cap;
+  }
+
+  /**
+   * <p>Gets operation deadline.</p>
+   * @param pTo operation timeout, 0 means total timeout
+   * @return deadline, milliseconds
+   **/
+  private long dln(final int pTo) {
+    if (pTo > 0) {
+      return pTo;
+    }
+    return this.stg.getTotTo();
+  }
+
+  /**
+   * <p>Makes single remote call by the pool within timeout.</p>
+   * @param pRvs request scoped vars
+   * @param pCall call
+   * @param pTo timeout, milliseconds
+   * @return payment
+   * @throws Exception - an exception
+   **/
+  private Payment atmp(final Map<String, Object> pRvs,
+    final Callable<Payment> pCall, final long pTo) throws Exception {
+    if (pTo <= 0L) {
+      throw new Exception("PayPal call timeout!");
+    }
+    final long sbm = System.nanoTime();
+    final AtomicLong wt = new AtomicLong();
+    Future<Payment> ftr;
+    try {
+      ftr = lazPool().submit(new Callable<Payment>() {
+        @Override
+        public Payment call() throws Exception {
+          wt.set(System.nanoTime() - sbm);
+          return pCall.call();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      throw new ExcCode(GrdPpl.BUSY, "PayPal connections queue is full!");
+    }
+    try {
+      return ftr.get(pTo, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      ftr.cancel(true);
+      throw new Exception("PayPal call timeout!", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof Exception) {
+        throw (Exception) ex.getCause();
+      }
+      throw ex;
+    } finally {
+      long w = wt.get();
+      if (w == 0L) { //not started
+        w = System.nanoTime() - sbm;
+      }
+      this.wtCnt.incrementAndGet();
+      this.wtTot.addAndGet(w);
+      long mx = this.wtMax.get();
+      while (w > mx && !this.wtMax.compareAndSet(mx, w)) {
+        mx = this.wtMax.get();
+      }
+      pRvs.put("pplPlWt", TimeUnit.NANOSECONDS.toMillis(w));
+    }
+  }
+
+  /**
+   * <p>Lazy gets pool, it also sets SDK's shared SSL context if
+   * sslShr.</p>
+   * @return pool
+   * @throws Exception - an exception
+   **/
+  private synchronized ThreadPoolExecutor lazPool() throws Exception {
+    if (this.pool == null) {
+      if (this.stg.getSslShr()) {
+        SSLContext bse = SSLContext.getInstance("TLSv1.2");
+        bse.init(null, null, null);
+        SSLContext ssl = new SSLContext(new SslCtxSpi(bse),
+          bse.getProvider(), bse.getProtocol()) { };
+        ConnectionManager.getInstance().configureCustomSslContext(ssl);
+      }
+      final AtomicInteger thNum = new AtomicInteger();
+      this.pool = new ThreadPoolExecutor(this.stg.getMaxCn(),
+        this.stg.getMaxCn(), 60L, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(Math.max(1, this.stg.getCnQu())),
+            new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable pRun) {
+          Thread rz = new Thread(pRun, "PplCn-" + thNum.incrementAndGet());
+          rz.setDaemon(true);
+          return rz;
+        }
+      });
+      this.pool.allowCoreThreadTimeOut(true);
+    }
+    return this.pool;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for stg.</p>
+   * @return PplStg
+   **/
+  public final PplStg getStg() {
+    return this.stg;
+  }
+
+  /**
+   * <p>Setter for stg.</p>
+   * @param pStg reference
+   **/
+  public final void setStg(final PplStg pStg) {
+    this.stg = pStg;
+  }
+
+  /**
+   * <p>Getter for count of calls.</p>
+   * @return long
+   **/
+  public final long getWtCnt() {
+    return this.wtCnt.get();
+  }
+
+  /**
+   * <p>Getter for total pool waiting, nanoseconds.</p>
+   * @return long
+   **/
+  public final long getWtTot() {
+    return this.wtTot.get();
+  }
+
+  /**
+   * <p>Getter for maximum pool waiting, nanoseconds.</p>
+   * @return long
+   **/
+  public final long getWtMax() {
+    return this.wtMax.get();
+  }
+
+  /**
+   * <p>Getter for count of retries.</p>
+   * @return long
+   **/
+  public final long getRtCnt() {
+    return this.rtCnt.get();
+  }
+}
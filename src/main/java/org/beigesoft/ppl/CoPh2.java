@@ -0,0 +1,335 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Coalescer of duplicate phase 2 (execution) requests, e.g. buyer
+ * double-clicked. The first request (leader) executes payment,
+ * concurrent duplicates wait for it and reuse its result, late
+ * duplicates get cached result without DB and remote call.
+ * Requests are identified by authenticated buyer, PayPal payment and
+ * payer IDs, so it must be joined after buyer's authentication and rate
+ * limiting, i.e. replaying known payment/payer IDs pair by other client
+ * never gets cached result. The table is striped by this key, expired
+ * results are purged on joining and finishing, and stripe holds at most
+ * mxStr entries (the eldest done ones are evicted), so it's bounded.
+ * Failed execution is not cached, so a waiting duplicate makes its own
+ * attempt. Result is status with redirect URL if there is, e.g. in
+ * multi-payee mode executed payment leads to approval of the next one,
+ * so duplicate is redirected there too.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CoPh2 {
+
+  /**
+   * <p>Stripes count, power of two.</p>
+   **/
+  private static final int STRIPES = 64;
+
+  /**
+   * <p>Result time to live, milliseconds, default 1 minute.</p>
+   **/
+  private long ttl = 60000L;
+
+  /**
+   * <p>Maximum duplicate's waiting for leader, milliseconds.</p>
+   **/
+  private long wtTo = 120000L;
+
+  /**
+   * <p>Maximum entries per stripe, default 256, in flight executions
+   * are never evicted, so it's exceeded only by concurrency.</p>
+   **/
+  private int mxStr = 256;
+
+  /**
+   * <p>Stripes - executions by key.</p>
+   **/
+  private final Map<String, Flt>[] strps;
+
+  /**
+   * <p>Execution in flight or done.</p>
+   **/
+  public static final class Flt {
+
+    /**
+     * <p>Key.</p>
+     **/
+    private final String key;
+
+    /**
+     * <p>If caller is leader, i.e. it must execute.</p>
+     **/
+    private final boolean ldr;
+
+    /**
+     * <p>Shared with duplicates execution.</p>
+     **/
+    private final Flt shr;
+
+    /**
+     * <p>Done signal.</p>
+     **/
+    private final CountDownLatch dn;
+
+    /**
+     * <p>Result status, null if failed.</p>
+     **/
+    private volatile String stat;
+
+    /**
+     * <p>Result redirect URL, null if there is no it.</p>
+     **/
+    private volatile String redUrl;
+
+    /**
+     * <p>Done time, 0 if in flight.</p>
+     **/
+    private volatile long end;
+
+    /**
+     * <p>Leader's constructor.</p>
+     * @param pKey key
+     **/
+    Flt(final String pKey) {
+      this.key = pKey;
+      this.ldr = true;
+      this.shr = this;
+      this.dn = new CountDownLatch(1);
+    }
+
+    /**
+     * <p>Duplicate's constructor.</p>
+     * @param pShr leader's execution
+     **/
+    Flt(final Flt pShr) {
+      this.key = pShr.key;
+      this.ldr = false;
+      this.shr = pShr;
+      this.dn = null;
+    }
+
+    /**
+     * <p>Getter for ldr.</p>
+     * @return boolean
+     **/
+    public boolean getLdr() {
+      return this.ldr;
+    }
+
+    /**
+     * <p>Getter for shared result redirect URL.</p>
+     * @return String
+     **/
+    public String getRedUrl() {
+      return this.shr.redUrl;
+    }
+  }
+
+  /**
+   * <p>Only constructor.</p>
+   **/
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public CoPh2() {
+    this.strps = new Map[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      this.strps[i] = new LinkedHashMap<String, Flt>();
+    }
+  }
+
+  /**
+   * <p>Joins execution.</p>
+   * @param pBuyr authenticated buyer ID
+   * @param pPayId payment ID
+   * @param pPyrId payer ID
+   * @return leader's or duplicate's execution
+   **/
+  public final Flt join(final Long pBuyr, final String pPayId,
+    final String pPyrId) {
+    String key = pBuyr + "/" + pPayId + "/" + pPyrId;
+    Map<String, Flt> strp = strp(key);
+    synchronized (strp) {
+      prg(strp);
+      Flt fl = strp.get(key);
+      if (fl == null) {
+        //insertion order, the eldest done ones are evicted:
+        for (Iterator<Flt> it = strp.values().iterator();
+          strp.size() >= this.mxStr && it.hasNext();) {
+          if (it.next().end != 0L) {
+            it.remove();
+          }
+        }
+        fl = new Flt(key);
+        strp.put(key, fl);
+        return fl;
+      }
+      return new Flt(fl);
+    }
+  }
+
+  /**
+   * <p>Waits for leader's result.</p>
+   * @param pFlt duplicate's execution
+   * @return result status or null if leader failed or timeout
+   * @throws InterruptedException - if interrupted
+   **/
+  public final String await(final Flt pFlt) throws InterruptedException {
+    if (pFlt.shr.dn.await(this.wtTo, TimeUnit.MILLISECONDS)) {
+      return pFlt.shr.stat;
+    }
+    return null;
+  }
+
+  /**
+   * <p>Finishes leader's execution.</p>
+   * @param pFlt leader's execution
+   * @param pStat result status, null if failed
+   * @param pRedUrl result redirect URL or null
+   **/
+  public final void done(final Flt pFlt, final String pStat,
+    final String pRedUrl) {
+    if (!pFlt.ldr) {
+      return;
+    }
+    //it's visible by status after latch:
+    pFlt.redUrl = pRedUrl;
+    pFlt.stat = pStat;
+    if (pStat == null) {
+      Map<String, Flt> strp = strp(pFlt.key);
+      synchronized (strp) {
+        if (strp.get(pFlt.key) == pFlt) {
+          strp.remove(pFlt.key);
+        }
+      }
+    } else {
+      pFlt.end = System.currentTimeMillis();
+      Map<String, Flt> strp = strp(pFlt.key);
+      synchronized (strp) {
+        prg(strp);
+      }
+    }
+    pFlt.dn.countDown();
+  }
+
+  /**
+   * <p>Removes expired results, it's invoked under stripe lock.</p>
+   * @param pStrp stripe
+   **/
+  private void prg(final Map<String, Flt> pStrp) {
+    long now = System.currentTimeMillis();
+    for (Iterator<Flt> it = pStrp.values().iterator(); it.hasNext();) {
+      Flt fl = it.next();
+      if (fl.end != 0L && now - fl.end > this.ttl) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * <p>Gets stripe entries count, e.g. for tests.</p>
+   * @param pBuyr buyer ID
+   * @param pPayId payment ID
+   * @param pPyrId payer ID
+   * @return count of stripe of given key
+   **/
+  final int strSz(final Long pBuyr, final String pPayId,
+    final String pPyrId) {
+    Map<String, Flt> strp = strp(pBuyr + "/" + pPayId + "/" + pPyrId);
+    synchronized (strp) {
+      return strp.size();
+    }
+  }
+
+  /**
+   * <p>Gets stripe.</p>
+   * @param pKey key
+   * @return stripe
+   **/
+  private Map<String, Flt> strp(final String pKey) {
+    int h = pKey.hashCode();
+    h ^= h >>> 16;
+    return this.strps[h & (STRIPES - 1)];
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for ttl.</p>
+   * @return long
+   **/
+  public final long getTtl() {
+    return this.ttl;
+  }
+
+  /**
+   * <p>Setter for ttl.</p>
+   * @param pTtl reference
+   **/
+  public final void setTtl(final long pTtl) {
+    this.ttl = pTtl;
+  }
+
+  /**
+   * <p>Getter for wtTo.</p>
+   * @return long
+   **/
+  public final long getWtTo() {
+    return this.wtTo;
+  }
+
+  /**
+   * <p>Setter for wtTo.</p>
+   * @param pWtTo reference
+   **/
+  public final void setWtTo(final long pWtTo) {
+    this.wtTo = pWtTo;
+  }
+
+  /**
+   * <p>Getter for mxStr.</p>
+   * @return int
+   **/
+  public final int getMxStr() {
+    return this.mxStr;
+  }
+
+  /**
+   * <p>Setter for mxStr.</p>
+   * @param pMxStr reference
+   **/
+  public final void setMxStr(final int pMxStr) {
+    this.mxStr = pMxStr;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Bounded executor of multi-payee remote calls, e.g. creating
+ * payments of all payees concurrently. The first task is invoked by
+ * caller's thread, others by pool. If pool is saturated, then task is
+ * invoked by caller, i.e. it degrades to sequential invocation instead of
+ * rejection. Every remote call has own deadline (CnPpl), so waiting
+ * is bounded.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class ExMlPpl {
+
+  /**
+   * <p>Threads count.</p>
+   **/
+  private int thr = 4;
+
+  /**
+   * <p>Pool, lazy.</p>
+   **/
+  private ThreadPoolExecutor pool;
+
+  /**
+   * <p>Invokes all tasks and waits for all of them.</p>
+   * @param <T> result type
+   * @param pTsks tasks
+   * @return results in tasks order
+   * @throws Exception - the first (in tasks order) task's exception
+   **/
+  public final <T> List<T> all(
+    final List<Callable<T>> pTsks) throws Exception {
+    List<Future<T>> fts = new ArrayList<Future<T>>(pTsks.size());
+    if (pTsks.size() > 1) {
+      ThreadPoolExecutor pl = lazPool();
+      for (int i = 1; i < pTsks.size(); i++) {
+        fts.add(pl.submit(pTsks.get(i)));
+      }
+    }
+    List<T> rz = new ArrayList<T>(pTsks.size());
+    Exception ex = null;
+    try {
+      rz.add(pTsks.get(0).call());
+    } catch (Exception e) {
+      ex = e;
+      rz.add(null);
+    }
+    for (Future<T> ft : fts) {
+      try {
+        rz.add(ft.get());
+      } catch (ExecutionException e) {
+        if (ex == null) {
+          if (e.getCause() instanceof Exception) {
+            ex = (Exception) e.getCause();
+          } else {
+            ex = e;
+          }
+        }
+        rz.add(null);
+      }
+    }
+    if (ex != null) {
+      throw ex;
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Releases pool.</p>
+   **/
+  public final synchronized void release() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+  }
+
+  /**
+   * <p>Lazy gets pool.</p>
+   * @return pool
+   **/
+  private synchronized ThreadPoolExecutor lazPool() {
+    if (this.pool == null) {
+      final AtomicInteger thNum = new AtomicInteger();
+      this.pool = new ThreadPoolExecutor(this.thr, this.thr, 60L,
+        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(this.thr),
+          new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable pRun) {
+          Thread rz = new Thread(pRun, "PplMl-" + thNum.incrementAndGet());
+          rz.setDaemon(true);
+          return rz;
+        }
+      }, new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(final Runnable pRun,
+          final ThreadPoolExecutor pEx) {
+          if (pEx.isShutdown()) {
+            throw new RejectedExecutionException("PplMl is shut down!");
+          }
+          pRun.run();
+        }
+      });
+      this.pool.allowCoreThreadTimeOut(true);
+    }
+    return this.pool;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for thr.</p>
+   * @return int
+   **/
+  public final int getThr() {
+    return this.thr;
+  }
+
+  /**
+   * <p>Setter for thr.</p>
+   * @param pThr reference
+   **/
+  public final void setThr(final int pThr) {
+    this.thr = pThr;
+  }
+}
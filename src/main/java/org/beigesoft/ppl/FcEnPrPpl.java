@@ -0,0 +1,156 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.beigesoft.fct.FctBlc;
+import org.beigesoft.fct.FctEnPrc;
+import org.beigesoft.fct.IFctPrcEnt;
+import org.beigesoft.prc.IPrcEnt;
+import org.beigesoft.ws.mdlp.PayMd;
+
+/**
+ * <p>Additional PPL factory of entity processors. It makes PrEnPpl
+ * named by HlPplEnPr, i.e. payment methods save/delete processors
+ * that clear PAYPAL payment methods cache.</p>
+ *
+ * @param <RS> platform dependent record set type
+ * @author Yury Demidenko
+ */
+public class FcEnPrPpl<RS> implements IFctPrcEnt {
+
+  /**
+   * <p>Names prefix of processors made by this factory.</p>
+   **/
+  public static final String PRFX = "PrEnPpl";
+
+  /**
+   * <p>Main factory.</p>
+   **/
+  private FctBlc<RS> fctBlc;
+
+  /**
+   * <p>PAYPAL payment methods cache.</p>
+   **/
+  private CchPayMd cchPayMd;
+
+  /**
+   * <p>Processors map.</p>
+   **/
+  private final Map<String, IPrcEnt<?, ?>> procs =
+    new ConcurrentHashMap<String, IPrcEnt<?, ?>>();
+
+  /**
+   * <p>Get processor in lazy mode (if bean is null then initialize it).</p>
+   * @param pRvs request scoped vars
+   * @param pPrNm - filler name
+   * @return requested processor or null
+   * @throws Exception - an exception
+   */
+  @Override
+  public final IPrcEnt<?, ?> laz(final Map<String, Object> pRvs,
+    final String pPrNm) throws Exception {
+    if (pPrNm == null || !pPrNm.startsWith(PRFX)) {
+      return null;
+    }
+    IPrcEnt<?, ?> rz = this.procs.get(pPrNm);
+    if (rz == null) {
+      synchronized (this) {
+        rz = this.procs.get(pPrNm);
+        if (rz == null) {
+          rz = crPuPrEnPpl(pRvs, pPrNm);
+        }
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Create and put into the Map PrEnPpl.</p>
+   * @param pRvs request scoped vars
+   * @param pPrNm name, i.e. PRFX + wrapped processor name
+   * @return PrEnPpl
+   * @throws Exception - an exception
+   */
+  private PrEnPpl<PayMd> crPuPrEnPpl(final Map<String, Object> pRvs,
+    final String pPrNm) throws Exception {
+    String dlgNm = pPrNm.substring(PRFX.length());
+    IFctPrcEnt fctEnPrc = (IFctPrcEnt) this.fctBlc
+      .laz(pRvs, FctEnPrc.class.getSimpleName());
+    @SuppressWarnings("unchecked")
+    IPrcEnt<PayMd, Long> dlg = (IPrcEnt<PayMd, Long>) fctEnPrc
+      .laz(pRvs, dlgNm);
+    if (dlg == null) {
+      throw new Exception("There is no entity processor " + dlgNm);
+    }
+    PrEnPpl<PayMd> rz = new PrEnPpl<PayMd>();
+    rz.setPrc(dlg);
+    rz.setCchPayMd(this.cchPayMd);
+    this.procs.put(pPrNm, rz);
+    this.fctBlc.lazLogStd(pRvs).info(pRvs, getClass(),
+      pPrNm + " has been created.");
+    return rz;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for fctBlc.</p>
+   * @return FctBlc<RS>
+   **/
+  public final FctBlc<RS> getFctBlc() {
+    return this.fctBlc;
+  }
+
+  /**
+   * <p>Setter for fctBlc.</p>
+   * @param pFctBlc reference
+   **/
+  public final void setFctBlc(final FctBlc<RS> pFctBlc) {
+    this.fctBlc = pFctBlc;
+  }
+
+  /**
+   * <p>Getter for cchPayMd.</p>
+   * @return CchPayMd
+   **/
+  public final CchPayMd getCchPayMd() {
+    return this.cchPayMd;
+  }
+
+  /**
+   * <p>Setter for cchPayMd.</p>
+   * @param pCchPayMd reference
+   **/
+  public final void setCchPayMd(final CchPayMd pCchPayMd) {
+    this.cchPayMd = pCchPayMd;
+  }
+}
@@ -30,17 +30,30 @@ package org.beigesoft.ppl;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.io.InputStream;
 import java.sql.ResultSet;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.paypal.api.payments.Payment;
+import com.paypal.base.rest.JSONFormatter;
 
 import org.beigesoft.fct.FctBlc;
 import org.beigesoft.fct.IFctPrc;
 import org.beigesoft.hnd.HndSpam;
+import org.beigesoft.log.ILog;
 import org.beigesoft.prc.IPrc;
 import org.beigesoft.rdb.IRdb;
 import org.beigesoft.ws.srv.IBuySr;
 import org.beigesoft.ws.srv.ISrCart;
 import org.beigesoft.ws.srv.IAcpOrd;
 import org.beigesoft.ws.srv.ICncOrd;
+import org.beigesoft.ws.mdlp.PayMd;
 
 /**
  * <p>Additional PPL factory of web-store public processors.</p>
@@ -54,11 +67,92 @@ public class FcPrPpl implements IFctPrc {
    **/
   private FctBlc<ResultSet> fctBlc;
 
+  /**
+   * <p>PayPal access tokens cache.</p>
+   **/
+  private final CchTkPpl cchTk = new CchTkPpl();
+
+  /**
+   * <p>PAYPAL payment methods cache. Payment methods save/delete
+   * processors made by FcEnPrPpl clear it.</p>
+   **/
+  private final CchPayMd cchPayMd = new CchPayMd();
+
+  /**
+   * <p>PayPal settings, lazy.</p>
+   **/
+  private PplStg pplStg;
+
+  /**
+   * <p>PayPal connector, if it's not set, then CnPpl will be used.</p>
+   **/
+  private ICnPpl cnPpl;
+
+  /**
+   * <p>IRdb's connection provider for bound statements, if it's not set,
+   * then RdbCnRfl with setting rdbCn will be used, if there is no provider
+   * then plain SQL is used.</p>
+   **/
+  private IRdbCn rdbCn;
+
+  /**
+   * <p>Webhook payed updates queue, NULL if webhook is disabled.</p>
+   **/
+  private QuWhPpl quWh;
+
+  /**
+   * <p>Payments journal, lazy.</p>
+   **/
+  private SrPayJr srPayJr;
+
+  /**
+   * <p>Expired checkouts sweeper, lazy.</p>
+   **/
+  private SwPpl swPpl;
+
+  /**
+   * <p>OnlPay near-cache, NULL if it's disabled.</p>
+   **/
+  private CchOnPa cchOnPa;
+
+  /**
+   * <p>Multi-payee payments service, NULL if mode is disabled.</p>
+   **/
+  private SrMlPay srMlPay;
+
+  /**
+   * <p>Multi-payee payments creation executor, NULL if mode
+   * is disabled.</p>
+   **/
+  private ExMlPpl exMlPpl;
+
+  /**
+   * <p>Metrics.</p>
+   **/
+  private final MtrPpl mtr = new MtrPpl();
+
+  /**
+   * <p>PayPal calls guard.</p>
+   **/
+  private final GrdPpl grdPpl = new GrdPpl();
+
+  /**
+   * <p>Requests rate limiter.</p>
+   **/
+  private final LmtPpl lmtPpl = new LmtPpl();
+
+  /**
+   * <p>Registered metrics MBean name, NULL if it's not registered.</p>
+   **/
+  private ObjectName jmxNm;
+
   //requested data:
   /**
-   * <p>Processors map.</p>
+   * <p>Processors map, it's read without locking, processor is put
+   * into it only after full initialization.</p>
    **/
-  private final Map<String, IPrc> procs = new HashMap<String, IPrc>();
+  private final Map<String, IPrc> procs =
+    new ConcurrentHashMap<String, IPrc>();
 
   /**
    * <p>Get processor in lazy mode (if bean is null then initialize it).</p>
@@ -71,8 +165,26 @@ public class FcPrPpl implements IFctPrc {
     final String pPrNm) throws Exception {
     IPrc rz = this.procs.get(pPrNm);
     if (rz == null && PrPpl.class.getSimpleName().equals(pPrNm)) {
-      //inner factory, i.e. already synchronized
-      rz = crPuPrPpl(pRvs);
+      synchronized (this) {
+        rz = this.procs.get(pPrNm);
+        if (rz == null) {
+          rz = crPuPrPpl(pRvs);
+        }
+      }
+    } else if (rz == null && PrPplWh.class.getSimpleName().equals(pPrNm)) {
+      synchronized (this) {
+        rz = this.procs.get(pPrNm);
+        if (rz == null) {
+          rz = crPuPrPplWh(pRvs);
+        }
+      }
+    } else if (rz == null && PrPplMtr.class.getSimpleName().equals(pPrNm)) {
+      synchronized (this) {
+        rz = this.procs.get(pPrNm);
+        if (rz == null) {
+          rz = crPuPrPplMtr(pRvs);
+        }
+      }
     }
     return rz;
   }
@@ -91,6 +203,23 @@ public class FcPrPpl implements IFctPrc {
     IRdb<ResultSet> rdb = (IRdb<ResultSet>) this.fctBlc
       .laz(pRvs, IRdb.class.getSimpleName());
     rz.setRdb(rdb);
+    SrPplLn srPplLn = new SrPplLn();
+    srPplLn.setRdb(rdb);
+    rz.setSrPplLn(srPplLn);
+    SrPayd srPayd = new SrPayd();
+    srPayd.setLog(rz.getLog());
+    srPayd.setRdb(rdb);
+    srPayd.setSrvClVl(this.fctBlc.lazSrvClVl(pRvs));
+    rz.setSrPayd(srPayd);
+    IRdbCn rcn = mkRdbCn(pRvs);
+    if (rcn != null) {
+      SrSqlPpl srSqlPpl = new SrSqlPpl();
+      srSqlPpl.setRdbCn(rcn);
+      srSqlPpl.setIsPstg(this.fctBlc.getFctDt().getIsPstg());
+      srPplLn.setSrSqlPpl(srSqlPpl);
+      srPayd.setSrSqlPpl(srSqlPpl);
+      this.cchPayMd.setSrSqlPpl(srSqlPpl);
+    }
     ICncOrd cncOrd = (ICncOrd) this.fctBlc
       .laz(pRvs, ICncOrd.class.getSimpleName());
     rz.setCncOrd(cncOrd);
@@ -107,13 +236,403 @@ public class FcPrPpl implements IFctPrc {
     rz.setBuySr(buySr);
     rz.setOrm(this.fctBlc.lazOrm(pRvs));
     rz.setNumStr(this.fctBlc.lazNumStr(pRvs));
+    FrmPpl frmPpl = new FrmPpl();
+    rz.setFrmPpl(frmPpl);
     rz.setSrvClVl(this.fctBlc.lazSrvClVl(pRvs));
+    PplStg stg = lazPplStg();
+    if (stg.getWrPy()) {
+      WrPay wrPay = new WrPay();
+      wrPay.setFrmPpl(frmPpl);
+      rz.setWrPay(wrPay);
+    }
+    if (this.cnPpl == null) {
+      CnPpl cnp = new CnPpl();
+      cnp.setStg(stg);
+      this.cchTk.setCnf(cnp.mkCnf());
+      this.cnPpl = cnp;
+    }
+    rz.setCnPpl(this.cnPpl);
+    this.cchTk.setLog(rz.getLog());
+    this.cchTk.setMtr(this.mtr);
+    rz.setCchTk(this.cchTk);
+    rz.setCchPayMd(this.cchPayMd);
+    CoPh2 coPh2 = new CoPh2();
+    coPh2.setTtl(stg.getCoTtl());
+    //execution and recovery retrieving:
+    coPh2.setWtTo(2L * stg.getTotTo());
+    rz.setCoPh2(coPh2);
+    rz.setPayTo(stg.getPayTo());
+    rz.setMtr(this.mtr);
+    this.grdPpl.setLog(rz.getLog());
+    this.grdPpl.setMaxCc(stg.getBhMax());
+    this.grdPpl.setBhWt(stg.getBhWt());
+    this.grdPpl.setErrPc(stg.getCbErr());
+    this.grdPpl.setSlwMs(stg.getCbSlw());
+    this.grdPpl.setOpnMs(stg.getCbOpn());
+    rz.setGrdPpl(this.grdPpl);
+    this.lmtPpl.setWnd(stg.getLmWnd());
+    this.lmtPpl.setMaxAdr(stg.getLmAdr());
+    this.lmtPpl.setMaxByr(stg.getLmByr());
+    rz.setLmtPpl(this.lmtPpl);
+    rz.setPplStg(stg);
+    if (stg.getOpCch()) {
+      CchOnPa cchOnPa = new CchOnPa();
+      cchOnPa.setTtl(stg.getPayTo());
+      this.cchOnPa = cchOnPa;
+      rz.setCchOnPa(cchOnPa);
+    }
+    if (stg.getMlPy()) {
+      rz.setSrMlPay(lazSrMlPay(pRvs));
+      if (this.exMlPpl == null) {
+        ExMlPpl exm = new ExMlPpl();
+        exm.setThr(stg.getMlThr());
+        this.exMlPpl = exm;
+      }
+      rz.setExMlPpl(this.exMlPpl);
+    }
+    SrPayJr srPayJr = lazSrPayJr(pRvs);
+    srPayJr.setSrSqlPpl(srPayd.getSrSqlPpl());
+    rz.setSrPayJr(srPayJr);
+    if (stg.getWhId() != null) {
+      QuWhPpl quWh = new QuWhPpl();
+      quWh.setLog(rz.getLog());
+      quWh.setRdb(rdb);
+      quWh.setSrPayJr(srPayJr);
+      quWh.setSrPayd(srPayd);
+      quWh.setCap(stg.getWhQu());
+      quWh.setThr(stg.getWhThr());
+      quWh.setBt(stg.getWhBt());
+      this.quWh = quWh;
+    }
     this.procs.put(PrPpl.class.getSimpleName(), rz);
     this.fctBlc.lazLogStd(pRvs).info(pRvs, getClass(),
       PrPpl.class.getSimpleName() + " has been created.");
     return rz;
   }
 
+  /**
+   * <p>Create and put into the Map PrPplWh.</p>
+   * @param pRvs request scoped vars
+   * @return PrPplWh or null if webhook is disabled
+   * @throws Exception - an exception
+   */
+  private PrPplWh crPuPrPplWh(
+    final Map<String, Object> pRvs) throws Exception {
+    PplStg stg = lazPplStg();
+    if (stg.getWhId() == null) {
+      return null;
+    }
+    if (this.procs.get(PrPpl.class.getSimpleName()) == null) {
+      //shared queue and journal:
+      crPuPrPpl(pRvs);
+    }
+    PrPplWh rz = new PrPplWh();
+    rz.setLog(this.fctBlc.lazLogStd(pRvs));
+    HndSpam sph = (HndSpam) this.fctBlc
+      .laz(pRvs, HndSpam.class.getSimpleName());
+    rz.setHndSpam(sph);
+    rz.setWhRq(new WhRqRfl());
+    VrWhPpl vrWh = new VrWhPpl();
+    vrWh.setWhId(stg.getWhId());
+    if (this.cchTk.getCnf() != null) {
+      vrWh.setCnf(this.cchTk.getCnf());
+    }
+    rz.setVrWh(vrWh);
+    rz.setQuWh(this.quWh);
+    this.procs.put(PrPplWh.class.getSimpleName(), rz);
+    this.fctBlc.lazLogStd(pRvs).info(pRvs, getClass(),
+      PrPplWh.class.getSimpleName() + " has been created.");
+    return rz;
+  }
+
+  /**
+   * <p>Create and put into the Map PrPplMtr.</p>
+   * @param pRvs request scoped vars
+   * @return PrPplMtr or null if scrape is disabled
+   * @throws Exception - an exception
+   */
+  private PrPplMtr crPuPrPplMtr(
+    final Map<String, Object> pRvs) throws Exception {
+    PplStg stg = lazPplStg();
+    if (stg.getMtTk() == null) {
+      return null;
+    }
+    PrPplMtr rz = new PrPplMtr();
+    HndSpam sph = (HndSpam) this.fctBlc
+      .laz(pRvs, HndSpam.class.getSimpleName());
+    rz.setHndSpam(sph);
+    rz.setMtr(this.mtr);
+    rz.setTk(stg.getMtTk());
+    this.procs.put(PrPplMtr.class.getSimpleName(), rz);
+    this.fctBlc.lazLogStd(pRvs).info(pRvs, getClass(),
+      PrPplMtr.class.getSimpleName() + " has been created.");
+    return rz;
+  }
+
+  /**
+   * <p>Registers metrics MBean into platform MBean server, it's invoked
+   * on application start. Name is qualified by instance, so several
+   * applications can run in the same JVM.</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   */
+  public final synchronized void regJmx(
+    final Map<String, Object> pRvs) throws Exception {
+    if (this.jmxNm == null) {
+      ObjectName nm = new ObjectName("org.beigesoft.ppl:type=MtrPpl,id="
+        + Integer.toHexString(System.identityHashCode(this)));
+      ManagementFactory.getPlatformMBeanServer()
+        .registerMBean(new JmxMtrPpl(this.mtr), nm);
+      this.jmxNm = nm;
+      this.fctBlc.lazLogStd(pRvs).info(pRvs, getClass(),
+        "Metrics MBean has been registered: " + nm);
+    }
+  }
+
+  /**
+   * <p>Pre-initializes PrPpl, PayPal SDK classes, connection pool and
+   * owner's access token on background thread, so the first checkout
+   * after deploy doesn't pay cold start latency. Errors are just
+   * logged, i.e. they will be thrown by the first checkout.</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   */
+  public final void prewarm(
+    final Map<String, Object> pRvs) throws Exception {
+    final ILog log = this.fctBlc.lazLogStd(pRvs);
+    Thread th = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Map<String, Object> rvs = new HashMap<String, Object>();
+        try {
+          long st = System.currentTimeMillis();
+          prwrm(rvs);
+          log.info(rvs, FcPrPpl.class,
+            "PayPal prewarmed, ms: " + (System.currentTimeMillis() - st));
+        } catch (Exception e) {
+          log.error(rvs, FcPrPpl.class, "PayPal prewarm failed", e);
+        }
+      }
+    }, "PplPrewarm");
+    th.setDaemon(true);
+    th.start();
+  }
+
+  /**
+   * <p>Pre-initializes PayPal.</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   */
+  private void prwrm(final Map<String, Object> pRvs) throws Exception {
+    PrPpl prPpl = (PrPpl) laz(pRvs, PrPpl.class.getSimpleName());
+    //SDK classes and JSON mapper:
+    JSONFormatter.fromJSON(JSONFormatter.toJSON(new Payment()), Payment.class);
+    //shared SSL context before the first TLS handshake:
+    if (this.cnPpl instanceof CnPpl) {
+      ((CnPpl) this.cnPpl).prewarm();
+    }
+    List<PayMd> payMds;
+    IRdb<ResultSet> rdb = prPpl.getRdb();
+    try {
+      rdb.setAcmt(false);
+      rdb.begin();
+      payMds = this.cchPayMd.lazOwn(pRvs, prPpl.getOrm());
+      rdb.commit();
+    } catch (Exception ex) {
+      if (!rdb.getAcmt()) {
+        rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      rdb.release();
+    }
+    if (payMds.size() == 1) {
+      this.cchTk.apiCon(payMds.get(0));
+    }
+  }
+
+  /**
+   * <p>Starts expired checkouts sweeper, it's invoked on application
+   * start (after DB initialization).</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   */
+  public final synchronized void strSwp(
+    final Map<String, Object> pRvs) throws Exception {
+    if (this.swPpl == null) {
+      PplStg stg = lazPplStg();
+      SwPpl sw = new SwPpl();
+      sw.setLog(this.fctBlc.lazLogStd(pRvs));
+      @SuppressWarnings("unchecked")
+      IRdb<ResultSet> rdb = (IRdb<ResultSet>) this.fctBlc
+        .laz(pRvs, IRdb.class.getSimpleName());
+      sw.setRdb(rdb);
+      sw.setOrm(this.fctBlc.lazOrm(pRvs));
+      sw.setSrvClVl(this.fctBlc.lazSrvClVl(pRvs));
+      ICncOrd cncOrd = (ICncOrd) this.fctBlc
+        .laz(pRvs, ICncOrd.class.getSimpleName());
+      sw.setCncOrd(cncOrd);
+      sw.setPayTo(stg.getPayTo());
+      sw.setPr(stg.getSwPr());
+      sw.setBt(stg.getSwBt());
+      sw.setTrIsl(stg.trIsl(PplStg.TR_SWP));
+      if (stg.getSwPr() > 0) {
+        PrPpl prPpl = (PrPpl) laz(pRvs, PrPpl.class.getSimpleName());
+        sw.setSrSqlPpl(prPpl.getSrPayd().getSrSqlPpl());
+        sw.setCchOnPa(prPpl.getCchOnPa());
+        sw.setPrPpl(prPpl);
+        sw.setTotTo(stg.getTotTo());
+      }
+      this.swPpl = sw;
+    }
+    this.swPpl.start(pRvs);
+  }
+
+  /**
+   * <p>Creates multi-payee payments table if mode is enabled, it's invoked
+   * on application start (after DB initialization).</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   */
+  public final void initMl(final Map<String, Object> pRvs) throws Exception {
+    if (lazPplStg().getMlPy()) {
+      lazSrMlPay(pRvs).init(pRvs);
+    }
+  }
+
+  /**
+   * <p>Makes JDBC connection provider over current IRdb.</p>
+   * @param pRvs request scoped vars
+   * @return IRdbCn or null if IRdb has no connection getter
+   * @throws Exception - an exception
+   */
+  public final IRdbCn mkRdbCn(
+    final Map<String, Object> pRvs) throws Exception {
+    IRdbCn rz = this.rdbCn;
+    if (rz == null) {
+      @SuppressWarnings("unchecked")
+      IRdb<ResultSet> rdb = (IRdb<ResultSet>) this.fctBlc
+        .laz(pRvs, IRdb.class.getSimpleName());
+      String mth = lazPplStg().getRdbCn();
+      rz = RdbCnRfl.crt(rdb, mth);
+      if (rz == null && mth != null) {
+        this.fctBlc.lazLogStd(pRvs).warn(pRvs, getClass(), "IRdb "
+          + rdb.getClass() + " has no connection getter " + mth
+            + ", plain SQL is used!");
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Creates payments journal table, it's invoked on application start
+   * (after DB initialization).</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   */
+  public final void initJr(final Map<String, Object> pRvs) throws Exception {
+    lazSrPayJr(pRvs).init(pRvs);
+  }
+
+  /**
+   * <p>Lazy gets payments journal.</p>
+   * @param pRvs request scoped vars
+   * @return SrPayJr
+   * @throws Exception - an exception
+   */
+  private synchronized SrPayJr lazSrPayJr(
+    final Map<String, Object> pRvs) throws Exception {
+    if (this.srPayJr == null) {
+      SrPayJr spj = new SrPayJr();
+      @SuppressWarnings("unchecked")
+      IRdb<ResultSet> rdb = (IRdb<ResultSet>) this.fctBlc
+        .laz(pRvs, IRdb.class.getSimpleName());
+      spj.setRdb(rdb);
+      this.srPayJr = spj;
+    }
+    return this.srPayJr;
+  }
+
+  /**
+   * <p>Lazy gets multi-payee payments service.</p>
+   * @param pRvs request scoped vars
+   * @return SrMlPay
+   * @throws Exception - an exception
+   */
+  private synchronized SrMlPay lazSrMlPay(
+    final Map<String, Object> pRvs) throws Exception {
+    if (this.srMlPay == null) {
+      SrMlPay smp = new SrMlPay();
+      smp.setLog(this.fctBlc.lazLogStd(pRvs));
+      @SuppressWarnings("unchecked")
+      IRdb<ResultSet> rdb = (IRdb<ResultSet>) this.fctBlc
+        .laz(pRvs, IRdb.class.getSimpleName());
+      smp.setRdb(rdb);
+      this.srMlPay = smp;
+    }
+    return this.srMlPay;
+  }
+
+  /**
+   * <p>Stops background workers (sweeper, payed updates queue,
+   * multi-payee creators, connections pool, tokens refresher),
+   * e.g. on application stop.</p>
+   */
+  public final synchronized void release() {
+    if (this.swPpl != null) {
+      this.swPpl.release();
+    }
+    if (this.quWh != null) {
+      this.quWh.release();
+    }
+    if (this.cchOnPa != null) {
+      this.cchOnPa.clear();
+    }
+    this.grdPpl.release();
+    this.lmtPpl.release();
+    if (this.exMlPpl != null) {
+      this.exMlPpl.release();
+    }
+    if (this.cnPpl instanceof CnPpl) {
+      ((CnPpl) this.cnPpl).release();
+    }
+    this.cchTk.release();
+    if (this.jmxNm != null) {
+      try {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        if (mbs.isRegistered(this.jmxNm)) {
+          mbs.unregisterMBean(this.jmxNm);
+        }
+      } catch (Exception e) {
+        //it's released anyway
+      }
+      this.jmxNm = null;
+    }
+  }
+
+  /**
+   * <p>Lazy gets PayPal settings, it loads optional "/ppl.properties".</p>
+   * @return PayPal settings
+   * @throws Exception - an exception
+   */
+  public final synchronized PplStg lazPplStg() throws Exception {
+    if (this.pplStg == null) {
+      PplStg stg = new PplStg();
+      InputStream is = FcPrPpl.class.getResourceAsStream("/ppl.properties");
+      if (is != null) {
+        try {
+          Properties props = new Properties();
+          props.load(is);
+          stg.lod(props);
+        } finally {
+          is.close();
+        }
+      }
+      this.pplStg = stg;
+    }
+    return this.pplStg;
+  }
+
   //Simple getters and setters:
   /**
    * <p>Getter for fctBlc.</p>
@@ -130,4 +649,84 @@ public class FcPrPpl implements IFctPrc {
   public final void setFctBlc(final FctBlc<ResultSet> pFctBlc) {
     this.fctBlc = pFctBlc;
   }
+
+  /**
+   * <p>Getter for cchTk.</p>
+   * @return CchTkPpl
+   **/
+  public final CchTkPpl getCchTk() {
+    return this.cchTk;
+  }
+
+  /**
+   * <p>Getter for cchPayMd.</p>
+   * @return CchPayMd
+   **/
+  public final CchPayMd getCchPayMd() {
+    return this.cchPayMd;
+  }
+
+  /**
+   * <p>Setter for pplStg.</p>
+   * @param pPplStg reference
+   **/
+  public final synchronized void setPplStg(final PplStg pPplStg) {
+    this.pplStg = pPplStg;
+  }
+
+  /**
+   * <p>Getter for cnPpl.</p>
+   * @return ICnPpl
+   **/
+  public final ICnPpl getCnPpl() {
+    return this.cnPpl;
+  }
+
+  /**
+   * <p>Setter for cnPpl.</p>
+   * @param pCnPpl reference
+   **/
+  public final void setCnPpl(final ICnPpl pCnPpl) {
+    this.cnPpl = pCnPpl;
+  }
+
+  /**
+   * <p>Getter for rdbCn.</p>
+   * @return IRdbCn
+   **/
+  public final IRdbCn getRdbCn() {
+    return this.rdbCn;
+  }
+
+  /**
+   * <p>Setter for rdbCn.</p>
+   * @param pRdbCn reference
+   **/
+  public final void setRdbCn(final IRdbCn pRdbCn) {
+    this.rdbCn = pRdbCn;
+  }
+
+  /**
+   * <p>Getter for quWh.</p>
+   * @return QuWhPpl
+   **/
+  public final QuWhPpl getQuWh() {
+    return this.quWh;
+  }
+
+  /**
+   * <p>Getter for cchOnPa.</p>
+   * @return CchOnPa
+   **/
+  public final CchOnPa getCchOnPa() {
+    return this.cchOnPa;
+  }
+
+  /**
+   * <p>Getter for mtr.</p>
+   * @return MtrPpl
+   **/
+  public final MtrPpl getMtr() {
+    return this.mtr;
+  }
 }
@@ -0,0 +1,282 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.LinkedHashSet;
+import java.io.File;
+import java.io.InputStream;
+import java.io.FileInputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.IRecSet;
+
+/**
+ * <p>Schema fingerprint service. Schema is defined by code, i.e. ORM
+ * settings and entities in application's JARs, so fingerprint is hash
+ * of these JARs. It's stored in DB after successful full create/upgrade
+ * check, and if stored one is the same on next start, then check can be
+ * skipped. If a class is not from JAR (e.g. exploded classes), then
+ * there is no fingerprint and full check is always made. Fingerprint is
+ * bound if there is JDBC connection provider, otherwise it's checked to be
+ * hex before inlining.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class FprSch {
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>JDBC connection provider, null means plain SQL.</p>
+   **/
+  private IRdbCn rdbCn;
+
+  /**
+   * <p>Makes fingerprint of JARs of given classes.</p>
+   * @param pClss classes that define schema
+   * @return fingerprint, hex SHA-256 or null if impossible
+   * @throws Exception - an exception
+   **/
+  public final String mk(final Class<?>... pClss) throws Exception {
+    Set<String> jars = new LinkedHashSet<String>();
+    for (Class<?> cls : pClss) {
+      CodeSource cs = cls.getProtectionDomain().getCodeSource();
+      URL url = null;
+      if (cs != null) {
+        url = cs.getLocation();
+      }
+      if (url == null || !"file".equals(url.getProtocol())) {
+        return null;
+      }
+      File fl = new File(url.toURI());
+      if (!fl.isFile()) {
+        return null;
+      }
+      jars.add(fl.getAbsolutePath());
+    }
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    byte[] buf = new byte[65536];
+    for (String jar : jars) {
+      InputStream is = new FileInputStream(jar);
+      try {
+        int red;
+        while ((red = is.read(buf)) != -1) {
+          md.update(buf, 0, red);
+        }
+      } finally {
+        is.close();
+      }
+    }
+    StringBuilder sb = new StringBuilder(64);
+    for (byte b : md.digest()) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+        .append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * <p>Checks if stored fingerprint is the same.</p>
+   * @param pRvs request scoped vars
+   * @param pFpr fingerprint
+   * @return if the same, false if there is no stored one
+   **/
+  public final boolean isSame(final Map<String, Object> pRvs,
+    final String pFpr) {
+    String fpr = null;
+    try {
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.begin();
+        if (this.rdbCn != null) {
+          PreparedStatement ps = this.rdbCn.getCon()
+            .prepareStatement("select FPR from PPLSCHFP where IID=?");
+          try {
+            ps.setInt(1, 1);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+              fpr = rs.getString(1);
+            }
+            rs.close();
+          } finally {
+            ps.close();
+          }
+        } else {
+          IRecSet<ResultSet> rs = null;
+          try {
+            rs = this.rdb.retRs("select FPR from PPLSCHFP where IID=1;");
+            if (rs.first()) {
+              fpr = rs.getStr("FPR");
+            }
+          } finally {
+            if (rs != null) {
+              rs.close();
+            }
+          }
+        }
+        this.rdb.commit();
+      } catch (Exception ex) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw ex;
+      } finally {
+        this.rdb.release();
+      }
+    } catch (Exception e) {
+      //e.g. new DB without fingerprint table:
+      this.log.info(pRvs, FprSch.class, "There is no schema fingerprint: "
+        + e.getMessage());
+      return false;
+    }
+    return pFpr.equals(fpr);
+  }
+
+  /**
+   * <p>Stores fingerprint.</p>
+   * @param pRvs request scoped vars
+   * @param pFpr fingerprint
+   * @throws Exception - an exception
+   **/
+  public final void sav(final Map<String, Object> pRvs,
+    final String pFpr) throws Exception {
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.begin();
+      this.rdb.exec("create table if not exists PPLSCHFP (IID INTEGER NOT NULL"
+        + " PRIMARY KEY, FPR VARCHAR(64) NOT NULL);");
+      this.rdb.exec("delete from PPLSCHFP;");
+      if (this.rdbCn != null) {
+        PreparedStatement ps = this.rdbCn.getCon()
+          .prepareStatement("insert into PPLSCHFP (IID, FPR) values (?, ?)");
+        try {
+          ps.setInt(1, 1);
+          ps.setString(2, pFpr);
+          ps.executeUpdate();
+        } finally {
+          ps.close();
+        }
+      } else {
+        this.rdb.exec("insert into PPLSCHFP (IID, FPR) values (1, '"
+          + chk(pFpr) + "');");
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+  }
+
+  /**
+   * <p>Checks that fingerprint is hex SHA-256 to be inlined.</p>
+   * @param pFpr fingerprint
+   * @return the same fingerprint
+   * @throws Exception - if it's not hex SHA-256
+   **/
+  private String chk(final String pFpr) throws Exception {
+    if (pFpr == null || pFpr.length() != 64) {
+      throw new Exception("Wrong schema fingerprint!");
+    }
+    for (int i = 0; i < pFpr.length(); i++) {
+      if (Character.digit(pFpr.charAt(i), 16) < 0) {
+        throw new Exception("Wrong schema fingerprint!");
+      }
+    }
+    return pFpr;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for rdbCn.</p>
+   * @return IRdbCn
+   **/
+  public final IRdbCn getRdbCn() {
+    return this.rdbCn;
+  }
+
+  /**
+   * <p>Setter for rdbCn.</p>
+   * @param pRdbCn reference
+   **/
+  public final void setRdbCn(final IRdbCn pRdbCn) {
+    this.rdbCn = pRdbCn;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Currency;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * <p>PayPal amount formatter, e.g. "1234.50". It writes digits
+ * of unscaled value into thread's buffer without intermediate
+ * strings. Result is the same as NumStr.frmt(pVal.toString(), ".", "",
+ * pDp, 3), i.e. HALF_UP rounding without digits grouping.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class FrmPpl {
+
+  /**
+   * <p>Maximum digits of long unscaled value.</p>
+   **/
+  private static final int MAXDG = 18;
+
+  /**
+   * <p>Thread's buffer, sign, 18 digits, point and leading zeros.</p>
+   **/
+  private final ThreadLocal<char[]> buf = new ThreadLocal<char[]>() {
+    @Override
+    protected char[] initialValue() {
+      return new char[64];
+    }
+  };
+
+  /**
+   * <p>Formats amount.</p>
+   * @param pVal amount
+   * @param pDp decimal places
+   * @return formatted amount
+   **/
+  public final String frm(final BigDecimal pVal, final int pDp) {
+    BigDecimal val = pVal;
+    if (val.scale() != pDp) {
+      val = val.setScale(pDp, RoundingMode.HALF_UP);
+    }
+    if (val.precision() > MAXDG || pDp > 40) {
+      return val.toPlainString();
+    }
+    long uv = val.unscaledValue().longValue();
+    boolean isNg = uv < 0;
+    if (isNg) {
+      uv = -uv;
+    }
+    char[] bf = this.buf.get();
+    int pos = bf.length;
+    int dg = 0;
+    do {
+      if (dg == pDp && pDp > 0) {
+        bf[--pos] = '.';
+      }
+      bf[--pos] = (char) ('0' + uv % 10);
+      uv /= 10;
+      dg++;
+    } while (uv > 0 || dg <= pDp);
+    if (isNg) {
+      bf[--pos] = '-';
+    }
+    return new String(bf, pos, bf.length - pos);
+  }
+
+  /**
+   * <p>Evaluates decimal places of currency, e.g. JPY has no minor units
+   * and PayPal rejects JPY amount with decimals. Note that it changes
+   * PayPal amounts for such currency comparing to earlier pricing places,
+   * e.g. JPY 1234.50 is sent as 1235. Every amount (item price, tax,
+   * subtotal, total) is rounded separately, so prices of such currency
+   * should be whole, otherwise rounded items may not sum up to rounded
+   * subtotal, and PayPal rejects payment. Given places that are less than
+   * currency's minor units (e.g. 0 for USD) are kept.</p>
+   * @param pPrDp pricing decimal places
+   * @param pCurCd ISO 4217 currency code
+   * @return currency's minor units if it's less than given places,
+   * otherwise given places
+   **/
+  public final int dp(final int pPrDp, final String pCurCd) {
+    if (pCurCd != null) {
+      try {
+        int mu = Currency.getInstance(pCurCd).getDefaultFractionDigits();
+        if (mu >= 0 && mu < pPrDp) {
+          return mu;
+        }
+      } catch (IllegalArgumentException e) {
+        //not ISO code, e.g. crypto
+      }
+    }
+    return pPrDp;
+  }
+}
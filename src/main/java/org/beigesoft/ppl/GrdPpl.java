@@ -0,0 +1,455 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.paypal.base.rest.PayPalRESTException;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.log.ILog;
+import org.beigesoft.ws.mdlp.PayMd;
+
+/**
+ * <p>Guard of PayPal remote calls per credential (client ID and mode) -
+ * bulkhead that caps concurrent calls and circuit breaker that
+ * fails fast when failures or slow calls rate in the last calls window
+ * crosses threshold. Open circuit lets a single probe call after
+ * open period, the probe closes or re-opens it. Rejected client should
+ * send buyer to "try again" instead of holding thread.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class GrdPpl {
+
+  /**
+   * <p>ExcCode's code of rejected call.</p>
+   **/
+  public static final int BUSY = 1801;
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Maximum concurrent calls per credential.</p>
+   **/
+  private int maxCc = 10;
+
+  /**
+   * <p>Waiting for permit, milliseconds.</p>
+   **/
+  private long bhWt = 500L;
+
+  /**
+   * <p>Calls window size.</p>
+   **/
+  private int wnd = 20;
+
+  /**
+   * <p>Minimum calls in window to evaluate rates.</p>
+   **/
+  private int minCls = 10;
+
+  /**
+   * <p>Failures rate threshold, percents.</p>
+   **/
+  private int errPc = 50;
+
+  /**
+   * <p>Slow call threshold, milliseconds.</p>
+   **/
+  private long slwMs = 10000L;
+
+  /**
+   * <p>Slow calls rate threshold, percents.</p>
+   **/
+  private int slwPc = 80;
+
+  /**
+   * <p>Open period, milliseconds.</p>
+   **/
+  private long opnMs = 30000L;
+
+  /**
+   * <p>Breakers by credential.</p>
+   **/
+  private final ConcurrentHashMap<String, Brk> brks =
+    new ConcurrentHashMap<String, Brk>();
+
+  /**
+   * <p>Credential's bulkhead and breaker. State is guarded by itself.</p>
+   **/
+  public final class Brk {
+
+    /**
+     * <p>Credential key.</p>
+     **/
+    private final String key;
+
+    /**
+     * <p>Bulkhead.</p>
+     **/
+    private final Semaphore sem;
+
+    /**
+     * <p>Last calls outcomes ring, 0 - OK, 1 - failure, 2 - slow.</p>
+     **/
+    private final byte[] outs;
+
+    /**
+     * <p>Recorded calls count, not more than window.</p>
+     **/
+    private int cnt;
+
+    /**
+     * <p>Ring position.</p>
+     **/
+    private int pos;
+
+    /**
+     * <p>Open till time, 0 means closed.</p>
+     **/
+    private long opnTl;
+
+    /**
+     * <p>If half-open probe is in flight.</p>
+     **/
+    private boolean prb;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pKey key
+     **/
+    private Brk(final String pKey) {
+      this.key = pKey;
+      this.sem = new Semaphore(GrdPpl.this.maxCc);
+      this.outs = new byte[GrdPpl.this.wnd];
+    }
+  }
+
+  /**
+   * <p>Checks if circuit is open for credential, i.e. remote call
+   * will be surely rejected.</p>
+   * @param pPayMd payment method
+   * @return if open
+   **/
+  public final boolean isOpn(final PayMd pPayMd) {
+    Brk brk = lazBrk(pPayMd);
+    synchronized (brk) {
+      return brk.opnTl != 0L && (brk.prb
+        || System.currentTimeMillis() < brk.opnTl);
+    }
+  }
+
+  /**
+   * <p>Acquires permit for remote call. Permit must be released by rel
+   * in finally block.</p>
+   * @param pPayMd payment method
+   * @return breaker or null if call is rejected
+   * @throws Exception - an exception
+   **/
+  public final Brk acq(final PayMd pPayMd) throws Exception {
+    Brk brk = lazBrk(pPayMd);
+    boolean isPrb = false;
+    synchronized (brk) {
+      if (brk.opnTl != 0L) {
+        if (brk.prb || System.currentTimeMillis() < brk.opnTl) {
+          return null;
+        }
+        brk.prb = true;
+        isPrb = true;
+      }
+    }
+    if (!brk.sem.tryAcquire(this.bhWt, TimeUnit.MILLISECONDS)) {
+      if (isPrb) {
+        synchronized (brk) {
+          brk.prb = false;
+        }
+      }
+      return null;
+    }
+    return brk;
+  }
+
+  /**
+   * <p>Releases permit and records call outcome.</p>
+   * @param pRvs request scoped vars
+   * @param pBrk breaker
+   * @param pStrt call start time by System.nanoTime()
+   * @param pEx call exception or null
+   **/
+  public final void rel(final Map<String, Object> pRvs, final Brk pBrk,
+    final long pStrt, final Exception pEx) {
+    pBrk.sem.release();
+    byte out = 0;
+    if (isFlr(pEx)) {
+      out = 1;
+    } else if ((System.nanoTime() - pStrt) / 1000000L >= this.slwMs) {
+      out = 2;
+    }
+    String msg = null;
+    synchronized (pBrk) {
+      if (pBrk.prb) {
+        pBrk.prb = false;
+        if (out == 0) {
+          pBrk.opnTl = 0L;
+          msg = "PayPal circuit closed: ";
+        } else {
+          pBrk.opnTl = System.currentTimeMillis() + this.opnMs;
+        }
+        pBrk.cnt = 0;
+        pBrk.pos = 0;
+      } else if (pBrk.opnTl == 0L) {
+        pBrk.outs[pBrk.pos] = out;
+        pBrk.pos = (pBrk.pos + 1) % pBrk.outs.length;
+        if (pBrk.cnt < pBrk.outs.length) {
+          pBrk.cnt++;
+        }
+        if (pBrk.cnt >= this.minCls) {
+          int flrs = 0;
+          int slws = 0;
+          for (int i = 0; i < pBrk.cnt; i++) {
+            if (pBrk.outs[i] == 1) {
+              flrs++;
+            } else if (pBrk.outs[i] == 2) {
+              slws++;
+            }
+          }
+          if (flrs * 100 >= this.errPc * pBrk.cnt
+            || slws * 100 >= this.slwPc * pBrk.cnt) {
+            pBrk.opnTl = System.currentTimeMillis() + this.opnMs;
+            pBrk.cnt = 0;
+            pBrk.pos = 0;
+            msg = "PayPal circuit opened, failures/slow " + flrs + "/" + slws
+              + ": ";
+          }
+        }
+      }
+    }
+    if (msg != null && this.log != null) {
+      this.log.warn(pRvs, GrdPpl.class, msg + pBrk.key);
+    }
+  }
+
+  /**
+   * <p>Checks if exception is PayPal failure, i.e. transport error,
+   * throttling or server error. Client errors (e.g. declined instrument)
+   * and local saturation (ExcCode BUSY) are not failures.</p>
+   * @param pEx exception or null
+   * @return if failure
+   **/
+  public static boolean isFlr(final Exception pEx) {
+    if (pEx == null) {
+      return false;
+    }
+    if (pEx instanceof PayPalRESTException) {
+      int rc = ((PayPalRESTException) pEx).getResponsecode();
+      return rc == 0 || rc == 429 || rc >= 500;
+    }
+    if (pEx instanceof ExcCode && ((ExcCode) pEx).getCode() == BUSY) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * <p>Releases breakers.</p>
+   **/
+  public final void release() {
+    this.brks.clear();
+  }
+
+  /**
+   * <p>Lazy gets breaker.</p>
+   * @param pPayMd payment method
+   * @return breaker
+   **/
+  private Brk lazBrk(final PayMd pPayMd) {
+    String key = pPayMd.getSec1() + ":" + pPayMd.getMde();
+    Brk brk = this.brks.get(key);
+    if (brk == null) {
+      brk = new Brk(key);
+      Brk brkEx = this.brks.putIfAbsent(key, brk);
+      if (brkEx != null) {
+        brk = brkEx;
+      }
+    }
+    return brk;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for maxCc.</p>
+   * @return int
+   **/
+  public final int getMaxCc() {
+    return this.maxCc;
+  }
+
+  /**
+   * <p>Setter for maxCc.</p>
+   * @param pMaxCc reference
+   **/
+  public final void setMaxCc(final int pMaxCc) {
+    this.maxCc = pMaxCc;
+  }
+
+  /**
+   * <p>Getter for bhWt.</p>
+   * @return long
+   **/
+  public final long getBhWt() {
+    return this.bhWt;
+  }
+
+  /**
+   * <p>Setter for bhWt.</p>
+   * @param pBhWt reference
+   **/
+  public final void setBhWt(final long pBhWt) {
+    this.bhWt = pBhWt;
+  }
+
+  /**
+   * <p>Getter for wnd.</p>
+   * @return int
+   **/
+  public final int getWnd() {
+    return this.wnd;
+  }
+
+  /**
+   * <p>Setter for wnd.</p>
+   * @param pWnd reference
+   **/
+  public final void setWnd(final int pWnd) {
+    this.wnd = pWnd;
+  }
+
+  /**
+   * <p>Getter for minCls.</p>
+   * @return int
+   **/
+  public final int getMinCls() {
+    return this.minCls;
+  }
+
+  /**
+   * <p>Setter for minCls.</p>
+   * @param pMinCls reference
+   **/
+  public final void setMinCls(final int pMinCls) {
+    this.minCls = pMinCls;
+  }
+
+  /**
+   * <p>Getter for errPc.</p>
+   * @return int
+   **/
+  public final int getErrPc() {
+    return this.errPc;
+  }
+
+  /**
+   * <p>Setter for errPc.</p>
+   * @param pErrPc reference
+   **/
+  public final void setErrPc(final int pErrPc) {
+    this.errPc = pErrPc;
+  }
+
+  /**
+   * <p>Getter for slwMs.</p>
+   * @return long
+   **/
+  public final long getSlwMs() {
+    return this.slwMs;
+  }
+
+  /**
+   * <p>Setter for slwMs.</p>
+   * @param pSlwMs reference
+   **/
+  public final void setSlwMs(final long pSlwMs) {
+    this.slwMs = pSlwMs;
+  }
+
+  /**
+   * <p>Getter for slwPc.</p>
+   * @return int
+   **/
+  public final int getSlwPc() {
+    return this.slwPc;
+  }
+
+  /**
+   * <p>Setter for slwPc.</p>
+   * @param pSlwPc reference
+   **/
+  public final void setSlwPc(final int pSlwPc) {
+    this.slwPc = pSlwPc;
+  }
+
+  /**
+   * <p>Getter for opnMs.</p>
+   * @return long
+   **/
+  public final long getOpnMs() {
+    return this.opnMs;
+  }
+
+  /**
+   * <p>Setter for opnMs.</p>
+   * @param pOpnMs reference
+   **/
+  public final void setOpnMs(final long pOpnMs) {
+    this.opnMs = pOpnMs;
+  }
+}
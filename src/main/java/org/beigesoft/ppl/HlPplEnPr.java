@@ -0,0 +1,104 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import org.beigesoft.hld.IHlNmClSt;
+import org.beigesoft.ws.mdlp.PayMd;
+
+/**
+ * <p>Holder of entity processors names that decorates given one,
+ * e.g. HlTrEnPr. Save and delete of payment methods (PayMd, SePayMd) are
+ * made by PrEnPpl that wraps processor named by decorated holder (or
+ * standard one), i.e. the name is FcEnPrPpl.PRFX + wrapped name.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class HlPplEnPr implements IHlNmClSt {
+
+  /**
+   * <p>Standard entity save processor name.</p>
+   **/
+  public static final String PRC_SV = "PrcEntSv";
+
+  /**
+   * <p>Standard entity delete processor name.</p>
+   **/
+  public static final String PRC_DL = "PrcEntDl";
+
+  /**
+   * <p>Decorated holder.</p>
+   **/
+  private IHlNmClSt hld;
+
+  /**
+   * <p>Get processor name for given class and action.</p>
+   * @param pCls a Class
+   * @param pAct action
+   * @return processor name or null
+   **/
+  @Override
+  public final String get(final Class<?> pCls, final String pAct) {
+    String rz = null;
+    if (this.hld != null) {
+      rz = this.hld.get(pCls, pAct);
+    }
+    if (pCls != null && PayMd.class.isAssignableFrom(pCls)) {
+      if ("entSv".equals(pAct)) {
+        if (rz == null) {
+          rz = PRC_SV;
+        }
+        rz = FcEnPrPpl.PRFX + rz;
+      } else if ("entDl".equals(pAct)) {
+        if (rz == null) {
+          rz = PRC_DL;
+        }
+        rz = FcEnPrPpl.PRFX + rz;
+      }
+    }
+    return rz;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for hld.</p>
+   * @return IHlNmClSt
+   **/
+  public final IHlNmClSt getHld() {
+    return this.hld;
+  }
+
+  /**
+   * <p>Setter for hld.</p>
+   * @param pHld reference
+   **/
+  public final void setHld(final IHlNmClSt pHld) {
+    this.hld = pHld;
+  }
+}
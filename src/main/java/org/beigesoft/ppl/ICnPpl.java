@@ -0,0 +1,89 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+
+import com.paypal.api.payments.Payment;
+import com.paypal.api.payments.PaymentExecution;
+import com.paypal.base.rest.APIContext;
+
+/**
+ * <p>Abstraction of PayPal connector (transport) that makes PrPpl's
+ * remote calls.</p>
+ *
+ * @author Yury Demidenko
+ */
+public interface ICnPpl {
+
+  /**
+   * <p>Creates payment.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPay payment to create
+   * @return created payment
+   * @throws Exception - an exception
+   **/
+  Payment create(Map<String, Object> pRvs, APIContext pApiCon,
+    Payment pPay) throws Exception;
+
+  /**
+   * <p>Creates payment by prepared JSON payload.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPayLd payment to create JSON
+   * @return created payment
+   * @throws Exception - an exception
+   **/
+  Payment create(Map<String, Object> pRvs, APIContext pApiCon,
+    String pPayLd) throws Exception;
+
+  /**
+   * <p>Executes payment.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPay payment with ID
+   * @param pPayExec payment execution
+   * @return executed payment
+   * @throws Exception - an exception
+   **/
+  Payment execute(Map<String, Object> pRvs, APIContext pApiCon,
+    Payment pPay, PaymentExecution pPayExec) throws Exception;
+
+  /**
+   * <p>Retrieves payment.</p>
+   * @param pRvs request scoped vars
+   * @param pApiCon API context
+   * @param pPayId payment ID
+   * @return payment
+   * @throws Exception - an exception
+   **/
+  Payment get(Map<String, Object> pRvs, APIContext pApiCon,
+    String pPayId) throws Exception;
+}
@@ -0,0 +1,201 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * <p>Read-only MBean of PayPal metrics. Timer's attributes are
+ * [name]Cnt, [name]AvgUs, [name]P50Us, [name]P99Us, [name]MaxUs,
+ * counter's attribute is its name. Operation "scrape" returns all
+ * in text format.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class JmxMtrPpl implements DynamicMBean {
+
+  /**
+   * <p>Timer's attributes suffixes.</p>
+   **/
+  private static final String[] SFXS = {"Cnt", "AvgUs", "P50Us", "P99Us",
+    "MaxUs"};
+
+  /**
+   * <p>Metrics.</p>
+   **/
+  private final MtrPpl mtr;
+
+  /**
+   * <p>Attribute codes by name, code is timer * 8 + suffix index
+   * for timer, or -1 - counter for counter.</p>
+   **/
+  private final Map<String, Integer> cods = new HashMap<String, Integer>();
+
+  /**
+   * <p>MBean info.</p>
+   **/
+  private final MBeanInfo inf;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pMtr metrics
+   **/
+  public JmxMtrPpl(final MtrPpl pMtr) {
+    this.mtr = pMtr;
+    int tas = MtrPpl.TMRS.length * SFXS.length;
+    MBeanAttributeInfo[] ats =
+      new MBeanAttributeInfo[tas + MtrPpl.CNTS.length];
+    int i = 0;
+    for (int t = 0; t < MtrPpl.TMRS.length; t++) {
+      for (int s = 0; s < SFXS.length; s++) {
+        String nm = MtrPpl.TMRS[t] + SFXS[s];
+        this.cods.put(nm, t * 8 + s);
+        ats[i++] = new MBeanAttributeInfo(nm, "long", MtrPpl.TMRS[t] + " "
+          + SFXS[s], true, false, false);
+      }
+    }
+    for (int c = 0; c < MtrPpl.CNTS.length; c++) {
+      this.cods.put(MtrPpl.CNTS[c], -1 - c);
+      ats[i++] = new MBeanAttributeInfo(MtrPpl.CNTS[c], "long",
+        MtrPpl.CNTS[c] + " count", true, false, false);
+    }
+    MBeanOperationInfo[] ops = {new MBeanOperationInfo("scrape",
+      "Metrics in text format", new MBeanParameterInfo[0], "java.lang.String",
+        MBeanOperationInfo.INFO)};
+    this.inf = new MBeanInfo(JmxMtrPpl.class.getName(), "PayPal metrics",
+      ats, null, ops, null);
+  }
+
+  /**
+   * <p>Gets attribute.</p>
+   * @param pNm name
+   * @return value
+   * @throws AttributeNotFoundException - if not found
+   **/
+  @Override
+  public final Object getAttribute(
+    final String pNm) throws AttributeNotFoundException {
+    Integer cod = this.cods.get(pNm);
+    if (cod == null) {
+      throw new AttributeNotFoundException(pNm);
+    }
+    if (cod < 0) {
+      return this.mtr.cnt(-1 - cod);
+    }
+    int t = cod / 8;
+    switch (cod % 8) {
+      case 0:
+        return this.mtr.tmrCnt(t);
+      case 1:
+        return this.mtr.avgUs(t);
+      case 2:
+        return this.mtr.qntUs(t, 0.5);
+      case 3:
+        return this.mtr.qntUs(t, 0.99);
+      default:
+        return this.mtr.maxUs(t);
+    }
+  }
+
+  /**
+   * <p>Gets attributes.</p>
+   * @param pNms names
+   * @return found attributes
+   **/
+  @Override
+  public final AttributeList getAttributes(final String[] pNms) {
+    AttributeList rz = new AttributeList();
+    for (String nm : pNms) {
+      try {
+        rz.add(new Attribute(nm, getAttribute(nm)));
+      } catch (AttributeNotFoundException e) {
+        //not found is just omitted
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Sets attribute, unsupported.</p>
+   * @param pAtr attribute
+   * @throws AttributeNotFoundException - always
+   **/
+  @Override
+  public final void setAttribute(
+    final Attribute pAtr) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("Read-only " + pAtr.getName());
+  }
+
+  /**
+   * <p>Sets attributes, unsupported.</p>
+   * @param pAtrs attributes
+   * @return empty list
+   **/
+  @Override
+  public final AttributeList setAttributes(final AttributeList pAtrs) {
+    return new AttributeList();
+  }
+
+  /**
+   * <p>Invokes operation.</p>
+   * @param pNm name
+   * @param pPars parameters
+   * @param pSig signature
+   * @return result
+   * @throws ReflectionException - if operation not found
+   **/
+  @Override
+  public final Object invoke(final String pNm, final Object[] pPars,
+    final String[] pSig) throws ReflectionException {
+    if ("scrape".equals(pNm)) {
+      return this.mtr.scrape();
+    }
+    throw new ReflectionException(new NoSuchMethodException(pNm));
+  }
+
+  /**
+   * <p>Gets MBean info.</p>
+   * @return MBean info
+   **/
+  @Override
+  public final MBeanInfo getMBeanInfo() {
+    return this.inf;
+  }
+}
@@ -0,0 +1,289 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>In-memory sliding window rate limiter of PayPal requests per client
+ * address and per buyer ID. Window is approximated by two fixed windows,
+ * i.e. previous window count is weighted by its overlap. Counters map is
+ * bounded, when keys count reaches maximum, idle keys are purged, then
+ * if it's still over 90% of maximum, then active keys are evicted
+ * (i.e. their counts are lost), so purging scans map at most once per
+ * 10% of maximum new keys. Keys are added while other thread purges,
+ * so map may exceed maximum by concurrent requests count.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class LmtPpl {
+
+  /**
+   * <p>Window, milliseconds.</p>
+   **/
+  private long wnd = 60000L;
+
+  /**
+   * <p>Maximum requests per window per address, 0 means no limit.</p>
+   **/
+  private int maxAdr;
+
+  /**
+   * <p>Maximum requests per window per buyer, 0 means no limit.</p>
+   **/
+  private int maxByr = 20;
+
+  /**
+   * <p>Maximum keys per map before purging.</p>
+   **/
+  private int maxKys = 100000;
+
+  /**
+   * <p>Counters by address.</p>
+   **/
+  private final ConcurrentHashMap<String, Cnt> adrs =
+    new ConcurrentHashMap<String, Cnt>();
+
+  /**
+   * <p>Counters by buyer ID.</p>
+   **/
+  private final ConcurrentHashMap<Long, Cnt> byrs =
+    new ConcurrentHashMap<Long, Cnt>();
+
+  /**
+   * <p>If purging is in progress.</p>
+   **/
+  private final AtomicBoolean prgs = new AtomicBoolean();
+
+  /**
+   * <p>Key's counter, guarded by itself.</p>
+   **/
+  private static final class Cnt {
+
+    /**
+     * <p>Current window start.</p>
+     **/
+    private long strt;
+
+    /**
+     * <p>Previous window count.</p>
+     **/
+    private int prv;
+
+    /**
+     * <p>Current window count.</p>
+     **/
+    private int cur;
+  }
+
+  /**
+   * <p>Checks and counts request from address.</p>
+   * @param pAdr client address
+   * @return if allowed
+   **/
+  public final boolean alwAdr(final String pAdr) {
+    if (this.maxAdr <= 0 || pAdr == null) {
+      return true;
+    }
+    return alw(this.adrs, pAdr, this.maxAdr);
+  }
+
+  /**
+   * <p>Checks and counts buyer's request.</p>
+   * @param pByr buyer ID
+   * @return if allowed
+   **/
+  public final boolean alwByr(final Long pByr) {
+    if (this.maxByr <= 0 || pByr == null) {
+      return true;
+    }
+    return alw(this.byrs, pByr, this.maxByr);
+  }
+
+  /**
+   * <p>Gets counters count, e.g. for monitoring.</p>
+   * @return addresses plus buyers counters
+   **/
+  public final int getKysCnt() {
+    return this.adrs.size() + this.byrs.size();
+  }
+
+  /**
+   * <p>Releases counters.</p>
+   **/
+  public final void release() {
+    this.adrs.clear();
+    this.byrs.clear();
+  }
+
+  /**
+   * <p>Checks and counts request.</p>
+   * @param <K> key type
+   * @param pCnts counters
+   * @param pKey key
+   * @param pMax maximum per window
+   * @return if allowed
+   **/
+  private <K> boolean alw(final ConcurrentHashMap<K, Cnt> pCnts,
+    final K pKey, final int pMax) {
+    long now = System.currentTimeMillis();
+    Cnt cnt = pCnts.get(pKey);
+    if (cnt == null) {
+      if (pCnts.size() >= this.maxKys) {
+        purge(pCnts, now);
+      }
+      cnt = new Cnt();
+      cnt.strt = now;
+      Cnt cntEx = pCnts.putIfAbsent(pKey, cnt);
+      if (cntEx != null) {
+        cnt = cntEx;
+      }
+    }
+    synchronized (cnt) {
+      long el = now - cnt.strt;
+      if (el >= 2L * this.wnd) {
+        cnt.strt = now;
+        cnt.prv = 0;
+        cnt.cur = 0;
+        el = 0L;
+      } else if (el >= this.wnd) {
+        cnt.strt += this.wnd;
+        cnt.prv = cnt.cur;
+        cnt.cur = 0;
+        el -= this.wnd;
+      }
+      long est = cnt.prv * (this.wnd - el) / this.wnd + cnt.cur;
+      if (est >= pMax) {
+        return false;
+      }
+      cnt.cur++;
+      return true;
+    }
+  }
+
+  /**
+   * <p>Purges idle counters, then evicts active ones down to 90% of
+   * maximum, only one thread purges.</p>
+   * @param <K> key type
+   * @param pCnts counters
+   * @param pNow now
+   **/
+  private <K> void purge(final ConcurrentHashMap<K, Cnt> pCnts,
+    final long pNow) {
+    if (!this.prgs.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Iterator<Cnt> it = pCnts.values().iterator();
+      while (it.hasNext()) {
+        Cnt cnt = it.next();
+        synchronized (cnt) {
+          if (pNow - cnt.strt >= 2L * this.wnd) {
+            it.remove();
+          }
+        }
+      }
+      int lw = this.maxKys - this.maxKys / 10;
+      it = pCnts.values().iterator();
+      while (pCnts.size() > lw && it.hasNext()) {
+        it.next();
+        it.remove();
+      }
+    } finally {
+      this.prgs.set(false);
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for wnd.</p>
+   * @return long
+   **/
+  public final long getWnd() {
+    return this.wnd;
+  }
+
+  /**
+   * <p>Setter for wnd.</p>
+   * @param pWnd reference
+   **/
+  public final void setWnd(final long pWnd) {
+    this.wnd = pWnd;
+  }
+
+  /**
+   * <p>Getter for maxAdr.</p>
+   * @return int
+   **/
+  public final int getMaxAdr() {
+    return this.maxAdr;
+  }
+
+  /**
+   * <p>Setter for maxAdr.</p>
+   * @param pMaxAdr reference
+   **/
+  public final void setMaxAdr(final int pMaxAdr) {
+    this.maxAdr = pMaxAdr;
+  }
+
+  /**
+   * <p>Getter for maxByr.</p>
+   * @return int
+   **/
+  public final int getMaxByr() {
+    return this.maxByr;
+  }
+
+  /**
+   * <p>Setter for maxByr.</p>
+   * @param pMaxByr reference
+   **/
+  public final void setMaxByr(final int pMaxByr) {
+    this.maxByr = pMaxByr;
+  }
+
+  /**
+   * <p>Getter for maxKys.</p>
+   * @return int
+   **/
+  public final int getMaxKys() {
+    return this.maxKys;
+  }
+
+  /**
+   * <p>Setter for maxKys.</p>
+   * @param pMaxKys reference
+   **/
+  public final void setMaxKys(final int pMaxKys) {
+    this.maxKys = pMaxKys;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.List;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * <p>Read-only concatenated view of two lists, e.g. owner's and
+ * S.E. order lines, it's used instead of copying.</p>
+ *
+ * @param <T> element type
+ * @author Yury Demidenko
+ */
+public final class LstCnc<T> extends AbstractList<T>
+  implements RandomAccess {
+
+  /**
+   * <p>First list.</p>
+   **/
+  private final List<T> fst;
+
+  /**
+   * <p>Second list.</p>
+   **/
+  private final List<T> snd;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pFst first list
+   * @param pSnd second list
+   **/
+  private LstCnc(final List<T> pFst, final List<T> pSnd) {
+    this.fst = pFst;
+    this.snd = pSnd;
+  }
+
+  /**
+   * <p>Concatenates lists.</p>
+   * @param <T> element type
+   * @param pFst first list or null
+   * @param pSnd second list or null
+   * @return view, or one of given if other is null
+   **/
+  public static <T> List<T> cnc(final List<T> pFst, final List<T> pSnd) {
+    if (pSnd == null) {
+      return pFst;
+    }
+    if (pFst == null) {
+      return pSnd;
+    }
+    return new LstCnc<T>(pFst, pSnd);
+  }
+
+  /**
+   * <p>Gets element.</p>
+   * @param pIdx index
+   * @return element
+   **/
+  @Override
+  public T get(final int pIdx) {
+    int fsz = this.fst.size();
+    if (pIdx < fsz) {
+      return this.fst.get(pIdx);
+    }
+    return this.snd.get(pIdx - fsz);
+  }
+
+  /**
+   * <p>Gets size.</p>
+   * @return size
+   **/
+  @Override
+  public int size() {
+    return this.fst.size() + this.snd.size();
+  }
+}
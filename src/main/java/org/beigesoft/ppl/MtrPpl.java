@@ -0,0 +1,319 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>PayPal checkout metrics - latency histograms of operations and
+ * outcome counters. Recording is lock and allocation free, i.e. client
+ * takes start time by System.nanoTime() and passes it to rec.
+ * Histogram buckets are powers of two microseconds.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class MtrPpl {
+
+  /**
+   * <p>Process total.</p>
+   **/
+  public static final int PRC = 0;
+
+  /**
+   * <p>Phase 1 (create payment).</p>
+   **/
+  public static final int PH1 = 1;
+
+  /**
+   * <p>Phase 2 (execute payment).</p>
+   **/
+  public static final int PH2 = 2;
+
+  /**
+   * <p>Cancel/return.</p>
+   **/
+  public static final int CNRT = 3;
+
+  /**
+   * <p>Making PayPal orders.</p>
+   **/
+  public static final int MKOR = 4;
+
+  /**
+   * <p>Making PayPal payment.</p>
+   **/
+  public static final int CRPA = 5;
+
+  /**
+   * <p>Remote payment creation.</p>
+   **/
+  public static final int RMCR = 6;
+
+  /**
+   * <p>Remote payment execution.</p>
+   **/
+  public static final int RMEX = 7;
+
+  /**
+   * <p>Remote payment retrieving.</p>
+   **/
+  public static final int RMGT = 8;
+
+  /**
+   * <p>Remote token fetching.</p>
+   **/
+  public static final int TKN = 9;
+
+  /**
+   * <p>DB - loading order lines.</p>
+   **/
+  public static final int DBLN = 10;
+
+  /**
+   * <p>DB - loading/saving OnlPay.</p>
+   **/
+  public static final int DBOP = 11;
+
+  /**
+   * <p>DB - booking/canceling orders.</p>
+   **/
+  public static final int DBOR = 12;
+
+  /**
+   * <p>DB - marking orders as payed.</p>
+   **/
+  public static final int DBPD = 13;
+
+  /**
+   * <p>Timers names.</p>
+   **/
+  public static final String[] TMRS = {"process", "phase1", "phase2",
+    "cancelReturn", "makePplOrds", "createPay", "remoteCreate",
+    "remoteExecute", "remoteGet", "tokenFetch", "dbLines", "dbOnlPay",
+    "dbOrders", "dbPayed"};
+
+  /**
+   * <p>Payment created.</p>
+   **/
+  public static final int CREATED = 0;
+
+  /**
+   * <p>Payment executed.</p>
+   **/
+  public static final int EXECUTED = 1;
+
+  /**
+   * <p>Buyer canceled payment.</p>
+   **/
+  public static final int CANCELED = 2;
+
+  /**
+   * <p>Buyer returned without paying.</p>
+   **/
+  public static final int RETURN = 3;
+
+  /**
+   * <p>Spam detected.</p>
+   **/
+  public static final int SPAM = 4;
+
+  /**
+   * <p>Failed request.</p>
+   **/
+  public static final int ERROR = 5;
+
+  /**
+   * <p>Request rejected by PayPal calls guard, buyer should try again.</p>
+   **/
+  public static final int BUSY = 6;
+
+  /**
+   * <p>Counters names.</p>
+   **/
+  public static final String[] CNTS = {"created", "executed", "canceled",
+    "return", "spam", "error", "tryAgain"};
+
+  /**
+   * <p>Buckets count, the last one is overflow (over 2^26 us ~ 67 sec).</p>
+   **/
+  public static final int BKTS = 28;
+
+  /**
+   * <p>Slots per timer - buckets, count, sum (ns), max (ns).</p>
+   **/
+  private static final int SLTS = BKTS + 3;
+
+  /**
+   * <p>Timers data.</p>
+   **/
+  private final AtomicLongArray tmrs =
+    new AtomicLongArray(TMRS.length * SLTS);
+
+  /**
+   * <p>Counters data.</p>
+   **/
+  private final AtomicLongArray cnts = new AtomicLongArray(CNTS.length);
+
+  /**
+   * <p>Records operation latency.</p>
+   * @param pTmr timer, e.g. PH1
+   * @param pStrt start time by System.nanoTime()
+   **/
+  public final void rec(final int pTmr, final long pStrt) {
+    long ns = System.nanoTime() - pStrt;
+    if (ns < 0L) {
+      ns = 0L;
+    }
+    int bkt = 64 - Long.numberOfLeadingZeros(ns / 1000L);
+    if (bkt >= BKTS) {
+      bkt = BKTS - 1;
+    }
+    int os = pTmr * SLTS;
+    this.tmrs.incrementAndGet(os + bkt);
+    this.tmrs.incrementAndGet(os + BKTS);
+    this.tmrs.addAndGet(os + BKTS + 1, ns);
+    long max;
+    do {
+      max = this.tmrs.get(os + BKTS + 2);
+    } while (ns > max && !this.tmrs.compareAndSet(os + BKTS + 2, max, ns));
+  }
+
+  /**
+   * <p>Increments counter.</p>
+   * @param pCnt counter, e.g. CREATED
+   **/
+  public final void inc(final int pCnt) {
+    this.cnts.incrementAndGet(pCnt);
+  }
+
+  /**
+   * <p>Gets counter value.</p>
+   * @param pCnt counter
+   * @return value
+   **/
+  public final long cnt(final int pCnt) {
+    return this.cnts.get(pCnt);
+  }
+
+  /**
+   * <p>Gets timer's records count.</p>
+   * @param pTmr timer
+   * @return count
+   **/
+  public final long tmrCnt(final int pTmr) {
+    return this.tmrs.get(pTmr * SLTS + BKTS);
+  }
+
+  /**
+   * <p>Gets timer's average latency.</p>
+   * @param pTmr timer
+   * @return microseconds
+   **/
+  public final long avgUs(final int pTmr) {
+    long cnt = tmrCnt(pTmr);
+    if (cnt == 0L) {
+      return 0L;
+    }
+    return this.tmrs.get(pTmr * SLTS + BKTS + 1) / cnt / 1000L;
+  }
+
+  /**
+   * <p>Gets timer's maximum latency.</p>
+   * @param pTmr timer
+   * @return microseconds
+   **/
+  public final long maxUs(final int pTmr) {
+    return this.tmrs.get(pTmr * SLTS + BKTS + 2) / 1000L;
+  }
+
+  /**
+   * <p>Gets timer's latency quantile, i.e. upper bound of bucket.</p>
+   * @param pTmr timer
+   * @param pQnt quantile, e.g. 0.99
+   * @return microseconds, for overflow bucket - maximum
+   **/
+  public final long qntUs(final int pTmr, final double pQnt) {
+    int os = pTmr * SLTS;
+    long[] bks = new long[BKTS];
+    long tot = 0L;
+    for (int i = 0; i < BKTS; i++) {
+      bks[i] = this.tmrs.get(os + i);
+      tot += bks[i];
+    }
+    if (tot == 0L) {
+      return 0L;
+    }
+    long trg = (long) Math.ceil(tot * pQnt);
+    long cum = 0L;
+    for (int i = 0; i < BKTS - 1; i++) {
+      cum += bks[i];
+      if (cum >= trg) {
+        return 1L << i;
+      }
+    }
+    return maxUs(pTmr);
+  }
+
+  /**
+   * <p>Makes text in Prometheus exposition format.</p>
+   * @return metrics text
+   **/
+  public final String scrape() {
+    StringBuilder sb = new StringBuilder(8192);
+    sb.append("# TYPE ppl_latency_us histogram\n");
+    for (int t = 0; t < TMRS.length; t++) {
+      int os = t * SLTS;
+      long cum = 0L;
+      for (int i = 0; i < BKTS - 1; i++) {
+        cum += this.tmrs.get(os + i);
+        sb.append("ppl_latency_us_bucket{op=\"").append(TMRS[t])
+          .append("\",le=\"").append(1L << i).append("\"} ").append(cum)
+            .append('\n');
+      }
+      cum += this.tmrs.get(os + BKTS - 1);
+      sb.append("ppl_latency_us_bucket{op=\"").append(TMRS[t])
+        .append("\",le=\"+Inf\"} ").append(cum).append('\n');
+      sb.append("ppl_latency_us_sum{op=\"").append(TMRS[t]).append("\"} ")
+        .append(this.tmrs.get(os + BKTS + 1) / 1000L).append('\n');
+      sb.append("ppl_latency_us_count{op=\"").append(TMRS[t]).append("\"} ")
+        .append(cum).append('\n');
+    }
+    sb.append("# TYPE ppl_latency_max_us gauge\n");
+    for (int t = 0; t < TMRS.length; t++) {
+      sb.append("ppl_latency_max_us{op=\"").append(TMRS[t]).append("\"} ")
+        .append(maxUs(t)).append('\n');
+    }
+    sb.append("# TYPE ppl_total counter\n");
+    for (int c = 0; c < CNTS.length; c++) {
+      sb.append("ppl_total{ev=\"").append(CNTS[c]).append("\"} ")
+        .append(this.cnts.get(c)).append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,1173 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Properties;
+
+/**
+ * <p>PayPal settings, they are loaded from optional "ppl.properties"
+ * (class-path root of web-application), e.g. "cnTo=10000".</p>
+ *
+ * @author Yury Demidenko
+ */
+public class PplStg {
+
+  /**
+   * <p>Transaction step - cancel/return read-only preflight (OnlPay).</p>
+   **/
+  public static final int TR_CNCRD = 0;
+
+  /**
+   * <p>Transaction step - canceling booked orders.</p>
+   **/
+  public static final int TR_CNC = 1;
+
+  /**
+   * <p>Transaction step - phase 1 booking and saving payment intent.</p>
+   **/
+  public static final int TR_PH1 = 2;
+
+  /**
+   * <p>Transaction step - phase 1 saving created payment ID.</p>
+   **/
+  public static final int TR_PH1SV = 3;
+
+  /**
+   * <p>Transaction step - phase 2 preflight (buyer, OnlPay,
+   * payment method), it only claims OnlPay.</p>
+   **/
+  public static final int TR_PH2RD = 4;
+
+  /**
+   * <p>Transaction step - phase 2 recording payed orders.</p>
+   **/
+  public static final int TR_PH2 = 5;
+
+  /**
+   * <p>Transaction step - expired checkouts sweep.</p>
+   **/
+  public static final int TR_SWP = 6;
+
+  /**
+   * <p>Connect timeout, milliseconds.</p>
+   **/
+  private int cnTo = 10000;
+
+  /**
+   * <p>Read timeout, milliseconds.</p>
+   **/
+  private int rdTo = 30000;
+
+  /**
+   * <p>Total timeout of remote call including waiting for connection,
+   * milliseconds.</p>
+   **/
+  private int totTo = 60000;
+
+  /**
+   * <p>Maximum connections to PayPal (pool size).</p>
+   **/
+  private int maxCn = 20;
+
+  /**
+   * <p>Maximum calls waiting for connection (pool queue), a call over it
+   * is rejected as busy.</p>
+   **/
+  private int cnQu = 100;
+
+  /**
+   * <p>If SDK's shared SSL context is set to reuse connections and TLS
+   * sessions, it is JVM (class loader) wide, i.e. it's used by every
+   * PayPal SDK client of the same class loader.</p>
+   **/
+  private boolean sslShr = true;
+
+  /**
+   * <p>Name of IRdb's public method without parameters that returns
+   * JDBC connection of current thread, it's used for bound statements,
+   * NULL means plain SQL through IRdb.</p>
+   **/
+  private String rdbCn = "lazCon";
+
+  /**
+   * <p>PayPal REST end-point, e.g. "http://localhost:8089/" for PayPal
+   * stand-in, NULL means SDK's one according mode.</p>
+   **/
+  private String endPnt;
+
+  /**
+   * <p>Time to live of phase 2 result for duplicate requests,
+   * milliseconds.</p>
+   **/
+  private int coTtl = 60000;
+
+  /**
+   * <p>Webhook ID, NULL means webhook is disabled.</p>
+   **/
+  private String whId;
+
+  /**
+   * <p>Payed updates queue capacity.</p>
+   **/
+  private int whQu = 1000;
+
+  /**
+   * <p>Payed updates workers count.</p>
+   **/
+  private int whThr = 2;
+
+  /**
+   * <p>Payed updates maximum batch size.</p>
+   **/
+  private int whBt = 50;
+
+  /**
+   * <p>OnlPay expiry (checkout time), milliseconds.</p>
+   **/
+  private int payTo = 600000;
+
+  /**
+   * <p>Expired checkouts sweep period, milliseconds, 0 means
+   * disabled.</p>
+   **/
+  private int swPr;
+
+  /**
+   * <p>Expired checkouts per sweep transaction.</p>
+   **/
+  private int swBt = 100;
+
+  /**
+   * <p>If OnlPay near-cache is used, it's for single node or sticky
+   * sessions deploy only.</p>
+   **/
+  private boolean opCch;
+
+  /**
+   * <p>Metrics scrape secret token, NULL means scrape is disabled.</p>
+   **/
+  private String mtTk;
+
+  /**
+   * <p>Maximum concurrent PayPal calls per credential (bulkhead).</p>
+   **/
+  private int bhMax = 10;
+
+  /**
+   * <p>Waiting for bulkhead permit, milliseconds.</p>
+   **/
+  private int bhWt = 500;
+
+  /**
+   * <p>Circuit breaker failures rate threshold, percents.</p>
+   **/
+  private int cbErr = 50;
+
+  /**
+   * <p>Circuit breaker slow call threshold, milliseconds.</p>
+   **/
+  private int cbSlw = 10000;
+
+  /**
+   * <p>Circuit breaker open period, milliseconds.</p>
+   **/
+  private int cbOpn = 30000;
+
+  /**
+   * <p>Payment creation deadline including retries, milliseconds,
+   * 0 means total timeout.</p>
+   **/
+  private int crTo = 0;
+
+  /**
+   * <p>Payment execution deadline including retries, milliseconds,
+   * 0 means total timeout.</p>
+   **/
+  private int exTo = 0;
+
+  /**
+   * <p>Payment retrieving deadline including retries, milliseconds,
+   * 0 means total timeout.</p>
+   **/
+  private int gtTo = 0;
+
+  /**
+   * <p>Maximum retries of PayPal call.</p>
+   **/
+  private int rtMax = 2;
+
+  /**
+   * <p>Retry backoff base, milliseconds.</p>
+   **/
+  private int rtBs = 200;
+
+  /**
+   * <p>Shared retry budget, tokens.</p>
+   **/
+  private int rtCap = 10;
+
+  /**
+   * <p>Retry token part returned by success call, percents.</p>
+   **/
+  private int rtRat = 10;
+
+  /**
+   * <p>Rate limiter window, milliseconds.</p>
+   **/
+  private int lmWnd = 60000;
+
+  /**
+   * <p>Maximum PayPal requests per window per client address, 0 means no
+   * limit. Address is servlet's remote one, so it's disabled by default,
+   * because behind reverse proxy (load balancer) all buyers share
+   * proxy's address.</p>
+   **/
+  private int lmAdr;
+
+  /**
+   * <p>Maximum PayPal requests per window per buyer, 0 means no limit.</p>
+   **/
+  private int lmByr = 20;
+
+  /**
+   * <p>Cancel/return read-only preflight (OnlPay) transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means booking one (AddStg).</p>
+   **/
+  private int trCncRd = 2;
+
+  /**
+   * <p>Canceling booked orders transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means booking one (AddStg).</p>
+   **/
+  private int trCnc;
+
+  /**
+   * <p>Phase 1 booking and saving payment intent transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means booking one (AddStg).</p>
+   **/
+  private int trPh1;
+
+  /**
+   * <p>Phase 1 saving created payment ID transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means booking one (AddStg).</p>
+   **/
+  private int trPh1Sv;
+
+  /**
+   * <p>Phase 2 preflight (claiming OnlPay) transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means booking one (AddStg).</p>
+   **/
+  private int trPh2Rd = 2;
+
+  /**
+   * <p>Phase 2 recording payed orders transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means booking one (AddStg).</p>
+   **/
+  private int trPh2;
+
+  /**
+   * <p>Expired checkouts sweep transaction isolation,
+   * e.g. 2 - READ COMMITTED, 0 means database default one.</p>
+   **/
+  private int trSwp = 2;
+
+  /**
+   * <p>Fast start, i.e. full DB create/upgrade check is skipped if stored
+   * schema fingerprint is the same.</p>
+   **/
+  private boolean fstSt;
+
+  /**
+   * <p>If PayPal is pre-initialized on start.</p>
+   **/
+  private boolean prWrm = true;
+
+  /**
+   * <p>If create payment payload is written by streaming writer,
+   * otherwise by SDK objects.</p>
+   **/
+  private boolean wrPy = true;
+
+  /**
+   * <p>If multi-payee mode, i.e. purchase with several payees (owner and
+   * S.E.Sellers) is paid by several payments, otherwise such purchase
+   * is rejected. Latency target of this mode is server side only: payments
+   * are created concurrently, so phase 1 takes about one creation time.
+   * Buyer approves them one by one on PayPal's pages, so checkout takes
+   * a PayPal approval per payee. Single approval of several payees isn't
+   * possible here - REST API v1 (SDK 1.14) payment has single
+   * transaction (payee), and Orders v2 several purchase units require
+   * PayPal partner (marketplace) onboarding. If buyer doesn't approve
+   * the rest payments in time, then purchase stays partly paid.</p>
+   **/
+  private boolean mlPy;
+
+  /**
+   * <p>Multi-payee payments creation threads count.</p>
+   **/
+  private int mlThr = 4;
+
+  /**
+   * <p>Loads settings from properties, absent ones are left default.</p>
+   * @param pProps properties
+   **/
+  public final void lod(final Properties pProps) {
+    this.cnTo = intVl(pProps, "cnTo", this.cnTo);
+    this.rdTo = intVl(pProps, "rdTo", this.rdTo);
+    this.totTo = intVl(pProps, "totTo", this.totTo);
+    this.maxCn = intVl(pProps, "maxCn", this.maxCn);
+    this.cnQu = intVl(pProps, "cnQu", this.cnQu);
+    this.sslShr = Boolean.parseBoolean(pProps.getProperty("sslShr",
+      Boolean.toString(this.sslShr)).trim());
+    this.coTtl = intVl(pProps, "coTtl", this.coTtl);
+    String ep = pProps.getProperty("endPnt");
+    if (ep != null && ep.trim().length() > 0) {
+      this.endPnt = ep.trim();
+    }
+    String rc = pProps.getProperty("rdbCn");
+    if (rc != null) {
+      rc = rc.trim();
+      if (rc.length() > 0) {
+        this.rdbCn = rc;
+      } else {
+        this.rdbCn = null;
+      }
+    }
+    String wi = pProps.getProperty("whId");
+    if (wi != null && wi.trim().length() > 0) {
+      this.whId = wi.trim();
+    }
+    this.whQu = intVl(pProps, "whQu", this.whQu);
+    this.whThr = intVl(pProps, "whThr", this.whThr);
+    this.whBt = intVl(pProps, "whBt", this.whBt);
+    this.payTo = intVl(pProps, "payTo", this.payTo);
+    this.swPr = intVl(pProps, "swPr", this.swPr);
+    this.swBt = intVl(pProps, "swBt", this.swBt);
+    this.opCch = Boolean.parseBoolean(pProps.getProperty("opCch",
+      Boolean.toString(this.opCch)).trim());
+    String mt = pProps.getProperty("mtTk");
+    if (mt != null && mt.trim().length() > 0) {
+      this.mtTk = mt.trim();
+    }
+    this.bhMax = intVl(pProps, "bhMax", this.bhMax);
+    this.bhWt = intVl(pProps, "bhWt", this.bhWt);
+    this.cbErr = intVl(pProps, "cbErr", this.cbErr);
+    this.cbSlw = intVl(pProps, "cbSlw", this.cbSlw);
+    this.cbOpn = intVl(pProps, "cbOpn", this.cbOpn);
+    this.crTo = intVl(pProps, "crTo", this.crTo);
+    this.exTo = intVl(pProps, "exTo", this.exTo);
+    this.gtTo = intVl(pProps, "gtTo", this.gtTo);
+    this.rtMax = intVl(pProps, "rtMax", this.rtMax);
+    this.rtBs = intVl(pProps, "rtBs", this.rtBs);
+    this.rtCap = intVl(pProps, "rtCap", this.rtCap);
+    this.rtRat = intVl(pProps, "rtRat", this.rtRat);
+    this.lmWnd = intVl(pProps, "lmWnd", this.lmWnd);
+    this.lmAdr = intVl(pProps, "lmAdr", this.lmAdr);
+    this.lmByr = intVl(pProps, "lmByr", this.lmByr);
+    this.trCncRd = intVl(pProps, "trCncRd", this.trCncRd);
+    this.trCnc = intVl(pProps, "trCnc", this.trCnc);
+    this.trPh1 = intVl(pProps, "trPh1", this.trPh1);
+    this.trPh1Sv = intVl(pProps, "trPh1Sv", this.trPh1Sv);
+    this.trPh2Rd = intVl(pProps, "trPh2Rd", this.trPh2Rd);
+    this.trPh2 = intVl(pProps, "trPh2", this.trPh2);
+    this.trSwp = intVl(pProps, "trSwp", this.trSwp);
+    this.fstSt = Boolean.parseBoolean(pProps.getProperty("fstSt",
+      Boolean.toString(this.fstSt)).trim());
+    this.prWrm = Boolean.parseBoolean(pProps.getProperty("prWrm",
+      Boolean.toString(this.prWrm)).trim());
+    this.wrPy = Boolean.parseBoolean(pProps.getProperty("wrPy",
+      Boolean.toString(this.wrPy)).trim());
+    this.mlPy = Boolean.parseBoolean(pProps.getProperty("mlPy",
+      Boolean.toString(this.mlPy)).trim());
+    this.mlThr = intVl(pProps, "mlThr", this.mlThr);
+  }
+
+  /**
+   * <p>Gets transaction isolation of given step.</p>
+   * @param pStp step, e.g. TR_CNC
+   * @return isolation, 0 means booking one
+   **/
+  public final int trIsl(final int pStp) {
+    switch (pStp) {
+      case TR_CNCRD:
+        return this.trCncRd;
+      case TR_CNC:
+        return this.trCnc;
+      case TR_PH1:
+        return this.trPh1;
+      case TR_PH1SV:
+        return this.trPh1Sv;
+      case TR_PH2RD:
+        return this.trPh2Rd;
+      case TR_PH2:
+        return this.trPh2;
+      case TR_SWP:
+        return this.trSwp;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * <p>Gets integer property.</p>
+   * @param pProps properties
+   * @param pNme name
+   * @param pDef default
+   * @return value
+   **/
+  protected final int intVl(final Properties pProps, final String pNme,
+    final int pDef) {
+    String vl = pProps.getProperty(pNme);
+    if (vl == null || vl.trim().length() == 0) {
+      return pDef;
+    }
+    return Integer.parseInt(vl.trim());
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for cnTo.</p>
+   * @return int
+   **/
+  public final int getCnTo() {
+    return this.cnTo;
+  }
+
+  /**
+   * <p>Setter for cnTo.</p>
+   * @param pCnTo reference
+   **/
+  public final void setCnTo(final int pCnTo) {
+    this.cnTo = pCnTo;
+  }
+
+  /**
+   * <p>Getter for rdTo.</p>
+   * @return int
+   **/
+  public final int getRdTo() {
+    return this.rdTo;
+  }
+
+  /**
+   * <p>Setter for rdTo.</p>
+   * @param pRdTo reference
+   **/
+  public final void setRdTo(final int pRdTo) {
+    this.rdTo = pRdTo;
+  }
+
+  /**
+   * <p>Getter for totTo.</p>
+   * @return int
+   **/
+  public final int getTotTo() {
+    return this.totTo;
+  }
+
+  /**
+   * <p>Setter for totTo.</p>
+   * @param pTotTo reference
+   **/
+  public final void setTotTo(final int pTotTo) {
+    this.totTo = pTotTo;
+  }
+
+  /**
+   * <p>Getter for maxCn.</p>
+   * @return int
+   **/
+  public final int getMaxCn() {
+    return this.maxCn;
+  }
+
+  /**
+   * <p>Setter for maxCn.</p>
+   * @param pMaxCn reference
+   **/
+  public final void setMaxCn(final int pMaxCn) {
+    this.maxCn = pMaxCn;
+  }
+
+  /**
+   * <p>Getter for endPnt.</p>
+   * @return String
+   **/
+  public final String getEndPnt() {
+    return this.endPnt;
+  }
+
+  /**
+   * <p>Setter for endPnt.</p>
+   * @param pEndPnt reference
+   **/
+  public final void setEndPnt(final String pEndPnt) {
+    this.endPnt = pEndPnt;
+  }
+
+  /**
+   * <p>Getter for coTtl.</p>
+   * @return int
+   **/
+  public final int getCoTtl() {
+    return this.coTtl;
+  }
+
+  /**
+   * <p>Setter for coTtl.</p>
+   * @param pCoTtl reference
+   **/
+  public final void setCoTtl(final int pCoTtl) {
+    this.coTtl = pCoTtl;
+  }
+
+  /**
+   * <p>Getter for whId.</p>
+   * @return String
+   **/
+  public final String getWhId() {
+    return this.whId;
+  }
+
+  /**
+   * <p>Setter for whId.</p>
+   * @param pWhId reference
+   **/
+  public final void setWhId(final String pWhId) {
+    this.whId = pWhId;
+  }
+
+  /**
+   * <p>Getter for whQu.</p>
+   * @return int
+   **/
+  public final int getWhQu() {
+    return this.whQu;
+  }
+
+  /**
+   * <p>Setter for whQu.</p>
+   * @param pWhQu reference
+   **/
+  public final void setWhQu(final int pWhQu) {
+    this.whQu = pWhQu;
+  }
+
+  /**
+   * <p>Getter for whThr.</p>
+   * @return int
+   **/
+  public final int getWhThr() {
+    return this.whThr;
+  }
+
+  /**
+   * <p>Setter for whThr.</p>
+   * @param pWhThr reference
+   **/
+  public final void setWhThr(final int pWhThr) {
+    this.whThr = pWhThr;
+  }
+
+  /**
+   * <p>Getter for whBt.</p>
+   * @return int
+   **/
+  public final int getWhBt() {
+    return this.whBt;
+  }
+
+  /**
+   * <p>Setter for whBt.</p>
+   * @param pWhBt reference
+   **/
+  public final void setWhBt(final int pWhBt) {
+    this.whBt = pWhBt;
+  }
+
+  /**
+   * <p>Getter for payTo.</p>
+   * @return int
+   **/
+  public final int getPayTo() {
+    return this.payTo;
+  }
+
+  /**
+   * <p>Setter for payTo.</p>
+   * @param pPayTo reference
+   **/
+  public final void setPayTo(final int pPayTo) {
+    this.payTo = pPayTo;
+  }
+
+  /**
+   * <p>Getter for swPr.</p>
+   * @return int
+   **/
+  public final int getSwPr() {
+    return this.swPr;
+  }
+
+  /**
+   * <p>Setter for swPr.</p>
+   * @param pSwPr reference
+   **/
+  public final void setSwPr(final int pSwPr) {
+    this.swPr = pSwPr;
+  }
+
+  /**
+   * <p>Getter for swBt.</p>
+   * @return int
+   **/
+  public final int getSwBt() {
+    return this.swBt;
+  }
+
+  /**
+   * <p>Setter for swBt.</p>
+   * @param pSwBt reference
+   **/
+  public final void setSwBt(final int pSwBt) {
+    this.swBt = pSwBt;
+  }
+
+  /**
+   * <p>Getter for opCch.</p>
+   * @return boolean
+   **/
+  public final boolean getOpCch() {
+    return this.opCch;
+  }
+
+  /**
+   * <p>Setter for opCch.</p>
+   * @param pOpCch reference
+   **/
+  public final void setOpCch(final boolean pOpCch) {
+    this.opCch = pOpCch;
+  }
+
+  /**
+   * <p>Getter for mtTk.</p>
+   * @return String
+   **/
+  public final String getMtTk() {
+    return this.mtTk;
+  }
+
+  /**
+   * <p>Setter for mtTk.</p>
+   * @param pMtTk reference
+   **/
+  public final void setMtTk(final String pMtTk) {
+    this.mtTk = pMtTk;
+  }
+
+  /**
+   * <p>Getter for bhMax.</p>
+   * @return int
+   **/
+  public final int getBhMax() {
+    return this.bhMax;
+  }
+
+  /**
+   * <p>Setter for bhMax.</p>
+   * @param pBhMax reference
+   **/
+  public final void setBhMax(final int pBhMax) {
+    this.bhMax = pBhMax;
+  }
+
+  /**
+   * <p>Getter for bhWt.</p>
+   * @return int
+   **/
+  public final int getBhWt() {
+    return this.bhWt;
+  }
+
+  /**
+   * <p>Setter for bhWt.</p>
+   * @param pBhWt reference
+   **/
+  public final void setBhWt(final int pBhWt) {
+    this.bhWt = pBhWt;
+  }
+
+  /**
+   * <p>Getter for cbErr.</p>
+   * @return int
+   **/
+  public final int getCbErr() {
+    return this.cbErr;
+  }
+
+  /**
+   * <p>Setter for cbErr.</p>
+   * @param pCbErr reference
+   **/
+  public final void setCbErr(final int pCbErr) {
+    this.cbErr = pCbErr;
+  }
+
+  /**
+   * <p>Getter for cbSlw.</p>
+   * @return int
+   **/
+  public final int getCbSlw() {
+    return this.cbSlw;
+  }
+
+  /**
+   * <p>Setter for cbSlw.</p>
+   * @param pCbSlw reference
+   **/
+  public final void setCbSlw(final int pCbSlw) {
+    this.cbSlw = pCbSlw;
+  }
+
+  /**
+   * <p>Getter for cbOpn.</p>
+   * @return int
+   **/
+  public final int getCbOpn() {
+    return this.cbOpn;
+  }
+
+  /**
+   * <p>Setter for cbOpn.</p>
+   * @param pCbOpn reference
+   **/
+  public final void setCbOpn(final int pCbOpn) {
+    this.cbOpn = pCbOpn;
+  }
+
+  /**
+   * <p>Getter for crTo.</p>
+   * @return int
+   **/
+  public final int getCrTo() {
+    return this.crTo;
+  }
+
+  /**
+   * <p>Setter for crTo.</p>
+   * @param pCrTo reference
+   **/
+  public final void setCrTo(final int pCrTo) {
+    this.crTo = pCrTo;
+  }
+
+  /**
+   * <p>Getter for exTo.</p>
+   * @return int
+   **/
+  public final int getExTo() {
+    return this.exTo;
+  }
+
+  /**
+   * <p>Setter for exTo.</p>
+   * @param pExTo reference
+   **/
+  public final void setExTo(final int pExTo) {
+    this.exTo = pExTo;
+  }
+
+  /**
+   * <p>Getter for gtTo.</p>
+   * @return int
+   **/
+  public final int getGtTo() {
+    return this.gtTo;
+  }
+
+  /**
+   * <p>Setter for gtTo.</p>
+   * @param pGtTo reference
+   **/
+  public final void setGtTo(final int pGtTo) {
+    this.gtTo = pGtTo;
+  }
+
+  /**
+   * <p>Getter for rtMax.</p>
+   * @return int
+   **/
+  public final int getRtMax() {
+    return this.rtMax;
+  }
+
+  /**
+   * <p>Setter for rtMax.</p>
+   * @param pRtMax reference
+   **/
+  public final void setRtMax(final int pRtMax) {
+    this.rtMax = pRtMax;
+  }
+
+  /**
+   * <p>Getter for rtBs.</p>
+   * @return int
+   **/
+  public final int getRtBs() {
+    return this.rtBs;
+  }
+
+  /**
+   * <p>Setter for rtBs.</p>
+   * @param pRtBs reference
+   **/
+  public final void setRtBs(final int pRtBs) {
+    this.rtBs = pRtBs;
+  }
+
+  /**
+   * <p>Getter for rtCap.</p>
+   * @return int
+   **/
+  public final int getRtCap() {
+    return this.rtCap;
+  }
+
+  /**
+   * <p>Setter for rtCap.</p>
+   * @param pRtCap reference
+   **/
+  public final void setRtCap(final int pRtCap) {
+    this.rtCap = pRtCap;
+  }
+
+  /**
+   * <p>Getter for rtRat.</p>
+   * @return int
+   **/
+  public final int getRtRat() {
+    return this.rtRat;
+  }
+
+  /**
+   * <p>Setter for rtRat.</p>
+   * @param pRtRat reference
+   **/
+  public final void setRtRat(final int pRtRat) {
+    this.rtRat = pRtRat;
+  }
+
+  /**
+   * <p>Getter for lmWnd.</p>
+   * @return int
+   **/
+  public final int getLmWnd() {
+    return this.lmWnd;
+  }
+
+  /**
+   * <p>Setter for lmWnd.</p>
+   * @param pLmWnd reference
+   **/
+  public final void setLmWnd(final int pLmWnd) {
+    this.lmWnd = pLmWnd;
+  }
+
+  /**
+   * <p>Getter for lmAdr.</p>
+   * @return int
+   **/
+  public final int getLmAdr() {
+    return this.lmAdr;
+  }
+
+  /**
+   * <p>Setter for lmAdr.</p>
+   * @param pLmAdr reference
+   **/
+  public final void setLmAdr(final int pLmAdr) {
+    this.lmAdr = pLmAdr;
+  }
+
+  /**
+   * <p>Getter for lmByr.</p>
+   * @return int
+   **/
+  public final int getLmByr() {
+    return this.lmByr;
+  }
+
+  /**
+   * <p>Setter for lmByr.</p>
+   * @param pLmByr reference
+   **/
+  public final void setLmByr(final int pLmByr) {
+    this.lmByr = pLmByr;
+  }
+
+  /**
+   * <p>Getter for trCncRd.</p>
+   * @return int
+   **/
+  public final int getTrCncRd() {
+    return this.trCncRd;
+  }
+
+  /**
+   * <p>Setter for trCncRd.</p>
+   * @param pTrCncRd reference
+   **/
+  public final void setTrCncRd(final int pTrCncRd) {
+    this.trCncRd = pTrCncRd;
+  }
+
+  /**
+   * <p>Getter for trCnc.</p>
+   * @return int
+   **/
+  public final int getTrCnc() {
+    return this.trCnc;
+  }
+
+  /**
+   * <p>Setter for trCnc.</p>
+   * @param pTrCnc reference
+   **/
+  public final void setTrCnc(final int pTrCnc) {
+    this.trCnc = pTrCnc;
+  }
+
+  /**
+   * <p>Getter for trPh1.</p>
+   * @return int
+   **/
+  public final int getTrPh1() {
+    return this.trPh1;
+  }
+
+  /**
+   * <p>Setter for trPh1.</p>
+   * @param pTrPh1 reference
+   **/
+  public final void setTrPh1(final int pTrPh1) {
+    this.trPh1 = pTrPh1;
+  }
+
+  /**
+   * <p>Getter for trPh1Sv.</p>
+   * @return int
+   **/
+  public final int getTrPh1Sv() {
+    return this.trPh1Sv;
+  }
+
+  /**
+   * <p>Setter for trPh1Sv.</p>
+   * @param pTrPh1Sv reference
+   **/
+  public final void setTrPh1Sv(final int pTrPh1Sv) {
+    this.trPh1Sv = pTrPh1Sv;
+  }
+
+  /**
+   * <p>Getter for trPh2Rd.</p>
+   * @return int
+   **/
+  public final int getTrPh2Rd() {
+    return this.trPh2Rd;
+  }
+
+  /**
+   * <p>Setter for trPh2Rd.</p>
+   * @param pTrPh2Rd reference
+   **/
+  public final void setTrPh2Rd(final int pTrPh2Rd) {
+    this.trPh2Rd = pTrPh2Rd;
+  }
+
+  /**
+   * <p>Getter for trPh2.</p>
+   * @return int
+   **/
+  public final int getTrPh2() {
+    return this.trPh2;
+  }
+
+  /**
+   * <p>Setter for trPh2.</p>
+   * @param pTrPh2 reference
+   **/
+  public final void setTrPh2(final int pTrPh2) {
+    this.trPh2 = pTrPh2;
+  }
+
+  /**
+   * <p>Getter for fstSt.</p>
+   * @return boolean
+   **/
+  public final boolean getFstSt() {
+    return this.fstSt;
+  }
+
+  /**
+   * <p>Setter for fstSt.</p>
+   * @param pFstSt reference
+   **/
+  public final void setFstSt(final boolean pFstSt) {
+    this.fstSt = pFstSt;
+  }
+
+  /**
+   * <p>Getter for prWrm.</p>
+   * @return boolean
+   **/
+  public final boolean getPrWrm() {
+    return this.prWrm;
+  }
+
+  /**
+   * <p>Setter for prWrm.</p>
+   * @param pPrWrm reference
+   **/
+  public final void setPrWrm(final boolean pPrWrm) {
+    this.prWrm = pPrWrm;
+  }
+
+  /**
+   * <p>Getter for wrPy.</p>
+   * @return boolean
+   **/
+  public final boolean getWrPy() {
+    return this.wrPy;
+  }
+
+  /**
+   * <p>Setter for wrPy.</p>
+   * @param pWrPy reference
+   **/
+  public final void setWrPy(final boolean pWrPy) {
+    this.wrPy = pWrPy;
+  }
+
+  /**
+   * <p>Getter for mlPy.</p>
+   * @return boolean
+   **/
+  public final boolean getMlPy() {
+    return this.mlPy;
+  }
+
+  /**
+   * <p>Setter for mlPy.</p>
+   * @param pMlPy reference
+   **/
+  public final void setMlPy(final boolean pMlPy) {
+    this.mlPy = pMlPy;
+  }
+
+  /**
+   * <p>Getter for mlThr.</p>
+   * @return int
+   **/
+  public final int getMlThr() {
+    return this.mlThr;
+  }
+
+  /**
+   * <p>Setter for mlThr.</p>
+   * @param pMlThr reference
+   **/
+  public final void setMlThr(final int pMlThr) {
+    this.mlThr = pMlThr;
+  }
+
+  /**
+   * <p>Getter for cnQu.</p>
+   * @return int
+   **/
+  public final int getCnQu() {
+    return this.cnQu;
+  }
+
+  /**
+   * <p>Setter for cnQu.</p>
+   * @param pCnQu reference
+   **/
+  public final void setCnQu(final int pCnQu) {
+    this.cnQu = pCnQu;
+  }
+
+  /**
+   * <p>Getter for sslShr.</p>
+   * @return boolean
+   **/
+  public final boolean getSslShr() {
+    return this.sslShr;
+  }
+
+  /**
+   * <p>Setter for sslShr.</p>
+   * @param pSslShr reference
+   **/
+  public final void setSslShr(final boolean pSslShr) {
+    this.sslShr = pSslShr;
+  }
+
+  /**
+   * <p>Getter for rdbCn.</p>
+   * @return String
+   **/
+  public final String getRdbCn() {
+    return this.rdbCn;
+  }
+
+  /**
+   * <p>Setter for rdbCn.</p>
+   * @param pRdbCn reference
+   **/
+  public final void setRdbCn(final String pRdbCn) {
+    this.rdbCn = pRdbCn;
+  }
+
+  /**
+   * <p>Getter for trSwp.</p>
+   * @return int
+   **/
+  public final int getTrSwp() {
+    return this.trSwp;
+  }
+
+  /**
+   * <p>Setter for trSwp.</p>
+   * @param pTrSwp reference
+   **/
+  public final void setTrSwp(final int pTrSwp) {
+    this.trSwp = pTrSwp;
+  }
+}
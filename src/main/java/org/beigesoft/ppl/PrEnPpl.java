@@ -0,0 +1,106 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.prc.IPrcEnt;
+import org.beigesoft.ws.mdlp.PayMd;
+
+/**
+ * <p>Decorator of payment method save/delete processor, i.e. PayMd's
+ * or SePayMd's one, that clears PAYPAL payment methods cache.</p>
+ *
+ * @param <T> payment method type
+ * @author Yury Demidenko
+ */
+public class PrEnPpl<T extends PayMd> implements IPrcEnt<T, Long> {
+
+  /**
+   * <p>Decorated processor.</p>
+   **/
+  private IPrcEnt<T, Long> prc;
+
+  /**
+   * <p>PAYPAL payment methods cache.</p>
+   **/
+  private CchPayMd cchPayMd;
+
+  /**
+   * <p>Process entity request.</p>
+   * @param pRvs request scoped vars
+   * @param pEnt Entity to process
+   * @param pRqDt Request Data
+   * @return Entity processed for farther process or null
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final T process(final Map<String, Object> pRvs, final T pEnt,
+    final IReqDt pRqDt) throws Exception {
+    T rz = this.prc.process(pRvs, pEnt, pRqDt);
+    //it's inside editing transaction, so cache reloading is delayed:
+    this.cchPayMd.clear();
+    return rz;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for prc.</p>
+   * @return IPrcEnt<T, Long>
+   **/
+  public final IPrcEnt<T, Long> getPrc() {
+    return this.prc;
+  }
+
+  /**
+   * <p>Setter for prc.</p>
+   * @param pPrc reference
+   **/
+  public final void setPrc(final IPrcEnt<T, Long> pPrc) {
+    this.prc = pPrc;
+  }
+
+  /**
+   * <p>Getter for cchPayMd.</p>
+   * @return CchPayMd
+   **/
+  public final CchPayMd getCchPayMd() {
+    return this.cchPayMd;
+  }
+
+  /**
+   * <p>Setter for cchPayMd.</p>
+   * @param pCchPayMd reference
+   **/
+  public final void setCchPayMd(final CchPayMd pCchPayMd) {
+    this.cchPayMd = pCchPayMd;
+  }
+}
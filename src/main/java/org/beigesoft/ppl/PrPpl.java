@@ -30,14 +30,18 @@ package org.beigesoft.ppl;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.sql.Types;
 
 import com.paypal.api.payments.Amount;
 import com.paypal.api.payments.Details;
@@ -50,10 +54,10 @@ import com.paypal.api.payments.PaymentExecution;
 import com.paypal.api.payments.RedirectUrls;
 import com.paypal.api.payments.Transaction;
 import com.paypal.base.rest.APIContext;
+import com.paypal.base.rest.PayPalRESTException;
 
 import org.beigesoft.exc.ExcCode;
 import org.beigesoft.mdl.IReqDt;
-import org.beigesoft.mdl.IIdLn;
 import org.beigesoft.mdl.ColVals;
 import org.beigesoft.log.ILog;
 import org.beigesoft.hnd.IHndSpam;
@@ -67,12 +71,8 @@ import org.beigesoft.ws.mdl.EOrdStat;
 import org.beigesoft.ws.mdl.EPaymMth;
 import org.beigesoft.ws.mdl.Purch;
 import org.beigesoft.ws.mdlb.AOrdLn;
-import org.beigesoft.ws.mdlb.ATxLn;
 import org.beigesoft.ws.mdlp.Cart;
 import org.beigesoft.ws.mdlp.CuOrSe;
-import org.beigesoft.ws.mdlp.CuOrSeGdLn;
-import org.beigesoft.ws.mdlp.CuOrSeSrLn;
-import org.beigesoft.ws.mdlp.CuOrSeTxLn;
 import org.beigesoft.ws.mdlp.CuOr;
 import org.beigesoft.ws.mdlp.CuOrTxLn;
 import org.beigesoft.ws.mdlp.CuOrSrLn;
@@ -90,7 +90,8 @@ import org.beigesoft.ws.srv.IBuySr;
 
 /**
  * <p>Service that makes orders payed through PayPal.
- * It creates (manages) transactions itself.
+ * It creates (manages) transactions itself. Transactions are short,
+ * PayPal remote calls are made between them without DB connection held.
  * It makes circle:
  * <ul>
  * <li>phase 1 - accept (book) all buyer's new orders, if OK, then
@@ -108,7 +109,8 @@ import org.beigesoft.ws.srv.IBuySr;
  * canceling request in this case. This is processor either for webstore
  * owner's orders or a S.E.Seller's. That is it must not be several online
  * payee in same purchase, e.g. order with WS owner's items and
- * PayPal method, and order with S.E.Seller1 items and PayPal method.
+ * PayPal method, and order with S.E.Seller1 items and PayPal method,
+ * except multi-payee mode, where every payee gets own payment.
  * It must be only record in PAYMD/SEPAYMD table with NME=PAYPAL that holds
  * MDE="mode", SEC1="clientID" and SEC2="clientSecret".
  * </p>
@@ -117,6 +119,68 @@ import org.beigesoft.ws.srv.IBuySr;
  */
 public class PrPpl implements IPrc {
 
+  /**
+   * <p>Payment ID of OnlPay (intent) that is saved before PayPal creation.</p>
+   **/
+  public static final String PAYID_INTENT = "INTENT";
+
+  /**
+   * <p>Payment ID of OnlPay in multi-payee mode, payments are held
+   * by SrMlPay.</p>
+   **/
+  public static final String PAYID_MULTI = "MULTI";
+
+  /**
+   * <p>PayPal payment ID pattern.</p>
+   **/
+  private static final Pattern PAYID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+  /**
+   * <p>PayPal payer ID pattern.</p>
+   **/
+  private static final Pattern PAYERID = Pattern.compile("[A-Za-z0-9]{1,32}");
+
+  /**
+   * <p>Entity ID pattern.</p>
+   **/
+  private static final Pattern ID = Pattern.compile("[0-9]{1,18}");
+
+  /**
+   * <p>Payee's payment of phase 1.</p>
+   **/
+  private static final class Pye {
+
+    /**
+     * <p>Payee's payment method.</p>
+     **/
+    private PayMd payMd;
+
+    /**
+     * <p>Consolidated order.</p>
+     **/
+    private CuOr ord;
+
+    /**
+     * <p>S.E.Seller or null.</p>
+     **/
+    private SeSel sel;
+
+    /**
+     * <p>Orders count.</p>
+     **/
+    private int ords;
+
+    /**
+     * <p>Payment to create if it's made by SDK objects.</p>
+     **/
+    private Payment pay;
+
+    /**
+     * <p>Payment to create JSON if it's made by streaming writer.</p>
+     **/
+    private String payLd;
+  }
+
   /**
    * <p>Logger.</p>
    **/
@@ -162,6 +226,55 @@ public class PrPpl implements IPrc {
    **/
   private INumStr numStr;
 
+  /**
+   * <p>Amount formatter.</p>
+   **/
+  private FrmPpl frmPpl;
+
+  /**
+   * <p>Create payment payload streaming writer, if null then payload
+   * is made by SDK objects.</p>
+   **/
+  private WrPay wrPay;
+
+  /**
+   * <p>Phase 2 duplicates coalescer, if null then no coalescing.</p>
+   **/
+  private CoPh2 coPh2;
+
+  /**
+   * <p>OnlPay expiry, milliseconds, default 10 minutes.</p>
+   **/
+  private long payTo = 600000L;
+
+  /**
+   * <p>OnlPay near-cache, if null then OnlPay is always loaded
+   * from DB.</p>
+   **/
+  private CchOnPa cchOnPa;
+
+  /**
+   * <p>Metrics, factory sets shared one.</p>
+   **/
+  private MtrPpl mtr = new MtrPpl();
+
+  /**
+   * <p>PayPal calls guard (bulkhead and circuit breaker), if null then
+   * calls are not limited.</p>
+   **/
+  private GrdPpl grdPpl;
+
+  /**
+   * <p>Rate limiter, if null then requests are not limited.</p>
+   **/
+  private LmtPpl lmtPpl;
+
+  /**
+   * <p>PayPal settings, i.e. transaction profiles, if null then booking
+   * isolation is used everywhere.</p>
+   **/
+  private PplStg pplStg;
+
   /**
    * <p>Buyer service.</p>
    **/
@@ -172,6 +285,48 @@ public class PrPpl implements IPrc {
    **/
   private IHndSpam hndSpam;
 
+  /**
+   * <p>PayPal access tokens cache.</p>
+   **/
+  private CchTkPpl cchTk;
+
+  /**
+   * <p>PAYPAL payment methods cache.</p>
+   **/
+  private CchPayMd cchPayMd;
+
+  /**
+   * <p>PayPal connector.</p>
+   **/
+  private ICnPpl cnPpl;
+
+  /**
+   * <p>PayPal orders lines loader.</p>
+   **/
+  private SrPplLn srPplLn;
+
+  /**
+   * <p>Payed orders service.</p>
+   **/
+  private SrPayd srPayd;
+
+  /**
+   * <p>Payments journal, if it's set, then created payments are recorded
+   * for webhook events.</p>
+   **/
+  private SrPayJr srPayJr;
+
+  /**
+   * <p>Multi-payee payments service, if null then purchase with
+   * several payees is rejected.</p>
+   **/
+  private SrMlPay srMlPay;
+
+  /**
+   * <p>Multi-payee payments creation executor.</p>
+   **/
+  private ExMlPpl exMlPpl;
+
   /**
    * <p>Process request.</p>
    * @param pRvs request scoped vars
@@ -184,566 +339,1733 @@ public class PrPpl implements IPrc {
     if (!pRqDt.getReqUrl().toString().toLowerCase().startsWith("https")) {
       throw new Exception("PPL http not supported!!!");
     }
-    boolean dbgSh = getLog().getDbgSh(getClass(), 17000);
     AddStg tastg = (AddStg) pRvs.get("tastg");
-    String payerID = pRqDt.getParam("payerID");
+    long st = System.nanoTime();
+    int tmr = MtrPpl.PH1;
     try {
-      this.rdb.setAcmt(false);
-      this.rdb.setTrIsl(tastg.getBkTr());
-      this.rdb.begin();
+      vldRq(pRvs, pRqDt);
+      String payerID = pRqDt.getParam("payerID");
       if (payerID != null) {
         //execution payment:
+        tmr = MtrPpl.PH2;
         phase2(pRvs, pRqDt, tastg, payerID);
       } else {
         String pur = pRqDt.getParam("pur");
         if (pur != null) { //cancel/return:
-          if (dbgSh) {
-            getLog().debug(pRvs, PrPpl.class, "Cancel/return...");
-          }
-          Long buyrId = Long.parseLong(pRqDt.getParam("buyr"));
-          Buyer buyr = new Buyer();
-          buyr.setIid(buyrId);
-          OnlPay onpa = new OnlPay();
-          onpa.setIid(buyr);
-          Map<String, Object> vs = new HashMap<String, Object>();
-          this.orm.refrEnt(pRvs, vs, onpa);
-          if (onpa.getIid() == null) {
-            this.hndSpam.handle(pRvs, pRqDt, 100,
-              "OnlPay not found for buyer ID: " + buyrId);
-            throw new ExcCode(ExcCode.SPAM, "OnlPay not found for buyer ID: "
-              + buyrId);
-          }
-          long now = new Date().getTime();
-          if (now - onpa.getDat().getTime() > 600000) { //10 minutes
-            this.hndSpam.handle(pRvs, pRqDt, 100,
-              "OnlPay outdated for buyer ID: " + buyrId);
-            throw new ExcCode(ExcCode.SPAM, "OnlPay outdated for buyer ID: "
-              + buyrId);
-          }
-          this.cncOrd.cancel(pRvs, buyr, onpa.getPur(), EOrdStat.BOOKED,
-            EOrdStat.NEW);
-          pRvs.put("pplPayId", onpa.getPayId());
-          String cnc = pRqDt.getParam("cnc");
-          if (cnc != null) {
-            pRvs.put("pplStat", "canceled");
-          } else {
-            pRvs.put("pplStat", "return");
-          }
-          getLog().info(pRvs, PrPpl.class, "buyer/pid/result " + buyr
-            .getIid() + "/" + onpa.getPayId() + "/" + pRvs.get("pplStat"));
+          tmr = MtrPpl.CNRT;
+          cncRet(pRvs, pRqDt, tastg);
         } else {
           //phase 1, creating payment:
           phase1(pRvs, pRqDt, tastg);
         }
       }
-      this.rdb.commit();
-    } catch (Exception ex) {
-      if (!this.rdb.getAcmt()) {
-        this.rdb.rollBack();
+    } catch (ExcCode ex) {
+      if (ex.getCode() == GrdPpl.BUSY) {
+        //fail fast, nothing is changed, buyer should try again later:
+        this.mtr.inc(MtrPpl.BUSY);
+        getLog().warn(pRvs, PrPpl.class, ex.getMessage());
+        pRvs.put("pplStat", "tryAgain");
+      } else {
+        if (ex.getCode() == ExcCode.SPAM) {
+          this.mtr.inc(MtrPpl.SPAM);
+        } else {
+          this.mtr.inc(MtrPpl.ERROR);
+        }
+        throw ex;
       }
+    } catch (Exception ex) {
+      this.mtr.inc(MtrPpl.ERROR);
       throw ex;
     } finally {
-      this.rdb.release();
+      this.mtr.rec(tmr, st);
+      this.mtr.rec(MtrPpl.PRC, st);
     }
     //forced renderer:
     pRqDt.setAttr("rnd", "ppl");
   }
 
   /**
-   * <p>It makes phase 2 - execution payment.</p>
+   * <p>Validates request and checks rate limits before any DB
+   * connection is taken, so malformed, replayed and flooding requests are
+   * rejected cheaply. Buyer of cancel/return is known by parameter, buyer
+   * of phase 1/2 is known only after authorization (DB), so it's checked
+   * later by lmtByr.</p>
    * @param pRvs request scoped vars
    * @param pRqDt Request Data
-   * @param pSetAdd AddStg
-   * @param pPayerId Payer ID
-   * @throws Exception - an exception
+   * @throws Exception - ExcCode SPAM if request is rejected
    **/
-  public final void phase2(final Map<String, Object> pRvs,
-    final IReqDt pRqDt, final AddStg pSetAdd,
-      final String pPayerId) throws Exception {
-    boolean dbgSh = getLog().getDbgSh(getClass(), 17002);
-    if (dbgSh) {
-      getLog().debug(pRvs, PrPpl.class, "Phase2...");
+  public final void vldRq(final Map<String, Object> pRvs,
+    final IReqDt pRqDt) throws Exception {
+    String err = null;
+    Long buyrId = null;
+    String payerID = pRqDt.getParam("payerID");
+    if (payerID != null) {
+      String paymentID = pRqDt.getParam("paymentID");
+      if (!PAYERID.matcher(payerID).matches()) {
+        err = "PrPpl. wrong payerID!";
+      } else if (paymentID == null || !PAYID.matcher(paymentID).matches()) {
+        err = "PrPpl. wrong paymentID for payerID: " + payerID;
+      }
+    } else {
+      String pur = pRqDt.getParam("pur");
+      if (pur != null) {
+        String buyr = pRqDt.getParam("buyr");
+        if (!ID.matcher(pur).matches() || buyr == null
+          || !ID.matcher(buyr).matches()) {
+          err = "PrPpl. wrong cancel/return buyr/pur!";
+        } else {
+          buyrId = Long.valueOf(buyr);
+        }
+      }
+    }
+    if (err != null) {
+      this.hndSpam.handle(pRvs, pRqDt, 100, err);
+      throw new ExcCode(ExcCode.SPAM, err);
     }
-    //phase 2, executing payment:
-    Buyer buyer = this.buySr.getAuthBuyr(pRvs, pRqDt);
-    if (buyer == null) {
+    if (this.lmtPpl != null) {
+      if (!this.lmtPpl.alwAdr(pRqDt.getRemAdr())) {
+        this.hndSpam.handle(pRvs, pRqDt, 10, "PrPpl. address rate limit!");
+        throw new ExcCode(ExcCode.SPAM, "PrPpl. address rate limit: "
+          + pRqDt.getRemAdr());
+      }
+      if (buyrId != null) {
+        lmtByr(pRvs, pRqDt, buyrId);
+      }
+    }
+  }
+
+  /**
+   * <p>Authenticates buyer and checks its rate limit, it must be invoked
+   * inside transaction.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @return buyer
+   * @throws Exception - ExcCode SPAM if buyer isn't authenticated or
+   *  limit is exceeded
+   **/
+  private Buyer authByr(final Map<String, Object> pRvs,
+    final IReqDt pRqDt) throws Exception {
+    Buyer rz = this.buySr.getAuthBuyr(pRvs, pRqDt);
+    if (rz == null) {
       this.hndSpam.handle(pRvs, pRqDt, 1000, "PrPpl. buyer auth err!");
       throw new ExcCode(ExcCode.SPAM, "PrPpl. buyer auth err!");
     }
-    String paymentID = pRqDt.getParam("paymentID");
-    if (paymentID == null) {
-      this.hndSpam.handle(pRvs, pRqDt, 1000,
-        "There is no paymentID for payerID: " + pPayerId);
-      throw new ExcCode(ExcCode.SPAM,
-        "There is no paymentID for payerID: " + pPayerId);
+    lmtByr(pRvs, pRqDt, rz.getIid());
+    return rz;
+  }
+
+  /**
+   * <p>Checks buyer's rate limit.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @param pBuyrId buyer ID
+   * @throws Exception - ExcCode SPAM if limit is exceeded
+   **/
+  private void lmtByr(final Map<String, Object> pRvs, final IReqDt pRqDt,
+    final Long pBuyrId) throws Exception {
+    if (this.lmtPpl != null && !this.lmtPpl.alwByr(pBuyrId)) {
+      this.hndSpam.handle(pRvs, pRqDt, 10, "PrPpl. buyer rate limit!");
+      throw new ExcCode(ExcCode.SPAM, "PrPpl. buyer rate limit: "
+        + pBuyrId);
     }
-    Map<String, Object> vs = new HashMap<String, Object>();
-    OnlPay onpa = new OnlPay();
-    onpa.setIid(buyer);
-    this.orm.refrEnt(pRvs, vs, onpa);
+  }
+
+  /**
+   * <p>It handles buyer's cancel/return from PayPal site.
+   * It's only short transaction without remote calls.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @param pSetAdd AddStg
+   * @throws Exception - an exception
+   **/
+  public final void cncRet(final Map<String, Object> pRvs,
+    final IReqDt pRqDt, final AddStg pSetAdd) throws Exception {
+    boolean dbgSh = getLog().getDbgSh(getClass(), 17000);
+    if (dbgSh) {
+      getLog().debug(pRvs, PrPpl.class, "Cancel/return...");
+    }
+    Long buyrId = Long.parseLong(pRqDt.getParam("buyr"));
+    Buyer buyr = new Buyer();
+    buyr.setIid(buyrId);
+    //read-only preflight, without DB on near-cache hit:
+    long st = System.nanoTime();
+    OnlPay onpa = gtCchd(buyr, pRqDt.getParam("pur"), null);
+    if (onpa == null) {
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.setTrIsl(trIsl(PplStg.TR_CNCRD, pSetAdd));
+        this.rdb.begin();
+        onpa = lodOnPa(pRvs, buyr, pRqDt.getParam("pur"), null);
+        this.rdb.commit();
+      } catch (Exception ex) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw ex;
+      } finally {
+        this.rdb.release();
+      }
+    }
+    this.mtr.rec(MtrPpl.DBOP, st);
     if (onpa.getIid() == null) {
       this.hndSpam.handle(pRvs, pRqDt, 100,
-        "OnlPay not found for buyer ID: " + buyer.getIid());
+        "OnlPay not found for buyer ID: " + buyrId);
       throw new ExcCode(ExcCode.SPAM, "OnlPay not found for buyer ID: "
-        + buyer.getIid());
-    }
-    if (!onpa.getPayId().equals(paymentID)) {
-      this.hndSpam.handle(pRvs, pRqDt, 100,
-        "OnlPay payId doesn't not match for buyer ID: " + buyer.getIid());
-      throw new ExcCode(ExcCode.SPAM,
-        "OnlPay payId doesn't not match for buyer ID: " + buyer.getIid());
+        + buyrId);
     }
     long now = new Date().getTime();
-    if (now - onpa.getDat().getTime() > 600000) { //10 minutes
+    if (now - onpa.getDat().getTime() > this.payTo) {
       this.hndSpam.handle(pRvs, pRqDt, 100,
-        "OnlPay outdated for buyer ID: " + buyer.getIid());
+        "OnlPay outdated for buyer ID: " + buyrId);
       throw new ExcCode(ExcCode.SPAM, "OnlPay outdated for buyer ID: "
-        + buyer.getIid());
+        + buyrId);
     }
-    PayMd payMd = null;
-    if (pSetAdd.getOnlMd() == 1 || onpa.getSelr() == null) {
-      //Owner is only online payee:
-      List<PayMd> payMds = this.orm.retLstCnd(pRvs, vs, PayMd.class,
-        "where NME='PAYPAL'");
-      if (payMds.size() == 1) {
-        payMd = payMds.get(0);
+    //only canceling is made with booking isolation:
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_CNC, pSetAdd));
+      this.rdb.begin();
+      st = System.nanoTime();
+      this.cncOrd.cancel(pRvs, buyr, onpa.getPur(), EOrdStat.BOOKED,
+        EOrdStat.NEW);
+      this.mtr.rec(MtrPpl.DBOR, st);
+      this.rdb.commit();
+      if (this.cchOnPa != null) {
+        this.cchOnPa.evict(buyrId);
       }
-    } else {
-      List<SePayMd> payMds = this.orm.retLstCnd(pRvs, vs, SePayMd.class,
-        "where NME='PAYPAL' and SEL=" + onpa.getSelr().getIid().getIid());
-      if (payMds.size() == 1) {
-        payMd = payMds.get(0);
+      pRvs.put("pplPayId", onpa.getPayId());
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
       }
+      throw ex;
+    } finally {
+      this.rdb.release();
     }
-    if (payMd == null) {
-      this.cncOrd.cancel(pRvs, buyer, onpa.getPur(), EOrdStat.BOOKED,
-        EOrdStat.NEW);
-      this.log.error(pRvs, getClass(), "There is no payment method!!!");
+    String cnc = pRqDt.getParam("cnc");
+    if (cnc != null) {
+      pRvs.put("pplStat", "canceled");
+      this.mtr.inc(MtrPpl.CANCELED);
     } else {
-      APIContext apiCon = new APIContext(payMd.getSec1(),
-        payMd.getSec2(), payMd.getMde());
-      Payment pay = new Payment();
-      pay.setId(paymentID);
-      PaymentExecution payExec = new PaymentExecution();
-      payExec.setPayerId(pPayerId);
-      pay.execute(apiCon, payExec);
-      pRvs.put("pplPayId", pay.getId());
-      pRvs.put("pplStat", "executed");
-      ColVals cvs = new ColVals();
-      this.srvClVl.put(cvs, "ver", new Date().getTime());
-      this.srvClVl.put(cvs, "stas", EOrdStat.PAYED.ordinal());
-      this.rdb.update(CuOr.class, cvs, "PAYM in(9,10) and BUYR="
-        + onpa.getBuyr().getIid() + " and PUR=" + onpa.getPur());
-      this.rdb.update(CuOrSe.class, cvs, "PAYM in(9,10) and BUYR="
-        + onpa.getBuyr().getIid() + " and PUR=" + onpa.getPur());
-      this.srCart.emptyCart(pRvs, buyer);
+      pRvs.put("pplStat", "return");
+      this.mtr.inc(MtrPpl.RETURN);
     }
+    getLog().info(pRvs, PrPpl.class, "buyer/pid/result " + buyr
+      .getIid() + "/" + pRvs.get("pplPayId") + "/" + pRvs.get("pplStat"));
   }
 
   /**
-   * <p>It makes phase 1 - create payment.</p>
+   * <p>It makes phase 2 - execution payment. Duplicate requests
+   * (e.g. double-click) are coalesced by CoPh2, i.e. they reuse result
+   * of the first one including redirect to the next payee's approval
+   * in multi-payee mode. Buyer is authenticated and rate limited before
+   * coalescing, and result is shared only with the same buyer.</p>
    * @param pRvs request scoped vars
    * @param pRqDt Request Data
    * @param pSetAdd AddStg
+   * @param pPayerId Payer ID
    * @throws Exception - an exception
    **/
-  public final void phase1(final Map<String, Object> pRvs,
-    final IReqDt pRqDt, final AddStg pSetAdd) throws Exception {
-    boolean dbgSh = getLog().getDbgSh(getClass(), 17001);
+  public final void phase2(final Map<String, Object> pRvs,
+    final IReqDt pRqDt, final AddStg pSetAdd,
+      final String pPayerId) throws Exception {
+    String paymentID = pRqDt.getParam("paymentID");
+    if (this.coPh2 == null || paymentID == null) {
+      exePh2(pRvs, pRqDt, pSetAdd, pPayerId, null);
+      return;
+    }
+    Buyer buyer;
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_PH2RD, pSetAdd));
+      this.rdb.begin();
+      buyer = authByr(pRvs, pRqDt);
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    CoPh2.Flt flt = this.coPh2.join(buyer.getIid(), paymentID, pPayerId);
+    if (!flt.getLdr()) {
+      String stat = this.coPh2.await(flt);
+      if (stat != null) {
+        getLog().info(pRvs, PrPpl.class, "Duplicate execution, pid/result "
+          + paymentID + "/" + stat);
+        String redUrl = flt.getRedUrl();
+        if (redUrl != null) {
+          pRqDt.setAttr("redirectURL", redUrl);
+        }
+        pRvs.put("pplPayId", paymentID);
+        pRvs.put("pplStat", stat);
+        return;
+      }
+    }
+    String stat = null;
+    String redUrl = null;
+    try {
+      exePh2(pRvs, pRqDt, pSetAdd, pPayerId, buyer);
+      stat = (String) pRvs.get("pplStat");
+      redUrl = (String) pRqDt.getAttr("redirectURL");
+    } finally {
+      this.coPh2.done(flt, stat, redUrl);
+    }
+  }
+
+  /**
+   * <p>It executes payment.
+   * It's split into pipeline - short transaction that checks OnlPay,
+   * claims it (negative VER), so sweeper skips it,
+   * and retrieves payment method, then PayPal execution without any
+   * DB connection held, then short transaction that records result.
+   * If application dies between execution and recording, then
+   * buyer's repeated return request will find that payment is already
+   * approved and will record it. In multi-payee mode only payee's
+   * orders are recorded as payed, and buyer is redirected to approve
+   * the next payment if there is. In this case claim is released and
+   * OnlPay time is refreshed, so the next payment has the whole timeout,
+   * otherwise sweeper cancels only unpaid payees' BOOKED orders.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @param pSetAdd AddStg
+   * @param pPayerId Payer ID
+   * @param pBuyr authenticated and rate limited buyer or null
+   * @throws Exception - an exception
+   **/
+  private void exePh2(final Map<String, Object> pRvs,
+    final IReqDt pRqDt, final AddStg pSetAdd, final String pPayerId,
+      final Buyer pBuyr) throws Exception {
+    boolean dbgSh = getLog().getDbgSh(getClass(), 17002);
     if (dbgSh) {
-      getLog().debug(pRvs, PrPpl.class, "Phase1...");
+      getLog().debug(pRvs, PrPpl.class, "Phase2...");
     }
-    //it must be request from authorized buyer's browser:
-    Cart cart = this.srCart.getCart(pRvs, pRqDt, false, true);
-    if (cart != null && !cart.getErr()) {
-      //phase 1, creating payment:
-      Map<String, Object> vs = new HashMap<String, Object>();
-      List<PayMd> payMds = null;
-      List<SePayMd> payMdsSe = null;
-      String wherePpl = "where NME='PAYPAL'";
-      payMds = this.orm.retLstCnd(pRvs, vs, PayMd.class, wherePpl);
-      payMdsSe = this.orm.retLstCnd(pRvs, vs, SePayMd.class, wherePpl);
-      Purch pur = this.acpOrd.accept(pRvs, pRqDt, cart.getBuyr());
-      CuOr ord = null;
-      SeSel sel = null;
-      List<CuOr> ppords = null;
-      List<CuOrSe> ppsords = null;
-      if (pur.getOrds() != null && pur.getOrds().size() > 0) {
-        //checking orders with PayPal payment:
-        for (CuOr or : pur.getOrds()) {
-          if (or.getPaym().equals(EPaymMth.PAYPAL)
-            || or.getPaym().equals(EPaymMth.PAYPAL_ANY)) {
-            if (ppords == null) {
-              ppords = new ArrayList<CuOr>();
-            }
-            ppords.add(or);
+    String paymentID = pRqDt.getParam("paymentID");
+    Buyer buyer = null;
+    OnlPay onpa = null;
+    PayMd payMd = null;
+    List<SrMlPay.MlPay> mps = null;
+    SrMlPay.MlPay mp = null;
+    long clmVer = 0L;
+    int ords = -1;
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_PH2RD, pSetAdd));
+      this.rdb.begin();
+      buyer = pBuyr;
+      if (buyer == null) {
+        buyer = authByr(pRvs, pRqDt);
+      }
+      if (paymentID == null) {
+        this.hndSpam.handle(pRvs, pRqDt, 1000,
+          "There is no paymentID for payerID: " + pPayerId);
+        throw new ExcCode(ExcCode.SPAM,
+          "There is no paymentID for payerID: " + pPayerId);
+      }
+      long st = System.nanoTime();
+      //it's claimed by VER, so near-cache isn't used:
+      onpa = new OnlPay();
+      onpa.setIid(buyer);
+      this.orm.refrEnt(pRvs, new HashMap<String, Object>(), onpa);
+      this.mtr.rec(MtrPpl.DBOP, st);
+      if (onpa.getIid() == null) {
+        this.hndSpam.handle(pRvs, pRqDt, 100,
+          "OnlPay not found for buyer ID: " + buyer.getIid());
+        throw new ExcCode(ExcCode.SPAM, "OnlPay not found for buyer ID: "
+          + buyer.getIid());
+      }
+      if (PAYID_MULTI.equals(onpa.getPayId()) && this.srMlPay != null) {
+        mps = this.srMlPay.lod(pRvs, buyer.getIid());
+        for (SrMlPay.MlPay m : mps) {
+          if (m.getPayId().equals(paymentID)
+            && m.getPur().equals(onpa.getPur())) {
+            mp = m;
           }
         }
       }
-      if (pur.getSords() != null && pur.getSords().size() > 0) {
-        //checking S.E. orders with PayPal payment:
-        for (CuOrSe or : pur.getSords()) {
-          if (or.getPaym().equals(EPaymMth.PAYPAL)
-            || or.getPaym().equals(EPaymMth.PAYPAL_ANY)) {
-            if (ppsords == null) {
-              ppsords = new ArrayList<CuOrSe>();
-              sel = or.getSelr();
-            } else if (pSetAdd.getOnlMd() == 0 && !sel.getIid().getIid()
-              .equals(or.getSelr().getIid().getIid())) {
-              throw new Exception("Several S.E.Payee in purchase!");
-            }
-            ppsords.add(or);
-          }
+      if (mp == null && !onpa.getPayId().equals(paymentID)) {
+        this.hndSpam.handle(pRvs, pRqDt, 100,
+          "OnlPay payId doesn't not match for buyer ID: " + buyer.getIid());
+        throw new ExcCode(ExcCode.SPAM,
+          "OnlPay payId doesn't not match for buyer ID: " + buyer.getIid());
+      }
+      long now = new Date().getTime();
+      if (now - onpa.getDat().getTime() > this.payTo) {
+        this.hndSpam.handle(pRvs, pRqDt, 100,
+          "OnlPay outdated for buyer ID: " + buyer.getIid());
+        throw new ExcCode(ExcCode.SPAM, "OnlPay outdated for buyer ID: "
+          + buyer.getIid());
+      }
+      //claim, so sweeper skips it:
+      clmVer = -now;
+      if (updVer(onpa, clmVer, onpa.getVer()) != 1) {
+        throw new Exception("OnlPay was changed by concurrent request, buyer "
+          + buyer.getIid());
+      }
+      if (this.cchOnPa != null) {
+        this.cchOnPa.evict(buyer.getIid());
+      }
+      if (this.srPayJr != null) {
+        //expected orders count:
+        SrPayJr.Rec jr = this.srPayJr.fnd(pRvs, paymentID);
+        if (jr != null) {
+          ords = jr.getOrds();
         }
       }
-      PayMd payMd = null;
-      if (pSetAdd.getOnlMd() == 1 || ppords != null && ppsords == null) {
-        //payee - owner
-        if (payMds.size() != 1) {
-          throw new Exception("There is no properly PPL PayMd");
-        } else {
+      Long selId = null;
+      if (mp != null) {
+        selId = mp.getSelr();
+      } else if (onpa.getSelr() != null) {
+        selId = onpa.getSelr().getIid().getIid();
+      }
+      if (pSetAdd.getOnlMd() == 1 || selId == null) {
+        //Owner is only online payee:
+        List<PayMd> payMds = this.cchPayMd.lazOwn(pRvs, this.orm);
+        if (payMds.size() == 1) {
           payMd = payMds.get(0);
         }
-      } else { //there is only payee - S.E.seller:
-        SePayMd payMdSe = null;
-        for (SePayMd pm : payMdsSe) {
-          if (payMdSe == null && sel.getIid().getIid()
-            .equals(pm.getSelr().getIid().getIid())) {
-            payMdSe = pm;
-            payMd = pm;
-          } else if (payMdSe != null && payMdSe.getSelr().getIid()
-            .getIid().equals(pm.getSelr().getIid().getIid())) {
-            throw new Exception(
-              "There is no properly PPL SePayMd for seller#"
-                + sel.getIid().getIid());
+      } else {
+        List<SePayMd> payMds = this.cchPayMd.lazSel(pRvs, this.orm, selId);
+        if (payMds.size() == 1) {
+          payMd = payMds.get(0);
+        }
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    //claim is released on every path where execution surely isn't sent
+    //to PayPal, otherwise (unknown result) sweeper resolves it later:
+    String dsc = "buyer/pid " + buyer.getIid() + "/" + paymentID;
+    boolean snt = false;
+    try {
+      if (payMd == null) {
+        this.log.error(pRvs, getClass(), "There is no payment method!!!");
+        try {
+          this.rdb.setAcmt(false);
+          this.rdb.setTrIsl(trIsl(PplStg.TR_CNC, pSetAdd));
+          this.rdb.begin();
+          this.cncOrd.cancel(pRvs, buyer, onpa.getPur(), EOrdStat.BOOKED,
+            EOrdStat.NEW);
+          this.rdb.commit();
+        } catch (Exception ex) {
+          if (!this.rdb.getAcmt()) {
+            this.rdb.rollBack();
+          }
+          throw ex;
+        } finally {
+          this.rdb.release();
+        }
+        //nothing is sent, so sweeper may expire it:
+        unclm(pRvs, pSetAdd, onpa, clmVer);
+        return;
+      }
+      //remote calls without DB connection, execution and recovery are
+      //guarded and recorded separately, each one by own permit:
+      GrdPpl.Brk brk = acqGrd(payMd, dsc);
+      long bst = System.nanoTime();
+      Exception bex = null;
+      PayPalRESTException exEx = null;
+      APIContext apiCon;
+      try {
+        apiCon = this.cchTk.apiCon(payMd);
+        //idempotency key, payment ID is unique:
+        apiCon.setRequestId("bse-" + paymentID);
+        Payment pay = new Payment();
+        pay.setId(paymentID);
+        PaymentExecution payExec = new PaymentExecution();
+        payExec.setPayerId(pPayerId);
+        long st = System.nanoTime();
+        pRvs.remove("pplRtr");
+        snt = true;
+        try {
+          this.cnPpl.execute(pRvs, apiCon, pay, payExec);
+        } catch (PayPalRESTException ex) {
+          bex = ex;
+          exEx = ex;
+        } catch (ExcCode ex) {
+          if (ex.getCode() == GrdPpl.BUSY && pRvs.get("pplRtr") == null) {
+            //the first attempt is rejected by full queue:
+            snt = false;
+          }
+          throw ex;
+        } finally {
+          this.mtr.rec(MtrPpl.RMEX, st);
+        }
+      } catch (Exception ex) {
+        bex = ex;
+        throw ex;
+      } finally {
+        if (brk != null) {
+          this.grdPpl.rel(pRvs, brk, bst, bex);
+        }
+      }
+      if (exEx != null) {
+        if (this.cchTk.evict(payMd, exEx)) {
+          this.cchPayMd.clear();
+        }
+        //recovery - it may be already executed by died request:
+        Payment exPay;
+        try {
+          brk = acqGrd(payMd, dsc);
+        } catch (Exception ex1) {
+          //execution error is the cause, recovery one is only attached:
+          exEx.addSuppressed(ex1);
+          throw exEx;
+        }
+        bst = System.nanoTime();
+        bex = null;
+        try {
+          apiCon.setRequestId(null);
+          exPay = this.cnPpl.get(pRvs, apiCon, paymentID);
+        } catch (Exception ex1) {
+          bex = ex1;
+          exEx.addSuppressed(ex1);
+          throw exEx;
+        } finally {
+          this.mtr.rec(MtrPpl.RMGT, bst);
+          if (brk != null) {
+            this.grdPpl.rel(pRvs, brk, bst, bex);
+          }
+        }
+        if (!"approved".equals(exPay.getState())) {
+          //surely not executed, so sweeper may cancel it:
+          unclm(pRvs, pSetAdd, onpa, clmVer);
+          throw exEx;
+        }
+        getLog().warn(pRvs, PrPpl.class, "Payment is already approved, "
+          + dsc);
+      }
+    } catch (Exception ex) {
+      if (!snt) {
+        unclm(pRvs, pSetAdd, onpa, clmVer);
+      }
+      throw ex;
+    }
+    long st;
+    SrMlPay.MlPay nxt = null;
+    if (mp != null) {
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.setTrIsl(trIsl(PplStg.TR_PH2, pSetAdd));
+        this.rdb.begin();
+        st = System.nanoTime();
+        boolean isFst = true;
+        for (SrMlPay.MlPay m : mps) {
+          if (m.getStas() == SrMlPay.EXECUTED) {
+            isFst = false;
           }
         }
+        this.srPayd.paydPy(pRvs, buyer.getIid(), onpa.getPur(),
+          mp.getSelr(), false, ords);
+        this.srMlPay.exed(pRvs, mp);
+        this.mtr.rec(MtrPpl.DBPD, st);
+        for (SrMlPay.MlPay m : mps) {
+          if (m.getStas() == SrMlPay.CREATED) {
+            nxt = m;
+            break;
+          }
+        }
+        if (isFst) {
+          //purchase is (partly) paid, so cart can't be checked out again:
+          this.srCart.emptyCart(pRvs, buyer);
+        }
+        if (nxt != null) {
+          rfrOnPa(pRvs, onpa, clmVer);
+        }
+        this.rdb.commit();
+      } catch (Exception ex) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw ex;
+      } finally {
+        this.rdb.release();
+      }
+    } else {
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.setTrIsl(trIsl(PplStg.TR_PH2, pSetAdd));
+        this.rdb.begin();
+        st = System.nanoTime();
+        this.srPayd.payd(pRvs, buyer.getIid(), onpa.getPur(), false, ords);
+        this.mtr.rec(MtrPpl.DBPD, st);
+        this.srCart.emptyCart(pRvs, buyer);
+        this.rdb.commit();
+      } catch (Exception ex) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw ex;
+      } finally {
+        this.rdb.release();
+      }
+    }
+    if (this.cchOnPa != null) {
+      this.cchOnPa.evict(buyer.getIid());
+    }
+    pRvs.put("pplPayId", paymentID);
+    this.mtr.inc(MtrPpl.EXECUTED);
+    if (nxt != null) {
+      //buyer approves the next payee's payment:
+      pRqDt.setAttr("redirectURL", nxt.getApru());
+      pRvs.put("pplStat", "created");
+    } else {
+      pRvs.put("pplStat", "executed");
+    }
+  }
+
+  /**
+   * <p>It makes phase 1 - create payment.
+   * It's split into pipeline - short transaction that books orders
+   * and saves payment intent (OnlPay with payment ID INTENT),
+   * then PayPal creation without any DB connection held, then short
+   * transaction that records payment ID. If creation failed or payment ID
+   * can't be recorded, then booked orders will be canceled.
+   * If application dies between transactions, then OnlPay stays with
+   * INTENT, so it can't be executed, and its booked orders will be
+   * canceled by accepting service or
+   * by buyer's cancel request. In multi-payee mode every payee
+   * (owner, S.E.Sellers) gets own payment, they are created concurrently,
+   * OnlPay holds MULTI and payments are recorded by SrMlPay.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @param pSetAdd AddStg
+   * @throws Exception - an exception
+   **/
+  public final void phase1(final Map<String, Object> pRvs,
+    final IReqDt pRqDt, final AddStg pSetAdd) throws Exception {
+    boolean dbgSh = getLog().getDbgSh(getClass(), 17001);
+    if (dbgSh) {
+      getLog().debug(pRvs, PrPpl.class, "Phase1...");
+    }
+    List<Pye> pyes = new ArrayList<Pye>();
+    Buyer buyr = null;
+    Long purId = null;
+    OnlPay onpa = null;
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_PH1, pSetAdd));
+      this.rdb.begin();
+      //it must be request from authorized buyer's browser:
+      Cart cart = this.srCart.getCart(pRvs, pRqDt, false, true);
+      if (cart != null && !cart.getErr()) {
+        lmtByr(pRvs, pRqDt, cart.getBuyr().getIid());
+        //phase 1, creating payment:
+        long st = System.nanoTime();
+        Purch pur = this.acpOrd.accept(pRvs, pRqDt, cart.getBuyr());
+        this.mtr.rec(MtrPpl.DBOR, st);
+        List<CuOr> ppords = null;
+        List<CuOrSe> ppsords = null;
+        SeSel sel = null;
+        boolean isMl = false;
+        if (pur.getOrds() != null && pur.getOrds().size() > 0) {
+          //checking orders with PayPal payment:
+          for (CuOr or : pur.getOrds()) {
+            if (or.getPaym().equals(EPaymMth.PAYPAL)
+              || or.getPaym().equals(EPaymMth.PAYPAL_ANY)) {
+              if (ppords == null) {
+                ppords = new ArrayList<CuOr>();
+              }
+              ppords.add(or);
+            }
+          }
+        }
+        if (pur.getSords() != null && pur.getSords().size() > 0) {
+          //checking S.E. orders with PayPal payment:
+          for (CuOrSe or : pur.getSords()) {
+            if (or.getPaym().equals(EPaymMth.PAYPAL)
+              || or.getPaym().equals(EPaymMth.PAYPAL_ANY)) {
+              if (ppsords == null) {
+                ppsords = new ArrayList<CuOrSe>();
+                sel = or.getSelr();
+              } else if (pSetAdd.getOnlMd() == 0 && !sel.getIid().getIid()
+                .equals(or.getSelr().getIid().getIid())) {
+                if (this.srMlPay == null) {
+                  throw new Exception("Several S.E.Payee in purchase!");
+                }
+                isMl = true;
+              }
+              ppsords.add(or);
+            }
+          }
+        }
+        if (this.srMlPay != null && pSetAdd.getOnlMd() == 0
+          && ppords != null && ppsords != null) {
+          isMl = true;
+        }
+        if (isMl) {
+          mkPyes(pRvs, cart, ppords, ppsords, pyes);
+        } else {
+          Pye pye = new Pye();
+          pye.sel = sel;
+          if (pSetAdd.getOnlMd() == 1 || ppords != null && ppsords == null) {
+            //payee - owner
+            pye.payMd = ownPayMd(pRvs);
+          } else { //there is only payee - S.E.seller:
+            pye.payMd = selPayMd(pRvs, sel);
+          }
+          st = System.nanoTime();
+          CuOr[] lns = this.srPplLn.lod(pRvs, ppords, ppsords);
+          this.mtr.rec(MtrPpl.DBLN, st);
+          st = System.nanoTime();
+          CuOr ord = null;
+          if (ppords != null && ppords.size() > 0) {
+            //proceed PayPal orders:
+            ord = makePplOrds(pRvs, cart, lns[0], false);
+            ord.setCurr(ppords.get(0).getCurr());
+            ord.setPur(ppords.get(0).getPur());
+          }
+          if (ppsords != null && ppsords.size() > 0) {
+            //proceed PayPal S.E. orders:
+            if (ord == null) {
+              ord = makePplOrds(pRvs, cart, lns[1], true);
+              ord.setCurr(ppsords.get(0).getCurr());
+              ord.setPur(ppsords.get(0).getPur());
+            } else {
+              CuOr sord = makePplOrds(pRvs, cart, lns[1], true);
+              ord.setGoods(LstCnc.cnc(ord.getGoods(), sord.getGoods()));
+              ord.setServs(LstCnc.cnc(ord.getServs(), sord.getServs()));
+              ord.setTaxes(LstCnc.cnc(ord.getTaxes(), sord.getTaxes()));
+              ord.setTot(ord.getTot().add(sord.getTot()));
+              ord.setToTx(ord.getToTx().add(sord.getToTx()));
+              ord.setSubt(ord.getSubt().add(sord.getSubt()));
+            }
+          }
+          this.mtr.rec(MtrPpl.MKOR, st);
+          if (ord != null) {
+            pye.ord = ord;
+            if (ppords != null) {
+              pye.ords += ppords.size();
+            }
+            if (ppsords != null) {
+              pye.ords += ppsords.size();
+            }
+            pyes.add(pye);
+          }
+        }
+        if (pyes.size() == 0) {
+          throw new Exception("Can't create PPL payment!");
+        }
+        for (Pye pye : pyes) {
+          if (this.grdPpl != null && this.grdPpl.isOpn(pye.payMd)) {
+            //rolling back booking:
+            throw new ExcCode(GrdPpl.BUSY, "PayPal circuit is open, buyer "
+              + cart.getBuyr().getIid());
+          }
+        }
+        st = System.nanoTime();
+        for (Pye pye : pyes) {
+          if (this.wrPay != null) {
+            pye.payLd = crPayLd(pRvs, pRqDt, pye.ord, pye.sel);
+          } else {
+            pye.pay = createPay(pRvs, pRqDt, pye.ord, pye.sel);
+          }
+        }
+        this.mtr.rec(MtrPpl.CRPA, st);
+        buyr = pyes.get(0).ord.getBuyr();
+        purId = pyes.get(0).ord.getPur();
+        st = System.nanoTime();
+        SeSel osel = null;
+        if (pyes.size() == 1) {
+          osel = pyes.get(0).sel;
+        }
+        onpa = savOnPa(pRvs, buyr, purId, osel, PAYID_INTENT);
+        this.mtr.rec(MtrPpl.DBOP, st);
+      } else if (cart != null && cart.getErr()) {
+        throw new Exception("Cart with error for buyer ID: " + cart.getBuyr()
+          .getIid());
+      } else {
+        this.hndSpam.handle(pRvs, pRqDt, 1000, "PrPpl. buyer auth err!");
+        throw new ExcCode(ExcCode.SPAM, "PrPpl. buyer auth err!");
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      if (onpa != null && this.cchOnPa != null) {
+        this.cchOnPa.evict(onpa.getIid().getIid());
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    if (this.cchOnPa != null) {
+      this.cchOnPa.put(onpa);
+    }
+    //remote calls without DB connection, idempotency key,
+    //so retries can't make duplicate payment:
+    String rqId = "bsc-" + Long.toString(buyr.getIid(), 36) + "-"
+      + Long.toString(purId, 36) + "-"
+        + Long.toString(onpa.getDat().getTime(), 36);
+    List<Payment> crPays;
+    try {
+      if (pyes.size() == 1) {
+        crPays = new ArrayList<Payment>(1);
+        crPays.add(crPye(pRvs, pyes.get(0), rqId));
+      } else {
+        List<Callable<Payment>> tsks = new ArrayList<Callable<Payment>>();
+        for (final Pye pye : pyes) {
+          //own vars, every payee is created by own thread:
+          final Map<String, Object> rvs;
+          if (tsks.size() == 0) {
+            rvs = pRvs;
+          } else {
+            rvs = new HashMap<String, Object>(pRvs);
+          }
+          final String prqId;
+          if (pye.sel == null) {
+            prqId = rqId + "-o";
+          } else {
+            prqId = rqId + "-" + Long.toString(pye.sel.getIid().getIid(), 36);
+          }
+          tsks.add(new Callable<Payment>() {
+            @Override
+            public Payment call() throws Exception {
+              return crPye(rvs, pye, prqId);
+            }
+          });
+        }
+        crPays = this.exMlPpl.all(tsks);
+      }
+    } catch (Exception ex) {
+      cncBkd(pRvs, pSetAdd, buyr, purId);
+      throw ex;
+    }
+    Exception svEx = null;
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_PH1SV, pSetAdd));
+      this.rdb.begin();
+      long st = System.nanoTime();
+      if (pyes.size() == 1) {
+        onpa = savOnPa(pRvs, buyr, purId, pyes.get(0).sel,
+          crPays.get(0).getId());
+        if (this.srPayJr != null) {
+          Long selr = null;
+          if (pyes.get(0).sel != null) {
+            selr = pyes.get(0).sel.getIid().getIid();
+          }
+          this.srPayJr.sav(pRvs, crPays.get(0).getId(), buyr.getIid(),
+            purId, selr, false, pyes.get(0).ords);
+        }
+      } else {
+        onpa = savOnPa(pRvs, buyr, purId, null, PAYID_MULTI);
+        List<SrMlPay.MlPay> mps = new ArrayList<SrMlPay.MlPay>();
+        for (int i = 0; i < pyes.size(); i++) {
+          SrMlPay.MlPay mp = new SrMlPay.MlPay();
+          mp.setPayId(crPays.get(i).getId());
+          mp.setBuyr(buyr.getIid());
+          mp.setPur(purId);
+          if (pyes.get(i).sel != null) {
+            mp.setSelr(pyes.get(i).sel.getIid().getIid());
+          }
+          mp.setStas(SrMlPay.CREATED);
+          mp.setApru(aprUrl(crPays.get(i)));
+          mps.add(mp);
+          if (this.srPayJr != null) {
+            this.srPayJr.sav(pRvs, mp.getPayId(), mp.getBuyr(),
+              mp.getPur(), mp.getSelr(), true, pyes.get(i).ords);
+          }
+        }
+        this.srMlPay.sav(pRvs, buyr.getIid(), mps);
+      }
+      this.mtr.rec(MtrPpl.DBOP, st);
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      if (this.cchOnPa != null) {
+        this.cchOnPa.evict(buyr.getIid());
+      }
+      svEx = ex;
+    } finally {
+      this.rdb.release();
+    }
+    if (svEx != null) {
+      //created payment(s) can't be executed without recorded ID,
+      //they will expire on PayPal side, so un-booking orders:
+      cncBkd(pRvs, pSetAdd, buyr, purId);
+      throw svEx;
+    }
+    if (this.cchOnPa != null) {
+      this.cchOnPa.put(onpa);
+    }
+    //buyer approves the first payment, then the next ones:
+    String apru = aprUrl(crPays.get(0));
+    if (apru != null) {
+      pRqDt.setAttr("redirectURL", apru);
+    }
+    pRvs.put("pplPayId", crPays.get(0).getId());
+    pRvs.put("pplStat", "created");
+    this.mtr.inc(MtrPpl.CREATED);
+  }
+
+  /**
+   * <p>Compensation of phase 1 - un-booking orders in own transaction.
+   * Its failure is only logged, so caller rethrows the original error.</p>
+   * @param pRvs request scoped vars
+   * @param pSetAdd AddStg
+   * @param pBuyr buyer
+   * @param pPur purchase ID
+   * @throws Exception - if connection can't be rolled back or released
+   **/
+  private void cncBkd(final Map<String, Object> pRvs, final AddStg pSetAdd,
+    final Buyer pBuyr, final Long pPur) throws Exception {
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_CNC, pSetAdd));
+      this.rdb.begin();
+      this.cncOrd.cancel(pRvs, pBuyr, pPur, EOrdStat.BOOKED,
+        EOrdStat.NEW);
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      getLog().error(pRvs, PrPpl.class, "Can't cancel orders buyer/pur "
+        + pBuyr.getIid() + "/" + pPur, ex);
+    } finally {
+      this.rdb.release();
+    }
+  }
+
+  /**
+   * <p>Creates payee's payment by remote call, it's guarded by bulkhead
+   * and circuit breaker.</p>
+   * @param pRvs request scoped vars
+   * @param pPye payee's payment
+   * @param pRqId idempotency key
+   * @return created payment
+   * @throws Exception - an exception
+   **/
+  private Payment crPye(final Map<String, Object> pRvs, final Pye pPye,
+    final String pRqId) throws Exception {
+    GrdPpl.Brk brk = null;
+    long st = System.nanoTime();
+    try {
+      if (this.grdPpl != null) {
+        brk = this.grdPpl.acq(pPye.payMd);
+        if (brk == null) {
+          throw new ExcCode(GrdPpl.BUSY, "PayPal is busy, buyer/pur "
+            + pPye.ord.getBuyr().getIid() + "/" + pPye.ord.getPur());
+        }
+      }
+      APIContext apiCon = this.cchTk.apiCon(pPye.payMd);
+      apiCon.setRequestId(pRqId);
+      st = System.nanoTime();
+      Payment rz;
+      if (pPye.payLd != null) {
+        rz = this.cnPpl.create(pRvs, apiCon, pPye.payLd);
+      } else {
+        rz = this.cnPpl.create(pRvs, apiCon, pPye.pay);
+      }
+      this.mtr.rec(MtrPpl.RMCR, st);
+      if (brk != null) {
+        this.grdPpl.rel(pRvs, brk, st, null);
+      }
+      return rz;
+    } catch (Exception ex) {
+      if (brk != null || this.grdPpl == null) {
+        this.mtr.rec(MtrPpl.RMCR, st);
+      }
+      if (brk != null) {
+        this.grdPpl.rel(pRvs, brk, st, ex);
+      }
+      if (this.cchTk.evict(pPye.payMd, ex)) {
+        this.cchPayMd.clear();
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * <p>Makes multi-payee payments, i.e. owner's one and one per
+   * S.E.Seller.</p>
+   * @param pRvs request scoped vars
+   * @param pCart cart
+   * @param pOrds owner's PayPal orders or null
+   * @param pSords S.E. PayPal orders or null
+   * @param pPyes payee's payments to fill
+   * @throws Exception - an exception
+   **/
+  private void mkPyes(final Map<String, Object> pRvs, final Cart pCart,
+    final List<CuOr> pOrds, final List<CuOrSe> pSords,
+      final List<Pye> pPyes) throws Exception {
+    long st;
+    if (pOrds != null) {
+      st = System.nanoTime();
+      CuOr[] lns = this.srPplLn.lod(pRvs, pOrds, null);
+      this.mtr.rec(MtrPpl.DBLN, st);
+      st = System.nanoTime();
+      CuOr ord = makePplOrds(pRvs, pCart, lns[0], false);
+      this.mtr.rec(MtrPpl.MKOR, st);
+      if (ord != null) {
+        ord.setCurr(pOrds.get(0).getCurr());
+        ord.setPur(pOrds.get(0).getPur());
+        Pye pye = new Pye();
+        pye.ord = ord;
+        pye.ords = pOrds.size();
+        pye.payMd = ownPayMd(pRvs);
+        pPyes.add(pye);
+      }
+    }
+    if (pSords != null) {
+      Map<Long, List<CuOrSe>> sesOrds
+        = new LinkedHashMap<Long, List<CuOrSe>>();
+      for (CuOrSe or : pSords) {
+        Long selId = or.getSelr().getIid().getIid();
+        List<CuOrSe> sords = sesOrds.get(selId);
+        if (sords == null) {
+          sords = new ArrayList<CuOrSe>();
+          sesOrds.put(selId, sords);
+        }
+        sords.add(or);
+      }
+      for (List<CuOrSe> sords : sesOrds.values()) {
+        st = System.nanoTime();
+        CuOr[] lns = this.srPplLn.lod(pRvs, null, sords);
+        this.mtr.rec(MtrPpl.DBLN, st);
+        st = System.nanoTime();
+        CuOr ord = makePplOrds(pRvs, pCart, lns[1], true);
+        this.mtr.rec(MtrPpl.MKOR, st);
+        if (ord != null) {
+          ord.setCurr(sords.get(0).getCurr());
+          ord.setPur(sords.get(0).getPur());
+          Pye pye = new Pye();
+          pye.ord = ord;
+          pye.sel = sords.get(0).getSelr();
+          pye.ords = sords.size();
+          pye.payMd = selPayMd(pRvs, pye.sel);
+          pPyes.add(pye);
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Gets owner's PayPal payment method.</p>
+   * @param pRvs request scoped vars
+   * @return payment method
+   * @throws Exception - if there is no properly one
+   **/
+  private PayMd ownPayMd(final Map<String, Object> pRvs) throws Exception {
+    List<PayMd> payMds = this.cchPayMd.lazOwn(pRvs, this.orm);
+    if (payMds.size() != 1) {
+      throw new Exception("There is no properly PPL PayMd");
+    }
+    return payMds.get(0);
+  }
+
+  /**
+   * <p>Gets S.E.Seller's PayPal payment method.</p>
+   * @param pRvs request scoped vars
+   * @param pSel S.E.Seller
+   * @return payment method
+   * @throws Exception - if there is no properly one
+   **/
+  private PayMd selPayMd(final Map<String, Object> pRvs,
+    final SeSel pSel) throws Exception {
+    List<SePayMd> payMdsSe = this.cchPayMd.lazSel(pRvs, this.orm,
+      pSel.getIid().getIid());
+    if (payMdsSe.size() != 1) {
+      throw new Exception("There is no properly PPL SePayMd for seller#"
+        + pSel.getIid().getIid());
+    }
+    return payMdsSe.get(0);
+  }
+
+  /**
+   * <p>Gets approval URL of created payment.</p>
+   * @param pPay created payment
+   * @return approval URL or null
+   **/
+  private String aprUrl(final Payment pPay) {
+    String rz = null;
+    if (pPay.getLinks() != null) {
+      Iterator<Links> links = pPay.getLinks().iterator();
+      while (links.hasNext()) {
+        Links link = links.next();
+        if (link.getRel().equalsIgnoreCase("approval_url")) {
+          rz = link.getHref();
+        }
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Makes consolidate order with  webstore owner's items.</p>
+   * @param pRvs request scoped vars
+   * @param pCart cart
+   * @param pLns lines holder loaded by SrPplLn
+   * @param pIsSe if S.E. lines, only their invoice basis taxes are
+   * added into order tax total as it was before
+   * @return consolidated order or null if not possible
+   * @throws Exception - an exception
+   **/
+  public final CuOr makePplOrds(final Map<String, Object> pRvs,
+    final Cart pCart, final CuOr pLns, final boolean pIsSe) throws Exception {
+    if (pLns == null || pLns.getGoods() == null && pLns.getServs() == null) {
+      return null;
+    }
+    CuOr ord = new CuOr();
+    ord.setBuyr(pCart.getBuyr());
+    ord.setGoods(pLns.getGoods());
+    ord.setServs(pLns.getServs());
+    if (ord.getGoods() != null) {
+      for (CuOrGdLn il : ord.getGoods()) {
+        //price inclusive tax???
+        //https://stackoverflow.com/questions/24285424/
+        //can-the-paypal-rest-api-display-order-items-with-tax-included
+        if (il.getToTx().compareTo(BigDecimal.ZERO) == 1
+      && il.getPri().multiply(il.getQuan()).compareTo(il.getTot()) == 0) {
+    il.setPri(il.getSubt().divide(il.getQuan(), 2, RoundingMode.HALF_UP));
+        }
+        ord.setTot(ord.getTot().add(il.getTot()));
+        ord.setToTx(ord.getToTx().add(il.getToTx()));
+        ord.setSubt(ord.getSubt().add(il.getSubt()));
+      }
+    }
+    if (ord.getServs() != null) {
+      for (CuOrSrLn il : ord.getServs()) {
+        if (il.getToTx().compareTo(BigDecimal.ZERO) == 1
+      && il.getPri().multiply(il.getQuan()).compareTo(il.getTot()) == 0) {
+    il.setPri(il.getSubt().divide(il.getQuan(), 2, RoundingMode.HALF_UP));
+        }
+        ord.setTot(ord.getTot().add(il.getTot()));
+        ord.setToTx(ord.getToTx().add(il.getToTx()));
+        ord.setSubt(ord.getSubt().add(il.getSubt()));
+      }
+    }
+    if (ord.getToTx().compareTo(BigDecimal.ZERO) == 0
+      && pLns.getTaxes() != null) {
+      //invoice basis:
+      if (pIsSe) {
+        for (CuOrTxLn tl : pLns.getTaxes()) {
+          ord.setToTx(ord.getToTx().add(tl.getTot()));
+        }
+      }
+      ord.setTaxes(pLns.getTaxes());
+    }
+    return ord;
+  }
+
+  /**
+   * <p>Adds PayPal items out of given order lines of any type.</p>
+   * @param pRvs request scoped vars
+   * @param pItms items to fill
+   * @param pLns lines, maybe null
+   * @param pOrd consolidated order
+   * @param pDp amounts decimal places
+   * @param pDbgSh if debug
+   * @throws Exception - an exception
+   **/
+  public final void addItms(final Map<String, Object> pRvs,
+    final List<Item> pItms, final List<? extends AOrdLn> pLns,
+      final CuOr pOrd, final int pDp,
+        final boolean pDbgSh) throws Exception {
+    if (pLns == null) {
+      return;
+    }
+    for (AOrdLn il : pLns) {
+      if (pDbgSh) {
+        getLog().debug(pRvs, PrPpl.class,
+          "item/price/quant/tax: " + il.getNme() + "/" + il.getPri()
+            + "/" + il.getQuan() + "/" + il.getToTx());
+      }
+      Item item = new Item();
+      item.setName(il.getNme());
+      item.setQuantity(Long.valueOf(il.getQuan().longValue()).toString());
+      item.setCurrency(pOrd.getCurr().getStCo());
+      item.setPrice(prn(il.getPri(), pDp));
+      if (il.getToTx().compareTo(BigDecimal.ZERO) == 1) {
+        item.setTax(prn(il.getToTx(), pDp));
+      }
+      if (pDbgSh) {
+        getLog().debug(pRvs, PrPpl.class, "Added item nme/quan/pri/tax/curr: "
+         + item.getName() + "/" + item.getQuantity() + "/" + item.getPrice()
+            + "/" + item.getTax() + "/" + item.getCurrency());
+      }
+      pItms.add(item);
+    }
+  }
+
+  /**
+   * <p>Makes PayPal payment (not yet created) out of given orders lines.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt request data
+   * @param pOrd consolidated order
+   * @param pSel S.E. Seller or NULL
+   * @return payment to create
+   * @throws Exception - an exception
+   **/
+  public final Payment createPay(final Map<String, Object> pRvs,
+    final IReqDt pRqDt, final CuOr pOrd,
+      final SeSel pSel) throws Exception {
+    boolean dbgSh = getLog().getDbgSh(getClass(), 17003);
+    AcStg as = (AcStg) pRvs.get("astg");
+    int dp = this.frmPpl.dp(as.getPrDp(), pOrd.getCurr().getStCo());
+    Details details = new Details();
+    //TODO special headed service "shipping"
+    //details.setShipping("1");
+    details.setSubtotal(prn(pOrd.getSubt(), dp));
+    if (pOrd.getToTx().compareTo(BigDecimal.ZERO) == 1) {
+      details.setTax(prn(pOrd.getToTx(), dp));
+    }
+    if (dbgSh) {
+      getLog().debug(pRvs, PrPpl.class,
+        "Order tot/subt/tax/curr: " + pOrd.getTot() + "/" + pOrd.getSubt() + "/"
+          + pOrd.getToTx() + "/" + pOrd.getCurr().getStCo());
+    }
+    Amount amount = new Amount();
+    amount.setCurrency(pOrd.getCurr().getStCo());
+    amount.setTotal(prn(pOrd.getTot(), dp));
+    amount.setDetails(details);
+    Transaction transaction = new Transaction();
+    transaction.setAmount(amount);
+    //transaction.setDescription();
+    List<Item> items = new ArrayList<Item>();
+    addItms(pRvs, items, pOrd.getGoods(), pOrd, dp, dbgSh);
+    addItms(pRvs, items, pOrd.getServs(), pOrd, dp, dbgSh);
+    ItemList itemList = new ItemList();
+    itemList.setItems(items);
+    transaction.setItemList(itemList);
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    transactions.add(transaction);
+    Payer payer = new Payer();
+    payer.setPaymentMethod("paypal");
+    Payment payment = new Payment();
+    payment.setIntent("sale");
+    payment.setPayer(payer);
+    payment.setTransactions(transactions);
+    RedirectUrls redUrls = new RedirectUrls();
+    redUrls.setCancelUrl(redUrl(pRqDt, pOrd, pSel, true));
+    redUrls.setReturnUrl(redUrl(pRqDt, pOrd, pSel, false));
+    payment.setRedirectUrls(redUrls);
+    if (dbgSh) {
+      getLog().debug(pRvs, PrPpl.class,
+        "Cancel URL: " + redUrls.getCancelUrl());
+    }
+    return payment;
+  }
+
+  /**
+   * <p>Makes PayPal create payment JSON payload out of given orders lines
+   * by streaming writer, i.e. without SDK objects. In debug mode
+   * (17004) it's compared with SDK made one.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt request data
+   * @param pOrd consolidated order
+   * @param pSel S.E. Seller or NULL
+   * @return payload
+   * @throws Exception - an exception
+   **/
+  public final String crPayLd(final Map<String, Object> pRvs,
+    final IReqDt pRqDt, final CuOr pOrd,
+      final SeSel pSel) throws Exception {
+    AcStg as = (AcStg) pRvs.get("astg");
+    int dp = this.frmPpl.dp(as.getPrDp(), pOrd.getCurr().getStCo());
+    String rz = this.wrPay.wrt(pOrd, dp, redUrl(pRqDt, pOrd, pSel, false),
+      redUrl(pRqDt, pOrd, pSel, true));
+    if (getLog().getDbgSh(getClass(), 17004)) {
+      String sdk = createPay(pRvs, pRqDt, pOrd, pSel).toJSON();
+      if (!sdk.equals(rz)) {
+        getLog().error(pRvs, PrPpl.class, "Payload differs from SDK's one: "
+          + rz + "\nSDK: " + sdk);
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Makes redirect URL.</p>
+   * @param pRqDt request data
+   * @param pOrd consolidated order
+   * @param pSel S.E. Seller or NULL
+   * @param pIsCnc if cancel URL, otherwise return one
+   * @return redirect URL
+   **/
+  private String redUrl(final IReqDt pRqDt, final CuOr pOrd,
+    final SeSel pSel, final boolean pIsCnc) {
+    StringBuilder sb = new StringBuilder(128);
+    sb.append(pRqDt.getReqUrl()).append("?prcRed=")
+      .append(pRqDt.getParam("prcRed")).append("&prc=PrPpl");
+    if (pIsCnc) {
+      sb.append("&cnc=1");
+    }
+    sb.append("&pur=").append(pOrd.getPur()).append("&buyr=")
+      .append(pOrd.getBuyr().getIid());
+    if (pSel != null) {
+      sb.append("&sel").append(pSel.getIid().getIid());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * <p>Acquires guard (bulkhead and circuit breaker) permit for single
+   * remote call.</p>
+   * @param pPayMd payment method
+   * @param pDsc description for rejection
+   * @return breaker or null if there is no guard
+   * @throws Exception - ExcCode BUSY if call is rejected
+   **/
+  private GrdPpl.Brk acqGrd(final PayMd pPayMd,
+    final String pDsc) throws Exception {
+    if (this.grdPpl == null) {
+      return null;
+    }
+    GrdPpl.Brk brk = this.grdPpl.acq(pPayMd);
+    if (brk == null) {
+      throw new ExcCode(GrdPpl.BUSY, "PayPal is busy, " + pDsc);
+    }
+    return brk;
+  }
+
+  /**
+   * <p>Updates OnlPay version by optimistic locking.</p>
+   * @param pOnpa OnlPay
+   * @param pVer new version, negative one means claimed by phase 2
+   * @param pOldVer current version
+   * @return updated rows count, 0 means changed concurrently
+   * @throws Exception - an exception
+   **/
+  private int updVer(final OnlPay pOnpa, final long pVer,
+    final long pOldVer) throws Exception {
+    SrSqlPpl srSql = this.srPayd.getSrSqlPpl();
+    if (srSql != null) {
+      PreparedStatement ps = srSql
+        .prp("update ONLPAY set VER=? where IID=? and VER=?");
+      ps.setLong(1, pVer);
+      ps.setLong(2, pOnpa.getIid().getIid());
+      ps.setLong(3, pOldVer);
+      return ps.executeUpdate();
+    }
+    ColVals cvs = new ColVals();
+    this.srvClVl.put(cvs, "ver", pVer);
+    return this.rdb.update(OnlPay.class, cvs, "IID=" + pOnpa.getIid()
+      .getIid() + " and VER=" + pOldVer);
+  }
+
+  /**
+   * <p>Releases phase 2 claim of multi-payee OnlPay that has the next
+   * payment to approve and refreshes its time, so the next payment has
+   * the whole approval timeout, and if buyer doesn't approve it in time,
+   * then sweeper cancels only unpaid payees' BOOKED orders, paid ones
+   * are already PAYED.</p>
+   * @param pRvs request scoped vars
+   * @param pOnpa OnlPay
+   * @param pClmVer claim version
+   * @throws Exception - an exception
+   **/
+  private void rfrOnPa(final Map<String, Object> pRvs, final OnlPay pOnpa,
+    final long pClmVer) throws Exception {
+    long now = new Date().getTime();
+    int cnt;
+    SrSqlPpl srSql = this.srPayd.getSrSqlPpl();
+    if (srSql != null) {
+      PreparedStatement ps = srSql
+        .prp("update ONLPAY set VER=?, DAT=? where IID=? and VER=?");
+      ps.setLong(1, now);
+      ps.setLong(2, now);
+      ps.setLong(3, pOnpa.getIid().getIid());
+      ps.setLong(4, pClmVer);
+      cnt = ps.executeUpdate();
+    } else {
+      ColVals cvs = new ColVals();
+      this.srvClVl.put(cvs, "ver", now);
+      this.srvClVl.put(cvs, "dat", now);
+      cnt = this.rdb.update(OnlPay.class, cvs, "IID=" + pOnpa.getIid()
+        .getIid() + " and VER=" + pClmVer);
+    }
+    if (cnt != 1) {
+      //payment is executed and must be recorded anyway:
+      this.log.error(pRvs, PrPpl.class, "Can't refresh multi-payee OnlPay,"
+        + " buyer " + pOnpa.getIid().getIid());
+    }
+  }
+
+  /**
+   * <p>Releases phase 2 claim of OnlPay which payment isn't executed,
+   * e.g. it's declined, so sweeper may cancel it.</p>
+   * @param pRvs request scoped vars
+   * @param pSetAdd AddStg
+   * @param pOnpa OnlPay
+   * @param pClmVer claim version
+   **/
+  private void unclm(final Map<String, Object> pRvs, final AddStg pSetAdd,
+    final OnlPay pOnpa, final long pClmVer) {
+    try {
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.setTrIsl(trIsl(PplStg.TR_PH2RD, pSetAdd));
+        this.rdb.begin();
+        updVer(pOnpa, new Date().getTime(), pClmVer);
+        this.rdb.commit();
+      } catch (Exception ex) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw ex;
+      } finally {
+        this.rdb.release();
+      }
+    } catch (Exception e) {
+      this.log.error(pRvs, PrPpl.class, "Can't release OnlPay claim, buyer "
+        + pOnpa.getIid().getIid(), e);
+    }
+  }
+
+  /**
+   * <p>Resolves OnlPay claimed by phase 2 that died or got unknown
+   * execution result, it's invoked by sweeper without transaction for
+   * OnlPay claimed earlier than payment and call timeouts ago.
+   * Payments are retrieved from PayPal, approved ones are recorded as
+   * payed (only BOOKED orders like late webhook event), then claim is
+   * released, so sweeper expires OnlPay and cancels only not payed
+   * orders. If PayPal can't be asked, then it stays claimed till the
+   * next sweep.</p>
+   * @param pRvs request scoped vars
+   * @param pOnpa claimed OnlPay with buyer, purchase, seller, payment ID
+   *  and version
+   * @param pSetAdd AddStg
+   * @return approved payments count or -1 if it stays claimed
+   * @throws Exception - an exception
+   **/
+  public final int rslvClm(final Map<String, Object> pRvs,
+    final OnlPay pOnpa, final AddStg pSetAdd) throws Exception {
+    Long buyr = pOnpa.getIid().getIid();
+    boolean isMl = PAYID_MULTI.equals(pOnpa.getPayId());
+    List<SrMlPay.MlPay> pys = new ArrayList<SrMlPay.MlPay>();
+    List<PayMd> payMds = new ArrayList<PayMd>();
+    List<Integer> ords = new ArrayList<Integer>();
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_PH2RD, pSetAdd));
+      this.rdb.begin();
+      if (isMl) {
+        if (this.srMlPay != null) {
+          for (SrMlPay.MlPay m : this.srMlPay.lod(pRvs, buyr)) {
+            if (m.getPur().equals(pOnpa.getPur())
+              && m.getStas() == SrMlPay.CREATED) {
+              pys.add(m);
+            }
+          }
+        }
+      } else if (!PAYID_INTENT.equals(pOnpa.getPayId())) {
+        SrMlPay.MlPay py = new SrMlPay.MlPay();
+        py.setPayId(pOnpa.getPayId());
+        py.setBuyr(buyr);
+        py.setPur(pOnpa.getPur());
+        if (pOnpa.getSelr() != null) {
+          py.setSelr(pOnpa.getSelr().getIid().getIid());
+        }
+        pys.add(py);
+      }
+      for (SrMlPay.MlPay py : pys) {
+        PayMd payMd = null;
+        if (pSetAdd.getOnlMd() == 1 || py.getSelr() == null) {
+          List<PayMd> pms = this.cchPayMd.lazOwn(pRvs, this.orm);
+          if (pms.size() == 1) {
+            payMd = pms.get(0);
+          }
+        } else {
+          List<SePayMd> pms = this.cchPayMd.lazSel(pRvs, this.orm,
+            py.getSelr());
+          if (pms.size() == 1) {
+            payMd = pms.get(0);
+          }
+        }
+        payMds.add(payMd);
+        int ord = -1;
+        if (this.srPayJr != null) {
+          SrPayJr.Rec jr = this.srPayJr.fnd(pRvs, py.getPayId());
+          if (jr != null) {
+            ord = jr.getOrds();
+          }
+        }
+        ords.add(ord);
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    boolean[] apvs = new boolean[pys.size()];
+    for (int i = 0; i < pys.size(); i++) {
+      String dsc = "buyer/pid " + buyr + "/" + pys.get(i).getPayId();
+      if (payMds.get(i) == null) {
+        this.log.error(pRvs, PrPpl.class, "There is no payment method to"
+          + " check claimed payment, it's considered as not executed, "
+            + dsc);
+        continue;
+      }
+      GrdPpl.Brk brk;
+      try {
+        brk = acqGrd(payMds.get(i), dsc);
+      } catch (Exception ex) {
+        this.log.warn(pRvs, PrPpl.class, "Claimed payment isn't checked, "
+          + dsc, ex);
+        return -1;
+      }
+      long bst = System.nanoTime();
+      Exception bex = null;
+      try {
+        APIContext apiCon = this.cchTk.apiCon(payMds.get(i));
+        Payment pay = this.cnPpl.get(pRvs, apiCon, pys.get(i).getPayId());
+        apvs[i] = "approved".equals(pay.getState());
+      } catch (Exception ex) {
+        bex = ex;
+        this.log.warn(pRvs, PrPpl.class, "Claimed payment isn't checked, "
+          + dsc, ex);
+        return -1;
+      } finally {
+        this.mtr.rec(MtrPpl.RMGT, bst);
+        if (brk != null) {
+          this.grdPpl.rel(pRvs, brk, bst, bex);
+        }
+      }
+    }
+    int rz = 0;
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(trIsl(PplStg.TR_PH2, pSetAdd));
+      this.rdb.begin();
+      if (updVer(pOnpa, new Date().getTime(), pOnpa.getVer()) != 1) {
+        //e.g. resolved by buyer's repeated return request:
+        this.rdb.rollBack();
+        return -1;
       }
-      if (ppords != null && ppords.size() > 0) {
-        //proceed PayPal orders:
-        ord = makePplOrds(pRvs, pRqDt, ppords, cart, CuOrGdLn.class,
-          CuOrSrLn.class, CuOrTxLn.class);
-        ord.setCurr(ppords.get(0).getCurr());
-        ord.setPur(ppords.get(0).getPur());
-      }
-      if (ppsords != null && ppsords.size() > 0) {
-        //proceed PayPal S.E. orders:
-        if (ord == null) {
-          ord = makePplOrds(pRvs, pRqDt, ppsords, cart, CuOrSeGdLn.class,
-            CuOrSeSrLn.class, CuOrSeTxLn.class);
-          ord.setCurr(ppsords.get(0).getCurr());
-          ord.setPur(ppsords.get(0).getPur());
-        } else {
-          CuOr sord = makePplOrds(pRvs, pRqDt, ppsords, cart,
-            CuOrSeGdLn.class, CuOrSeSrLn.class, CuOrSeTxLn.class);
-          if (sord.getGoods() != null) {
-            if (ord.getGoods() != null) {
-              ord.getGoods().addAll(sord.getGoods());
-            } else {
-              ord.setGoods(sord.getGoods());
-            }
-          }
-          if (sord.getServs() != null) {
-            if (ord.getServs() != null) {
-              ord.getServs().addAll(sord.getServs());
-            } else {
-              ord.setServs(sord.getServs());
-            }
-          }
-          if (sord.getTaxes() != null) {
-            if (ord.getTaxes() != null) {
-              ord.getTaxes().addAll(sord.getTaxes());
-            } else {
-              ord.setTaxes(sord.getTaxes());
-            }
+      for (int i = 0; i < pys.size(); i++) {
+        if (apvs[i]) {
+          rz++;
+          if (isMl) {
+            this.srPayd.paydPy(pRvs, buyr, pOnpa.getPur(),
+              pys.get(i).getSelr(), true, ords.get(i));
+            this.srMlPay.exed(pRvs, pys.get(i));
+          } else {
+            this.srPayd.payd(pRvs, buyr, pOnpa.getPur(), true, ords.get(i));
           }
-          ord.setTot(ord.getTot().add(sord.getTot()));
-          ord.setToTx(ord.getToTx().add(sord.getToTx()));
-          ord.setSubt(ord.getSubt().add(sord.getSubt()));
         }
       }
-      if (ord != null) {
-        createPay(pRvs, pRqDt, ord, payMd, sel);
-      } else {
-        throw new Exception("Can't create PPL payment!");
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
       }
-    } else if (cart != null && cart.getErr()) {
-      throw new Exception("Cart with error for buyer ID: " + cart.getBuyr()
-        .getIid());
-    } else {
-      this.hndSpam.handle(pRvs, pRqDt, 1000, "PrPpl. buyer auth err!");
-      throw new ExcCode(ExcCode.SPAM, "PrPpl. buyer auth err!");
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    if (this.cchOnPa != null) {
+      this.cchOnPa.evict(buyr);
     }
+    this.log.warn(pRvs, PrPpl.class, "Claimed OnlPay is resolved, buyer/"
+      + "approved payments: " + buyr + "/" + rz);
+    return rz;
   }
 
   /**
-   * <p>Makes consolidate order with  webstore owner's items.</p>
-   * @param <GL> good line type
-   * @param <SL> service line type
-   * @param <TL> tax line type
+   * <p>Inserts or updates buyer's online payment.</p>
    * @param pRvs request scoped vars
-   * @param pRqDt request data
-   * @param pPplOrds orders
-   * @param pCart cart
-   * @param pGlCl good line class
-   * @param pSlCl service line class
-   * @param pTlCl tax line class
-   * @return consolidated order or null if not possible
+   * @param pBuyr buyer
+   * @param pPur purchase ID
+   * @param pSel S.E. Seller or NULL
+   * @param pPayId PayPal payment ID or INTENT
+   * @return saved OnlPay
    * @throws Exception - an exception
    **/
-  public final <GL extends AOrdLn, SL extends AOrdLn, TL extends ATxLn>
-   CuOr makePplOrds(final Map<String, Object> pRvs,
-    final IReqDt pRqDt, final List<? extends IIdLn> pPplOrds,
-     final Cart pCart, final Class<GL> pGlCl, final Class<SL> pSlCl,
-      final Class<TL> pTlCl) throws Exception {
-    CuOr ord = null;
-    StringBuffer ordIds = new StringBuffer();
-    for (int i = 0; i < pPplOrds.size();  i++) {
-      if (i == 0) {
-        ordIds.append(pPplOrds.get(i).getIid().toString());
-      } else {
-        ordIds.append("," + pPplOrds.get(i).getIid());
-      }
-    }
-    Map<String, Object> vs = new HashMap<String, Object>();
-    List<CuOrGdLn> goods = null;
-    List<CuOrSrLn> servs = null;
-    List<CuOrTxLn> taxs = null;
-    //checking invoice basis tax:
-    String[] ndFl = new String[] {"nme", "pri", "quan", "subt", "tot", "toTx"};
-    Arrays.sort(ndFl);
-    vs.put(pGlCl.getSimpleName() + "ndFds", ndFl);
-    List<GL> gls = this.orm.retLstCnd(pRvs, vs, pGlCl,
-      "where OWNR in (" + ordIds.toString() + ")"); vs.clear();
-    if (gls.size() > 0) {
-      if (pGlCl == CuOrGdLn.class) {
-        goods = (List<CuOrGdLn>) gls;
-      } else {
-        goods = new ArrayList<CuOrGdLn>();
-        for (GL il : gls) {
-          CuOrGdLn itm = new CuOrGdLn();
-          itm.setIid(il.getIid());
-          itm.setNme(il.getNme());
-          itm.setPri(il.getPri());
-          itm.setQuan(il.getQuan());
-          itm.setSubt(il.getSubt());
-          itm.setTot(il.getTot());
-          itm.setToTx(il.getToTx());
-          goods.add(itm);
-        }
-      }
-    }
-    vs.put(pSlCl.getSimpleName() + "ndFds", ndFl);
-    List<SL> sls = this.orm.retLstCnd(pRvs, vs, pSlCl,
-      "where OWNR in (" + ordIds.toString() + ")"); vs.clear();
-    if (sls.size() > 0) {
-      if (pSlCl == CuOrSrLn.class) {
-        servs = (List<CuOrSrLn>) sls;
-      } else {
-        servs = new ArrayList<CuOrSrLn>();
-        for (SL il : sls) {
-          CuOrSrLn itm = new CuOrSrLn();
-          itm.setIid(il.getIid());
-          itm.setNme(il.getNme());
-          itm.setPri(il.getPri());
-          itm.setQuan(il.getQuan());
-          itm.setSubt(il.getSubt());
-          itm.setTot(il.getTot());
-          itm.setToTx(il.getToTx());
-          servs.add(itm);
-        }
-      }
-    }
-    if (goods != null || servs != null) {
-      ord = new CuOr();
-      ord.setBuyr(pCart.getBuyr());
-      ord.setGoods(goods);
-      ord.setServs(servs);
-      if (goods != null) {
-        for (CuOrGdLn il : goods) {
-          //price inclusive tax???
-          //https://stackoverflow.com/questions/24285424/
-          //can-the-paypal-rest-api-display-order-items-with-tax-included
-          if (il.getToTx().compareTo(BigDecimal.ZERO) == 1
-        && il.getPri().multiply(il.getQuan()).compareTo(il.getTot()) == 0) {
-      il.setPri(il.getSubt().divide(il.getQuan(), 2, RoundingMode.HALF_UP));
-          }
-          ord.setTot(ord.getTot().add(il.getTot()));
-          ord.setToTx(ord.getToTx().add(il.getToTx()));
-          ord.setSubt(ord.getSubt().add(il.getSubt()));
-        }
-      }
-      if (servs != null) {
-        for (CuOrSrLn il : servs) {
-          if (il.getToTx().compareTo(BigDecimal.ZERO) == 1
-        && il.getPri().multiply(il.getQuan()).compareTo(il.getTot()) == 0) {
-      il.setPri(il.getSubt().divide(il.getQuan(), 2, RoundingMode.HALF_UP));
-          }
-          ord.setTot(ord.getTot().add(il.getTot()));
-          ord.setToTx(ord.getToTx().add(il.getToTx()));
-          ord.setSubt(ord.getSubt().add(il.getSubt()));
-        }
-      }
-      if (ord.getToTx().compareTo(BigDecimal.ZERO) == 0) {
-        //invoice basis:
-        vs.put(pTlCl.getSimpleName() + "ndFds", new String[] {"toTx"});
-        List<TL> tls = this.orm.retLstCnd(pRvs, vs, pTlCl,
-          "where OWNR in (" + ordIds.toString() + ")"); vs.clear();
-        if (tls.size() > 0) {
-          if (pTlCl == CuOrTxLn.class) {
-            taxs = (List<CuOrTxLn>) tls;
-          } else {
-            taxs = new ArrayList<CuOrTxLn>();
-            for (TL tl : tls) {
-              CuOrTxLn tln = new CuOrTxLn();
-              tln.setIid(tl.getIid());
-              tln.setTot(tl.getTot());
-              taxs.add(tln);
-              ord.setToTx(ord.getToTx().add(tl.getTot()));
-            }
-          }
-          ord.setTaxes(taxs);
+  public final OnlPay savOnPa(final Map<String, Object> pRvs,
+    final Buyer pBuyr, final Long pPur, final SeSel pSel,
+      final String pPayId) throws Exception {
+    if (this.cchOnPa != null) {
+      OnlPay onpa = this.cchOnPa.get(pBuyr.getIid());
+      if (onpa != null) {
+        OnlPay rz = updCchd(onpa, pBuyr, pPur, pSel, pPayId);
+        if (rz != null) {
+          return rz;
         }
+        //stale near-cache entry, e.g. OnlPay was changed on other node:
+        this.cchOnPa.evict(pBuyr.getIid());
       }
     }
-    return ord;
+    OnlPay onpa = new OnlPay();
+    onpa.setIid(pBuyr);
+    this.orm.refrEnt(pRvs, new HashMap<String, Object>(), onpa);
+    return savOnPa(pRvs, onpa, pBuyr, pPur, pSel, pPayId);
   }
 
   /**
-   * <p>Creates PayPal payment out of given orders lines with
-   * webstore owner's items.</p>
-   * @param pRvs request scoped vars
-   * @param pRqDt request data
-   * @param pOrd consolidated order
-   * @param pPayMd client codes
+   * <p>Updates OnlPay by cached one without loading. Version (VER)
+   * update rows count detects stale entry, so no statement fails and
+   * transaction stays usable (e.g. Postgres aborts it after error).</p>
+   * @param pCchd cached OnlPay, it isn't changed
+   * @param pBuyr buyer
+   * @param pPur purchase ID
    * @param pSel S.E. Seller or NULL
+   * @param pPayId PayPal payment ID or INTENT
+   * @return saved OnlPay or null if cached one is stale
    * @throws Exception - an exception
    **/
-  public final void createPay(final Map<String, Object> pRvs,
-    final IReqDt pRqDt, final CuOr pOrd,
-      final PayMd pPayMd, final SeSel pSel) throws Exception {
-    boolean dbgSh = getLog().getDbgSh(getClass(), 17003);
-    AcStg as = (AcStg) pRvs.get("astg");
-    APIContext apiCon = new APIContext(pPayMd.getSec1(), pPayMd.getSec2(),
-      pPayMd.getMde());
-    Details details = new Details();
-    //TODO special headed service "shipping"
-    //details.setShipping("1");
-    details.setSubtotal(prn(pOrd.getSubt(), as.getPrDp()));
-    if (pOrd.getToTx().compareTo(BigDecimal.ZERO) == 1) {
-      details.setTax(prn(pOrd.getToTx(), as.getPrDp()));
-    }
-    if (dbgSh) {
-      getLog().debug(pRvs, PrPpl.class,
-        "Order tot/subt/tax/curr: " + pOrd.getTot() + "/" + pOrd.getSubt() + "/"
-          + pOrd.getToTx() + "/" + pOrd.getCurr().getStCo());
-    }
-    Amount amount = new Amount();
-    amount.setCurrency(pOrd.getCurr().getStCo());
-    amount.setTotal(prn(pOrd.getTot(), as.getPrDp()));
-    amount.setDetails(details);
-    Transaction transaction = new Transaction();
-    transaction.setAmount(amount);
-    //transaction.setDescription();
-    List<Item> items = new ArrayList<Item>();
-    if (pOrd.getGoods() != null) {
-      for (CuOrGdLn il : pOrd.getGoods()) {
-        if (dbgSh) {
-          getLog().debug(pRvs, PrPpl.class,
-            "item/price/quant/tax: " + il.getNme() + "/" + il.getPri()
-              + "/" + il.getQuan() + "/" + il.getToTx());
-        }
-        Item item = new Item();
-        item.setName(il.getNme());
-        item.setQuantity(Long.valueOf(il.getQuan().longValue()).toString());
-        item.setCurrency(pOrd.getCurr().getStCo());
-        item.setPrice(prn(il.getPri(), as.getPrDp()));
-        if (il.getToTx().compareTo(BigDecimal.ZERO) == 1) {
-          item.setTax(prn(il.getToTx(), as.getPrDp()));
-        }
-        if (dbgSh) {
-          getLog().debug(pRvs, PrPpl.class, "Added item nme/quan/pri/tax/curr: "
-           + item.getName() + "/" + item.getQuantity() + "/" + item.getPrice()
-              + "/" + item.getTax() + "/" + item.getCurrency());
-        }
-        items.add(item);
-      }
-    }
-    if (pOrd.getServs() != null) {
-      for (CuOrSrLn il : pOrd.getServs()) {
-        if (dbgSh) {
-          getLog().debug(pRvs, PrPpl.class,
-            "item/price/quant/tax: " + il.getNme() + "/" + il.getPri()
-              + "/" + il.getQuan() + "/" + il.getToTx());
-        }
-        Item item = new Item();
-        item.setName(il.getNme());
-        item.setQuantity(Long.valueOf(il.getQuan().longValue()).toString());
-        item.setCurrency(pOrd.getCurr().getStCo());
-        item.setPrice(prn(il.getPri(), as.getPrDp()));
-        if (il.getToTx().compareTo(BigDecimal.ZERO) == 1) {
-          item.setTax(prn(il.getToTx(), as.getPrDp()));
-        }
-        if (dbgSh) {
-          getLog().debug(pRvs, PrPpl.class, "Added item nme/quan/pri/tax/curr: "
-           + item.getName() + "/" + item.getQuantity() + "/" + item.getPrice()
-              + "/" + item.getTax() + "/" + item.getCurrency());
-        }
-        items.add(item);
-      }
+  private OnlPay updCchd(final OnlPay pCchd, final Buyer pBuyr,
+    final Long pPur, final SeSel pSel, final String pPayId) throws Exception {
+    if (!PAYID_INTENT.equals(pPayId) && (!pPur.equals(pCchd.getPur())
+      || !PAYID_INTENT.equals(pCchd.getPayId()))) {
+      return null;
     }
-    ItemList itemList = new ItemList();
-    itemList.setItems(items);
-    transaction.setItemList(itemList);
-    List<Transaction> transactions = new ArrayList<Transaction>();
-    transactions.add(transaction);
-    Payer payer = new Payer();
-    payer.setPaymentMethod("paypal");
-    Payment payment = new Payment();
-    payment.setIntent("sale");
-    payment.setPayer(payer);
-    payment.setTransactions(transactions);
-    RedirectUrls redUrls = new RedirectUrls();
-    String pars = "&pur=" + pOrd.getPur() + "&buyr=" + pOrd.getBuyr().getIid();
+    Date dat = new Date();
+    long ver = dat.getTime();
+    Long selId = null;
     if (pSel != null) {
-      pars += "&sel" + pSel.getIid().getIid();
+      selId = pSel.getIid().getIid();
     }
-    String u = pRqDt.getReqUrl().toString() + "?prcRed=" + pRqDt
-      .getParam("prcRed");
-    redUrls.setCancelUrl(u + "&prc=PrPpl&cnc=1" + pars);
-    redUrls.setReturnUrl(u + "&prc=PrPpl" + pars);
-    payment.setRedirectUrls(redUrls);
-    Payment crPay = payment.create(apiCon);
-    Iterator<Links> links = crPay.getLinks().iterator();
-    while (links.hasNext()) {
-      Links link = links.next();
-      if (link.getRel().equalsIgnoreCase("approval_url")) {
-        pRqDt.setAttr("redirectURL", link.getHref());
+    int cnt;
+    SrSqlPpl srSql = this.srPayd.getSrSqlPpl();
+    if (srSql != null) {
+      PreparedStatement ps = srSql.prp("update ONLPAY set PUR=?, SELR=?,"
+        + " PAYID=?, DAT=?, VER=? where IID=? and VER=?");
+      ps.setLong(1, pPur);
+      if (selId == null) {
+        ps.setNull(2, Types.BIGINT);
+      } else {
+        ps.setLong(2, selId);
       }
+      ps.setString(3, pPayId);
+      ps.setLong(4, ver);
+      ps.setLong(5, ver);
+      ps.setLong(6, pBuyr.getIid());
+      ps.setLong(7, pCchd.getVer());
+      cnt = ps.executeUpdate();
+    } else {
+      ColVals cvs = new ColVals();
+      this.srvClVl.put(cvs, "pur", pPur);
+      this.srvClVl.put(cvs, "selr", selId);
+      this.srvClVl.put(cvs, "payId", pPayId);
+      this.srvClVl.put(cvs, "dat", ver);
+      this.srvClVl.put(cvs, "ver", ver);
+      cnt = this.rdb.update(OnlPay.class, cvs, "IID=" + pBuyr.getIid()
+        + " and VER=" + pCchd.getVer());
     }
+    if (cnt != 1) {
+      return null;
+    }
+    OnlPay rz = new OnlPay();
+    rz.setIid(pBuyr);
+    rz.setPur(pPur);
+    rz.setSelr(pSel);
+    rz.setPayId(pPayId);
+    rz.setDat(dat);
+    rz.setVer(ver);
+    return rz;
+  }
+
+  /**
+   * <p>Saves (insert or update) given loaded OnlPay.</p>
+   * @param pRvs request scoped vars
+   * @param pOnpa loaded OnlPay, its IID is null if it's not in DB
+   * @param pBuyr buyer
+   * @param pPur purchase ID
+   * @param pSel S.E. Seller or NULL
+   * @param pPayId PayPal payment ID or INTENT
+   * @return saved OnlPay
+   * @throws Exception - an exception
+   **/
+  private OnlPay savOnPa(final Map<String, Object> pRvs, final OnlPay pOnpa,
+    final Buyer pBuyr, final Long pPur, final SeSel pSel,
+      final String pPayId) throws Exception {
     Map<String, Object> vs = new HashMap<String, Object>();
-    OnlPay onpa = new OnlPay();
-    onpa.setIid(pOrd.getBuyr());
-    this.orm.refrEnt(pRvs, vs, onpa);
+    OnlPay onpa = pOnpa;
     if (onpa.getIid() == null) {
-      onpa.setIid(pOrd.getBuyr());
+      onpa.setIid(pBuyr);
       onpa.setIsNew(true);
+    } else if (!PAYID_INTENT.equals(pPayId)
+      && (!pPur.equals(onpa.getPur()) || !PAYID_INTENT.equals(onpa
+        .getPayId()))) {
+      throw new Exception("OnlPay was changed by concurrent request, buyer/pur "
+        + pBuyr.getIid() + "/" + pPur);
     }
-    onpa.setPur(pOrd.getPur());
+    onpa.setPur(pPur);
     onpa.setSelr(pSel);
-    onpa.setPayId(crPay.getId());
+    onpa.setPayId(pPayId);
     onpa.setDat(new Date());
     if (onpa.getIsNew()) {
       this.orm.insIdNln(pRvs, vs, onpa);
     } else {
       this.orm.update(pRvs, vs, onpa);
     }
-    pRvs.put("pplPayId", crPay.getId());
-    pRvs.put("pplStat", "created");
-    if (dbgSh) {
-      getLog().debug(pRvs, PrPpl.class,
-        "Cancel URL: " + redUrls.getCancelUrl());
+    return onpa;
+  }
+
+  /**
+   * <p>Loads buyer's OnlPay from near-cache or DB. Cached one is
+   * reloaded from DB if it doesn't match given purchase or payment.</p>
+   * @param pRvs request scoped vars
+   * @param pBuyr buyer
+   * @param pPur expected purchase ID or null
+   * @param pPayId expected payment ID or null
+   * @return OnlPay, its IID is null if it's not found
+   * @throws Exception - an exception
+   **/
+  private OnlPay lodOnPa(final Map<String, Object> pRvs, final Buyer pBuyr,
+    final String pPur, final String pPayId) throws Exception {
+    OnlPay onpa = gtCchd(pBuyr, pPur, pPayId);
+    if (onpa == null) {
+      onpa = new OnlPay();
+      onpa.setIid(pBuyr);
+      this.orm.refrEnt(pRvs, new HashMap<String, Object>(), onpa);
+    }
+    return onpa;
+  }
+
+  /**
+   * <p>Gets buyer's OnlPay from near-cache if it matches given purchase
+   * and payment.</p>
+   * @param pBuyr buyer
+   * @param pPur expected purchase ID or null
+   * @param pPayId expected payment ID or null
+   * @return cached OnlPay or null
+   **/
+  private OnlPay gtCchd(final Buyer pBuyr, final String pPur,
+    final String pPayId) {
+    if (this.cchOnPa != null) {
+      OnlPay onpa = this.cchOnPa.get(pBuyr.getIid());
+      if (onpa != null
+        && (pPur == null || pPur.equals(String.valueOf(onpa.getPur())))
+          && (pPayId == null || pPayId.equals(onpa.getPayId())
+            || PAYID_MULTI.equals(onpa.getPayId()))) {
+        return onpa;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * <p>Gets transaction isolation of given step.</p>
+   * @param pStp step, e.g. TR_CNC
+   * @param pSetAdd AddStg
+   * @return isolation, configured one or booking one
+   **/
+  private int trIsl(final int pStp, final AddStg pSetAdd) {
+    if (this.pplStg != null) {
+      int isl = this.pplStg.trIsl(pStp);
+      if (isl > 0) {
+        return isl;
+      }
     }
+    return pSetAdd.getBkTr();
   }
 
   /**
@@ -753,7 +2075,7 @@ public class PrPpl implements IPrc {
    * @return String
    **/
   public final String prn(final BigDecimal pVal, final Integer pDp) {
-    return this.numStr.frmt(pVal.toString(), ".", "", pDp, 3);
+    return this.frmPpl.frm(pVal, pDp);
   }
 
   //Simple getters and setters:
@@ -932,4 +2254,276 @@ public class PrPpl implements IPrc {
   public final void setSrvClVl(final SrvClVl pSrvClVl) {
     this.srvClVl = pSrvClVl;
   }
+
+  /**
+   * <p>Getter for cchTk.</p>
+   * @return CchTkPpl
+   **/
+  public final CchTkPpl getCchTk() {
+    return this.cchTk;
+  }
+
+  /**
+   * <p>Setter for cchTk.</p>
+   * @param pCchTk reference
+   **/
+  public final void setCchTk(final CchTkPpl pCchTk) {
+    this.cchTk = pCchTk;
+  }
+
+  /**
+   * <p>Getter for cchPayMd.</p>
+   * @return CchPayMd
+   **/
+  public final CchPayMd getCchPayMd() {
+    return this.cchPayMd;
+  }
+
+  /**
+   * <p>Setter for cchPayMd.</p>
+   * @param pCchPayMd reference
+   **/
+  public final void setCchPayMd(final CchPayMd pCchPayMd) {
+    this.cchPayMd = pCchPayMd;
+  }
+
+  /**
+   * <p>Getter for cnPpl.</p>
+   * @return ICnPpl
+   **/
+  public final ICnPpl getCnPpl() {
+    return this.cnPpl;
+  }
+
+  /**
+   * <p>Setter for cnPpl.</p>
+   * @param pCnPpl reference
+   **/
+  public final void setCnPpl(final ICnPpl pCnPpl) {
+    this.cnPpl = pCnPpl;
+  }
+
+  /**
+   * <p>Getter for srPplLn.</p>
+   * @return SrPplLn
+   **/
+  public final SrPplLn getSrPplLn() {
+    return this.srPplLn;
+  }
+
+  /**
+   * <p>Setter for srPplLn.</p>
+   * @param pSrPplLn reference
+   **/
+  public final void setSrPplLn(final SrPplLn pSrPplLn) {
+    this.srPplLn = pSrPplLn;
+  }
+
+  /**
+   * <p>Getter for srPayd.</p>
+   * @return SrPayd
+   **/
+  public final SrPayd getSrPayd() {
+    return this.srPayd;
+  }
+
+  /**
+   * <p>Setter for srPayd.</p>
+   * @param pSrPayd reference
+   **/
+  public final void setSrPayd(final SrPayd pSrPayd) {
+    this.srPayd = pSrPayd;
+  }
+
+  /**
+   * <p>Getter for srPayJr.</p>
+   * @return SrPayJr
+   **/
+  public final SrPayJr getSrPayJr() {
+    return this.srPayJr;
+  }
+
+  /**
+   * <p>Setter for srPayJr.</p>
+   * @param pSrPayJr reference
+   **/
+  public final void setSrPayJr(final SrPayJr pSrPayJr) {
+    this.srPayJr = pSrPayJr;
+  }
+
+  /**
+   * <p>Getter for frmPpl.</p>
+   * @return FrmPpl
+   **/
+  public final FrmPpl getFrmPpl() {
+    return this.frmPpl;
+  }
+
+  /**
+   * <p>Setter for frmPpl.</p>
+   * @param pFrmPpl reference
+   **/
+  public final void setFrmPpl(final FrmPpl pFrmPpl) {
+    this.frmPpl = pFrmPpl;
+  }
+
+  /**
+   * <p>Getter for wrPay.</p>
+   * @return WrPay
+   **/
+  public final WrPay getWrPay() {
+    return this.wrPay;
+  }
+
+  /**
+   * <p>Setter for wrPay.</p>
+   * @param pWrPay reference
+   **/
+  public final void setWrPay(final WrPay pWrPay) {
+    this.wrPay = pWrPay;
+  }
+
+  /**
+   * <p>Getter for coPh2.</p>
+   * @return CoPh2
+   **/
+  public final CoPh2 getCoPh2() {
+    return this.coPh2;
+  }
+
+  /**
+   * <p>Setter for coPh2.</p>
+   * @param pCoPh2 reference
+   **/
+  public final void setCoPh2(final CoPh2 pCoPh2) {
+    this.coPh2 = pCoPh2;
+  }
+
+  /**
+   * <p>Getter for payTo.</p>
+   * @return long
+   **/
+  public final long getPayTo() {
+    return this.payTo;
+  }
+
+  /**
+   * <p>Setter for payTo.</p>
+   * @param pPayTo reference
+   **/
+  public final void setPayTo(final long pPayTo) {
+    this.payTo = pPayTo;
+  }
+
+  /**
+   * <p>Getter for cchOnPa.</p>
+   * @return CchOnPa
+   **/
+  public final CchOnPa getCchOnPa() {
+    return this.cchOnPa;
+  }
+
+  /**
+   * <p>Setter for cchOnPa.</p>
+   * @param pCchOnPa reference
+   **/
+  public final void setCchOnPa(final CchOnPa pCchOnPa) {
+    this.cchOnPa = pCchOnPa;
+  }
+
+  /**
+   * <p>Getter for mtr.</p>
+   * @return MtrPpl
+   **/
+  public final MtrPpl getMtr() {
+    return this.mtr;
+  }
+
+  /**
+   * <p>Setter for mtr.</p>
+   * @param pMtr reference
+   **/
+  public final void setMtr(final MtrPpl pMtr) {
+    this.mtr = pMtr;
+  }
+
+  /**
+   * <p>Getter for grdPpl.</p>
+   * @return GrdPpl
+   **/
+  public final GrdPpl getGrdPpl() {
+    return this.grdPpl;
+  }
+
+  /**
+   * <p>Setter for grdPpl.</p>
+   * @param pGrdPpl reference
+   **/
+  public final void setGrdPpl(final GrdPpl pGrdPpl) {
+    this.grdPpl = pGrdPpl;
+  }
+
+  /**
+   * <p>Getter for lmtPpl.</p>
+   * @return LmtPpl
+   **/
+  public final LmtPpl getLmtPpl() {
+    return this.lmtPpl;
+  }
+
+  /**
+   * <p>Setter for lmtPpl.</p>
+   * @param pLmtPpl reference
+   **/
+  public final void setLmtPpl(final LmtPpl pLmtPpl) {
+    this.lmtPpl = pLmtPpl;
+  }
+
+  /**
+   * <p>Getter for pplStg.</p>
+   * @return PplStg
+   **/
+  public final PplStg getPplStg() {
+    return this.pplStg;
+  }
+
+  /**
+   * <p>Setter for pplStg.</p>
+   * @param pPplStg reference
+   **/
+  public final void setPplStg(final PplStg pPplStg) {
+    this.pplStg = pPplStg;
+  }
+
+  /**
+   * <p>Getter for srMlPay.</p>
+   * @return SrMlPay
+   **/
+  public final SrMlPay getSrMlPay() {
+    return this.srMlPay;
+  }
+
+  /**
+   * <p>Setter for srMlPay.</p>
+   * @param pSrMlPay reference
+   **/
+  public final void setSrMlPay(final SrMlPay pSrMlPay) {
+    this.srMlPay = pSrMlPay;
+  }
+
+  /**
+   * <p>Getter for exMlPpl.</p>
+   * @return ExMlPpl
+   **/
+  public final ExMlPpl getExMlPpl() {
+    return this.exMlPpl;
+  }
+
+  /**
+   * <p>Setter for exMlPpl.</p>
+   * @param pExMlPpl reference
+   **/
+  public final void setExMlPpl(final ExMlPpl pExMlPpl) {
+    this.exMlPpl = pExMlPpl;
+  }
 }
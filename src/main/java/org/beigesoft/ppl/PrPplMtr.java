@@ -0,0 +1,131 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.security.MessageDigest;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.hnd.IHndSpam;
+import org.beigesoft.prc.IPrc;
+
+/**
+ * <p>PayPal metrics scrape processor. It requires secret token in
+ * parameter "tk", and it puts metrics text into request attribute
+ * "pplMtr" to be written by renderer "pplm" as text/plain.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class PrPplMtr implements IPrc {
+
+  /**
+   * <p>Spam handler.</p>
+   **/
+  private IHndSpam hndSpam;
+
+  /**
+   * <p>Metrics.</p>
+   **/
+  private MtrPpl mtr;
+
+  /**
+   * <p>Secret token.</p>
+   **/
+  private String tk;
+
+  /**
+   * <p>Process request.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final void process(final Map<String, Object> pRvs,
+    final IReqDt pRqDt) throws Exception {
+    String tkr = pRqDt.getParam("tk");
+    if (tkr == null || !MessageDigest.isEqual(this.tk.getBytes("UTF-8"),
+      tkr.getBytes("UTF-8"))) {
+      this.hndSpam.handle(pRvs, pRqDt, 100, "PrPplMtr. Wrong token!");
+      throw new ExcCode(ExcCode.SPAM, "PrPplMtr. Wrong token!");
+    }
+    pRqDt.setAttr("pplMtr", this.mtr.scrape());
+    //forced renderer:
+    pRqDt.setAttr("rnd", "pplm");
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for hndSpam.</p>
+   * @return IHndSpam
+   **/
+  public final IHndSpam getHndSpam() {
+    return this.hndSpam;
+  }
+
+  /**
+   * <p>Setter for hndSpam.</p>
+   * @param pHndSpam reference
+   **/
+  public final void setHndSpam(final IHndSpam pHndSpam) {
+    this.hndSpam = pHndSpam;
+  }
+
+  /**
+   * <p>Getter for mtr.</p>
+   * @return MtrPpl
+   **/
+  public final MtrPpl getMtr() {
+    return this.mtr;
+  }
+
+  /**
+   * <p>Setter for mtr.</p>
+   * @param pMtr reference
+   **/
+  public final void setMtr(final MtrPpl pMtr) {
+    this.mtr = pMtr;
+  }
+
+  /**
+   * <p>Getter for tk.</p>
+   * @return String
+   **/
+  public final String getTk() {
+    return this.tk;
+  }
+
+  /**
+   * <p>Setter for tk.</p>
+   * @param pTk reference
+   **/
+  public final void setTk(final String pTk) {
+    this.tk = pTk;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+
+import com.paypal.api.payments.Event;
+import com.paypal.base.Constants;
+import com.paypal.base.rest.JSONFormatter;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.log.ILog;
+import org.beigesoft.hnd.IHndSpam;
+import org.beigesoft.prc.IPrc;
+
+/**
+ * <p>PayPal webhook events processor. It verifies event and puts
+ * order payed update into queue, then it responds immediately.
+ * It handles PAYMENT.SALE.COMPLETED, other events are just logged.
+ * If queue is full, then it throws exception, so PayPal will resend
+ * event later.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class PrPplWh implements IPrc {
+
+  /**
+   * <p>Handled event type.</p>
+   **/
+  public static final String SALE_COMPLETED = "PAYMENT.SALE.COMPLETED";
+
+  /**
+   * <p>PayPal headers.</p>
+   **/
+  private static final String[] HEADERS = {
+    Constants.PAYPAL_HEADER_CERT_URL, Constants.PAYPAL_HEADER_TRANSMISSION_SIG,
+    Constants.PAYPAL_HEADER_AUTH_ALGO, Constants.PAYPAL_HEADER_TRANSMISSION_ID,
+    Constants.PAYPAL_HEADER_TRANSMISSION_TIME};
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Spam handler.</p>
+   **/
+  private IHndSpam hndSpam;
+
+  /**
+   * <p>Raw request reader.</p>
+   **/
+  private IWhRq whRq;
+
+  /**
+   * <p>Events verifier.</p>
+   **/
+  private VrWhPpl vrWh;
+
+  /**
+   * <p>Updates queue.</p>
+   **/
+  private QuWhPpl quWh;
+
+  /**
+   * <p>Process request.</p>
+   * @param pRvs request scoped vars
+   * @param pRqDt Request Data
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final void process(final Map<String, Object> pRvs,
+    final IReqDt pRqDt) throws Exception {
+    if (!pRqDt.getReqUrl().toString().toLowerCase().startsWith("https")) {
+      throw new Exception("PPL http not supported!!!");
+    }
+    String body = this.whRq.getBody(pRqDt);
+    Map<String, String> hdrs = new HashMap<String, String>();
+    for (String hn : HEADERS) {
+      hdrs.put(hn, this.whRq.getHdr(pRqDt, hn));
+    }
+    if (!this.vrWh.verify(hdrs, body)) {
+      this.hndSpam.handle(pRvs, pRqDt, 100, "PrPplWh. Invalid event!");
+      throw new ExcCode(ExcCode.SPAM, "PrPplWh. Invalid event!");
+    }
+    Event ev = JSONFormatter.fromJSON(body, Event.class);
+    if (SALE_COMPLETED.equals(ev.getEventType())) {
+      String payId = null;
+      if (ev.getResource() instanceof Map<?, ?>) {
+        Object pp = ((Map<?, ?>) ev.getResource()).get("parent_payment");
+        if (pp != null) {
+          payId = pp.toString();
+        }
+      }
+      if (payId == null || !payId.matches("[A-Za-z0-9-]{1,64}")) {
+        throw new Exception("Wrong parent payment, event ID: "
+          + ev.getId());
+      }
+      if (!this.quWh.offer(new QuWhPpl.Upd(payId))) {
+        throw new Exception("Webhook queue is full, event ID: "
+          + ev.getId());
+      }
+      this.log.info(pRvs, PrPplWh.class, "Sale completed, event/pid "
+        + ev.getId() + "/" + payId);
+    } else {
+      this.log.info(pRvs, PrPplWh.class, "Event is ignored, ID/type "
+        + ev.getId() + "/" + ev.getEventType());
+    }
+    pRvs.put("pplStat", "accepted");
+    //forced renderer:
+    pRqDt.setAttr("rnd", "ppl");
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for hndSpam.</p>
+   * @return IHndSpam
+   **/
+  public final IHndSpam getHndSpam() {
+    return this.hndSpam;
+  }
+
+  /**
+   * <p>Setter for hndSpam.</p>
+   * @param pHndSpam reference
+   **/
+  public final void setHndSpam(final IHndSpam pHndSpam) {
+    this.hndSpam = pHndSpam;
+  }
+
+  /**
+   * <p>Getter for whRq.</p>
+   * @return IWhRq
+   **/
+  public final IWhRq getWhRq() {
+    return this.whRq;
+  }
+
+  /**
+   * <p>Setter for whRq.</p>
+   * @param pWhRq reference
+   **/
+  public final void setWhRq(final IWhRq pWhRq) {
+    this.whRq = pWhRq;
+  }
+
+  /**
+   * <p>Getter for vrWh.</p>
+   * @return VrWhPpl
+   **/
+  public final VrWhPpl getVrWh() {
+    return this.vrWh;
+  }
+
+  /**
+   * <p>Setter for vrWh.</p>
+   * @param pVrWh reference
+   **/
+  public final void setVrWh(final VrWhPpl pVrWh) {
+    this.vrWh = pVrWh;
+  }
+
+  /**
+   * <p>Getter for quWh.</p>
+   * @return QuWhPpl
+   **/
+  public final QuWhPpl getQuWh() {
+    return this.quWh;
+  }
+
+  /**
+   * <p>Setter for quWh.</p>
+   * @param pQuWh reference
+   **/
+  public final void setQuWh(final QuWhPpl pQuWh) {
+    this.quWh = pQuWh;
+  }
+}
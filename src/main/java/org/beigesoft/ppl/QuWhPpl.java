@@ -0,0 +1,400 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.sql.ResultSet;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IRdb;
+
+/**
+ * <p>Bounded queue of orders payed updates from webhook
+ * PAYMENT.SALE.COMPLETED events, buyer and purchase are found by payments
+ * journal (SrPayJr). It's not used by phase 2, because phase 2 must report
+ * payed orders after they are committed. Workers apply updates
+ * in batches, one transaction per batch, so count of concurrent
+ * order status transactions is limited by workers count.
+ * If batch failed, then its updates are applied one by one.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class QuWhPpl {
+
+  /**
+   * <p>Update.</p>
+   **/
+  public static final class Upd {
+
+    /**
+     * <p>Buyer ID, it's evaluated by payment ID.</p>
+     **/
+    private Long buyr;
+
+    /**
+     * <p>Purchase ID.</p>
+     **/
+    private Long pur;
+
+    /**
+     * <p>PayPal payment ID.</p>
+     **/
+    private final String payId;
+
+    /**
+     * <p>If multi-payee payment, i.e. only payee's orders are payed.</p>
+     **/
+    private boolean isMl;
+
+    /**
+     * <p>Multi-payee payment's S.E.Seller ID, null means owner.</p>
+     **/
+    private Long selr;
+
+    /**
+     * <p>Payment's orders count.</p>
+     **/
+    private int ords;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pPayId payment ID
+     **/
+    public Upd(final String pPayId) {
+      this.payId = pPayId;
+    }
+  }
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>Payed orders service.</p>
+   **/
+  private SrPayd srPayd;
+
+  /**
+   * <p>Payments journal.</p>
+   **/
+  private SrPayJr srPayJr;
+
+  /**
+   * <p>Queue capacity.</p>
+   **/
+  private int cap = 1000;
+
+  /**
+   * <p>Workers count.</p>
+   **/
+  private int thr = 2;
+
+  /**
+   * <p>Maximum batch size.</p>
+   **/
+  private int bt = 50;
+
+  /**
+   * <p>Queue, lazy.</p>
+   **/
+  private BlockingQueue<Upd> qu;
+
+  /**
+   * <p>Workers, lazy.</p>
+   **/
+  private Thread[] wrks;
+
+  /**
+   * <p>Stop flag.</p>
+   **/
+  private volatile boolean stop;
+
+  /**
+   * <p>Adds update.</p>
+   * @param pUpd update
+   * @return false if queue is full
+   **/
+  public final boolean offer(final Upd pUpd) {
+    return lazQu().offer(pUpd);
+  }
+
+  /**
+   * <p>Stops workers, not applied updates are lost, i.e. PayPal will
+   * resend webhook events.</p>
+   **/
+  public final synchronized void release() {
+    this.stop = true;
+    if (this.wrks != null) {
+      for (Thread wrk : this.wrks) {
+        wrk.interrupt();
+      }
+      this.wrks = null;
+    }
+  }
+
+  /**
+   * <p>Worker's loop.</p>
+   **/
+  private void work() {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    while (!this.stop) {
+      try {
+        Upd upd = this.qu.poll(1, TimeUnit.SECONDS);
+        if (upd == null) {
+          continue;
+        }
+        List<Upd> upds = new ArrayList<Upd>(this.bt);
+        upds.add(upd);
+        this.qu.drainTo(upds, this.bt - 1);
+        try {
+          apply(rvs, upds);
+        } catch (Exception e) {
+          this.log.error(rvs, QuWhPpl.class, "Batch failed, size: "
+            + upds.size(), e);
+          for (Upd ud : upds) {
+            try {
+              List<Upd> one = new ArrayList<Upd>(1);
+              one.add(ud);
+              apply(rvs, one);
+            } catch (Exception e1) {
+              this.log.error(rvs, QuWhPpl.class, "Update failed, pid: "
+                + ud.payId, e1);
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (Exception e) {
+        this.log.error(rvs, QuWhPpl.class, "Worker error", e);
+      } finally {
+        rvs.clear();
+      }
+    }
+  }
+
+  /**
+   * <p>Applies updates in single transaction.</p>
+   * @param pRvs request scoped vars
+   * @param pUpds updates
+   * @throws Exception - an exception
+   **/
+  private void apply(final Map<String, Object> pRvs,
+    final List<Upd> pUpds) throws Exception {
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.begin();
+      for (Upd upd : pUpds) {
+        if (upd.buyr == null) {
+          SrPayJr.Rec rec = this.srPayJr.fnd(pRvs, upd.payId);
+          if (rec == null) {
+            this.log.warn(pRvs, QuWhPpl.class,
+              "Payment is not in journal, it's foreign or too old, pid: "
+                + upd.payId);
+            continue;
+          }
+          upd.buyr = rec.getBuyr();
+          upd.pur = rec.getPur();
+          upd.selr = rec.getSelr();
+          upd.isMl = rec.getIsMl();
+          upd.ords = rec.getOrds();
+        }
+        int cnt;
+        if (upd.isMl) {
+          cnt = this.srPayd.paydPy(pRvs, upd.buyr, upd.pur, upd.selr, true,
+            upd.ords);
+        } else {
+          cnt = this.srPayd.payd(pRvs, upd.buyr, upd.pur, true, upd.ords);
+        }
+        if (cnt == 0) {
+          this.log.warn(pRvs, QuWhPpl.class, "No booked orders, they are"
+            + " payed by phase 2 or canceled (expired), buyer/pur/pid: "
+              + upd.buyr + "/" + upd.pur + "/" + upd.payId);
+        }
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+  }
+
+  /**
+   * <p>Lazy gets queue and starts workers.</p>
+   * @return queue
+   **/
+  private synchronized BlockingQueue<Upd> lazQu() {
+    if (this.qu == null) {
+      this.qu = new ArrayBlockingQueue<Upd>(this.cap);
+    }
+    if (this.wrks == null && !this.stop) {
+      this.wrks = new Thread[this.thr];
+      for (int i = 0; i < this.thr; i++) {
+        this.wrks[i] = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            work();
+          }
+        }, "PplWhWorker-" + (i + 1));
+        this.wrks[i].setDaemon(true);
+        this.wrks[i].start();
+      }
+    }
+    return this.qu;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for srPayJr.</p>
+   * @return SrPayJr
+   **/
+  public final SrPayJr getSrPayJr() {
+    return this.srPayJr;
+  }
+
+  /**
+   * <p>Setter for srPayJr.</p>
+   * @param pSrPayJr reference
+   **/
+  public final void setSrPayJr(final SrPayJr pSrPayJr) {
+    this.srPayJr = pSrPayJr;
+  }
+
+  /**
+   * <p>Getter for srPayd.</p>
+   * @return SrPayd
+   **/
+  public final SrPayd getSrPayd() {
+    return this.srPayd;
+  }
+
+  /**
+   * <p>Setter for srPayd.</p>
+   * @param pSrPayd reference
+   **/
+  public final void setSrPayd(final SrPayd pSrPayd) {
+    this.srPayd = pSrPayd;
+  }
+
+  /**
+   * <p>Getter for cap.</p>
+   * @return int
+   **/
+  public final int getCap() {
+    return this.cap;
+  }
+
+  /**
+   * <p>Setter for cap.</p>
+   * @param pCap reference
+   **/
+  public final void setCap(final int pCap) {
+    this.cap = pCap;
+  }
+
+  /**
+   * <p>Getter for thr.</p>
+   * @return int
+   **/
+  public final int getThr() {
+    return this.thr;
+  }
+
+  /**
+   * <p>Setter for thr.</p>
+   * @param pThr reference
+   **/
+  public final void setThr(final int pThr) {
+    this.thr = pThr;
+  }
+
+  /**
+   * <p>Getter for bt.</p>
+   * @return int
+   **/
+  public final int getBt() {
+    return this.bt;
+  }
+
+  /**
+   * <p>Setter for bt.</p>
+   * @param pBt reference
+   **/
+  public final void setBt(final int pBt) {
+    this.bt = pBt;
+  }
+
+}
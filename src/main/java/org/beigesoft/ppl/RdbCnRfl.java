@@ -0,0 +1,96 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+
+/**
+ * <p>Provider of JDBC connection of given IRdb, it uses IRdb's public
+ * method with given name without parameters that returns connection
+ * used by current thread, e.g. lazCon.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class RdbCnRfl implements IRdbCn {
+
+  /**
+   * <p>IRdb.</p>
+   **/
+  private final Object rdb;
+
+  /**
+   * <p>IRdb's connection getter.</p>
+   **/
+  private final Method mth;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pRdb IRdb
+   * @param pMth connection getter
+   **/
+  private RdbCnRfl(final Object pRdb, final Method pMth) {
+    this.rdb = pRdb;
+    this.mth = pMth;
+  }
+
+  /**
+   * <p>Creates provider.</p>
+   * @param pRdb IRdb
+   * @param pMth connection getter name, e.g. lazCon
+   * @return provider or null if IRdb has no such connection getter
+   **/
+  public static RdbCnRfl crt(final Object pRdb, final String pMth) {
+    if (pRdb == null || pMth == null) {
+      return null;
+    }
+    Method mt;
+    try {
+      mt = pRdb.getClass().getMethod(pMth);
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+    if (Modifier.isStatic(mt.getModifiers())
+      || !Connection.class.isAssignableFrom(mt.getReturnType())) {
+      return null;
+    }
+    return new RdbCnRfl(pRdb, mt);
+  }
+
+  /**
+   * <p>Gets current connection.</p>
+   * @return connection
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final Connection getCon() throws Exception {
+    return (Connection) this.mth.invoke(this.rdb);
+  }
+}
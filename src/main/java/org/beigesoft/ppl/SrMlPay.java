@@ -0,0 +1,392 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.sql.ResultSet;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.IRecSet;
+
+/**
+ * <p>Multi-payee payments service. In multi-payee mode purchase is paid
+ * by several PayPal payments, one per payee (owner or S.E.Seller).
+ * OnlPay holds only purchase and MULTI instead of payment ID,
+ * payments are held in table PPLMLPAY, they are created concurrently,
+ * but buyer approves them one by one (REST API v1 payment has single
+ * payee), so only phase 1 latency is close to single-payee one.
+ * Every executed payment records its payee's orders as PAYED, empties
+ * cart (the first one) and refreshes OnlPay time. If buyer doesn't
+ * approve the rest payments in payment timeout since the last execution,
+ * then sweeper cancels the rest payees' BOOKED orders, i.e. purchase
+ * stays partly paid.
+ * Methods except init must be invoked inside transaction.
+ * Payment IDs are checked by pattern and approval URLs are escaped,
+ * so SQL is safe.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrMlPay {
+
+  /**
+   * <p>Payment status created (not yet executed).</p>
+   **/
+  public static final int CREATED = 0;
+
+  /**
+   * <p>Payment status executed.</p>
+   **/
+  public static final int EXECUTED = 1;
+
+  /**
+   * <p>Payee's payment.</p>
+   **/
+  public static final class MlPay {
+
+    /**
+     * <p>PayPal payment ID.</p>
+     **/
+    private String payId;
+
+    /**
+     * <p>Buyer ID.</p>
+     **/
+    private Long buyr;
+
+    /**
+     * <p>Purchase ID.</p>
+     **/
+    private Long pur;
+
+    /**
+     * <p>S.E.Seller ID, null means owner.</p>
+     **/
+    private Long selr;
+
+    /**
+     * <p>Status, CREATED or EXECUTED.</p>
+     **/
+    private int stas;
+
+    /**
+     * <p>Approval URL.</p>
+     **/
+    private String apru;
+
+    //Simple getters and setters:
+    /**
+     * <p>Getter for payId.</p>
+     * @return String
+     **/
+    public String getPayId() {
+      return this.payId;
+    }
+
+    /**
+     * <p>Setter for payId.</p>
+     * @param pPayId reference
+     **/
+    public void setPayId(final String pPayId) {
+      this.payId = pPayId;
+    }
+
+    /**
+     * <p>Getter for buyr.</p>
+     * @return Long
+     **/
+    public Long getBuyr() {
+      return this.buyr;
+    }
+
+    /**
+     * <p>Setter for buyr.</p>
+     * @param pBuyr reference
+     **/
+    public void setBuyr(final Long pBuyr) {
+      this.buyr = pBuyr;
+    }
+
+    /**
+     * <p>Getter for pur.</p>
+     * @return Long
+     **/
+    public Long getPur() {
+      return this.pur;
+    }
+
+    /**
+     * <p>Setter for pur.</p>
+     * @param pPur reference
+     **/
+    public void setPur(final Long pPur) {
+      this.pur = pPur;
+    }
+
+    /**
+     * <p>Getter for selr.</p>
+     * @return Long
+     **/
+    public Long getSelr() {
+      return this.selr;
+    }
+
+    /**
+     * <p>Setter for selr.</p>
+     * @param pSelr reference
+     **/
+    public void setSelr(final Long pSelr) {
+      this.selr = pSelr;
+    }
+
+    /**
+     * <p>Getter for stas.</p>
+     * @return int
+     **/
+    public int getStas() {
+      return this.stas;
+    }
+
+    /**
+     * <p>Setter for stas.</p>
+     * @param pStas reference
+     **/
+    public void setStas(final int pStas) {
+      this.stas = pStas;
+    }
+
+    /**
+     * <p>Getter for apru.</p>
+     * @return String
+     **/
+    public String getApru() {
+      return this.apru;
+    }
+
+    /**
+     * <p>Setter for apru.</p>
+     * @param pApru reference
+     **/
+    public void setApru(final String pApru) {
+      this.apru = pApru;
+    }
+  }
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>Creates table if it doesn't exist, e.g. on application start.</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   **/
+  public final void init(final Map<String, Object> pRvs) throws Exception {
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.begin();
+      this.rdb.exec("create table if not exists PPLMLPAY (PAYID VARCHAR(64)"
+        + " NOT NULL PRIMARY KEY, BUYR BIGINT NOT NULL, PUR BIGINT NOT NULL,"
+        + " SELR BIGINT, STAS INTEGER NOT NULL, APRU VARCHAR(2048) NOT NULL);");
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.begin();
+      this.rdb.exec("create index PPLMLPAYBY on PPLMLPAY (BUYR);");
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      //index already exists:
+      this.log.info(pRvs, SrMlPay.class, "PPLMLPAY index is not created: "
+        + ex.getMessage());
+    } finally {
+      this.rdb.release();
+    }
+  }
+
+  /**
+   * <p>Replaces buyer's payments with given ones.</p>
+   * @param pRvs request scoped vars
+   * @param pBuyr buyer ID
+   * @param pPays payments of current purchase
+   * @throws Exception - an exception
+   **/
+  public final void sav(final Map<String, Object> pRvs, final Long pBuyr,
+    final List<MlPay> pPays) throws Exception {
+    this.rdb.exec("delete from PPLMLPAY where BUYR=" + pBuyr + ";");
+    for (MlPay mp : pPays) {
+      StringBuilder sb = new StringBuilder(256);
+      sb.append("insert into PPLMLPAY (PAYID, BUYR, PUR, SELR, STAS, APRU)")
+        .append(" values ('").append(esc(mp.payId)).append("', ")
+        .append(mp.buyr).append(", ").append(mp.pur).append(", ")
+        .append(mp.selr).append(", ").append(mp.stas).append(", '")
+        .append(esc(mp.apru)).append("');");
+      this.rdb.exec(sb.toString());
+    }
+  }
+
+  /**
+   * <p>Loads buyer's payments.</p>
+   * @param pRvs request scoped vars
+   * @param pBuyr buyer ID
+   * @return payments, maybe empty
+   * @throws Exception - an exception
+   **/
+  public final List<MlPay> lod(final Map<String, Object> pRvs,
+    final Long pBuyr) throws Exception {
+    return sel("BUYR=" + pBuyr);
+  }
+
+  /**
+   * <p>Finds payment by ID, e.g. for webhook event.</p>
+   * @param pRvs request scoped vars
+   * @param pPayId payment ID
+   * @return payment or null
+   * @throws Exception - an exception
+   **/
+  public final MlPay fnd(final Map<String, Object> pRvs,
+    final String pPayId) throws Exception {
+    List<MlPay> mps = sel("PAYID='" + esc(pPayId) + "'");
+    if (mps.size() == 0) {
+      return null;
+    }
+    return mps.get(0);
+  }
+
+  /**
+   * <p>Marks payment as executed.</p>
+   * @param pRvs request scoped vars
+   * @param pMp payment
+   * @throws Exception - an exception
+   **/
+  public final void exed(final Map<String, Object> pRvs,
+    final MlPay pMp) throws Exception {
+    this.rdb.exec("update PPLMLPAY set STAS=" + EXECUTED + " where PAYID='"
+      + esc(pMp.payId) + "';");
+    pMp.stas = EXECUTED;
+  }
+
+  /**
+   * <p>Selects payments by given condition.</p>
+   * @param pWhe where
+   * @return payments, maybe empty
+   * @throws Exception - an exception
+   **/
+  private List<MlPay> sel(final String pWhe) throws Exception {
+    List<MlPay> rz = new ArrayList<MlPay>();
+    IRecSet<ResultSet> rs = null;
+    try {
+      rs = this.rdb.retRs("select PAYID, BUYR, PUR, SELR, STAS, APRU from"
+        + " PPLMLPAY where " + pWhe + " order by PAYID;");
+      if (rs.first()) {
+        do {
+          MlPay mp = new MlPay();
+          mp.payId = rs.getStr("PAYID");
+          mp.buyr = rs.getLong("BUYR");
+          mp.pur = rs.getLong("PUR");
+          mp.selr = rs.getLong("SELR");
+          mp.stas = rs.getInt("STAS");
+          mp.apru = rs.getStr("APRU");
+          rz.add(mp);
+        } while (rs.next());
+      }
+    } finally {
+      if (rs != null) {
+        rs.close();
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Escapes SQL string value, backslash is rejected cause it's
+   * escape character in some DB.</p>
+   * @param pVal value
+   * @return escaped value
+   * @throws Exception - if value has backslash
+   **/
+  private String esc(final String pVal) throws Exception {
+    if (pVal.indexOf('\\') != -1) {
+      throw new Exception("Wrong SQL value: " + pVal);
+    }
+    return pVal.replace("'", "''");
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+}
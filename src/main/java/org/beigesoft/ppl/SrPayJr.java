@@ -0,0 +1,348 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.IRecSet;
+
+/**
+ * <p>Payments journal, i.e. PayPal payment ID to buyer, purchase and
+ * payee (table PPLPAYJR). OnlPay's payment ID is overwritten by the next
+ * buyer's checkout and by expiring, so late webhook event finds its
+ * orders by this journal. Payment's orders count is used for checking
+ * payed ones. Record is made in the same transaction
+ * that records payment ID, records older than ttl are deleted
+ * at most once per hour. Methods except init must be invoked inside
+ * transaction. With bound statements service parameters are bound,
+ * otherwise payment ID is checked by pattern, so SQL is safe.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrPayJr {
+
+  /**
+   * <p>Purge period, milliseconds.</p>
+   **/
+  private static final long PRGPR = 3600000L;
+
+  /**
+   * <p>Journal record.</p>
+   **/
+  public static final class Rec {
+
+    /**
+     * <p>Buyer ID.</p>
+     **/
+    private Long buyr;
+
+    /**
+     * <p>Purchase ID.</p>
+     **/
+    private Long pur;
+
+    /**
+     * <p>S.E.Seller ID, null means owner.</p>
+     **/
+    private Long selr;
+
+    /**
+     * <p>If multi-payee payment, i.e. only payee's orders are payed.</p>
+     **/
+    private boolean isMl;
+
+    /**
+     * <p>Payment's orders count.</p>
+     **/
+    private int ords;
+
+    //Simple getters and setters:
+    /**
+     * <p>Getter for buyr.</p>
+     * @return Long
+     **/
+    public Long getBuyr() {
+      return this.buyr;
+    }
+
+    /**
+     * <p>Getter for pur.</p>
+     * @return Long
+     **/
+    public Long getPur() {
+      return this.pur;
+    }
+
+    /**
+     * <p>Getter for selr.</p>
+     * @return Long
+     **/
+    public Long getSelr() {
+      return this.selr;
+    }
+
+    /**
+     * <p>Getter for isMl.</p>
+     * @return boolean
+     **/
+    public boolean getIsMl() {
+      return this.isMl;
+    }
+
+    /**
+     * <p>Getter for ords.</p>
+     * @return int
+     **/
+    public int getOrds() {
+      return this.ords;
+    }
+  }
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>Bound statements service, if null then plain SQL is used.</p>
+   **/
+  private SrSqlPpl srSqlPpl;
+
+  /**
+   * <p>Records time to live, milliseconds, default 30 days, PayPal
+   * resends webhook event within 3 days.</p>
+   **/
+  private long ttl = 2592000000L;
+
+  /**
+   * <p>Last purge time.</p>
+   **/
+  private volatile long lstPrg;
+
+  /**
+   * <p>Creates table if it doesn't exist, e.g. on application start.</p>
+   * @param pRvs request scoped vars
+   * @throws Exception - an exception
+   **/
+  public final void init(final Map<String, Object> pRvs) throws Exception {
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.begin();
+      this.rdb.exec("create table if not exists PPLPAYJR (PAYID VARCHAR(64)"
+        + " NOT NULL PRIMARY KEY, BUYR BIGINT NOT NULL, PUR BIGINT NOT NULL,"
+        + " SELR BIGINT, ISML INTEGER NOT NULL, ORDS INTEGER NOT NULL,"
+          + " CRE BIGINT NOT NULL);");
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+  }
+
+  /**
+   * <p>Records payment, and purges old records at most once per hour.</p>
+   * @param pRvs request scoped vars
+   * @param pPayId payment ID
+   * @param pBuyr buyer ID
+   * @param pPur purchase ID
+   * @param pSelr S.E.Seller ID, null means owner
+   * @param pIsMl if multi-payee payment
+   * @param pOrds payment's orders count
+   * @throws Exception - an exception
+   **/
+  public final void sav(final Map<String, Object> pRvs, final String pPayId,
+    final Long pBuyr, final Long pPur, final Long pSelr,
+      final boolean pIsMl, final int pOrds) throws Exception {
+    long now = System.currentTimeMillis();
+    if (now - this.lstPrg > PRGPR) {
+      this.lstPrg = now;
+      if (this.srSqlPpl != null) {
+        PreparedStatement ps = this.srSqlPpl
+          .prp("delete from PPLPAYJR where CRE<?");
+        ps.setLong(1, now - this.ttl);
+        ps.executeUpdate();
+      } else {
+        this.rdb.exec("delete from PPLPAYJR where CRE<" + (now - this.ttl)
+          + ";");
+      }
+    }
+    int isMl = 0;
+    if (pIsMl) {
+      isMl = 1;
+    }
+    if (this.srSqlPpl != null) {
+      PreparedStatement ps = this.srSqlPpl.prp("insert into PPLPAYJR (PAYID,"
+        + " BUYR, PUR, SELR, ISML, ORDS, CRE) values (?, ?, ?, ?, ?, ?, ?)");
+      ps.setString(1, pPayId);
+      ps.setLong(2, pBuyr);
+      ps.setLong(3, pPur);
+      if (pSelr == null) {
+        ps.setNull(4, Types.BIGINT);
+      } else {
+        ps.setLong(4, pSelr);
+      }
+      ps.setInt(5, isMl);
+      ps.setInt(6, pOrds);
+      ps.setLong(7, now);
+      ps.executeUpdate();
+    } else {
+      this.rdb.exec("insert into PPLPAYJR (PAYID, BUYR, PUR, SELR, ISML,"
+        + " ORDS, CRE) values ('" + chk(pPayId) + "', " + pBuyr + ", " + pPur
+          + ", " + pSelr + ", " + isMl + ", " + pOrds + ", " + now + ");");
+    }
+  }
+
+  /**
+   * <p>Finds payment, e.g. for webhook event.</p>
+   * @param pRvs request scoped vars
+   * @param pPayId payment ID
+   * @return record or null
+   * @throws Exception - an exception
+   **/
+  public final Rec fnd(final Map<String, Object> pRvs,
+    final String pPayId) throws Exception {
+    String sel = "select BUYR, PUR, SELR, ISML, ORDS from PPLPAYJR where"
+      + " PAYID=";
+    if (this.srSqlPpl != null) {
+      PreparedStatement ps = this.srSqlPpl.prp(sel + "?");
+      ps.setString(1, pPayId);
+      ResultSet rs = ps.executeQuery();
+      try {
+        if (rs.next()) {
+          Rec rz = new Rec();
+          rz.buyr = rs.getLong(1);
+          rz.pur = rs.getLong(2);
+          long selr = rs.getLong(3);
+          if (!rs.wasNull()) {
+            rz.selr = selr;
+          }
+          rz.isMl = rs.getInt(4) == 1;
+          rz.ords = rs.getInt(5);
+          return rz;
+        }
+      } finally {
+        rs.close();
+      }
+      return null;
+    }
+    IRecSet<ResultSet> rs = null;
+    try {
+      rs = this.rdb.retRs(sel + "'" + chk(pPayId) + "';");
+      if (rs.first()) {
+        Rec rz = new Rec();
+        rz.buyr = rs.getLong("BUYR");
+        rz.pur = rs.getLong("PUR");
+        rz.selr = rs.getLong("SELR");
+        rz.isMl = rs.getInt("ISML") == 1;
+        rz.ords = rs.getInt("ORDS");
+        return rz;
+      }
+    } finally {
+      if (rs != null) {
+        rs.close();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * <p>Checks payment ID for plain SQL, i.e. letters, digits and dash.</p>
+   * @param pPayId payment ID
+   * @return payment ID
+   * @throws Exception - if ID is wrong
+   **/
+  private String chk(final String pPayId) throws Exception {
+    for (int i = 0; i < pPayId.length(); i++) {
+      char ch = pPayId.charAt(i);
+      if (!(ch >= 'A' && ch <= 'Z' || ch >= 'a' && ch <= 'z'
+        || ch >= '0' && ch <= '9' || ch == '-')) {
+        throw new Exception("Wrong payment ID: " + pPayId);
+      }
+    }
+    return pPayId;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for srSqlPpl.</p>
+   * @return SrSqlPpl
+   **/
+  public final SrSqlPpl getSrSqlPpl() {
+    return this.srSqlPpl;
+  }
+
+  /**
+   * <p>Setter for srSqlPpl.</p>
+   * @param pSrSqlPpl reference
+   **/
+  public final void setSrSqlPpl(final SrSqlPpl pSrSqlPpl) {
+    this.srSqlPpl = pSrSqlPpl;
+  }
+
+  /**
+   * <p>Getter for ttl.</p>
+   * @return long
+   **/
+  public final long getTtl() {
+    return this.ttl;
+  }
+
+  /**
+   * <p>Setter for ttl.</p>
+   * @param pTtl reference
+   **/
+  public final void setTtl(final long pTtl) {
+    this.ttl = pTtl;
+  }
+}
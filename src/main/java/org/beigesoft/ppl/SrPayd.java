@@ -0,0 +1,349 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.Date;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.PreparedStatement;
+
+import org.beigesoft.mdl.ColVals;
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.SrvClVl;
+import org.beigesoft.ws.mdl.EOrdStat;
+import org.beigesoft.ws.mdlp.CuOr;
+import org.beigesoft.ws.mdlp.CuOrSe;
+
+/**
+ * <p>Service that marks purchase's PayPal orders (owner's and S.E.)
+ * as payed. It must be invoked inside transaction. With bound statements
+ * on Postgres both updates are sent in single round trip by
+ * data-modifying CTE. Other DB gets both updates by single JDBC batch
+ * of numbers only SQL (all values are numbers, so it's safe), driver that
+ * rewrites batches (MySQL rewriteBatchedStatements=true) sends it by
+ * single round trip, without it (or another driver) it's two round trips
+ * as two separate updates. Multi-table UPDATE (MySQL) isn't used, because
+ * it's a join, so it changes nothing if one of tables has no purchase's
+ * orders. Multi-statement (MySQL allowMultiQueries) isn't used, because
+ * it's connection URL wide option that allows stacked SQL injection.
+ * Affected rows count is checked against expected orders count
+ * recorded by phase 1.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrPayd {
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>Column values service.</p>
+   **/
+  private SrvClVl srvClVl;
+
+  /**
+   * <p>Bound statements service, if null then plain SQL is used.</p>
+   **/
+  private SrSqlPpl srSqlPpl;
+
+  /**
+   * <p>Marks orders as payed.</p>
+   * @param pRvs request scoped vars
+   * @param pBuyr buyer ID
+   * @param pPur purchase ID
+   * @param pOnlBkd only booked orders, e.g. for late webhook event
+   * @param pOrds expected orders count, negative means unknown
+   * @return affected orders count, owner's plus S.E. ones, negative
+   *  means unknown, i.e. driver doesn't report batch counts
+   * @throws Exception - an exception
+   **/
+  public final int payd(final Map<String, Object> pRvs, final Long pBuyr,
+    final Long pPur, final boolean pOnlBkd,
+      final int pOrds) throws Exception {
+    long ver = new Date().getTime();
+    int stas = EOrdStat.PAYED.ordinal();
+    int[] cnts;
+    if (this.srSqlPpl != null && this.srSqlPpl.getIsPstg()) {
+      String wheBk = "";
+      if (pOnlBkd) {
+        wheBk = " and STAS=?";
+      }
+      cnts = new int[2];
+      PreparedStatement ps = this.srSqlPpl.prp("with UO as (update CUOR"
+        + " set VER=?, STAS=? where PAYM in(9,10) and BUYR=? and PUR=?" + wheBk
+        + " returning 1), US as (update CUORSE set VER=?, STAS=? where"
+        + " PAYM in(9,10) and BUYR=? and PUR=?" + wheBk + " returning 1)"
+        + " select (select count(*) from UO), (select count(*) from US)");
+      int idx = 1;
+      for (int i = 0; i < 2; i++) {
+        idx = bnd(ps, idx, ver, stas, pBuyr, pPur, pOnlBkd);
+      }
+      ResultSet rs = ps.executeQuery();
+      try {
+        if (rs.next()) {
+          cnts[0] = rs.getInt(1);
+          cnts[1] = rs.getInt(2);
+        }
+      } finally {
+        rs.close();
+      }
+    } else if (this.srSqlPpl != null) {
+      //numbers only SQL is safe, two statements can't be bound batch:
+      String sts = " set VER=" + ver + ", STAS=" + stas + " where PAYM"
+        + " in(9,10) and BUYR=" + pBuyr + " and PUR=" + pPur;
+      if (pOnlBkd) {
+        sts += " and STAS=" + EOrdStat.BOOKED.ordinal();
+      }
+      Statement st = this.srSqlPpl.getRdbCn().getCon().createStatement();
+      try {
+        st.addBatch("update CUOR" + sts);
+        st.addBatch("update CUORSE" + sts);
+        cnts = st.executeBatch();
+      } finally {
+        st.close();
+      }
+      if (cnts[0] < 0 || cnts[1] < 0) {
+        //e.g. Statement.SUCCESS_NO_INFO:
+        return -1;
+      }
+    } else {
+      //IRdb has no bound update, IDs are numbers, so SQL is safe:
+      String whe = "PAYM in(9,10) and BUYR=" + pBuyr + " and PUR=" + pPur;
+      if (pOnlBkd) {
+        whe += " and STAS=" + EOrdStat.BOOKED.ordinal();
+      }
+      ColVals cvs = new ColVals();
+      this.srvClVl.put(cvs, "ver", ver);
+      this.srvClVl.put(cvs, "stas", stas);
+      cnts = new int[2];
+      cnts[0] = this.rdb.update(CuOr.class, cvs, whe);
+      cnts[1] = this.rdb.update(CuOrSe.class, cvs, whe);
+    }
+    int rz = cnts[0] + cnts[1];
+    chkCnt(pRvs, rz, pOrds, pOnlBkd, "buyer/pur: " + pBuyr + "/" + pPur
+      + ", counts owner/S.E.: " + cnts[0] + "/" + cnts[1]);
+    return rz;
+  }
+
+  /**
+   * <p>Marks payee's orders as payed, e.g. in multi-payee mode.</p>
+   * @param pRvs request scoped vars
+   * @param pBuyr buyer ID
+   * @param pPur purchase ID
+   * @param pSelr S.E.Seller ID, null means owner
+   * @param pOnlBkd only booked orders, e.g. for late webhook event
+   * @param pOrds expected orders count, negative means unknown
+   * @return affected orders count
+   * @throws Exception - an exception
+   **/
+  public final int paydPy(final Map<String, Object> pRvs, final Long pBuyr,
+    final Long pPur, final Long pSelr, final boolean pOnlBkd,
+      final int pOrds) throws Exception {
+    long ver = new Date().getTime();
+    int stas = EOrdStat.PAYED.ordinal();
+    int rz;
+    if (this.srSqlPpl != null) {
+      PreparedStatement ps;
+      if (pSelr == null) {
+        ps = this.srSqlPpl.prp(updSql("CUOR", pOnlBkd, false));
+      } else {
+        ps = this.srSqlPpl.prp(updSql("CUORSE", pOnlBkd, true));
+      }
+      int idx = bnd(ps, 1, ver, stas, pBuyr, pPur, pOnlBkd);
+      if (pSelr != null) {
+        ps.setLong(idx, pSelr);
+      }
+      rz = ps.executeUpdate();
+    } else {
+      //IRdb has no bound update, IDs are numbers, so SQL is safe:
+      String whe = "PAYM in(9,10) and BUYR=" + pBuyr + " and PUR=" + pPur;
+      if (pOnlBkd) {
+        whe += " and STAS=" + EOrdStat.BOOKED.ordinal();
+      }
+      ColVals cvs = new ColVals();
+      this.srvClVl.put(cvs, "ver", ver);
+      this.srvClVl.put(cvs, "stas", stas);
+      if (pSelr == null) {
+        rz = this.rdb.update(CuOr.class, cvs, whe);
+      } else {
+        rz = this.rdb.update(CuOrSe.class, cvs, whe + " and SELR=" + pSelr);
+      }
+    }
+    chkCnt(pRvs, rz, pOrds, pOnlBkd, "buyer/pur/selr: " + pBuyr + "/"
+      + pPur + "/" + pSelr);
+    return rz;
+  }
+
+  /**
+   * <p>Checks affected orders count against expected one.
+   * Executed payment must pay all its orders, otherwise it's logged as
+   * error. Late webhook event may pay nothing (they are payed by phase 2),
+   * but partial one is logged as warning.</p>
+   * @param pRvs request scoped vars
+   * @param pCnt affected orders count
+   * @param pOrds expected orders count, negative means unknown
+   * @param pOnlBkd only booked orders, i.e. webhook event
+   * @param pDsc description for log
+   **/
+  private void chkCnt(final Map<String, Object> pRvs, final int pCnt,
+    final int pOrds, final boolean pOnlBkd, final String pDsc) {
+    if (this.log == null) {
+      return;
+    }
+    if (pOnlBkd) {
+      if (pCnt > 0 && pOrds >= 0 && pCnt != pOrds) {
+        this.log.warn(pRvs, SrPayd.class, "Not all orders were booked,"
+          + " expected/payed: " + pOrds + "/" + pCnt + ", " + pDsc);
+      }
+    } else if (pOrds >= 0 && pCnt != pOrds || pOrds < 0 && pCnt == 0) {
+      this.log.error(pRvs, SrPayd.class, "Payed orders count mismatch,"
+        + " expected/payed: " + pOrds + "/" + pCnt + ", " + pDsc);
+    }
+  }
+
+  /**
+   * <p>Makes bound orders update SQL.</p>
+   * @param pTbl table, CUOR or CUORSE
+   * @param pOnlBkd only booked orders
+   * @param pSelr if with S.E.Seller condition
+   * @return SQL
+   **/
+  private String updSql(final String pTbl, final boolean pOnlBkd,
+    final boolean pSelr) {
+    String rz = "update " + pTbl + " set VER=?, STAS=? where PAYM in(9,10)"
+      + " and BUYR=? and PUR=?";
+    if (pOnlBkd) {
+      rz += " and STAS=?";
+    }
+    if (pSelr) {
+      rz += " and SELR=?";
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Binds orders update parameters made by updSql.</p>
+   * @param pSt statement
+   * @param pIdx start parameter index
+   * @param pVer version
+   * @param pStas new status
+   * @param pBuyr buyer ID
+   * @param pPur purchase ID
+   * @param pOnlBkd only booked orders
+   * @return next parameter index
+   * @throws Exception - an exception
+   **/
+  private int bnd(final PreparedStatement pSt, final int pIdx,
+    final long pVer, final int pStas, final Long pBuyr, final Long pPur,
+      final boolean pOnlBkd) throws Exception {
+    int idx = pIdx;
+    pSt.setLong(idx++, pVer);
+    pSt.setInt(idx++, pStas);
+    pSt.setLong(idx++, pBuyr);
+    pSt.setLong(idx++, pPur);
+    if (pOnlBkd) {
+      pSt.setInt(idx++, EOrdStat.BOOKED.ordinal());
+    }
+    return idx;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for srvClVl.</p>
+   * @return SrvClVl
+   **/
+  public final SrvClVl getSrvClVl() {
+    return this.srvClVl;
+  }
+
+  /**
+   * <p>Setter for srvClVl.</p>
+   * @param pSrvClVl reference
+   **/
+  public final void setSrvClVl(final SrvClVl pSrvClVl) {
+    this.srvClVl = pSrvClVl;
+  }
+
+  /**
+   * <p>Getter for srSqlPpl.</p>
+   * @return SrSqlPpl
+   **/
+  public final SrSqlPpl getSrSqlPpl() {
+    return this.srSqlPpl;
+  }
+
+  /**
+   * <p>Setter for srSqlPpl.</p>
+   * @param pSrSqlPpl reference
+   **/
+  public final void setSrSqlPpl(final SrSqlPpl pSrSqlPpl) {
+    this.srSqlPpl = pSrSqlPpl;
+  }
+}
@@ -0,0 +1,270 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+
+import org.beigesoft.mdl.IIdLn;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.IRecSet;
+import org.beigesoft.ws.mdlb.AOrdLn;
+import org.beigesoft.ws.mdlp.CuOr;
+import org.beigesoft.ws.mdlp.CuOrGdLn;
+import org.beigesoft.ws.mdlp.CuOrSrLn;
+import org.beigesoft.ws.mdlp.CuOrTxLn;
+
+/**
+ * <p>Service that loads goods, services and tax lines of all PayPal
+ * orders (owner's and S.E.Seller's) by single query (UNION ALL),
+ * only needed columns are retrieved. It uses bound statement if
+ * SrSqlPpl is set. Both S.E. and owner's lines
+ * are loaded into owner's lines types.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrPplLn {
+
+  /**
+   * <p>Lines tables, index is line type.</p>
+   **/
+  private static final String[] TABLES = {"CUORGDLN", "CUORSEGDLN",
+    "CUORSRLN", "CUORSESRLN", "CUORTXLN", "CUORSETXLN"};
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>Bound statements service, if null then plain SQL is used.</p>
+   **/
+  private SrSqlPpl srSqlPpl;
+
+  /**
+   * <p>Loads lines of given PayPal orders.</p>
+   * @param pRvs request scoped vars
+   * @param pOrds owner's orders or null
+   * @param pSords S.E. orders or null
+   * @return lines holders - [0] owner's, [1] S.E., holder is null
+   * if there is no its orders
+   * @throws Exception - an exception
+   **/
+  public final CuOr[] lod(final Map<String, Object> pRvs,
+    final List<? extends IIdLn> pOrds,
+      final List<? extends IIdLn> pSords) throws Exception {
+    CuOr[] rz = new CuOr[2];
+    boolean isOw = pOrds != null && pOrds.size() > 0;
+    boolean isSe = pSords != null && pSords.size() > 0;
+    if (!isOw && !isSe) {
+      return rz;
+    }
+    StringBuilder sb = new StringBuilder(512);
+    if (isOw) {
+      rz[0] = new CuOr();
+      String cnd = mkCnd(pOrds);
+      for (int lt = 0; lt < TABLES.length; lt += 2) {
+        appSel(sb, lt, cnd);
+      }
+    }
+    if (isSe) {
+      rz[1] = new CuOr();
+      String cnd = mkCnd(pSords);
+      for (int lt = 1; lt < TABLES.length; lt += 2) {
+        appSel(sb, lt, cnd);
+      }
+    }
+    sb.append(" order by LTP, IID");
+    if (this.srSqlPpl != null) {
+      PreparedStatement ps = this.srSqlPpl.prp(sb.toString());
+      //every family has goods, services and taxes selects:
+      int idx = 1;
+      for (int i = 0; isOw && i < TABLES.length / 2; i++) {
+        idx = this.srSqlPpl.bndIds(ps, idx, pOrds);
+      }
+      for (int i = 0; isSe && i < TABLES.length / 2; i++) {
+        idx = this.srSqlPpl.bndIds(ps, idx, pSords);
+      }
+      ResultSet r = ps.executeQuery();
+      try {
+        while (r.next()) {
+          rdRow(r, rz);
+        }
+      } finally {
+        r.close();
+      }
+      return rz;
+    }
+    IRecSet<ResultSet> rs = null;
+    try {
+      rs = this.rdb.retRs(sb.append(";").toString());
+      if (rs.first()) {
+        ResultSet r = rs.getRecSet();
+        do {
+          rdRow(r, rz);
+        } while (rs.next());
+      }
+    } finally {
+      if (rs != null) {
+        rs.close();
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Reads current row into lines holder.</p>
+   * @param pRs result set
+   * @param pRz lines holders
+   * @throws Exception - an exception
+   **/
+  private void rdRow(final ResultSet pRs,
+    final CuOr[] pRz) throws Exception {
+    int lt = pRs.getInt("LTP");
+    CuOr hld = pRz[lt % 2];
+    if (lt < 2) {
+      CuOrGdLn il = new CuOrGdLn();
+      fill(pRs, il);
+      if (hld.getGoods() == null) {
+        hld.setGoods(new ArrayList<CuOrGdLn>());
+      }
+      hld.getGoods().add(il);
+    } else if (lt < 4) {
+      CuOrSrLn il = new CuOrSrLn();
+      fill(pRs, il);
+      if (hld.getServs() == null) {
+        hld.setServs(new ArrayList<CuOrSrLn>());
+      }
+      hld.getServs().add(il);
+    } else {
+      CuOrTxLn tl = new CuOrTxLn();
+      tl.setIid(pRs.getLong("IID"));
+      tl.setTot(pRs.getBigDecimal("TOT"));
+      if (hld.getTaxes() == null) {
+        hld.setTaxes(new ArrayList<CuOrTxLn>());
+      }
+      hld.getTaxes().add(tl);
+    }
+  }
+
+  /**
+   * <p>Fills good/service line.</p>
+   * @param pRs result set
+   * @param pLn line
+   * @throws Exception - an exception
+   **/
+  private void fill(final ResultSet pRs,
+    final AOrdLn pLn) throws Exception {
+    pLn.setIid(pRs.getLong("IID"));
+    pLn.setNme(pRs.getString("NME"));
+    pLn.setPri(pRs.getBigDecimal("PRI"));
+    pLn.setQuan(pRs.getBigDecimal("QUAN"));
+    pLn.setSubt(pRs.getBigDecimal("SUBT"));
+    pLn.setTot(pRs.getBigDecimal("TOT"));
+    pLn.setToTx(pRs.getBigDecimal("TOTX"));
+  }
+
+  /**
+   * <p>Appends select of given line type.</p>
+   * @param pSb query buffer
+   * @param pLt line type, i.e. table index
+   * @param pCnd owners condition
+   **/
+  private void appSel(final StringBuilder pSb, final int pLt,
+    final String pCnd) {
+    if (pSb.length() > 0) {
+      pSb.append(" union all ");
+    }
+    pSb.append("select ").append(pLt).append(" as LTP, IID");
+    if (pLt < 4) {
+      pSb.append(", NME, PRI, QUAN, SUBT, TOT, TOTX");
+    } else {
+      pSb.append(", null as NME, null as PRI, null as QUAN, null as SUBT,"
+        + " TOT, null as TOTX");
+    }
+    pSb.append(" from ").append(TABLES[pLt]).append(" where ")
+      .append(pCnd);
+  }
+
+  /**
+   * <p>Makes owners condition, with placeholders if bound statements
+   * are used.</p>
+   * @param pOrds orders
+   * @return condition
+   **/
+  private String mkCnd(final List<? extends IIdLn> pOrds) {
+    if (this.srSqlPpl != null) {
+      return this.srSqlPpl.inIds("OWNR", pOrds.size());
+    }
+    StringBuilder sb = new StringBuilder("OWNR in (");
+    for (int i = 0; i < pOrds.size(); i++) {
+      if (i > 0) {
+        sb.append(",");
+      }
+      sb.append(pOrds.get(i).getIid());
+    }
+    return sb.append(")").toString();
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for srSqlPpl.</p>
+   * @return SrSqlPpl
+   **/
+  public final SrSqlPpl getSrSqlPpl() {
+    return this.srSqlPpl;
+  }
+
+  /**
+   * <p>Setter for srSqlPpl.</p>
+   * @param pSrSqlPpl reference
+   **/
+  public final void setSrSqlPpl(final SrSqlPpl pSrSqlPpl) {
+    this.srSqlPpl = pSrSqlPpl;
+  }
+}
@@ -0,0 +1,349 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.List;
+import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import org.beigesoft.mdl.IIdLn;
+
+/**
+ * <p>Service that makes parameter-bound statements for PayPal SQL
+ * and caches them per connection (LRU), so DB parses query once.
+ * Variable length IDs list is bound as array on Postgres (= ANY(?)),
+ * on MySQL placeholders count is bucketed to power of two (last ID is
+ * repeated), so there is only a few different queries.
+ * Cache is keyed by physical connection (Connection.unwrap), so pool's
+ * proxies of the same connection share statements, and statements are
+ * prepared by physical connection, so closing proxy doesn't close them.
+ * Statements of closed connection are closed and dropped, if there are
+ * more than maxCn connections, then statements of the eldest ones that
+ * can't be in use are closed and dropped, i.e. ones of connection that
+ * was used last by current thread (it uses other one now) or by died
+ * thread. Statements of connection used last by other live thread are
+ * never closed, in this case cache may exceed maxCn, so maxCn should be
+ * more than DB pool size.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrSqlPpl {
+
+  /**
+   * <p>Connection provider.</p>
+   **/
+  private IRdbCn rdbCn;
+
+  /**
+   * <p>If Postgres.</p>
+   **/
+  private boolean isPstg;
+
+  /**
+   * <p>Maximum cached statements per connection, default 32.</p>
+   **/
+  private int maxSt = 32;
+
+  /**
+   * <p>Maximum cached connections, default 64.</p>
+   **/
+  private int maxCn = 64;
+
+  /**
+   * <p>Statements cache of physical connection.</p>
+   **/
+  private static final class Ent {
+
+    /**
+     * <p>Statements by SQL, LRU.</p>
+     **/
+    private final Map<String, PreparedStatement> sts;
+
+    /**
+     * <p>Thread that used connection last.</p>
+     **/
+    private Thread own;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pSts statements
+     **/
+    Ent(final Map<String, PreparedStatement> pSts) {
+      this.sts = pSts;
+    }
+  }
+
+  /**
+   * <p>Statements caches by physical connection.</p>
+   **/
+  private final Map<Connection, Ent> cch =
+    new IdentityHashMap<Connection, Ent>();
+
+  /**
+   * <p>Cached connections in adding order.</p>
+   **/
+  private final ArrayDeque<Connection> cns = new ArrayDeque<Connection>();
+
+  /**
+   * <p>Gets cached or makes statement for current connection,
+   * it must not be closed by client.</p>
+   * @param pSql SQL with placeholders
+   * @return statement with cleared parameters
+   * @throws Exception - an exception
+   **/
+  public final PreparedStatement prp(final String pSql) throws Exception {
+    Connection con = phy(this.rdbCn.getCon());
+    Map<String, PreparedStatement> sts;
+    synchronized (this.cch) {
+      Ent ent = this.cch.get(con);
+      if (ent == null) {
+        purge();
+        sts = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+          private static final long serialVersionUID = 3183405162718209717L;
+          @Override
+          protected boolean removeEldestEntry(
+            final Map.Entry<String, PreparedStatement> pEnt) {
+            if (size() > SrSqlPpl.this.maxSt) {
+              try {
+                pEnt.getValue().close();
+              } catch (Exception e) {
+                //closed statement is always released
+              }
+              return true;
+            }
+            return false;
+          }
+        };
+        ent = new Ent(sts);
+        this.cch.put(con, ent);
+        this.cns.addLast(con);
+      } else {
+        sts = ent.sts;
+      }
+      ent.own = Thread.currentThread();
+    }
+    //connection is used by current thread, purge doesn't close
+    //statements of it, except it's closed:
+    PreparedStatement ps;
+    synchronized (sts) {
+      ps = sts.get(pSql);
+      if (ps == null || ps.isClosed()) {
+        ps = con.prepareStatement(pSql);
+        sts.put(pSql, ps);
+      } else {
+        ps.clearParameters();
+      }
+    }
+    return ps;
+  }
+
+  /**
+   * <p>Makes IDs condition.</p>
+   * @param pCol column name
+   * @param pCnt IDs count
+   * @return condition with placeholders
+   **/
+  public final String inIds(final String pCol, final int pCnt) {
+    if (this.isPstg) {
+      return pCol + " = ANY(?)";
+    }
+    int bkt = bkt(pCnt);
+    StringBuilder sb = new StringBuilder(pCol.length() + 6 + bkt * 2);
+    sb.append(pCol).append(" in (");
+    for (int i = 0; i < bkt; i++) {
+      if (i > 0) {
+        sb.append(",");
+      }
+      sb.append("?");
+    }
+    return sb.append(")").toString();
+  }
+
+  /**
+   * <p>Binds IDs made by inIds.</p>
+   * @param pSt statement
+   * @param pIdx start parameter index
+   * @param pIds entities
+   * @return next parameter index
+   * @throws Exception - an exception
+   **/
+  public final int bndIds(final PreparedStatement pSt, final int pIdx,
+    final List<? extends IIdLn> pIds) throws Exception {
+    if (this.isPstg) {
+      Long[] ids = new Long[pIds.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = pIds.get(i).getIid();
+      }
+      pSt.setArray(pIdx, pSt.getConnection().createArrayOf("bigint", ids));
+      return pIdx + 1;
+    }
+    int bkt = bkt(pIds.size());
+    int last = pIds.size() - 1;
+    for (int i = 0; i < bkt; i++) {
+      pSt.setLong(pIdx + i, pIds.get(Math.min(i, last)).getIid());
+    }
+    return pIdx + bkt;
+  }
+
+  /**
+   * <p>Evaluates bucket, i.e. the nearest power of two.</p>
+   * @param pCnt count
+   * @return bucket
+   **/
+  public final int bkt(final int pCnt) {
+    if (pCnt <= 1) {
+      return 1;
+    }
+    return Integer.highestOneBit(pCnt - 1) << 1;
+  }
+
+  /**
+   * <p>Gets physical connection of pool's proxy one.</p>
+   * @param pCon connection
+   * @return physical connection or given one if it can't be unwrapped
+   **/
+  private Connection phy(final Connection pCon) {
+    try {
+      Connection rz = pCon.unwrap(Connection.class);
+      if (rz != null) {
+        return rz;
+      }
+    } catch (Exception e) {
+      //e.g. old driver, so connection itself is key
+    }
+    return pCon;
+  }
+
+  /**
+   * <p>Closes and drops statements of closed connections, and of the
+   * eldest ones that can't be in use if there is too much connections,
+   * it's invoked under cache lock.</p>
+   * @throws Exception - an exception
+   **/
+  private void purge() throws Exception {
+    Thread cur = Thread.currentThread();
+    for (Iterator<Connection> it = this.cns.iterator(); it.hasNext();) {
+      Connection con = it.next();
+      Ent ent = this.cch.get(con);
+      //current thread uses other connection now:
+      boolean fre = ent.own == cur || !ent.own.isAlive();
+      if (con.isClosed() || fre && this.cns.size() >= this.maxCn) {
+        it.remove();
+        cls(this.cch.remove(con));
+      }
+    }
+  }
+
+  /**
+   * <p>Closes statements.</p>
+   * @param pEnt statements of connection
+   **/
+  private void cls(final Ent pEnt) {
+    synchronized (pEnt.sts) {
+      for (PreparedStatement ps : pEnt.sts.values()) {
+        try {
+          ps.close();
+        } catch (Exception e) {
+          //closed statement is always released
+        }
+      }
+      pEnt.sts.clear();
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for rdbCn.</p>
+   * @return IRdbCn
+   **/
+  public final IRdbCn getRdbCn() {
+    return this.rdbCn;
+  }
+
+  /**
+   * <p>Setter for rdbCn.</p>
+   * @param pRdbCn reference
+   **/
+  public final void setRdbCn(final IRdbCn pRdbCn) {
+    this.rdbCn = pRdbCn;
+  }
+
+  /**
+   * <p>Getter for isPstg.</p>
+   * @return boolean
+   **/
+  public final boolean getIsPstg() {
+    return this.isPstg;
+  }
+
+  /**
+   * <p>Setter for isPstg.</p>
+   * @param pIsPstg reference
+   **/
+  public final void setIsPstg(final boolean pIsPstg) {
+    this.isPstg = pIsPstg;
+  }
+
+  /**
+   * <p>Getter for maxSt.</p>
+   * @return int
+   **/
+  public final int getMaxSt() {
+    return this.maxSt;
+  }
+
+  /**
+   * <p>Setter for maxSt.</p>
+   * @param pMaxSt reference
+   **/
+  public final void setMaxSt(final int pMaxSt) {
+    this.maxSt = pMaxSt;
+  }
+
+  /**
+   * <p>Getter for maxCn.</p>
+   * @return int
+   **/
+  public final int getMaxCn() {
+    return this.maxCn;
+  }
+
+  /**
+   * <p>Setter for maxCn.</p>
+   * @param pMaxCn reference
+   **/
+  public final void setMaxCn(final int pMaxCn) {
+    this.maxCn = pMaxCn;
+  }
+}
@@ -0,0 +1,718 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+
+import org.beigesoft.mdl.ColVals;
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IOrm;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.SrvClVl;
+import org.beigesoft.ws.mdl.EOrdStat;
+import org.beigesoft.acc.mdlp.DbCr;
+import org.beigesoft.ws.mdlp.AddStg;
+import org.beigesoft.ws.mdlp.Buyer;
+import org.beigesoft.ws.mdlp.OnlPay;
+import org.beigesoft.ws.mdlp.SeSel;
+import org.beigesoft.ws.srv.ICncOrd;
+
+/**
+ * <p>Scheduled sweeper of expired OnlPay (abandoned checkouts).
+ * It retrieves expired OnlPay by DAT index range scan in batches
+ * by transaction of configurable (low) isolation, then in transaction of
+ * store's booking isolation (AddStg) it marks OnlPay as expired
+ * (payId EXPIRED, DAT 0, so it's out of scan range) by optimistic
+ * locking (VER) and cancels its BOOKED orders. OnlPay claimed by phase 2
+ * (negative VER) is skipped, because phase 2 claims OnlPay before
+ * execution, and releases claim when execution surely isn't sent or
+ * isn't done. OnlPay claimed earlier than payment and call timeouts ago
+ * (request died or execution result is unknown) is resolved by
+ * PrPpl.rslvClm - payments are retrieved from PayPal, approved ones are
+ * recorded as payed, then claim is released, so it's swept with
+ * only not payed orders.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SwPpl implements Runnable {
+
+  /**
+   * <p>Expired OnlPay payment ID.</p>
+   **/
+  public static final String PAYID_EXPIRED = "EXPIRED";
+
+  /**
+   * <p>Logger.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>Database service.</p>
+   **/
+  private IRdb<ResultSet> rdb;
+
+  /**
+   * <p>ORM service.</p>
+   **/
+  private IOrm orm;
+
+  /**
+   * <p>Column values service.</p>
+   **/
+  private SrvClVl srvClVl;
+
+  /**
+   * <p>Orders canceler.</p>
+   **/
+  private ICncOrd cncOrd;
+
+  /**
+   * <p>Bound statements service, if null then plain SQL is used.</p>
+   **/
+  private SrSqlPpl srSqlPpl;
+
+  /**
+   * <p>OnlPay near-cache or null.</p>
+   **/
+  private CchOnPa cchOnPa;
+
+  /**
+   * <p>Candidates retrieving transaction isolation, 0 means database
+   * default one, canceling is made by store's booking isolation.</p>
+   **/
+  private int trIsl = 2;
+
+  /**
+   * <p>Processor that resolves long claimed OnlPay, null means they
+   * aren't resolved.</p>
+   **/
+  private PrPpl prPpl;
+
+  /**
+   * <p>Total timeout of remote call, milliseconds, claim older than
+   * payTo + totTo is considered as stale.</p>
+   **/
+  private long totTo = 60000L;
+
+  /**
+   * <p>OnlPay expiry, milliseconds.</p>
+   **/
+  private long payTo = 600000L;
+
+  /**
+   * <p>Sweep period, milliseconds, 0 means disabled.</p>
+   **/
+  private long pr;
+
+  /**
+   * <p>Batch size, i.e. OnlPay rows per transaction.</p>
+   **/
+  private int bt = 100;
+
+  /**
+   * <p>Maximum batches per sweep.</p>
+   **/
+  private int mxBt = 10;
+
+  /**
+   * <p>Scheduler, lazy.</p>
+   **/
+  private ScheduledExecutorService exr;
+
+  /**
+   * <p>Starts sweeper if it's enabled, it creates DAT index if there is
+   * no it.</p>
+   * @param pRvs request scoped vars
+   **/
+  public final synchronized void start(final Map<String, Object> pRvs) {
+    if (this.exr != null || this.pr <= 0) {
+      return;
+    }
+    mkIdx(pRvs);
+    this.exr = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable pRun) {
+          Thread th = new Thread(pRun, "PplSweeper");
+          th.setDaemon(true);
+          return th;
+        }
+      });
+    this.exr.scheduleWithFixedDelay(this, this.pr, this.pr,
+      TimeUnit.MILLISECONDS);
+    this.log.info(pRvs, SwPpl.class, "PayPal sweeper started, period/expiry "
+      + this.pr + "/" + this.payTo);
+  }
+
+  /**
+   * <p>Stops sweeper.</p>
+   **/
+  public final synchronized void release() {
+    if (this.exr != null) {
+      this.exr.shutdownNow();
+      this.exr = null;
+    }
+  }
+
+  /**
+   * <p>Sweeps expired OnlPay.</p>
+   **/
+  @Override
+  public final void run() {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    try {
+      if (this.prPpl != null) {
+        rslvBt(rvs);
+      }
+      int tot = 0;
+      for (int i = 0; i < this.mxBt; i++) {
+        int[] cnts = swBt(rvs);
+        tot += cnts[1];
+        if (cnts[0] < this.bt) {
+          break;
+        }
+      }
+      if (tot > 0) {
+        this.log.info(rvs, SwPpl.class, "Expired checkouts canceled: " + tot);
+      }
+    } catch (Exception e) {
+      this.log.error(rvs, SwPpl.class, "Sweep failed", e);
+    }
+  }
+
+  /**
+   * <p>Sweeps one batch, candidates are retrieved by transaction of
+   * sweep isolation, they are canceled by transaction of booking one.</p>
+   * @param pRvs request scoped vars
+   * @return retrieved and canceled counts
+   * @throws Exception - an exception
+   **/
+  public final int[] swBt(final Map<String, Object> pRvs) throws Exception {
+    int[] rz = new int[2];
+    List<Long> byrs = new ArrayList<Long>();
+    List<OnlPay> ops;
+    AddStg as;
+    try {
+      this.rdb.setAcmt(false);
+      if (this.trIsl > 0) {
+        this.rdb.setTrIsl(this.trIsl);
+      }
+      this.rdb.begin();
+      as = lodAdd(pRvs);
+      long cut = new Date().getTime() - this.payTo;
+      if (this.srSqlPpl != null) {
+        ops = new ArrayList<OnlPay>();
+        PreparedStatement ps = this.srSqlPpl.prp("select IID, PUR, VER from"
+          + " ONLPAY where DAT>0 and DAT<? and VER>0 order by DAT limit ?");
+        ps.setLong(1, cut);
+        ps.setInt(2, this.bt);
+        ResultSet rs = ps.executeQuery();
+        try {
+          while (rs.next()) {
+            OnlPay op = new OnlPay();
+            Buyer byr = new Buyer();
+            byr.setIid(rs.getLong(1));
+            op.setIid(byr);
+            op.setPur(rs.getLong(2));
+            op.setVer(rs.getLong(3));
+            ops.add(op);
+          }
+        } finally {
+          rs.close();
+        }
+      } else {
+        Map<String, Object> vs = new HashMap<String, Object>();
+        vs.put("OnlPayndFds", new String[] {"dat", "iid", "pur", "ver"});
+        ops = this.orm.retLstCnd(pRvs, vs, OnlPay.class,
+          "where ONLPAY.DAT>0 and ONLPAY.DAT<" + cut + " and ONLPAY.VER>0"
+            + " order by ONLPAY.DAT limit " + this.bt); vs.clear();
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    rz[0] = ops.size();
+    if (rz[0] == 0) {
+      return rz;
+    }
+    try {
+      this.rdb.setAcmt(false);
+      if (as.getBkTr() != null && as.getBkTr() > 0) {
+        this.rdb.setTrIsl(as.getBkTr());
+      }
+      this.rdb.begin();
+      for (OnlPay op : ops) {
+        //concurrently changed (e.g. claimed) one is skipped:
+        if (expr(op) == 1) {
+          this.cncOrd.cancel(pRvs, op.getIid(), op.getPur(), EOrdStat.BOOKED,
+            EOrdStat.NEW);
+          byrs.add(op.getIid().getIid());
+          rz[1]++;
+        }
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    if (this.cchOnPa != null) {
+      for (Long byr : byrs) {
+        this.cchOnPa.evict(byr);
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Resolves one batch of OnlPay claimed by phase 2 earlier than
+   * payment and call timeouts ago by PrPpl.rslvClm, each one without
+   * transaction, because it makes remote calls.</p>
+   * @param pRvs request scoped vars
+   * @return retrieved and resolved counts
+   * @throws Exception - an exception
+   **/
+  public final int[] rslvBt(final Map<String, Object> pRvs) throws Exception {
+    int[] rz = new int[2];
+    List<OnlPay> ops;
+    AddStg as;
+    try {
+      this.rdb.setAcmt(false);
+      if (this.trIsl > 0) {
+        this.rdb.setTrIsl(this.trIsl);
+      }
+      this.rdb.begin();
+      as = lodAdd(pRvs);
+      //claim version is minus claim time:
+      long cut = this.payTo + this.totTo - new Date().getTime();
+      if (this.srSqlPpl != null) {
+        ops = new ArrayList<OnlPay>();
+        PreparedStatement ps = this.srSqlPpl.prp("select IID, PUR, SELR,"
+          + " PAYID, VER from ONLPAY where DAT>0 and VER<0 and VER>? limit ?");
+        ps.setLong(1, cut);
+        ps.setInt(2, this.bt);
+        ResultSet rs = ps.executeQuery();
+        try {
+          while (rs.next()) {
+            OnlPay op = new OnlPay();
+            Buyer byr = new Buyer();
+            byr.setIid(rs.getLong(1));
+            op.setIid(byr);
+            op.setPur(rs.getLong(2));
+            long selr = rs.getLong(3);
+            if (!rs.wasNull()) {
+              SeSel sel = new SeSel();
+              DbCr dc = new DbCr();
+              dc.setIid(selr);
+              sel.setIid(dc);
+              op.setSelr(sel);
+            }
+            op.setPayId(rs.getString(4));
+            op.setVer(rs.getLong(5));
+            ops.add(op);
+          }
+        } finally {
+          rs.close();
+        }
+      } else {
+        Map<String, Object> vs = new HashMap<String, Object>();
+        vs.put("OnlPayndFds", new String[] {"iid", "pur", "selr", "payId",
+          "ver"});
+        ops = this.orm.retLstCnd(pRvs, vs, OnlPay.class,
+          "where ONLPAY.DAT>0 and ONLPAY.VER<0 and ONLPAY.VER>" + cut
+            + " limit " + this.bt); vs.clear();
+      }
+      this.rdb.commit();
+    } catch (Exception ex) {
+      if (!this.rdb.getAcmt()) {
+        this.rdb.rollBack();
+      }
+      throw ex;
+    } finally {
+      this.rdb.release();
+    }
+    rz[0] = ops.size();
+    for (OnlPay op : ops) {
+      try {
+        if (this.prPpl.rslvClm(pRvs, op, as) >= 0) {
+          rz[1]++;
+        }
+      } catch (Exception e) {
+        this.log.error(pRvs, SwPpl.class, "Can't resolve claimed OnlPay,"
+          + " buyer " + op.getIid().getIid(), e);
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Loads store's settings, it must be invoked inside transaction.</p>
+   * @param pRvs request scoped vars
+   * @return AddStg
+   * @throws Exception - an exception
+   **/
+  private AddStg lodAdd(final Map<String, Object> pRvs) throws Exception {
+    AddStg rz = new AddStg();
+    rz.setIid(1L);
+    this.orm.refrEnt(pRvs, new HashMap<String, Object>(), rz);
+    return rz;
+  }
+
+  /**
+   * <p>Marks OnlPay as expired by optimistic locking.</p>
+   * @param pOp OnlPay with IID and VER
+   * @return updated rows count, 0 means changed concurrently
+   * @throws Exception - an exception
+   **/
+  private int expr(final OnlPay pOp) throws Exception {
+    long ver = new Date().getTime();
+    if (this.srSqlPpl != null) {
+      PreparedStatement ps = this.srSqlPpl.prp("update ONLPAY set VER=?,"
+        + " PAYID=?, DAT=? where IID=? and VER=?");
+      ps.setLong(1, ver);
+      ps.setString(2, PAYID_EXPIRED);
+      ps.setLong(3, 0L);
+      ps.setLong(4, pOp.getIid().getIid());
+      ps.setLong(5, pOp.getVer());
+      return ps.executeUpdate();
+    }
+    ColVals cvs = new ColVals();
+    this.srvClVl.put(cvs, "ver", ver);
+    this.srvClVl.put(cvs, "payId", PAYID_EXPIRED);
+    this.srvClVl.put(cvs, "dat", 0L);
+    return this.rdb.update(OnlPay.class, cvs, "IID=" + pOp.getIid()
+      .getIid() + " and VER=" + pOp.getVer());
+  }
+
+  /**
+   * <p>Creates OnlPay DAT index if there is no it. Without JDBC
+   * connection (bound statements) it can't be checked, so it should be
+   * created manually.</p>
+   * @param pRvs request scoped vars
+   **/
+  private void mkIdx(final Map<String, Object> pRvs) {
+    if (this.srSqlPpl == null) {
+      this.log.warn(pRvs, SwPpl.class, "There is no JDBC connection, create"
+        + " index manually: create index ONLPAYDAT on ONLPAY (DAT);");
+      return;
+    }
+    try {
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.begin();
+        if (!isIdx(this.srSqlPpl.getRdbCn().getCon())) {
+          this.rdb.exec("create index ONLPAYDAT on ONLPAY (DAT);");
+          this.log.info(pRvs, SwPpl.class, "Index ONLPAYDAT is created");
+        }
+        this.rdb.commit();
+      } catch (Exception ex) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw ex;
+      } finally {
+        this.rdb.release();
+      }
+    } catch (Exception e) {
+      this.log.error(pRvs, SwPpl.class, "Index ONLPAYDAT is not created, sweep"
+        + " makes full scan!", e);
+    }
+  }
+
+  /**
+   * <p>Checks if OnlPay DAT index exists by JDBC meta-data.</p>
+   * @param pCon connection
+   * @return if exists
+   * @throws Exception - an exception
+   **/
+  private boolean isIdx(final Connection pCon) throws Exception {
+    DatabaseMetaData md = pCon.getMetaData();
+    String tbl = "ONLPAY";
+    if (md.storesLowerCaseIdentifiers()) {
+      tbl = "onlpay";
+    }
+    ResultSet rs = md.getIndexInfo(null, null, tbl, false, true);
+    try {
+      while (rs.next()) {
+        //6 - INDEX_NAME:
+        if ("ONLPAYDAT".equalsIgnoreCase(rs.getString(6))) {
+          return true;
+        }
+      }
+    } finally {
+      rs.close();
+    }
+    return false;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for rdb.</p>
+   * @return IRdb<ResultSet>
+   **/
+  public final IRdb<ResultSet> getRdb() {
+    return this.rdb;
+  }
+
+  /**
+   * <p>Setter for rdb.</p>
+   * @param pRdb reference
+   **/
+  public final void setRdb(final IRdb<ResultSet> pRdb) {
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for orm.</p>
+   * @return IOrm
+   **/
+  public final IOrm getOrm() {
+    return this.orm;
+  }
+
+  /**
+   * <p>Setter for orm.</p>
+   * @param pOrm reference
+   **/
+  public final void setOrm(final IOrm pOrm) {
+    this.orm = pOrm;
+  }
+
+  /**
+   * <p>Getter for srvClVl.</p>
+   * @return SrvClVl
+   **/
+  public final SrvClVl getSrvClVl() {
+    return this.srvClVl;
+  }
+
+  /**
+   * <p>Setter for srvClVl.</p>
+   * @param pSrvClVl reference
+   **/
+  public final void setSrvClVl(final SrvClVl pSrvClVl) {
+    this.srvClVl = pSrvClVl;
+  }
+
+  /**
+   * <p>Getter for cncOrd.</p>
+   * @return ICncOrd
+   **/
+  public final ICncOrd getCncOrd() {
+    return this.cncOrd;
+  }
+
+  /**
+   * <p>Setter for cncOrd.</p>
+   * @param pCncOrd reference
+   **/
+  public final void setCncOrd(final ICncOrd pCncOrd) {
+    this.cncOrd = pCncOrd;
+  }
+
+  /**
+   * <p>Getter for payTo.</p>
+   * @return long
+   **/
+  public final long getPayTo() {
+    return this.payTo;
+  }
+
+  /**
+   * <p>Setter for payTo.</p>
+   * @param pPayTo reference
+   **/
+  public final void setPayTo(final long pPayTo) {
+    this.payTo = pPayTo;
+  }
+
+  /**
+   * <p>Getter for pr.</p>
+   * @return long
+   **/
+  public final long getPr() {
+    return this.pr;
+  }
+
+  /**
+   * <p>Setter for pr.</p>
+   * @param pPr reference
+   **/
+  public final void setPr(final long pPr) {
+    this.pr = pPr;
+  }
+
+  /**
+   * <p>Getter for bt.</p>
+   * @return int
+   **/
+  public final int getBt() {
+    return this.bt;
+  }
+
+  /**
+   * <p>Setter for bt.</p>
+   * @param pBt reference
+   **/
+  public final void setBt(final int pBt) {
+    this.bt = pBt;
+  }
+
+  /**
+   * <p>Getter for mxBt.</p>
+   * @return int
+   **/
+  public final int getMxBt() {
+    return this.mxBt;
+  }
+
+  /**
+   * <p>Setter for mxBt.</p>
+   * @param pMxBt reference
+   **/
+  public final void setMxBt(final int pMxBt) {
+    this.mxBt = pMxBt;
+  }
+
+  /**
+   * <p>Getter for srSqlPpl.</p>
+   * @return SrSqlPpl
+   **/
+  public final SrSqlPpl getSrSqlPpl() {
+    return this.srSqlPpl;
+  }
+
+  /**
+   * <p>Setter for srSqlPpl.</p>
+   * @param pSrSqlPpl reference
+   **/
+  public final void setSrSqlPpl(final SrSqlPpl pSrSqlPpl) {
+    this.srSqlPpl = pSrSqlPpl;
+  }
+
+  /**
+   * <p>Getter for cchOnPa.</p>
+   * @return CchOnPa
+   **/
+  public final CchOnPa getCchOnPa() {
+    return this.cchOnPa;
+  }
+
+  /**
+   * <p>Setter for cchOnPa.</p>
+   * @param pCchOnPa reference
+   **/
+  public final void setCchOnPa(final CchOnPa pCchOnPa) {
+    this.cchOnPa = pCchOnPa;
+  }
+
+  /**
+   * <p>Getter for trIsl.</p>
+   * @return int
+   **/
+  public final int getTrIsl() {
+    return this.trIsl;
+  }
+
+  /**
+   * <p>Setter for trIsl.</p>
+   * @param pTrIsl reference
+   **/
+  public final void setTrIsl(final int pTrIsl) {
+    this.trIsl = pTrIsl;
+  }
+
+  /**
+   * <p>Getter for prPpl.</p>
+   * @return PrPpl
+   **/
+  public final PrPpl getPrPpl() {
+    return this.prPpl;
+  }
+
+  /**
+   * <p>Setter for prPpl.</p>
+   * @param pPrPpl reference
+   **/
+  public final void setPrPpl(final PrPpl pPrPpl) {
+    this.prPpl = pPrPpl;
+  }
+
+  /**
+   * <p>Getter for totTo.</p>
+   * @return long
+   **/
+  public final long getTotTo() {
+    return this.totTo;
+  }
+
+  /**
+   * <p>Setter for totTo.</p>
+   * @param pTotTo reference
+   **/
+  public final void setTotTo(final long pTotTo) {
+    this.totTo = pTotTo;
+  }
+}
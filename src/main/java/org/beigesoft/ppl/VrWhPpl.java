@@ -0,0 +1,235 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.net.URL;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+
+import com.paypal.base.Constants;
+import com.paypal.base.SSLUtil;
+
+/**
+ * <p>PayPal webhook events verifier. It validates signing certificate
+ * chain once per certificate URL, then cached certificate is used
+ * until it expired. Certificate URL must be PayPal's one.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class VrWhPpl {
+
+  /**
+   * <p>Webhook ID.</p>
+   **/
+  private String whId;
+
+  /**
+   * <p>SDK configuration, e.g. timeouts.</p>
+   **/
+  private Map<String, String> cnf = new HashMap<String, String>();
+
+  /**
+   * <p>Certificate auth type.</p>
+   **/
+  private String authTp = "RSA";
+
+  /**
+   * <p>Maximum cached certificates.</p>
+   **/
+  private int maxCrt = 16;
+
+  /**
+   * <p>Trusted certificates, lazy.</p>
+   **/
+  private volatile Collection<X509Certificate> trsts;
+
+  /**
+   * <p>Validated certificates by URL.</p>
+   **/
+  private final Map<String, Collection<X509Certificate>> crts =
+    new ConcurrentHashMap<String, Collection<X509Certificate>>();
+
+  /**
+   * <p>Verifies event.</p>
+   * @param pHdrs PayPal headers
+   * @param pBody event
+   * @return if valid
+   * @throws Exception - an exception
+   **/
+  public final boolean verify(final Map<String, String> pHdrs,
+    final String pBody) throws Exception {
+    if (this.whId == null) {
+      throw new Exception("Webhook ID is not set!");
+    }
+    String crtUrl = pHdrs.get(Constants.PAYPAL_HEADER_CERT_URL);
+    String sig = pHdrs.get(Constants.PAYPAL_HEADER_TRANSMISSION_SIG);
+    String algo = pHdrs.get(Constants.PAYPAL_HEADER_AUTH_ALGO);
+    String trId = pHdrs.get(Constants.PAYPAL_HEADER_TRANSMISSION_ID);
+    String trTm = pHdrs.get(Constants.PAYPAL_HEADER_TRANSMISSION_TIME);
+    if (crtUrl == null || sig == null || algo == null || trId == null
+      || trTm == null || !isPplUrl(crtUrl)) {
+      return false;
+    }
+    Collection<X509Certificate> crs = this.crts.get(crtUrl);
+    if (crs != null) {
+      try {
+        for (X509Certificate cr : crs) {
+          cr.checkValidity();
+        }
+      } catch (Exception e) {
+        this.crts.remove(crtUrl);
+        crs = null;
+      }
+    }
+    if (crs == null) {
+      InputStream is = SSLUtil.downloadCertificateFromPath(crtUrl,
+        this.cnf);
+      try {
+        crs = SSLUtil.getCertificateFromStream(is);
+      } finally {
+        is.close();
+      }
+      if (!SSLUtil.validateCertificateChain(crs, lazTrsts(), this.authTp)) {
+        return false;
+      }
+      if (this.crts.size() >= this.maxCrt) {
+        this.crts.clear();
+      }
+      this.crts.put(crtUrl, crs);
+    }
+    String exp = String.format("%s|%s|%s|%s", trId, trTm, this.whId,
+      SSLUtil.crc32(pBody));
+    return SSLUtil.validateData(crs, algo, sig, exp, pBody, this.whId);
+  }
+
+  /**
+   * <p>Checks if URL is PayPal's HTTPS one.</p>
+   * @param pUrl URL
+   * @return if PayPal's
+   **/
+  private boolean isPplUrl(final String pUrl) {
+    try {
+      URL url = new URL(pUrl);
+      String hst = url.getHost().toLowerCase();
+      return "https".equals(url.getProtocol())
+        && (hst.equals("paypal.com") || hst.endsWith(".paypal.com"));
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * <p>Lazy gets trusted certificates, i.e. SDK's bundled.</p>
+   * @return trusted certificates
+   * @throws Exception - an exception
+   **/
+  private Collection<X509Certificate> lazTrsts() throws Exception {
+    Collection<X509Certificate> rz = this.trsts;
+    if (rz == null) {
+      InputStream is = SSLUtil.class.getClassLoader()
+        .getResourceAsStream(Constants.PAYPAL_TRUST_DEFAULT_CERT);
+      try {
+        rz = SSLUtil.getCertificateFromStream(is);
+      } finally {
+        is.close();
+      }
+      this.trsts = rz;
+    }
+    return rz;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for whId.</p>
+   * @return String
+   **/
+  public final String getWhId() {
+    return this.whId;
+  }
+
+  /**
+   * <p>Setter for whId.</p>
+   * @param pWhId reference
+   **/
+  public final void setWhId(final String pWhId) {
+    this.whId = pWhId;
+  }
+
+  /**
+   * <p>Getter for cnf.</p>
+   * @return Map<String, String>
+   **/
+  public final Map<String, String> getCnf() {
+    return this.cnf;
+  }
+
+  /**
+   * <p>Setter for cnf.</p>
+   * @param pCnf reference
+   **/
+  public final void setCnf(final Map<String, String> pCnf) {
+    this.cnf = pCnf;
+  }
+
+  /**
+   * <p>Getter for authTp.</p>
+   * @return String
+   **/
+  public final String getAuthTp() {
+    return this.authTp;
+  }
+
+  /**
+   * <p>Setter for authTp.</p>
+   * @param pAuthTp reference
+   **/
+  public final void setAuthTp(final String pAuthTp) {
+    this.authTp = pAuthTp;
+  }
+
+  /**
+   * <p>Getter for maxCrt.</p>
+   * @return int
+   **/
+  public final int getMaxCrt() {
+    return this.maxCrt;
+  }
+
+  /**
+   * <p>Setter for maxCrt.</p>
+   * @param pMaxCrt reference
+   **/
+  public final void setMaxCrt(final int pMaxCrt) {
+    this.maxCrt = pMaxCrt;
+  }
+}
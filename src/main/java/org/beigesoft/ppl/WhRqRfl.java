@@ -0,0 +1,101 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.io.Reader;
+import java.lang.reflect.Method;
+
+import org.beigesoft.mdl.IReqDt;
+
+/**
+ * <p>Reader of raw webhook request, it uses request data's public
+ * servlet-like methods getHeader(String) and getReader().</p>
+ *
+ * @author Yury Demidenko
+ */
+public class WhRqRfl implements IWhRq {
+
+  /**
+   * <p>Maximum body length, PayPal's event is about 2-5KB.</p>
+   **/
+  private int maxLn = 65536;
+
+  /**
+   * <p>Gets header.</p>
+   * @param pRqDt request data
+   * @param pNme header name
+   * @return header value or null
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final String getHdr(final IReqDt pRqDt,
+    final String pNme) throws Exception {
+    Method mt = pRqDt.getClass().getMethod("getHeader", String.class);
+    return (String) mt.invoke(pRqDt, pNme);
+  }
+
+  /**
+   * <p>Gets body.</p>
+   * @param pRqDt request data
+   * @return body
+   * @throws Exception - an exception, e.g. too long body
+   **/
+  @Override
+  public final String getBody(final IReqDt pRqDt) throws Exception {
+    Method mt = pRqDt.getClass().getMethod("getReader");
+    Reader rdr = (Reader) mt.invoke(pRqDt);
+    StringBuilder sb = new StringBuilder(4096);
+    char[] buf = new char[4096];
+    int rd;
+    while ((rd = rdr.read(buf)) != -1) {
+      sb.append(buf, 0, rd);
+      if (sb.length() > this.maxLn) {
+        throw new Exception("Webhook body is too long!");
+      }
+    }
+    return sb.toString();
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for maxLn.</p>
+   * @return int
+   **/
+  public final int getMaxLn() {
+    return this.maxLn;
+  }
+
+  /**
+   * <p>Setter for maxLn.</p>
+   * @param pMaxLn reference
+   **/
+  public final void setMaxLn(final int pMaxLn) {
+    this.maxLn = pMaxLn;
+  }
+}
@@ -0,0 +1,230 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.List;
+import java.math.BigDecimal;
+
+import org.beigesoft.ws.mdlb.AOrdLn;
+import org.beigesoft.ws.mdlp.CuOr;
+
+/**
+ * <p>PayPal create payment payload writer. It writes JSON straight out
+ * of consolidated order lines into thread's buffer without SDK objects
+ * (Payment, Transaction, Amount, Details, ItemList, Item)
+ * and reflective serialization. Result is byte to byte the same as SDK's
+ * Payment.toJSON() made by PrPpl.createPay, i.e. pretty printed
+ * with HTML safe escaping.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class WrPay {
+
+  /**
+   * <p>Maximum buffer capacity to keep in thread.</p>
+   **/
+  private static final int MAXBF = 1 << 20;
+
+  /**
+   * <p>Hex digits.</p>
+   **/
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * <p>Amount formatter.</p>
+   **/
+  private FrmPpl frmPpl;
+
+  /**
+   * <p>Thread's buffer.</p>
+   **/
+  private final ThreadLocal<StringBuilder> buf
+    = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(4096);
+    }
+  };
+
+  /**
+   * <p>Writes create payment payload.</p>
+   * @param pOrd consolidated order
+   * @param pDp amounts decimal places
+   * @param pRetUrl return URL
+   * @param pCncUrl cancel URL
+   * @return JSON
+   **/
+  public final String wrt(final CuOr pOrd, final int pDp,
+    final String pRetUrl, final String pCncUrl) {
+    StringBuilder sb = this.buf.get();
+    if (sb.capacity() > MAXBF) {
+      sb = new StringBuilder(4096);
+      this.buf.set(sb);
+    }
+    sb.setLength(0);
+    String cur = pOrd.getCurr().getStCo();
+    sb.append("{\n  \"intent\": \"sale\",\n  \"payer\": {\n")
+      .append("    \"payment_method\": \"paypal\"\n  },\n")
+      .append("  \"transactions\": [\n    {\n      \"amount\": {\n")
+      .append("        \"currency\": ");
+    str(sb, cur);
+    sb.append(",\n        \"total\": ");
+    str(sb, this.frmPpl.frm(pOrd.getTot(), pDp));
+    sb.append(",\n        \"details\": {\n          \"subtotal\": ");
+    str(sb, this.frmPpl.frm(pOrd.getSubt(), pDp));
+    if (pOrd.getToTx().compareTo(BigDecimal.ZERO) == 1) {
+      sb.append(",\n          \"tax\": ");
+      str(sb, this.frmPpl.frm(pOrd.getToTx(), pDp));
+    }
+    sb.append("\n        }\n      },\n      \"item_list\": {\n")
+      .append("        \"items\": [");
+    boolean isFst = itms(sb, pOrd.getGoods(), cur, pDp, true);
+    isFst = itms(sb, pOrd.getServs(), cur, pDp, isFst);
+    if (!isFst) {
+      sb.append("\n        ");
+    }
+    sb.append("]\n      }\n    }\n  ],\n  \"redirect_urls\": {\n")
+      .append("    \"return_url\": ");
+    str(sb, pRetUrl);
+    sb.append(",\n    \"cancel_url\": ");
+    str(sb, pCncUrl);
+    sb.append("\n  }\n}");
+    return sb.toString();
+  }
+
+  /**
+   * <p>Writes items out of given order lines of any type.</p>
+   * @param pSb buffer
+   * @param pLns lines, maybe null
+   * @param pCur currency code
+   * @param pDp amounts decimal places
+   * @param pIsFst if no item is written yet
+   * @return if no item is written yet
+   **/
+  private boolean itms(final StringBuilder pSb,
+    final List<? extends AOrdLn> pLns, final String pCur, final int pDp,
+      final boolean pIsFst) {
+    if (pLns == null) {
+      return pIsFst;
+    }
+    boolean isFst = pIsFst;
+    for (AOrdLn il : pLns) {
+      if (isFst) {
+        isFst = false;
+        pSb.append("\n          {\n");
+      } else {
+        pSb.append(",\n          {\n");
+      }
+      if (il.getNme() != null) {
+        pSb.append("            \"name\": ");
+        str(pSb, il.getNme());
+        pSb.append(",\n");
+      }
+      pSb.append("            \"quantity\": \"")
+        .append(il.getQuan().longValue())
+        .append("\",\n            \"price\": ");
+      str(pSb, this.frmPpl.frm(il.getPri(), pDp));
+      pSb.append(",\n            \"currency\": ");
+      str(pSb, pCur);
+      if (il.getToTx().compareTo(BigDecimal.ZERO) == 1) {
+        pSb.append(",\n            \"tax\": ");
+        str(pSb, this.frmPpl.frm(il.getToTx(), pDp));
+      }
+      pSb.append("\n          }");
+    }
+    return isFst;
+  }
+
+  /**
+   * <p>Writes quoted string escaped like Gson's HTML safe writer.</p>
+   * @param pSb buffer
+   * @param pVal value
+   **/
+  private void str(final StringBuilder pSb, final String pVal) {
+    pSb.append('"');
+    int ln = pVal.length();
+    int lst = 0;
+    for (int i = 0; i < ln; i++) {
+      char c = pVal.charAt(i);
+      String rpl;
+      if (c < 0x20) {
+        if (c == '\t') {
+          rpl = "\\t";
+        } else if (c == '\b') {
+          rpl = "\\b";
+        } else if (c == '\n') {
+          rpl = "\\n";
+        } else if (c == '\r') {
+          rpl = "\\r";
+        } else if (c == '\f') {
+          rpl = "\\f";
+        } else {
+          rpl = null;
+        }
+      } else if (c == '"') {
+        rpl = "\\\"";
+      } else if (c == '\\') {
+        rpl = "\\\\";
+      } else if (c == '<' || c == '>' || c == '&' || c == '=' || c == '\''
+        || c == '\u2028' || c == '\u2029') {
+        rpl = null;
+      } else {
+        continue;
+      }
+      pSb.append(pVal, lst, i);
+      if (rpl == null) {
+        pSb.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF])
+          .append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+      } else {
+        pSb.append(rpl);
+      }
+      lst = i + 1;
+    }
+    pSb.append(pVal, lst, ln);
+    pSb.append('"');
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for frmPpl.</p>
+   * @return FrmPpl
+   **/
+  public final FrmPpl getFrmPpl() {
+    return this.frmPpl;
+  }
+
+  /**
+   * <p>Setter for frmPpl.</p>
+   * @param pFrmPpl reference
+   **/
+  public final void setFrmPpl(final FrmPpl pFrmPpl) {
+    this.frmPpl = pFrmPpl;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.beigesoft.hld.IHlNmClSt;
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.prc.IPrcEnt;
+import org.beigesoft.rdb.IOrm;
+import org.beigesoft.ws.mdlp.PayMd;
+import org.beigesoft.ws.mdlp.SePayMd;
+import org.beigesoft.ws.mdlp.Buyer;
+
+/**
+ * <p>CchPayMd, PrEnPpl and HlPplEnPr tests, ORM is stub that
+ * counts loadings.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CchPayMdTest {
+
+  /**
+   * <p>Loadings count.</p>
+   **/
+  private final AtomicInteger lods = new AtomicInteger();
+
+  /**
+   * <p>ORM stub.</p>
+   **/
+  private IOrm orm;
+
+  /**
+   * <p>Tested cache.</p>
+   **/
+  private CchPayMd cch;
+
+  /**
+   * <p>Makes ORM stub and cache.</p>
+   **/
+  @Before
+  public final void setUp() {
+    this.orm = (IOrm) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {IOrm.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          CchPayMdTest.this.lods.incrementAndGet();
+          List<PayMd> rz = new ArrayList<PayMd>();
+          rz.add(new PayMd());
+          return rz;
+        }
+      });
+    this.cch = new CchPayMd();
+  }
+
+  /**
+   * <p>Entry is loaded once within TTL.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void cachesOwn() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    List<PayMd> pms = this.cch.lazOwn(rvs, this.orm);
+    assertSame(pms, this.cch.lazOwn(rvs, this.orm));
+    assertEquals(1, this.lods.get());
+  }
+
+  /**
+   * <p>Entries loaded during clrDl after clearing are reloaded,
+   * the first one loaded after that is cached.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void delaysAfterClear() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.cch.setClrDl(200L);
+    this.cch.lazOwn(rvs, this.orm);
+    this.cch.clear();
+    this.cch.lazOwn(rvs, this.orm);
+    this.cch.lazOwn(rvs, this.orm);
+    assertEquals(3, this.lods.get());
+    Thread.sleep(250L);
+    this.cch.lazOwn(rvs, this.orm);
+    this.cch.lazOwn(rvs, this.orm);
+    assertEquals(4, this.lods.get());
+  }
+
+  /**
+   * <p>Payment method save processor clears cache.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void prEnPplClears() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.cch.setClrDl(0L);
+    this.cch.lazOwn(rvs, this.orm);
+    PrEnPpl<PayMd> prc = new PrEnPpl<PayMd>();
+    prc.setCchPayMd(this.cch);
+    prc.setPrc(new IPrcEnt<PayMd, Long>() {
+      @Override
+      public PayMd process(final Map<String, Object> pRvs, final PayMd pEnt,
+        final IReqDt pRqDt) {
+        return pEnt;
+      }
+    });
+    PayMd pm = new PayMd();
+    assertSame(pm, prc.process(rvs, pm, null));
+    Thread.sleep(2L);
+    this.cch.lazOwn(rvs, this.orm);
+    assertEquals(2, this.lods.get());
+  }
+
+  /**
+   * <p>Only payment methods save/delete are decorated.</p>
+   **/
+  @Test
+  public final void namesDecorated() {
+    HlPplEnPr hl = new HlPplEnPr();
+    assertEquals(FcEnPrPpl.PRFX + HlPplEnPr.PRC_SV,
+      hl.get(PayMd.class, "entSv"));
+    assertEquals(FcEnPrPpl.PRFX + HlPplEnPr.PRC_DL,
+      hl.get(SePayMd.class, "entDl"));
+    assertNull(hl.get(PayMd.class, "entEd"));
+    assertNull(hl.get(Buyer.class, "entSv"));
+    hl.setHld(new IHlNmClSt() {
+      @Override
+      public String get(final Class<?> pCls, final String pAct) {
+        return "PrcSeSv";
+      }
+    });
+    assertEquals(FcEnPrPpl.PRFX + "PrcSeSv", hl.get(SePayMd.class, "entSv"));
+    assertEquals("PrcSeSv", hl.get(Buyer.class, "entSv"));
+  }
+}
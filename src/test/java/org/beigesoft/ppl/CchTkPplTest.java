@@ -0,0 +1,188 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.paypal.base.rest.APIContext;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.ws.mdlp.PayMd;
+
+/**
+ * <p>CchTkPpl tests against SDK's OAuthTokenCredential that gets tokens
+ * from local stand-in SrvPplStb with given token life. Every test uses
+ * own client ID, because SDK's tokens cache is static.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CchTkPplTest {
+
+  /**
+   * <p>PayPal stand-in.</p>
+   **/
+  private SrvPplStb stb;
+
+  /**
+   * <p>Tested cache.</p>
+   **/
+  private CchTkPpl cchTk;
+
+  /**
+   * <p>Starts stand-in, makes cache.</p>
+   * @throws Exception - an exception
+   **/
+  @Before
+  public final void setUp() throws Exception {
+    this.stb = new SrvPplStb();
+    this.stb.setThCnt(2);
+    this.stb.start();
+    this.cchTk = new CchTkPpl();
+    Map<String, String> cnf = new HashMap<String, String>();
+    cnf.put("service.EndPoint", this.stb.getEndPnt());
+    cnf.put("oauth.EndPoint", this.stb.getEndPnt());
+    this.cchTk.setCnf(cnf);
+    this.cchTk.setLog((ILog) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ILog.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      }));
+  }
+
+  /**
+   * <p>Releases cache, stops stand-in.</p>
+   **/
+  @After
+  public final void tearDown() {
+    this.cchTk.release();
+    this.stb.stop();
+  }
+
+  /**
+   * <p>Long life token is fetched once and reused.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void reusesLongLife() throws Exception {
+    this.stb.setTknLf(3600);
+    String tkn = tkn("tstLong");
+    for (int i = 0; i < 10; i++) {
+      assertEquals(tkn, tkn("tstLong"));
+    }
+    assertEquals(1L, this.stb.getTknCnt());
+  }
+
+  /**
+   * <p>Token that expires in less than refAhd (but more than minLf)
+   * is returned, and new one is fetched in background. It proves that
+   * expiry is SDK's expiration time, not now plus it, and that SDK's
+   * static cache is bypassed.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void refreshesAhead() throws Exception {
+    this.stb.setTknLf(120);
+    String tkn = tkn("tstAhead");
+    assertEquals(1L, this.stb.getTknCnt());
+    assertEquals(tkn, tkn("tstAhead"));
+    long end = System.currentTimeMillis() + 5000L;
+    while (this.stb.getTknCnt() < 2L && System.currentTimeMillis() < end) {
+      Thread.sleep(10L);
+    }
+    assertEquals(2L, this.stb.getTknCnt());
+    end = System.currentTimeMillis() + 5000L;
+    String tkn2 = tkn("tstAhead");
+    while (tkn.equals(tkn2) && System.currentTimeMillis() < end) {
+      Thread.sleep(10L);
+      tkn2 = tkn("tstAhead");
+    }
+    assertNotEquals(tkn, tkn2);
+  }
+
+  /**
+   * <p>Token that expires in less than minLf is not used, requester
+   * gets new one, not SDK's cached one.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void refreshesShortLife() throws Exception {
+    this.stb.setTknLf(30);
+    String tkn = tkn("tstShort");
+    String tkn2 = tkn("tstShort");
+    assertNotEquals(tkn, tkn2);
+    assertEquals(2L, this.stb.getTknCnt());
+  }
+
+  /**
+   * <p>Evicted token is fetched again.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void refetchesEvicted() throws Exception {
+    this.stb.setTknLf(3600);
+    String tkn = tkn("tstEvict");
+    PayMd payMd = new PayMd();
+    payMd.setSec1("tstEvict");
+    payMd.setSec2("tstSecret");
+    payMd.setMde("sandbox");
+    this.cchTk.evict(payMd);
+    assertNotEquals(tkn, tkn("tstEvict"));
+    assertEquals(2L, this.stb.getTknCnt());
+  }
+
+  /**
+   * <p>Gets access token through API context.</p>
+   * @param pClId client ID
+   * @return access token
+   * @throws Exception - an exception
+   **/
+  @SuppressWarnings("deprecation")
+  private String tkn(final String pClId) throws Exception {
+    APIContext apiCon = this.cchTk.apiCon(pClId, "tstSecret", "sandbox");
+    return apiCon.getAccessToken();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.paypal.api.payments.Payment;
+import com.paypal.base.rest.APIContext;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.log.ILog;
+
+/**
+ * <p>CnPpl tests against local stand-in SrvPplStb with latency.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CnPplTest {
+
+  /**
+   * <p>PayPal stand-in.</p>
+   **/
+  private SrvPplStb stb;
+
+  /**
+   * <p>Tokens cache.</p>
+   **/
+  private CchTkPpl cchTk;
+
+  /**
+   * <p>Tested connector.</p>
+   **/
+  private CnPpl cnPpl;
+
+  /**
+   * <p>Starts stand-in, makes connector with single connection.</p>
+   * @throws Exception - an exception
+   **/
+  @Before
+  public final void setUp() throws Exception {
+    this.stb = new SrvPplStb();
+    this.stb.setThCnt(4);
+    this.stb.setTknLf(3600);
+    this.stb.start();
+    PplStg stg = new PplStg();
+    stg.setEndPnt(this.stb.getEndPnt());
+    stg.setMaxCn(1);
+    stg.setCnQu(1);
+    stg.setRtMax(0);
+    stg.setSslShr(false);
+    this.cnPpl = new CnPpl();
+    this.cnPpl.setStg(stg);
+    this.cchTk = new CchTkPpl();
+    this.cchTk.setCnf(this.cnPpl.mkCnf());
+    this.cchTk.setLog((ILog) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ILog.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      }));
+  }
+
+  /**
+   * <p>Releases connector and cache, stops stand-in.</p>
+   **/
+  @After
+  public final void tearDown() {
+    this.cnPpl.release();
+    this.cchTk.release();
+    this.stb.stop();
+  }
+
+  /**
+   * <p>Timed out call doesn't hold connection thread, i.e. its socket
+   * read is bounded by remaining deadline, so the next call gets
+   * connection in time.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void freesTimedOut() throws Exception {
+    String id = crt();
+    this.cnPpl.getStg().setGtTo(300);
+    this.stb.setLat(1500);
+    long strt = System.currentTimeMillis();
+    try {
+      this.cnPpl.get(new HashMap<String, Object>(), apiCon(), id);
+      fail("Timeout expected!");
+    } catch (Exception ex) {
+      assertTrue(System.currentTimeMillis() - strt < 1000L);
+    }
+    this.stb.setLat(0);
+    this.cnPpl.getStg().setGtTo(800);
+    Payment pay = this.cnPpl.get(new HashMap<String, Object>(), apiCon(),
+      id);
+    assertEquals(id, pay.getId());
+  }
+
+  /**
+   * <p>Call over connections queue is rejected at once as busy.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void rejectsOverQueue() throws Exception {
+    final String id = crt();
+    this.stb.setLat(700);
+    final CountDownLatch dn = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      Thread th = new Thread() {
+        @Override
+        public void run() {
+          try {
+            CnPplTest.this.cnPpl.get(new HashMap<String, Object>(),
+              apiCon(), id);
+          } catch (Exception ex) {
+            ex.printStackTrace();
+          } finally {
+            dn.countDown();
+          }
+        }
+      };
+      th.start();
+      Thread.sleep(100L);
+    }
+    long strt = System.currentTimeMillis();
+    try {
+      this.cnPpl.get(new HashMap<String, Object>(), apiCon(), id);
+      fail("Busy expected!");
+    } catch (ExcCode ex) {
+      assertEquals(GrdPpl.BUSY, ex.getCode());
+      assertTrue(System.currentTimeMillis() - strt < 100L);
+    }
+    dn.await();
+  }
+
+  /**
+   * <p>Creates payment.</p>
+   * @return payment ID
+   * @throws Exception - an exception
+   **/
+  private String crt() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    Payment pay = this.cnPpl.create(rvs, apiCon(), "{\"intent\":\"sale\"}");
+    return pay.getId();
+  }
+
+  /**
+   * <p>Makes API context.</p>
+   * @return API context
+   * @throws Exception - an exception
+   **/
+  private APIContext apiCon() throws Exception {
+    return this.cchTk.apiCon("tstCn", "tstSecret", "sandbox");
+  }
+}
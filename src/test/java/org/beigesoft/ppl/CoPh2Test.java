@@ -0,0 +1,81 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * <p>Coalescer of phase 2 tests.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CoPh2Test {
+
+  /**
+   * <p>Result is shared only by the same buyer.</p>
+   **/
+  @Test
+  public final void keyedByBuyer() {
+    CoPh2 co = new CoPh2();
+    CoPh2.Flt flt = co.join(7L, "PAYID-1", "PR-1");
+    assertTrue(flt.getLdr());
+    co.done(flt, "executed", null);
+    assertFalse(co.join(7L, "PAYID-1", "PR-1").getLdr());
+    assertTrue(co.join(9L, "PAYID-1", "PR-1").getLdr());
+  }
+
+  /**
+   * <p>Expired result is purged on finishing, and stripe is bounded by
+   * done entries eviction.</p>
+   **/
+  @Test
+  public final void boundsStripes() {
+    CoPh2 co = new CoPh2();
+    co.setTtl(-1L);
+    co.done(co.join(7L, "PAYID-1", "PR-1"), "executed", null);
+    assertEquals(0, co.strSz(7L, "PAYID-1", "PR-1"));
+    co.setTtl(60000L);
+    co.setMxStr(1);
+    for (long i = 0; i < 1000L; i++) {
+      co.done(co.join(i, "PAYID-1", "PR-1"), "executed", null);
+      assertEquals(1, co.strSz(i, "PAYID-1", "PR-1"));
+    }
+    //in flight one isn't evicted:
+    CoPh2.Flt flt = co.join(1000L, "PAYID-1", "PR-1");
+    for (long i = 1001L; i < 2000L; i++) {
+      co.done(co.join(i, "PAYID-1", "PR-1"), "executed", null);
+    }
+    assertFalse(co.join(1000L, "PAYID-1", "PR-1").getLdr());
+    co.done(flt, null, null);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import org.beigesoft.log.ILog;
+
+/**
+ * <p>FcPrPpl tests.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class FcPrPplTest {
+
+  /**
+   * <p>Release stops connections pool and tokens refresher.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void releasesThreads() throws Exception {
+    SrvPplStb stb = new SrvPplStb();
+    stb.setThCnt(2);
+    stb.setTknLf(120);
+    stb.start();
+    try {
+      FcPrPpl fc = new FcPrPpl();
+      PplStg stg = new PplStg();
+      stg.setEndPnt(stb.getEndPnt());
+      stg.setSslShr(false);
+      CnPpl cn = new CnPpl();
+      cn.setStg(stg);
+      fc.setCnPpl(cn);
+      fc.getCchTk().setCnf(cn.mkCnf());
+      fc.getCchTk().setLog((ILog) Proxy.newProxyInstance(getClass()
+        .getClassLoader(), new Class<?>[] {ILog.class},
+          new InvocationHandler() {
+          @Override
+          public Object invoke(final Object pPrx, final Method pMth,
+            final Object[] pArgs) {
+            if (pMth.getReturnType() == boolean.class) {
+              return Boolean.FALSE;
+            }
+            return null;
+          }
+        }));
+      cn.prewarm();
+      //token expires in less than refresh ahead, so it's refreshed:
+      fc.getCchTk().apiCon("tstRls", "tstSecret", "sandbox");
+      fc.getCchTk().apiCon("tstRls", "tstSecret", "sandbox");
+      assertTrue(alive("PplCn-"));
+      assertTrue(alive("PplTokenRefresher"));
+      fc.release();
+      long end = System.currentTimeMillis() + 5000L;
+      while ((alive("PplCn-") || alive("PplTokenRefresher"))
+        && System.currentTimeMillis() < end) {
+        Thread.sleep(10L);
+      }
+      assertFalse(alive("PplCn-"));
+      assertFalse(alive("PplTokenRefresher"));
+    } finally {
+      stb.stop();
+    }
+  }
+
+  /**
+   * <p>Checks if there is live thread with given name prefix.</p>
+   * @param pPrfx prefix
+   * @return if alive
+   **/
+  private boolean alive(final String pPrfx) {
+    for (Thread th : Thread.getAllStackTraces().keySet()) {
+      if (th.isAlive() && th.getName().startsWith(pPrfx)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,179 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IRdb;
+
+/**
+ * <p>Schema fingerprint tests, fingerprint is bound or checked to be hex
+ * in plain SQL, stored one skips DB create/upgrade only if the same.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class FprSchTest {
+
+  /**
+   * <p>Fingerprint.</p>
+   **/
+  private static final String FPR =
+    "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+  /**
+   * <p>Service.</p>
+   **/
+  private FprSch fprSch;
+
+  /**
+   * <p>Plain SQL executed by IRdb.</p>
+   **/
+  private final List<String> execs = new ArrayList<String>();
+
+  /**
+   * <p>If IRdb has rolled back.</p>
+   **/
+  private boolean rlbd;
+
+  /**
+   * <p>Makes service over plain IRdb without fingerprint table.</p>
+   **/
+  @Before
+  public final void setUp() {
+    this.fprSch = new FprSch();
+    this.fprSch.setLog((ILog) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ILog.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      }));
+    @SuppressWarnings("unchecked")
+    IRdb<ResultSet> rdb = (IRdb<ResultSet>) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] {IRdb.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) throws Exception {
+          String nme = pMth.getName();
+          if ("exec".equals(nme)) {
+            FprSchTest.this.execs.add((String) pArgs[0]);
+          } else if ("retRs".equals(nme)) {
+            throw new Exception("no such table: PPLSCHFP");
+          } else if ("rollBack".equals(nme)) {
+            FprSchTest.this.rlbd = true;
+          }
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      });
+    this.fprSch.setRdb(rdb);
+  }
+
+  /**
+   * <p>Fingerprint is bound and compared with stored one.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void bindsFpr() throws Exception {
+    JdbcStb cn = new JdbcStb();
+    this.fprSch.setRdbCn(cn);
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.fprSch.sav(rvs, FPR);
+    JdbcStb.St ins = cn.getSts().get(0);
+    assertEquals("insert into PPLSCHFP (IID, FPR) values (?, ?)",
+      ins.getSql());
+    assertEquals(FPR, ins.getPrms().get(2));
+    assertTrue(ins.getClsd());
+    assertEquals(2, this.execs.size());
+    cn.getRows().add(new Object[] {FPR});
+    assertTrue(this.fprSch.isSame(rvs, FPR));
+    assertFalse(this.fprSch.isSame(rvs, FPR.replace('0', '1')));
+    JdbcStb.St sel = cn.getSts().get(1);
+    assertEquals("select FPR from PPLSCHFP where IID=?", sel.getSql());
+    assertTrue(sel.getClsd());
+  }
+
+  /**
+   * <p>Plain SQL inlines only hex fingerprint.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void plainChecksHex() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.fprSch.sav(rvs, FPR);
+    assertEquals("insert into PPLSCHFP (IID, FPR) values (1, '" + FPR
+      + "');", this.execs.get(2));
+    this.execs.clear();
+    try {
+      this.fprSch.sav(rvs, FPR.substring(4) + "');-");
+      fail("not hex fingerprint is inlined");
+    } catch (Exception e) {
+      assertTrue(e.getMessage().contains("fingerprint"));
+    }
+    assertEquals(2, this.execs.size());
+    assertTrue(this.rlbd);
+  }
+
+  /**
+   * <p>New DB without fingerprint table and exploded classes (not from
+   * JAR) always get DB create/upgrade.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void fullChkByDflt() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    assertFalse(this.fprSch.isSame(rvs, FPR));
+    assertNull(this.fprSch.mk(FprSchTest.class));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Random;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * <p>FrmPpl tests, amounts are compared with former formatting,
+ * i.e. NumStr.frmt without grouping that is
+ * setScale(dp, HALF_UP).toPlainString().</p>
+ *
+ * @author Yury Demidenko
+ */
+public class FrmPplTest {
+
+  /**
+   * <p>Tested formatter.</p>
+   **/
+  private final FrmPpl frmPpl = new FrmPpl();
+
+  /**
+   * <p>Random values of different scales, signs and sizes, including
+   * over long ones.</p>
+   **/
+  @Test
+  public final void sameAsHalfUp() {
+    Random rnd = new Random(17010L);
+    for (int i = 0; i < 1000000; i++) {
+      BigInteger uv = new BigInteger(1 + rnd.nextInt(70), rnd);
+      if (rnd.nextBoolean()) {
+        uv = uv.negate();
+      }
+      BigDecimal val = new BigDecimal(uv, rnd.nextInt(14) - 3);
+      chk(val, rnd.nextInt(7));
+    }
+  }
+
+  /**
+   * <p>Half-way ties, zeros and bounds.</p>
+   **/
+  @Test
+  public final void sameAsHalfUpEdges() {
+    String[] vals = {"0", "0.00", "-0.00", "0.005", "-0.005", "0.0049",
+      "-0.0049", "2.5", "-2.5", "1.5", "0.5", "-0.5", "9.995", "-9.995",
+      "999999999999999999", "-999999999999999999", "99999999999999999.95",
+      "1E+3", "1E-20", "-1E-20", "123456789012345678.5",
+      "9223372036854775807", "-9223372036854775808", "0.000000000000000001"};
+    for (String vl : vals) {
+      for (int dp = 0; dp <= 6; dp++) {
+        chk(new BigDecimal(vl), dp);
+      }
+    }
+    assertEquals("0.01", this.frmPpl.frm(new BigDecimal("0.005"), 2));
+    assertEquals("-0.01", this.frmPpl.frm(new BigDecimal("-0.005"), 2));
+    assertEquals("1000.00", this.frmPpl.frm(new BigDecimal("1E+3"), 2));
+  }
+
+  /**
+   * <p>Currency without minor units (JPY) gets 0 places, other ones keep
+   * pricing places unless they have less minor units.</p>
+   **/
+  @Test
+  public final void dpMinorUnits() {
+    assertEquals(0, this.frmPpl.dp(2, "JPY"));
+    assertEquals(0, this.frmPpl.dp(4, "JPY"));
+    assertEquals(0, this.frmPpl.dp(0, "JPY"));
+    assertEquals(2, this.frmPpl.dp(2, "USD"));
+    assertEquals(2, this.frmPpl.dp(4, "USD"));
+    assertEquals(0, this.frmPpl.dp(0, "USD"));
+    assertEquals(2, this.frmPpl.dp(2, "KWD"));
+    assertEquals(2, this.frmPpl.dp(2, null));
+    assertEquals(2, this.frmPpl.dp(2, "NOTISO"));
+    int dp = this.frmPpl.dp(2, "JPY");
+    assertEquals("1235", this.frmPpl.frm(new BigDecimal("1234.50"), dp));
+    assertEquals("1234", this.frmPpl.frm(new BigDecimal("1234.49"), dp));
+    assertEquals("1234", this.frmPpl.frm(new BigDecimal("1234.00"), dp));
+  }
+
+  /**
+   * <p>Checks formatting with former one.</p>
+   * @param pVal value
+   * @param pDp decimal places
+   **/
+  private void chk(final BigDecimal pVal, final int pDp) {
+    String exp = pVal.setScale(pDp, RoundingMode.HALF_UP).toPlainString();
+    assertEquals(pVal + "/" + pDp, exp, this.frmPpl.frm(pVal, pDp));
+  }
+}
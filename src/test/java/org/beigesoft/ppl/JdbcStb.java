@@ -0,0 +1,404 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * <p>Proxy JDBC connection that records prepared SQL, bound parameters
+ * and closing, query returns given rows, meta-data returns given
+ * indexes.</p>
+ *
+ * @author Yury Demidenko
+ */
+class JdbcStb implements InvocationHandler, IRdbCn {
+
+  /**
+   * <p>Prepared statement state.</p>
+   **/
+  static final class St implements InvocationHandler {
+
+    /**
+     * <p>SQL.</p>
+     **/
+    private final String sql;
+
+    /**
+     * <p>Rows of query.</p>
+     **/
+    private final List<Object[]> rows;
+
+    /**
+     * <p>Connection, it gives current update count.</p>
+     **/
+    private final JdbcStb cn;
+
+    /**
+     * <p>If closed.</p>
+     **/
+    private boolean clsd;
+
+    /**
+     * <p>Bound parameters.</p>
+     **/
+    private final Map<Integer, Object> prms = new HashMap<Integer, Object>();
+
+    /**
+     * <p>Bound parameters of each update execution.</p>
+     **/
+    private final List<Map<Integer, Object>> exs =
+      new ArrayList<Map<Integer, Object>>();
+
+    /**
+     * <p>Proxy.</p>
+     **/
+    private final PreparedStatement ps = (PreparedStatement) Proxy
+      .newProxyInstance(JdbcStb.class.getClassLoader(),
+        new Class<?>[] {PreparedStatement.class}, this);
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pSql SQL
+     * @param pRows rows of query
+     * @param pCn connection
+     **/
+    St(final String pSql, final List<Object[]> pRows, final JdbcStb pCn) {
+      this.sql = pSql;
+      this.rows = pRows;
+      this.cn = pCn;
+    }
+
+    @Override
+    public Object invoke(final Object pPrx, final Method pMth,
+      final Object[] pArgs) {
+      String nme = pMth.getName();
+      if ("isClosed".equals(nme)) {
+        return this.clsd;
+      }
+      if ("close".equals(nme)) {
+        this.clsd = true;
+      } else if ("clearParameters".equals(nme)) {
+        this.prms.clear();
+      } else if ("setNull".equals(nme)) {
+        this.prms.put((Integer) pArgs[0], null);
+      } else if (nme.startsWith("set")) {
+        this.prms.put((Integer) pArgs[0], pArgs[1]);
+      } else if ("executeUpdate".equals(nme)) {
+        this.exs.add(new HashMap<Integer, Object>(this.prms));
+        return this.cn.upd;
+      } else if ("executeQuery".equals(nme)) {
+        return new Rs(this.rows).rs;
+      }
+      return null;
+    }
+
+    /**
+     * <p>Getter for sql.</p>
+     * @return String
+     **/
+    String getSql() {
+      return this.sql;
+    }
+
+    /**
+     * <p>Getter for clsd.</p>
+     * @return boolean
+     **/
+    boolean getClsd() {
+      return this.clsd;
+    }
+
+    /**
+     * <p>Getter for prms.</p>
+     * @return Map<Integer, Object>
+     **/
+    Map<Integer, Object> getPrms() {
+      return this.prms;
+    }
+
+    /**
+     * <p>Getter for exs.</p>
+     * @return List<Map<Integer, Object>>
+     **/
+    List<Map<Integer, Object>> getExs() {
+      return this.exs;
+    }
+  }
+
+  /**
+   * <p>Result set over rows.</p>
+   **/
+  private static final class Rs implements InvocationHandler {
+
+    /**
+     * <p>Rows.</p>
+     **/
+    private final List<Object[]> rows;
+
+    /**
+     * <p>Current row index.</p>
+     **/
+    private int idx = -1;
+
+    /**
+     * <p>If the last got value was null.</p>
+     **/
+    private boolean wsNll;
+
+    /**
+     * <p>Proxy.</p>
+     **/
+    private final ResultSet rs = (ResultSet) Proxy.newProxyInstance(
+      JdbcStb.class.getClassLoader(), new Class<?>[] {ResultSet.class}, this);
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pRows rows
+     **/
+    Rs(final List<Object[]> pRows) {
+      this.rows = pRows;
+    }
+
+    @Override
+    public Object invoke(final Object pPrx, final Method pMth,
+      final Object[] pArgs) {
+      String nme = pMth.getName();
+      if ("next".equals(nme)) {
+        this.idx++;
+        return this.idx < this.rows.size();
+      }
+      if ("wasNull".equals(nme)) {
+        return this.wsNll;
+      }
+      if (nme.startsWith("get") && pArgs != null && pArgs.length == 1
+        && pArgs[0] instanceof Integer) {
+        Object vl = this.rows.get(this.idx)[(Integer) pArgs[0] - 1];
+        this.wsNll = vl == null;
+        if (vl == null) {
+          if (pMth.getReturnType() == long.class) {
+            return 0L;
+          }
+          if (pMth.getReturnType() == int.class) {
+            return 0;
+          }
+        }
+        return vl;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * <p>If closed.</p>
+   **/
+  private boolean clsd;
+
+  /**
+   * <p>Statements in preparing order.</p>
+   **/
+  private final List<St> sts = new ArrayList<St>();
+
+  /**
+   * <p>Executed batches of plain statements.</p>
+   **/
+  private final List<List<String>> bts = new ArrayList<List<String>>();
+
+  /**
+   * <p>Rows of query.</p>
+   **/
+  private final List<Object[]> rows = new ArrayList<Object[]>();
+
+  /**
+   * <p>Rows of meta-data indexes, 6th column is INDEX_NAME.</p>
+   **/
+  private final List<Object[]> idxs = new ArrayList<Object[]>();
+
+  /**
+   * <p>Update count.</p>
+   **/
+  private int upd = 1;
+
+  /**
+   * <p>Proxy.</p>
+   **/
+  private final Connection con = (Connection) Proxy.newProxyInstance(
+    JdbcStb.class.getClassLoader(), new Class<?>[] {Connection.class}, this);
+
+  @Override
+  public Object invoke(final Object pPrx, final Method pMth,
+    final Object[] pArgs) {
+    String nme = pMth.getName();
+    if ("isClosed".equals(nme)) {
+      return this.clsd;
+    }
+    if ("close".equals(nme)) {
+      this.clsd = true;
+      return null;
+    }
+    if ("prepareStatement".equals(nme)) {
+      St st = new St((String) pArgs[0], this.rows, this);
+      this.sts.add(st);
+      return st.ps;
+    }
+    if ("createStatement".equals(nme)) {
+      final List<String> bt = new ArrayList<String>();
+      return Proxy.newProxyInstance(JdbcStb.class.getClassLoader(),
+        new Class<?>[] {Statement.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object pStPrx, final Method pStMth,
+            final Object[] pStArgs) {
+            if ("addBatch".equals(pStMth.getName())) {
+              bt.add((String) pStArgs[0]);
+            } else if ("executeBatch".equals(pStMth.getName())) {
+              JdbcStb.this.bts.add(new ArrayList<String>(bt));
+              int[] rz = new int[bt.size()];
+              for (int i = 0; i < rz.length; i++) {
+                rz[i] = JdbcStb.this.upd;
+              }
+              bt.clear();
+              return rz;
+            }
+            return null;
+          }
+        });
+    }
+    if ("getMetaData".equals(nme)) {
+      return Proxy.newProxyInstance(JdbcStb.class.getClassLoader(),
+        new Class<?>[] {DatabaseMetaData.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object pMdPrx, final Method pMdMth,
+            final Object[] pMdArgs) {
+            if ("getIndexInfo".equals(pMdMth.getName())) {
+              return new Rs(JdbcStb.this.idxs).rs;
+            }
+            if (pMdMth.getReturnType() == boolean.class) {
+              return Boolean.FALSE;
+            }
+            return null;
+          }
+        });
+    }
+    if ("unwrap".equals(nme)) {
+      //physical connection:
+      return pPrx;
+    }
+    if ("hashCode".equals(nme)) {
+      return System.identityHashCode(pPrx);
+    }
+    if ("equals".equals(nme)) {
+      return pPrx == pArgs[0];
+    }
+    return null;
+  }
+
+  /**
+   * <p>Gets connection.</p>
+   * @return connection
+   **/
+  @Override
+  public Connection getCon() {
+    return this.con;
+  }
+
+  /**
+   * <p>Connection getter for RdbCnRfl.</p>
+   * @return connection
+   **/
+  public Connection lazCon() {
+    return this.con;
+  }
+
+  /**
+   * <p>Getter for clsd.</p>
+   * @return boolean
+   **/
+  boolean getClsd() {
+    return this.clsd;
+  }
+
+  /**
+   * <p>Setter for clsd.</p>
+   * @param pClsd reference
+   **/
+  void setClsd(final boolean pClsd) {
+    this.clsd = pClsd;
+  }
+
+  /**
+   * <p>Getter for sts.</p>
+   * @return List<St>
+   **/
+  List<St> getSts() {
+    return this.sts;
+  }
+
+  /**
+   * <p>Getter for bts.</p>
+   * @return List<List<String>>
+   **/
+  List<List<String>> getBts() {
+    return this.bts;
+  }
+
+  /**
+   * <p>Getter for rows.</p>
+   * @return List<Object[]>
+   **/
+  List<Object[]> getRows() {
+    return this.rows;
+  }
+
+  /**
+   * <p>Getter for idxs.</p>
+   * @return List<Object[]>
+   **/
+  List<Object[]> getIdxs() {
+    return this.idxs;
+  }
+
+  /**
+   * <p>Setter for upd.</p>
+   * @param pUpd reference
+   **/
+  void setUpd(final int pUpd) {
+    this.upd = pUpd;
+  }
+}
@@ -0,0 +1,324 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.paypal.api.payments.Amount;
+import com.paypal.api.payments.Details;
+import com.paypal.api.payments.Item;
+import com.paypal.api.payments.ItemList;
+import com.paypal.api.payments.Payer;
+import com.paypal.api.payments.Payment;
+import com.paypal.api.payments.PaymentExecution;
+import com.paypal.api.payments.RedirectUrls;
+import com.paypal.api.payments.Transaction;
+
+import org.beigesoft.log.ILog;
+
+/**
+ * <p>Checkout load driver. It runs N concurrent simulated buyers through
+ * PrPpl's remote pipeline - phase 1 (create payment), return (get payment),
+ * phase 2 (execute payment) by the same token cache, connector and SDK that
+ * PrPpl uses, against embedded PayPal stand-in (or given "ppl.endPnt").
+ * It reports throughput and p50/p99/p999 latency per phase.
+ * Parameters are system properties: ppl.byrs - concurrent buyers (50),
+ * ppl.itrs - checkouts per buyer (20), ppl.lns - cart lines (10),
+ * ppl.lat - stub latency ms (0), ppl.latRnd - stub random latency ms (0),
+ * ppl.errRt - stub error rate (0.0), ppl.maxCn - connections pool (20).
+ * It doesn't drive PrPpl itself, i.e. its DB side (booking, OnlPay,
+ * phase 2 transactions), because buyers, carts and orders need
+ * provisioned web-store schema. LdPplTest runs it as smoke test.
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test
+ *  -Dexec.mainClass=org.beigesoft.ppl.LdPpl</p>
+ *
+ * @author Yury Demidenko
+ */
+public final class LdPpl {
+
+  /**
+   * <p>Phases names.</p>
+   **/
+  private static final String[] PHASES = {"phase1", "return", "phase2"};
+
+  /**
+   * <p>Private constructor.</p>
+   **/
+  private LdPpl() { }
+
+  /**
+   * <p>Entry point.</p>
+   * @param pArgs arguments
+   * @throws Exception - an exception
+   **/
+  public static void main(final String[] pArgs) throws Exception {
+    final int byrs = Integer.getInteger("ppl.byrs", 50);
+    final int itrs = Integer.getInteger("ppl.itrs", 20);
+    final int lns = Integer.getInteger("ppl.lns", 10);
+    SrvPplStb stb = null;
+    String endPnt = System.getProperty("ppl.endPnt");
+    if (endPnt == null) {
+      stb = new SrvPplStb();
+      stb.setLat(Integer.getInteger("ppl.lat", 0));
+      stb.setLatRnd(Integer.getInteger("ppl.latRnd", 0));
+      stb.setErrRt(Double.parseDouble(System.getProperty("ppl.errRt", "0")));
+      stb.setThCnt(Math.max(16, byrs));
+      stb.start();
+      endPnt = stb.getEndPnt();
+    }
+    try {
+      run(endPnt, byrs, itrs, lns, Integer.getInteger("ppl.maxCn", 20),
+        System.out);
+    } finally {
+      if (stb != null) {
+        System.out.println("Token requests: " + stb.getTknCnt());
+        stb.stop();
+      }
+    }
+  }
+
+  /**
+   * <p>Runs checkouts and prints report.</p>
+   * @param pEndPnt PayPal end-point
+   * @param pByrs concurrent buyers
+   * @param pItrs checkouts per buyer
+   * @param pLns cart lines
+   * @param pMaxCn connections pool
+   * @param pOut report output
+   * @return failed checkouts count
+   * @throws Exception - an exception
+   **/
+  public static long run(final String pEndPnt, final int pByrs,
+    final int pItrs, final int pLns, final int pMaxCn,
+      final PrintStream pOut) throws Exception {
+    PplStg stg = new PplStg();
+    stg.setEndPnt(pEndPnt);
+    stg.setMaxCn(pMaxCn);
+    final CnPpl cnPpl = new CnPpl();
+    cnPpl.setStg(stg);
+    final CchTkPpl cchTk = new CchTkPpl();
+    cchTk.setCnf(cnPpl.mkCnf());
+    cchTk.setLog(mkLog());
+    final long[][] lts = new long[PHASES.length][pByrs * pItrs];
+    for (long[] lt : lts) {
+      Arrays.fill(lt, -1L);
+    }
+    final AtomicLong errs = new AtomicLong();
+    final CountDownLatch strt = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(pByrs);
+    ExecutorService exec = Executors.newFixedThreadPool(pByrs);
+    for (int b = 0; b < pByrs; b++) {
+      final int byr = b;
+      exec.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            strt.await();
+            for (int i = 0; i < pItrs; i++) {
+              int idx = byr * pItrs + i;
+              try {
+                chkout(cchTk, cnPpl, byr, pLns, lts, idx);
+              } catch (Exception e) {
+                errs.incrementAndGet();
+              }
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+    }
+    long st = System.nanoTime();
+    strt.countDown();
+    done.await();
+    long tot = System.nanoTime() - st;
+    exec.shutdown();
+    exec.awaitTermination(1, TimeUnit.MINUTES);
+    long cnt = (long) pByrs * pItrs - errs.get();
+    pOut.println("Buyers/checkouts/lines: " + pByrs + "/" + pByrs * pItrs
+      + "/" + pLns + ", failed: " + errs.get());
+    pOut.println(String.format("Throughput: %.1f checkouts/s",
+      cnt * 1.0e9 / tot));
+    for (int p = 0; p < PHASES.length; p++) {
+      pOut.println(rprt(PHASES[p], lts[p]));
+    }
+    pOut.println(String.format("Pool wait avg/max: %.3f/%.3f ms",
+      cnPpl.getWtTot() / 1.0e6 / Math.max(1L, cnPpl.getWtCnt()),
+        cnPpl.getWtMax() / 1.0e6));
+    cnPpl.release();
+    cchTk.release();
+    return errs.get();
+  }
+
+  /**
+   * <p>Makes simulated checkout.</p>
+   * @param pCchTk token cache
+   * @param pCnPpl connector
+   * @param pByr buyer
+   * @param pLns cart lines
+   * @param pLts latencies
+   * @param pIdx latency index
+   * @throws Exception - an exception
+   **/
+  private static void chkout(final CchTkPpl pCchTk, final CnPpl pCnPpl,
+    final int pByr, final int pLns, final long[][] pLts,
+      final int pIdx) throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    long st = System.nanoTime();
+    Payment crPay = pCnPpl.create(rvs, pCchTk.apiCon("stubClient" + pByr
+      % 10, "stubSecret", "sandbox"), mkPay(pByr, pLns));
+    pLts[0][pIdx] = System.nanoTime() - st;
+    st = System.nanoTime();
+    pCnPpl.get(rvs, pCchTk.apiCon("stubClient" + pByr % 10, "stubSecret",
+      "sandbox"), crPay.getId());
+    pLts[1][pIdx] = System.nanoTime() - st;
+    st = System.nanoTime();
+    Payment pay = new Payment();
+    pay.setId(crPay.getId());
+    PaymentExecution payExec = new PaymentExecution();
+    payExec.setPayerId("STUBPAYER" + pByr);
+    pCnPpl.execute(rvs, pCchTk.apiCon("stubClient" + pByr % 10,
+      "stubSecret", "sandbox"), pay, payExec);
+    pLts[2][pIdx] = System.nanoTime() - st;
+  }
+
+  /**
+   * <p>Makes payment like PrPpl.createPay does.</p>
+   * @param pByr buyer
+   * @param pLns cart lines
+   * @return payment
+   **/
+  private static Payment mkPay(final int pByr, final int pLns) {
+    List<Item> items = new ArrayList<Item>();
+    for (int i = 0; i < pLns; i++) {
+      Item item = new Item();
+      item.setName("Item #" + i);
+      item.setQuantity("1");
+      item.setCurrency("USD");
+      item.setPrice("10.00");
+      items.add(item);
+    }
+    Details details = new Details();
+    details.setSubtotal(String.valueOf(pLns * 10) + ".00");
+    Amount amount = new Amount();
+    amount.setCurrency("USD");
+    amount.setTotal(details.getSubtotal());
+    amount.setDetails(details);
+    ItemList itemList = new ItemList();
+    itemList.setItems(items);
+    Transaction transaction = new Transaction();
+    transaction.setAmount(amount);
+    transaction.setItemList(itemList);
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    transactions.add(transaction);
+    Payer payer = new Payer();
+    payer.setPaymentMethod("paypal");
+    Payment payment = new Payment();
+    payment.setIntent("sale");
+    payment.setPayer(payer);
+    payment.setTransactions(transactions);
+    RedirectUrls redUrls = new RedirectUrls();
+    redUrls.setCancelUrl("https://localhost/?prc=PrPpl&cnc=1&buyr=" + pByr);
+    redUrls.setReturnUrl("https://localhost/?prc=PrPpl&buyr=" + pByr);
+    payment.setRedirectUrls(redUrls);
+    return payment;
+  }
+
+  /**
+   * <p>Makes phase report.</p>
+   * @param pNme phase name
+   * @param pLts latencies, nanoseconds, -1 means failed
+   * @return report line
+   **/
+  private static String rprt(final String pNme, final long[] pLts) {
+    long[] lts = new long[pLts.length];
+    int n = 0;
+    for (long lt : pLts) {
+      if (lt >= 0) {
+        lts[n++] = lt;
+      }
+    }
+    if (n == 0) {
+      return pNme + ": no data";
+    }
+    Arrays.sort(lts, 0, n);
+    return String.format("%s: n=%d p50=%.3f p99=%.3f p999=%.3f max=%.3f ms",
+      pNme, n, prc(lts, n, 0.5), prc(lts, n, 0.99), prc(lts, n, 0.999),
+        lts[n - 1] / 1.0e6);
+  }
+
+  /**
+   * <p>Gets percentile.</p>
+   * @param pLts sorted latencies
+   * @param pCnt count
+   * @param pQ quantile
+   * @return milliseconds
+   **/
+  private static double prc(final long[] pLts, final int pCnt,
+    final double pQ) {
+    int i = (int) Math.ceil(pQ * pCnt) - 1;
+    return pLts[Math.max(0, Math.min(pCnt - 1, i))] / 1.0e6;
+  }
+
+  /**
+   * <p>Makes console logger.</p>
+   * @return logger
+   **/
+  private static ILog mkLog() {
+    return (ILog) Proxy.newProxyInstance(LdPpl.class.getClassLoader(),
+      new Class<?>[] {ILog.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          if (pArgs != null && pArgs.length > 2) {
+            System.err.println(pMth.getName() + ": " + pArgs[2]);
+          }
+          return null;
+        }
+      });
+  }
+}
@@ -0,0 +1,66 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * <p>LdPpl smoke test, i.e. the load driver against embedded stand-in
+ * finishes all checkouts with one token request per credential.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class LdPplTest {
+
+  /**
+   * <p>20 buyers by 10 checkouts with 10 credentials.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void runsCheckouts() throws Exception {
+    SrvPplStb stb = new SrvPplStb();
+    stb.setThCnt(16);
+    stb.setTknLf(3600);
+    stb.start();
+    try {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      long flrs = LdPpl.run(stb.getEndPnt(), 20, 10, 3, 20,
+        new PrintStream(os, true, "UTF-8"));
+      assertEquals(os.toString("UTF-8"), 0L, flrs);
+      assertEquals(10L, stb.getTknCnt());
+    } finally {
+      stb.stop();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * <p>LmtPpl tests.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class LmtPplTest {
+
+  /**
+   * <p>Address limit is disabled by default.</p>
+   **/
+  @Test
+  public final void adrOffByDefault() {
+    LmtPpl lmt = new LmtPpl();
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(lmt.alwAdr("10.0.0.1"));
+    }
+    assertEquals(0, lmt.getKysCnt());
+  }
+
+  /**
+   * <p>Buyer's requests over maximum are rejected.</p>
+   **/
+  @Test
+  public final void limitsByr() {
+    LmtPpl lmt = new LmtPpl();
+    lmt.setMaxByr(2);
+    assertTrue(lmt.alwByr(7L));
+    assertTrue(lmt.alwByr(7L));
+    assertFalse(lmt.alwByr(7L));
+    assertTrue(lmt.alwByr(8L));
+  }
+
+  /**
+   * <p>Map is bounded even if all keys are active.</p>
+   **/
+  @Test
+  public final void boundedActive() {
+    LmtPpl lmt = new LmtPpl();
+    lmt.setMaxKys(100);
+    for (long i = 0; i < 1000; i++) {
+      assertTrue(lmt.alwByr(i));
+      assertTrue(lmt.getKysCnt() <= 100);
+    }
+  }
+}
@@ -0,0 +1,572 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Date;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.paypal.api.payments.Payment;
+import com.paypal.base.rest.PayPalRESTException;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.log.ILog;
+import org.beigesoft.hnd.IHndSpam;
+import org.beigesoft.rdb.IOrm;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.rdb.IRecSet;
+import org.beigesoft.ws.mdlp.AddStg;
+import org.beigesoft.ws.mdlp.Buyer;
+import org.beigesoft.ws.mdlp.OnlPay;
+import org.beigesoft.ws.mdlp.PayMd;
+import org.beigesoft.ws.srv.IBuySr;
+import org.beigesoft.ws.srv.ISrCart;
+
+/**
+ * <p>PrPpl OnlPay near-cache and phase 2 tests with proxy JDBC connection,
+ * proxy PayPal connector and token from local stand-in SrvPplStb.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class PrPplTest {
+
+  /**
+   * <p>Connection.</p>
+   **/
+  private JdbcStb cn;
+
+  /**
+   * <p>Processor.</p>
+   **/
+  private PrPpl prPpl;
+
+  /**
+   * <p>Near-cache.</p>
+   **/
+  private CchOnPa cchOnPa;
+
+  /**
+   * <p>ORM invocations.</p>
+   **/
+  private final List<String> ormCls = new ArrayList<String>();
+
+  /**
+   * <p>PayPal connector invocations.</p>
+   **/
+  private final List<String> cnCls = new ArrayList<String>();
+
+  /**
+   * <p>Cart service invocations.</p>
+   **/
+  private final List<String> crtCls = new ArrayList<String>();
+
+  /**
+   * <p>If PayPal execution fails.</p>
+   **/
+  private boolean exFl;
+
+  /**
+   * <p>If execution is rejected by full connector's queue.</p>
+   **/
+  private boolean exBsy;
+
+  /**
+   * <p>PayPal stand-in for tokens, lazy.</p>
+   **/
+  private SrvPplStb stb;
+
+  /**
+   * <p>Payment ID of loaded OnlPay.</p>
+   **/
+  private String payId = PrPpl.PAYID_INTENT;
+
+  /**
+   * <p>Makes processor with cached INTENT of buyer 7.</p>
+   **/
+  @Before
+  public final void setUp() {
+    this.cn = new JdbcStb();
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(this.cn);
+    SrPayd srPayd = new SrPayd();
+    srPayd.setSrSqlPpl(srSql);
+    IOrm orm = (IOrm) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {IOrm.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          PrPplTest.this.ormCls.add(pMth.getName());
+          if ("refrEnt".equals(pMth.getName())) {
+            OnlPay op = (OnlPay) pArgs[2];
+            op.setPur(8L);
+            op.setPayId(PrPplTest.this.payId);
+            op.setDat(new Date());
+            op.setVer(200L);
+          } else if ("retLstCnd".equals(pMth.getName())) {
+            List<PayMd> pms = new ArrayList<PayMd>();
+            pms.add(payMd());
+            return pms;
+          }
+          return null;
+        }
+      });
+    this.cchOnPa = new CchOnPa();
+    this.cchOnPa.put(mkOnPa(100L));
+    this.prPpl = new PrPpl();
+    this.prPpl.setOrm(orm);
+    this.prPpl.setSrPayd(srPayd);
+    this.prPpl.setCchOnPa(this.cchOnPa);
+  }
+
+  /**
+   * <p>Stops stand-in if it's started.</p>
+   **/
+  @After
+  public final void tearDown() {
+    if (this.stb != null) {
+      this.stb.stop();
+    }
+  }
+
+  /**
+   * <p>Cache hit saves by bound VER update without loading.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void savesByCchd() throws Exception {
+    OnlPay onpa = this.prPpl.savOnPa(new HashMap<String, Object>(), byr(),
+      8L, null, "PAYID-1");
+    assertEquals("PAYID-1", onpa.getPayId());
+    assertEquals(0, this.ormCls.size());
+    JdbcStb.St upd = this.cn.getSts().get(0);
+    assertTrue(upd.getSql().endsWith("where IID=? and VER=?"));
+    assertTrue(upd.getPrms().containsKey(2));
+    assertNull(upd.getPrms().get(2));
+    assertEquals("PAYID-1", upd.getPrms().get(3));
+    assertEquals(7L, upd.getPrms().get(6));
+    assertEquals(100L, upd.getPrms().get(7));
+  }
+
+  /**
+   * <p>Stale cache entry (0 rows updated) is evicted and OnlPay is
+   * reloaded, no failed statement within transaction.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void reloadsStale() throws Exception {
+    this.cn.setUpd(0);
+    OnlPay onpa = this.prPpl.savOnPa(new HashMap<String, Object>(), byr(),
+      8L, null, "PAYID-1");
+    assertEquals("PAYID-1", onpa.getPayId());
+    assertNull(this.cchOnPa.get(7L));
+    assertEquals(2, this.ormCls.size());
+    assertEquals("refrEnt", this.ormCls.get(0));
+    assertEquals("update", this.ormCls.get(1));
+  }
+
+  /**
+   * <p>Execution and recovery retrieving are recorded by guard
+   * separately, i.e. execution failure and recovery success are 50%
+   * failures of 2 calls, so circuit opens.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void ph2GrdsSeparately() throws Exception {
+    this.exFl = true;
+    stpPh2();
+    GrdPpl grd = new GrdPpl();
+    grd.setLog(prx(ILog.class, null));
+    grd.setMaxCc(1);
+    grd.setMinCls(2);
+    grd.setErrPc(50);
+    this.prPpl.setGrdPpl(grd);
+    Map<String, Object> prms = new HashMap<String, Object>();
+    this.payId = "PAYID-5";
+    prms.put("paymentID", this.payId);
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.prPpl.phase2(rvs, prx(IReqDt.class, prms), new AddStg(), "PR-1");
+    assertEquals("executed", rvs.get("pplStat"));
+    assertEquals(2, this.cnCls.size());
+    assertEquals("execute", this.cnCls.get(0));
+    assertEquals("get", this.cnCls.get(1));
+    assertTrue(grd.isOpn(payMd()));
+    JdbcStb.St clm = this.cn.getSts().get(0);
+    assertTrue(clm.getSql().startsWith("update ONLPAY set VER=?"));
+    assertTrue((Long) clm.getPrms().get(1) < 0L);
+    assertEquals(200L, clm.getPrms().get(3));
+    //claim and payed batch:
+    assertEquals(1, this.cn.getSts().size());
+    assertEquals(1, this.cn.getBts().size());
+  }
+
+  /**
+   * <p>Execution that isn't sent (rejected by full queue) releases
+   * claim, so OnlPay isn't left claimed.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void ph2UnclmsNotSent() throws Exception {
+    this.exBsy = true;
+    stpPh2();
+    Map<String, Object> prms = new HashMap<String, Object>();
+    this.payId = "PAYID-5";
+    prms.put("paymentID", this.payId);
+    try {
+      this.prPpl.phase2(new HashMap<String, Object>(),
+        prx(IReqDt.class, prms), new AddStg(), "PR-1");
+    } catch (ExcCode ex) {
+      assertEquals(GrdPpl.BUSY, ex.getCode());
+    }
+    assertEquals(1, this.cnCls.size());
+    JdbcStb.St upd = this.cn.getSts().get(0);
+    assertEquals("update ONLPAY set VER=? where IID=? and VER=?",
+      upd.getSql());
+    //claim and its release:
+    assertEquals(2, upd.getExs().size());
+    long clmVer = (Long) upd.getExs().get(0).get(1);
+    assertTrue(clmVer < 0L);
+    assertTrue((Long) upd.getExs().get(1).get(1) > 0L);
+    assertEquals(clmVer, upd.getExs().get(1).get(3));
+  }
+
+  /**
+   * <p>Stale claim with approved payment is recorded as payed and
+   * released, concurrently released one is left as is.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void rslvsClm() throws Exception {
+    stpPh2();
+    OnlPay onpa = mkOnPa(-5L);
+    onpa.setPayId("PAYID-5");
+    assertEquals(1, this.prPpl.rslvClm(new HashMap<String, Object>(), onpa,
+      new AddStg()));
+    assertEquals(1, this.cnCls.size());
+    assertEquals("get", this.cnCls.get(0));
+    JdbcStb.St uncl = this.cn.getSts().get(0);
+    assertEquals("update ONLPAY set VER=? where IID=? and VER=?",
+      uncl.getSql());
+    assertEquals(-5L, uncl.getPrms().get(3));
+    //claim release and payed batch:
+    assertEquals(1, this.cn.getBts().size());
+    this.cn.setUpd(0);
+    assertEquals(-1, this.prPpl.rslvClm(new HashMap<String, Object>(),
+      onpa, new AddStg()));
+    assertEquals(2, uncl.getExs().size());
+    assertEquals(1, this.cn.getBts().size());
+  }
+
+  /**
+   * <p>Multi-payee execution of the first payment records it, empties
+   * cart, releases claim and refreshes OnlPay time, then redirects
+   * to the next approval. Late duplicate gets the same redirect without
+   * execution.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void ph2MlRedirects() throws Exception {
+    stpPh2();
+    this.prPpl.setCoPh2(new CoPh2());
+    final List<String> execs = new ArrayList<String>();
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    rows.add(new Object[] {"PAYID-A", 7L, 8L, null, SrMlPay.CREATED,
+      "https://pp.example/A"});
+    rows.add(new Object[] {"PAYID-B", 7L, 8L, 5L, SrMlPay.CREATED,
+      "https://pp.example/B"});
+    @SuppressWarnings("unchecked")
+    IRdb<ResultSet> mlRdb = (IRdb<ResultSet>) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] {IRdb.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if ("exec".equals(pMth.getName())) {
+            execs.add((String) pArgs[0]);
+          } else if ("retRs".equals(pMth.getName())) {
+            return recSet(rows);
+          }
+          return null;
+        }
+      });
+    SrMlPay srMlPay = new SrMlPay();
+    srMlPay.setRdb(mlRdb);
+    this.prPpl.setSrMlPay(srMlPay);
+    this.payId = PrPpl.PAYID_MULTI;
+    Map<String, Object> prms = new HashMap<String, Object>();
+    prms.put("paymentID", "PAYID-A");
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.prPpl.phase2(rvs, prx(IReqDt.class, prms), new AddStg(), "PR-1");
+    assertEquals("created", rvs.get("pplStat"));
+    assertEquals("https://pp.example/B", prms.get("redirectURL"));
+    assertEquals(1, this.cnCls.size());
+    assertEquals(1, this.crtCls.size());
+    assertEquals(1, execs.size());
+    assertTrue(execs.get(0).contains("'PAYID-A'"));
+    long clmVer = (Long) this.cn.getSts().get(0).getPrms().get(1);
+    assertTrue(clmVer < 0L);
+    JdbcStb.St rfr = null;
+    for (JdbcStb.St st : this.cn.getSts()) {
+      if (st.getSql().startsWith("update ONLPAY set VER=?, DAT=?")) {
+        rfr = st;
+      }
+    }
+    assertTrue(rfr != null);
+    long ver = (Long) rfr.getPrms().get(1);
+    assertTrue(ver > 0L);
+    assertEquals(ver, rfr.getPrms().get(2));
+    assertEquals(7L, rfr.getPrms().get(3));
+    assertEquals(clmVer, rfr.getPrms().get(4));
+    //double-click:
+    Map<String, Object> prmsDup = new HashMap<String, Object>();
+    prmsDup.put("paymentID", "PAYID-A");
+    Map<String, Object> rvsDup = new HashMap<String, Object>();
+    this.prPpl.phase2(rvsDup, prx(IReqDt.class, prmsDup), new AddStg(),
+      "PR-1");
+    assertEquals("created", rvsDup.get("pplStat"));
+    assertEquals("https://pp.example/B", prmsDup.get("redirectURL"));
+    assertEquals(1, this.cnCls.size());
+  }
+
+  /**
+   * <p>Cached result is given only to authenticated same buyer, replay
+   * by other client is authenticated before coalescing.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void ph2DupAuthed() throws Exception {
+    stpPh2();
+    this.prPpl.setCoPh2(new CoPh2());
+    this.payId = "PAYID-5";
+    Map<String, Object> prms = new HashMap<String, Object>();
+    prms.put("paymentID", this.payId);
+    this.prPpl.phase2(new HashMap<String, Object>(), prx(IReqDt.class,
+      prms), new AddStg(), "PR-1");
+    assertEquals(1, this.cnCls.size());
+    this.prPpl.setBuySr(prx(IBuySr.class, null));
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    try {
+      this.prPpl.phase2(rvs, prx(IReqDt.class, prms), new AddStg(),
+        "PR-1");
+      assertTrue(false);
+    } catch (ExcCode ex) {
+      assertEquals(ExcCode.SPAM, ex.getCode());
+    }
+    assertNull(rvs.get("pplStat"));
+    Buyer othr = new Buyer();
+    othr.setIid(9L);
+    this.prPpl.setBuySr(prx(IBuySr.class, othr));
+    this.prPpl.phase2(new HashMap<String, Object>(), prx(IReqDt.class,
+      prms), new AddStg(), "PR-1");
+    //not cached result of other buyer:
+    assertEquals(2, this.cnCls.size());
+  }
+
+  /**
+   * <p>Sets up phase 2 with PayPal stand-in for tokens and proxy
+   * connector, execution fails if exFl.</p>
+   * @throws Exception - an exception
+   **/
+  private void stpPh2() throws Exception {
+    this.stb = new SrvPplStb();
+    this.stb.start();
+    CchTkPpl cchTk = new CchTkPpl();
+    Map<String, String> cnf = new HashMap<String, String>();
+    cnf.put("service.EndPoint", this.stb.getEndPnt());
+    cnf.put("oauth.EndPoint", this.stb.getEndPnt());
+    cchTk.setCnf(cnf);
+    ILog log = prx(ILog.class, null);
+    cchTk.setLog(log);
+    this.prPpl.setLog(log);
+    this.prPpl.setCchTk(cchTk);
+    this.prPpl.setCchPayMd(new CchPayMd());
+    this.prPpl.setMtr(new MtrPpl());
+    this.prPpl.setPayTo(600000L);
+    this.prPpl.setCchOnPa(null);
+    @SuppressWarnings("unchecked")
+    IRdb<ResultSet> rdb = prx(IRdb.class, null);
+    this.prPpl.setRdb(rdb);
+    this.prPpl.setBuySr(prx(IBuySr.class, byr()));
+    this.prPpl.setHndSpam(prx(IHndSpam.class, null));
+    this.prPpl.setSrCart((ISrCart) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ISrCart.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          PrPplTest.this.crtCls.add(pMth.getName());
+          return null;
+        }
+      }));
+    this.prPpl.setCnPpl((ICnPpl) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ICnPpl.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) throws Exception {
+          PrPplTest.this.cnCls.add(pMth.getName());
+          if (PrPplTest.this.exBsy && "execute".equals(pMth.getName())) {
+            throw new ExcCode(GrdPpl.BUSY, "queue is full");
+          }
+          if (PrPplTest.this.exFl && "execute".equals(pMth.getName())) {
+            PayPalRESTException ex = new PayPalRESTException("timeout");
+            ex.setResponsecode(500);
+            throw ex;
+          }
+          Payment pay = new Payment();
+          pay.setState("approved");
+          return pay;
+        }
+      }));
+  }
+
+  /**
+   * <p>Makes record set of given rows by columns of PPLMLPAY.</p>
+   * @param pRows rows
+   * @return record set
+   **/
+  private IRecSet<?> recSet(final List<Object[]> pRows) {
+    final String[] cols = {"PAYID", "BUYR", "PUR", "SELR", "STAS", "APRU"};
+    final int[] idx = new int[1];
+    return (IRecSet<?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {IRecSet.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          String nme = pMth.getName();
+          if ("first".equals(nme)) {
+            idx[0] = 0;
+            return pRows.size() > 0;
+          }
+          if ("next".equals(nme)) {
+            idx[0]++;
+            return idx[0] < pRows.size();
+          }
+          if (nme.startsWith("get") && pArgs != null) {
+            for (int i = 0; i < cols.length; i++) {
+              if (cols[i].equals(pArgs[0])) {
+                return pRows.get(idx[0])[i];
+              }
+            }
+          }
+          return null;
+        }
+      });
+  }
+
+  /**
+   * <p>Makes proxy that returns given value, or value by method name
+   * if it's map (setAttr puts into it), or false for boolean.</p>
+   * @param <T> interface type
+   * @param pIfc interface
+   * @param pRz value or map of values by method name or null
+   * @return proxy
+   **/
+  @SuppressWarnings("unchecked")
+  private <T> T prx(final Class<T> pIfc, final Object pRz) {
+    return (T) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {pIfc}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          if (pRz instanceof Map) {
+            if ("setAttr".equals(pMth.getName())) {
+              ((Map<Object, Object>) pRz).put(pArgs[0], pArgs[1]);
+              return null;
+            }
+            if (pArgs != null && pArgs.length == 1) {
+              return ((Map<?, ?>) pRz).get(pArgs[0]);
+            }
+            return null;
+          }
+          if (pRz != null
+            && pMth.getReturnType().isAssignableFrom(pRz.getClass())) {
+            return pRz;
+          }
+          return null;
+        }
+      });
+  }
+
+  /**
+   * <p>Makes owner's payment method.</p>
+   * @return payment method
+   **/
+  private PayMd payMd() {
+    PayMd rz = new PayMd();
+    rz.setIid(1L);
+    rz.setSec1("tstPh2");
+    rz.setSec2("sec");
+    rz.setMde("sandbox");
+    rz.setNme("PAYPAL");
+    return rz;
+  }
+
+  /**
+   * <p>Makes buyer 7.</p>
+   * @return buyer
+   **/
+  private Buyer byr() {
+    Buyer rz = new Buyer();
+    rz.setIid(7L);
+    return rz;
+  }
+
+  /**
+   * <p>Makes INTENT OnlPay of buyer 7 purchase 8.</p>
+   * @param pVer version
+   * @return OnlPay
+   **/
+  private OnlPay mkOnPa(final long pVer) {
+    OnlPay rz = new OnlPay();
+    rz.setIid(byr());
+    rz.setPur(8L);
+    rz.setPayId(PrPpl.PAYID_INTENT);
+    rz.setDat(new Date());
+    rz.setVer(pVer);
+    return rz;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IRdb;
+
+/**
+ * <p>Payments journal and webhook queue tests with proxy JDBC connection,
+ * webhook update finds orders by journal regardless of OnlPay.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class QuWhPplTest {
+
+  /**
+   * <p>Connection.</p>
+   **/
+  private JdbcStb cn;
+
+  /**
+   * <p>Journal.</p>
+   **/
+  private SrPayJr srPayJr;
+
+  /**
+   * <p>Queue.</p>
+   **/
+  private QuWhPpl quWh;
+
+  /**
+   * <p>Logged warnings.</p>
+   **/
+  private final List<String> wrns =
+    Collections.synchronizedList(new ArrayList<String>());
+
+  /**
+   * <p>Makes services.</p>
+   **/
+  @Before
+  public final void setUp() {
+    this.cn = new JdbcStb();
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(this.cn);
+    this.srPayJr = new SrPayJr();
+    this.srPayJr.setSrSqlPpl(srSql);
+    SrPayd srPayd = new SrPayd();
+    srPayd.setSrSqlPpl(srSql);
+    ILog log = (ILog) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {ILog.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if ("warn".equals(pMth.getName())) {
+            QuWhPplTest.this.wrns.add(String.valueOf(pArgs[2]));
+          }
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      });
+    @SuppressWarnings("unchecked")
+    IRdb<ResultSet> rdb = (IRdb<ResultSet>) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] {IRdb.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      });
+    this.quWh = new QuWhPpl();
+    this.quWh.setLog(log);
+    this.quWh.setRdb(rdb);
+    this.quWh.setSrPayd(srPayd);
+    this.quWh.setSrPayJr(this.srPayJr);
+    this.quWh.setThr(1);
+  }
+
+  /**
+   * <p>Stops workers.</p>
+   **/
+  @After
+  public final void tearDown() {
+    this.quWh.release();
+  }
+
+  /**
+   * <p>Journal binds record.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void savesBound() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.srPayJr.sav(rvs, "PAYID-1'X", 7L, 8L, null, false, 3);
+    JdbcStb.St ins = this.cn.getSts().get(this.cn.getSts().size() - 1);
+    assertTrue(ins.getSql().startsWith("insert into PPLPAYJR"));
+    assertEquals("PAYID-1'X", ins.getPrms().get(1));
+    assertEquals(7L, ins.getPrms().get(2));
+    assertEquals(8L, ins.getPrms().get(3));
+    assertTrue(ins.getPrms().containsKey(4));
+    assertNull(ins.getPrms().get(4));
+    assertEquals(0, ins.getPrms().get(5));
+    assertEquals(3, ins.getPrms().get(6));
+  }
+
+  /**
+   * <p>Webhook update pays orders of journal's buyer and purchase.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void paysByJournal() throws Exception {
+    this.cn.getRows().add(new Object[] {7L, 8L, null, 0, 2});
+    this.quWh.offer(new QuWhPpl.Upd("PAYID-2"));
+    String upd = wtUpd();
+    assertTrue(upd.contains("BUYR=7 and PUR=8"));
+    JdbcStb.St sel = this.cn.getSts().get(0);
+    assertTrue(sel.getSql().contains("from PPLPAYJR where PAYID=?"));
+    assertEquals("PAYID-2", sel.getPrms().get(1));
+    assertEquals(0, this.wrns.size());
+  }
+
+  /**
+   * <p>Webhook update of payment that isn't in journal is skipped.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void skipsForeign() throws Exception {
+    this.quWh.offer(new QuWhPpl.Upd("PAYID-3"));
+    long end = System.currentTimeMillis() + 5000L;
+    while (this.wrns.size() == 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10L);
+    }
+    assertEquals(1, this.wrns.size());
+    assertTrue(this.wrns.get(0).contains("PAYID-3"));
+    assertEquals(1, this.cn.getSts().size());
+  }
+
+  /**
+   * <p>Waits for CUOR update of orders payed batch.</p>
+   * @return SQL
+   * @throws Exception - an exception
+   **/
+  private String wtUpd() throws Exception {
+    long end = System.currentTimeMillis() + 5000L;
+    while (System.currentTimeMillis() < end) {
+      synchronized (this.cn) {
+        for (List<String> bt
+          : new ArrayList<List<String>>(this.cn.getBts())) {
+          if (bt.get(0).startsWith("update CUOR ")) {
+            return bt.get(0);
+          }
+        }
+      }
+      Thread.sleep(10L);
+    }
+    throw new Exception("No update!");
+  }
+}
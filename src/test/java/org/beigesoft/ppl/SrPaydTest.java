@@ -0,0 +1,173 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.beigesoft.log.ILog;
+
+/**
+ * <p>SrPayd round trips and payed orders count checking tests.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrPaydTest {
+
+  /**
+   * <p>Connection.</p>
+   **/
+  private JdbcStb cn;
+
+  /**
+   * <p>Bound statements service.</p>
+   **/
+  private SrSqlPpl srSql;
+
+  /**
+   * <p>Service.</p>
+   **/
+  private SrPayd srPayd;
+
+  /**
+   * <p>Logged warnings and errors, e.g. "error ...".</p>
+   **/
+  private final List<String> lgs = new ArrayList<String>();
+
+  /**
+   * <p>Makes service.</p>
+   **/
+  @Before
+  public final void setUp() {
+    this.cn = new JdbcStb();
+    this.srSql = new SrSqlPpl();
+    this.srSql.setRdbCn(this.cn);
+    this.srPayd = new SrPayd();
+    this.srPayd.setSrSqlPpl(this.srSql);
+    this.srPayd.setLog((ILog) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ILog.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if ("warn".equals(pMth.getName())
+            || "error".equals(pMth.getName())) {
+            SrPaydTest.this.lgs.add(pMth.getName() + " " + pArgs[2]);
+          }
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      }));
+  }
+
+  /**
+   * <p>Postgres makes single round trip by CTE, other DB makes single
+   * batch of both updates.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void roundTrips() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    assertEquals(2, this.srPayd.payd(rvs, 7L, 8L, false, 2));
+    assertEquals(0, this.cn.getSts().size());
+    assertEquals(1, this.cn.getBts().size());
+    List<String> bt = this.cn.getBts().get(0);
+    assertEquals(2, bt.size());
+    assertTrue(bt.get(0).startsWith("update CUOR set"));
+    assertTrue(bt.get(1).startsWith("update CUORSE set"));
+    assertTrue(bt.get(1).endsWith("BUYR=7 and PUR=8"));
+    this.srSql.setIsPstg(true);
+    this.cn.getRows().add(new Object[] {1, 2});
+    assertEquals(3, this.srPayd.payd(rvs, 7L, 8L, false, 3));
+    assertEquals(1, this.cn.getSts().size());
+    assertEquals(0, this.lgs.size());
+  }
+
+  /**
+   * <p>Executed payment that pays not all its orders is logged as
+   * error.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void errOnMismatch() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.srPayd.payd(rvs, 7L, 8L, false, 3);
+    assertEquals(1, this.lgs.size());
+    assertTrue(this.lgs.get(0).startsWith("error "));
+    assertTrue(this.lgs.get(0).contains("expected/payed: 3/2"));
+    this.lgs.clear();
+    this.cn.setUpd(0);
+    this.srPayd.paydPy(rvs, 7L, 8L, 9L, false, -1);
+    assertEquals(1, this.lgs.size());
+    assertTrue(this.lgs.get(0).startsWith("error "));
+  }
+
+  /**
+   * <p>Batch without update counts gives unknown count without
+   * checking.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void unknownBtCnts() throws Exception {
+    this.cn.setUpd(Statement.SUCCESS_NO_INFO);
+    assertEquals(-1, this.srPayd.payd(new HashMap<String, Object>(), 7L,
+      8L, false, 3));
+    assertEquals(0, this.lgs.size());
+  }
+
+  /**
+   * <p>Webhook event may pay nothing, but partial one is warned.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void warnOnPartial() throws Exception {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    this.cn.setUpd(0);
+    this.srPayd.payd(rvs, 7L, 8L, true, 3);
+    assertEquals(0, this.lgs.size());
+    this.cn.setUpd(1);
+    this.srPayd.payd(rvs, 7L, 8L, true, 3);
+    assertEquals(1, this.lgs.size());
+    assertTrue(this.lgs.get(0).startsWith("warn "));
+  }
+}
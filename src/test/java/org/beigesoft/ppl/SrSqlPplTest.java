@@ -0,0 +1,254 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+import org.beigesoft.ws.mdl.EOrdStat;
+
+/**
+ * <p>SrSqlPpl, RdbCnRfl and SrPayd bound statements tests with proxy
+ * JDBC connections JdbcStb.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrSqlPplTest {
+
+  /**
+   * <p>Current connection provider.</p>
+   **/
+  private static final class RdbCn implements IRdbCn {
+
+    /**
+     * <p>Current connection.</p>
+     **/
+    private JdbcStb cn;
+
+    @Override
+    public Connection getCon() {
+      return this.cn.getCon();
+    }
+
+    /**
+     * <p>Connection getter for RdbCnRfl.</p>
+     * @return connection
+     **/
+    public Connection lazCon() {
+      return this.cn.getCon();
+    }
+  }
+
+  /**
+   * <p>Statements of closed connection are closed on purge.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void closesOfClosed() throws Exception {
+    RdbCn rcn = new RdbCn();
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(rcn);
+    JdbcStb cn1 = new JdbcStb();
+    rcn.cn = cn1;
+    srSql.prp("select 1");
+    srSql.prp("select 2");
+    cn1.setClsd(true);
+    rcn.cn = new JdbcStb();
+    srSql.prp("select 1");
+    assertTrue(cn1.getSts().get(0).getClsd());
+    assertTrue(cn1.getSts().get(1).getClsd());
+    assertFalse(rcn.cn.getSts().get(0).getClsd());
+  }
+
+  /**
+   * <p>Over maxCn statements of the eldest connection are closed, and
+   * cached statement of live one is reused.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void closesEldest() throws Exception {
+    RdbCn rcn = new RdbCn();
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(rcn);
+    srSql.setMaxCn(2);
+    JdbcStb[] cns = new JdbcStb[3];
+    for (int i = 0; i < cns.length; i++) {
+      cns[i] = new JdbcStb();
+      rcn.cn = cns[i];
+      srSql.prp("select 1");
+    }
+    assertTrue(cns[0].getSts().get(0).getClsd());
+    assertFalse(cns[1].getSts().get(0).getClsd());
+    assertFalse(cns[2].getSts().get(0).getClsd());
+    rcn.cn = cns[2];
+    srSql.prp("select 1");
+    assertEquals(1, cns[2].getSts().size());
+  }
+
+  /**
+   * <p>Pool's proxies of the same physical connection share statements,
+   * they are prepared by physical connection.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void keysPhysical() throws Exception {
+    final JdbcStb phy = new JdbcStb();
+    IRdbCn rcn = new IRdbCn() {
+      @Override
+      public Connection getCon() {
+        return (Connection) Proxy.newProxyInstance(getClass()
+          .getClassLoader(), new Class<?>[] {Connection.class},
+            new InvocationHandler() {
+            @Override
+            public Object invoke(final Object pPrx, final Method pMth,
+              final Object[] pArgs) throws Exception {
+              if ("unwrap".equals(pMth.getName())) {
+                return phy.getCon();
+              }
+              if ("prepareStatement".equals(pMth.getName())) {
+                throw new IllegalStateException("proxy statement");
+              }
+              return pMth.invoke(phy.getCon(), pArgs);
+            }
+          });
+      }
+    };
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(rcn);
+    srSql.setMaxCn(1);
+    for (int i = 0; i < 3; i++) {
+      srSql.prp("select 1");
+    }
+    assertEquals(1, phy.getSts().size());
+    assertFalse(phy.getSts().get(0).getClsd());
+  }
+
+  /**
+   * <p>Over maxCn statements of open connection used last by other
+   * live thread aren't closed.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void keepsOfOtherThread() throws Exception {
+    final RdbCn rcn = new RdbCn();
+    final SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(rcn);
+    srSql.setMaxCn(1);
+    final JdbcStb cn1 = new JdbcStb();
+    rcn.cn = cn1;
+    final CountDownLatch usd = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread th = new Thread() {
+      @Override
+      public void run() {
+        try {
+          srSql.prp("select 1");
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        } finally {
+          usd.countDown();
+        }
+        try {
+          done.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    th.start();
+    try {
+      usd.await();
+      rcn.cn = new JdbcStb();
+      srSql.prp("select 1");
+      assertFalse(cn1.getSts().get(0).getClsd());
+    } finally {
+      done.countDown();
+      th.join();
+    }
+    //its thread is died:
+    rcn.cn = new JdbcStb();
+    srSql.prp("select 1");
+    assertTrue(cn1.getSts().get(0).getClsd());
+  }
+
+  /**
+   * <p>RdbCnRfl uses only given method.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void rflByName() throws Exception {
+    RdbCn rcn = new RdbCn();
+    rcn.cn = new JdbcStb();
+    assertNull(RdbCnRfl.crt(rcn, "noSuch"));
+    assertNull(RdbCnRfl.crt(rcn, "toString"));
+    assertNull(RdbCnRfl.crt(rcn, null));
+    assertTrue(RdbCnRfl.crt(rcn, "lazCon").getCon() == rcn.cn.getCon());
+  }
+
+  /**
+   * <p>SrPayd binds IDs and statuses.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void paydBound() throws Exception {
+    RdbCn rcn = new RdbCn();
+    rcn.cn = new JdbcStb();
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(rcn);
+    SrPayd srPayd = new SrPayd();
+    srPayd.setSrSqlPpl(srSql);
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    assertEquals(1, srPayd.paydPy(rvs, 12345L, 67890L, 555L, true,
+      -1));
+    for (JdbcStb.St st : rcn.cn.getSts()) {
+      String sql = st.getSql();
+      assertFalse(sql, sql.contains("12345") || sql.contains("67890")
+        || sql.contains("555"));
+    }
+    Map<Integer, Object> prms = rcn.cn.getSts().get(0).getPrms();
+    assertEquals(6, prms.size());
+    assertEquals(EOrdStat.PAYED.ordinal(), prms.get(2));
+    assertEquals(12345L, prms.get(3));
+    assertEquals(67890L, prms.get(4));
+    assertEquals(EOrdStat.BOOKED.ordinal(), prms.get(5));
+    assertEquals(555L, prms.get(6));
+  }
+}
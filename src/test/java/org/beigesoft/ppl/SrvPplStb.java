@@ -0,0 +1,340 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>Local PayPal REST stand-in. It implements end-points used by PrPpl:
+ * OAuth token, create, execute and get payment. Latency and error rate
+ * are configurable. Set "endPnt=http://localhost:[port]/" in
+ * ppl.properties to use it.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SrvPplStb {
+
+  /**
+   * <p>Port, 0 means any free one.</p>
+   **/
+  private int port;
+
+  /**
+   * <p>Fixed latency, milliseconds.</p>
+   **/
+  private int lat;
+
+  /**
+   * <p>Random additional latency, milliseconds.</p>
+   **/
+  private int latRnd;
+
+  /**
+   * <p>Error rate, 0..1, errors are HTTP 503.</p>
+   **/
+  private double errRt;
+
+  /**
+   * <p>Token life, seconds.</p>
+   **/
+  private int tknLf = 32400;
+
+  /**
+   * <p>Handler threads.</p>
+   **/
+  private int thCnt = 64;
+
+  /**
+   * <p>Server.</p>
+   **/
+  private HttpServer srv;
+
+  /**
+   * <p>Executor.</p>
+   **/
+  private ExecutorService exec;
+
+  /**
+   * <p>IDs sequence.</p>
+   **/
+  private final AtomicLong seq = new AtomicLong();
+
+  /**
+   * <p>Token requests count.</p>
+   **/
+  private final AtomicLong tknCnt = new AtomicLong();
+
+  /**
+   * <p>Payments states.</p>
+   **/
+  private final Map<String, String> pays =
+    new ConcurrentHashMap<String, String>();
+
+  /**
+   * <p>Random.</p>
+   **/
+  private final Random rnd = new Random();
+
+  /**
+   * <p>Starts server.</p>
+   * @throws IOException - an exception
+   **/
+  public final synchronized void start() throws IOException {
+    this.srv = HttpServer.create(new InetSocketAddress("localhost",
+      this.port), 1024);
+    this.srv.createContext("/v1/oauth2/token", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange pExch) throws IOException {
+        SrvPplStb.this.tknCnt.incrementAndGet();
+        hndl(pExch, 200, "{\"scope\":\"https://uri.paypal.com/services/"
+          + "payments/payment\",\"access_token\":\"A21AAstub"
+            + SrvPplStb.this.seq.incrementAndGet() + "\",\"token_type\":"
+              + "\"Bearer\",\"app_id\":\"APP-STUB\",\"expires_in\":"
+                + SrvPplStb.this.tknLf + ",\"nonce\":\"stub\"}");
+      }
+    });
+    this.srv.createContext("/v1/payments/payment", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange pExch) throws IOException {
+        String pth = pExch.getRequestURI().getPath();
+        String[] pts = pth.substring(1).split("/");
+        if (pts.length == 3 && "POST".equals(pExch.getRequestMethod())) {
+          String id = "PAYID-STUB" + SrvPplStb.this.seq.incrementAndGet();
+          SrvPplStb.this.pays.put(id, "created");
+          hndl(pExch, 201, "{\"id\":\"" + id + "\",\"intent\":\"sale\","
+            + "\"state\":\"created\",\"payer\":{\"payment_method\":"
+              + "\"paypal\"},\"links\":[{\"href\":\"http://localhost/"
+                + "approve?token=" + id + "\",\"rel\":\"approval_url\","
+                  + "\"method\":\"REDIRECT\"}]}");
+        } else if (pts.length == 5 && "execute".equals(pts[4])) {
+          String st = SrvPplStb.this.pays.get(pts[3]);
+          if (st == null) {
+            hndl(pExch, 404, "{\"name\":\"INVALID_RESOURCE_ID\"}");
+          } else if ("approved".equals(st)) {
+            hndl(pExch, 400, "{\"name\":\"PAYMENT_ALREADY_DONE\"}");
+          } else {
+            SrvPplStb.this.pays.put(pts[3], "approved");
+            hndl(pExch, 200, "{\"id\":\"" + pts[3] + "\",\"intent\":"
+              + "\"sale\",\"state\":\"approved\"}");
+          }
+        } else if (pts.length == 4) {
+          String st = SrvPplStb.this.pays.get(pts[3]);
+          if (st == null) {
+            hndl(pExch, 404, "{\"name\":\"INVALID_RESOURCE_ID\"}");
+          } else {
+            hndl(pExch, 200, "{\"id\":\"" + pts[3] + "\",\"intent\":"
+              + "\"sale\",\"state\":\"" + st + "\"}");
+          }
+        } else {
+          hndl(pExch, 404, "{\"name\":\"NOT_FOUND\"}");
+        }
+      }
+    });
+    this.exec = Executors.newFixedThreadPool(this.thCnt);
+    this.srv.setExecutor(this.exec);
+    this.srv.start();
+  }
+
+  /**
+   * <p>Stops server.</p>
+   **/
+  public final synchronized void stop() {
+    if (this.srv != null) {
+      this.srv.stop(0);
+      this.exec.shutdown();
+      this.srv = null;
+    }
+  }
+
+  /**
+   * <p>Gets end-point.</p>
+   * @return end-point, e.g. "http://localhost:8089/"
+   **/
+  public final String getEndPnt() {
+    return "http://localhost:" + this.srv.getAddress().getPort() + "/";
+  }
+
+  /**
+   * <p>Handles request with latency and errors.</p>
+   * @param pExch exchange
+   * @param pSts HTTP status
+   * @param pJson response
+   * @throws IOException - an exception
+   **/
+  private void hndl(final HttpExchange pExch, final int pSts,
+    final String pJson) throws IOException {
+    InputStream is = pExch.getRequestBody();
+    byte[] buf = new byte[4096];
+    while (is.read(buf) != -1) {
+      continue;
+    }
+    is.close();
+    int sts = pSts;
+    String json = pJson;
+    try {
+      int lt = this.lat;
+      if (this.latRnd > 0) {
+        lt += this.rnd.nextInt(this.latRnd);
+      }
+      if (lt > 0) {
+        Thread.sleep(lt);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.errRt > 0 && this.rnd.nextDouble() < this.errRt) {
+      sts = 503;
+      json = "{\"name\":\"INTERNAL_SERVICE_ERROR\",\"message\":\"stub\"}";
+    }
+    byte[] bts = json.getBytes("UTF-8");
+    pExch.getResponseHeaders().add("Content-Type", "application/json");
+    pExch.sendResponseHeaders(sts, bts.length);
+    OutputStream os = pExch.getResponseBody();
+    os.write(bts);
+    os.close();
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for port.</p>
+   * @return int
+   **/
+  public final int getPort() {
+    return this.port;
+  }
+
+  /**
+   * <p>Setter for port.</p>
+   * @param pPort reference
+   **/
+  public final void setPort(final int pPort) {
+    this.port = pPort;
+  }
+
+  /**
+   * <p>Getter for lat.</p>
+   * @return int
+   **/
+  public final int getLat() {
+    return this.lat;
+  }
+
+  /**
+   * <p>Setter for lat.</p>
+   * @param pLat reference
+   **/
+  public final void setLat(final int pLat) {
+    this.lat = pLat;
+  }
+
+  /**
+   * <p>Getter for latRnd.</p>
+   * @return int
+   **/
+  public final int getLatRnd() {
+    return this.latRnd;
+  }
+
+  /**
+   * <p>Setter for latRnd.</p>
+   * @param pLatRnd reference
+   **/
+  public final void setLatRnd(final int pLatRnd) {
+    this.latRnd = pLatRnd;
+  }
+
+  /**
+   * <p>Getter for errRt.</p>
+   * @return double
+   **/
+  public final double getErrRt() {
+    return this.errRt;
+  }
+
+  /**
+   * <p>Setter for errRt.</p>
+   * @param pErrRt reference
+   **/
+  public final void setErrRt(final double pErrRt) {
+    this.errRt = pErrRt;
+  }
+
+  /**
+   * <p>Getter for tknLf.</p>
+   * @return int
+   **/
+  public final int getTknLf() {
+    return this.tknLf;
+  }
+
+  /**
+   * <p>Setter for tknLf.</p>
+   * @param pTknLf reference
+   **/
+  public final void setTknLf(final int pTknLf) {
+    this.tknLf = pTknLf;
+  }
+
+  /**
+   * <p>Getter for thCnt.</p>
+   * @return int
+   **/
+  public final int getThCnt() {
+    return this.thCnt;
+  }
+
+  /**
+   * <p>Setter for thCnt.</p>
+   * @param pThCnt reference
+   **/
+  public final void setThCnt(final int pThCnt) {
+    this.thCnt = pThCnt;
+  }
+
+  /**
+   * <p>Getter for token requests count.</p>
+   * @return long
+   **/
+  public final long getTknCnt() {
+    return this.tknCnt.get();
+  }
+}
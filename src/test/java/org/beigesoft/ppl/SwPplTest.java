@@ -0,0 +1,247 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.rdb.IOrm;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.ws.mdlp.AddStg;
+import org.beigesoft.ws.srv.ICncOrd;
+
+/**
+ * <p>Sweeper tests with proxy JDBC connection.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SwPplTest {
+
+  /**
+   * <p>Connection.</p>
+   **/
+  private JdbcStb cn;
+
+  /**
+   * <p>Sweeper.</p>
+   **/
+  private SwPpl swPpl;
+
+  /**
+   * <p>IRdb invocations, e.g. "setTrIsl 2", "exec SQL".</p>
+   **/
+  private final List<String> rdbCls = new ArrayList<String>();
+
+  /**
+   * <p>Canceled purchases.</p>
+   **/
+  private final List<Object> cncs = new ArrayList<Object>();
+
+  /**
+   * <p>Makes sweeper.</p>
+   **/
+  @Before
+  public final void setUp() {
+    this.cn = new JdbcStb();
+    SrSqlPpl srSql = new SrSqlPpl();
+    srSql.setRdbCn(this.cn);
+    ILog log = (ILog) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {ILog.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      });
+    @SuppressWarnings("unchecked")
+    IRdb<ResultSet> rdb = (IRdb<ResultSet>) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] {IRdb.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          String cl = pMth.getName();
+          if (pArgs != null && pArgs.length == 1) {
+            cl += " " + pArgs[0];
+          }
+          SwPplTest.this.rdbCls.add(cl);
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      });
+    ICncOrd cncOrd = (ICncOrd) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] {ICncOrd.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          SwPplTest.this.cncs.add(pArgs[2]);
+          return null;
+        }
+      });
+    IOrm orm = (IOrm) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {IOrm.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if ("refrEnt".equals(pMth.getName())) {
+            ((AddStg) pArgs[2]).setBkTr(8);
+          }
+          return null;
+        }
+      });
+    this.swPpl = new SwPpl();
+    this.swPpl.setOrm(orm);
+    this.swPpl.setLog(log);
+    this.swPpl.setRdb(rdb);
+    this.swPpl.setCncOrd(cncOrd);
+    this.swPpl.setSrSqlPpl(srSql);
+  }
+
+  /**
+   * <p>Stops sweeper.</p>
+   **/
+  @After
+  public final void tearDown() {
+    this.swPpl.release();
+  }
+
+  /**
+   * <p>Batch skips claimed rows, binds SQL, retrieves by sweep isolation
+   * and cancels by booking one.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void swpsBound() throws Exception {
+    this.cn.getRows().add(new Object[] {7L, 8L, 100L});
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    long bfr = System.currentTimeMillis();
+    int[] cnts = this.swPpl.swBt(rvs);
+    assertEquals(1, cnts[0]);
+    assertEquals(1, cnts[1]);
+    assertEquals("setTrIsl 2", this.rdbCls.get(1));
+    int cmt = this.rdbCls.indexOf("commit");
+    assertEquals("setTrIsl 8", this.rdbCls.get(cmt + 3));
+    JdbcStb.St sel = this.cn.getSts().get(0);
+    assertTrue(sel.getSql().contains("VER>0"));
+    long cut = (Long) sel.getPrms().get(1);
+    assertTrue(cut >= bfr - this.swPpl.getPayTo());
+    assertEquals(this.swPpl.getBt(), sel.getPrms().get(2));
+    JdbcStb.St upd = this.cn.getSts().get(1);
+    assertTrue(upd.getSql().endsWith("where IID=? and VER=?"));
+    assertEquals(SwPpl.PAYID_EXPIRED, upd.getPrms().get(2));
+    assertEquals(0L, upd.getPrms().get(3));
+    assertEquals(7L, upd.getPrms().get(4));
+    assertEquals(100L, upd.getPrms().get(5));
+    assertEquals(1, this.cncs.size());
+    assertEquals(8L, this.cncs.get(0));
+  }
+
+  /**
+   * <p>Concurrently claimed by phase 2 row isn't canceled.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void skipsClaimed() throws Exception {
+    this.cn.getRows().add(new Object[] {7L, 8L, 100L});
+    this.cn.setUpd(0);
+    int[] cnts = this.swPpl.swBt(new HashMap<String, Object>());
+    assertEquals(1, cnts[0]);
+    assertEquals(0, cnts[1]);
+    assertEquals(0, this.cncs.size());
+  }
+
+  /**
+   * <p>Claimed earlier than payment and call timeouts ago rows are
+   * retrieved, nothing is canceled.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void rtrsStaleClm() throws Exception {
+    this.swPpl.setPrPpl(new PrPpl());
+    long bfr = System.currentTimeMillis();
+    int[] cnts = this.swPpl.rslvBt(new HashMap<String, Object>());
+    assertEquals(0, cnts[0]);
+    JdbcStb.St sel = this.cn.getSts().get(0);
+    assertTrue(sel.getSql().contains("VER<0 and VER>?"));
+    long cut = (Long) sel.getPrms().get(1);
+    assertTrue(cut <= this.swPpl.getPayTo() + this.swPpl.getTotTo() - bfr);
+    assertTrue(cut < 0L);
+    assertEquals(0, this.cncs.size());
+  }
+
+  /**
+   * <p>Index is created only if there is no it.</p>
+   **/
+  @Test
+  public final void mkIdxOnce() {
+    this.swPpl.setPr(3600000L);
+    this.cn.getIdxs().add(new Object[] {null, null, "ONLPAY", false, null,
+      "onlpaydat"});
+    this.swPpl.start(new HashMap<String, Object>());
+    assertEquals(0, crIdx());
+    this.swPpl.release();
+    this.cn.getIdxs().clear();
+    this.swPpl.start(new HashMap<String, Object>());
+    assertEquals(1, crIdx());
+  }
+
+  /**
+   * <p>Counts index creations.</p>
+   * @return count
+   **/
+  private int crIdx() {
+    int rz = 0;
+    for (String cl : this.rdbCls) {
+      if (cl.startsWith("exec create index ONLPAYDAT")) {
+        rz++;
+      }
+    }
+    return rz;
+  }
+}
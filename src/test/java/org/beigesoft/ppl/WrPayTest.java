@@ -0,0 +1,292 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.beigesoft.ppl;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.beigesoft.mdl.IReqDt;
+import org.beigesoft.log.ILog;
+import org.beigesoft.acc.mdlp.AcStg;
+import org.beigesoft.acc.mdlp.Curr;
+import org.beigesoft.acc.mdlp.DbCr;
+import org.beigesoft.ws.mdlp.Buyer;
+import org.beigesoft.ws.mdlp.CuOr;
+import org.beigesoft.ws.mdlp.CuOrGdLn;
+import org.beigesoft.ws.mdlp.CuOrSrLn;
+import org.beigesoft.ws.mdlp.SeSel;
+
+/**
+ * <p>WrPay tests, streamed payload must be byte to byte the same as SDK's
+ * Payment.toJSON() made by PrPpl.createPay for owner's, S.E. seller's,
+ * taxed and different currencies carts.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class WrPayTest {
+
+  /**
+   * <p>Processor.</p>
+   **/
+  private PrPpl prPpl;
+
+  /**
+   * <p>Request data.</p>
+   **/
+  private IReqDt rqDt;
+
+  /**
+   * <p>Request scoped vars.</p>
+   **/
+  private final Map<String, Object> rvs = new HashMap<String, Object>();
+
+  /**
+   * <p>Accounting settings.</p>
+   **/
+  private final AcStg astg = new AcStg();
+
+  /**
+   * <p>Makes processor with streaming writer.</p>
+   **/
+  @Before
+  public final void setUp() {
+    FrmPpl frmPpl = new FrmPpl();
+    WrPay wrPay = new WrPay();
+    wrPay.setFrmPpl(frmPpl);
+    this.prPpl = new PrPpl();
+    this.prPpl.setFrmPpl(frmPpl);
+    this.prPpl.setWrPay(wrPay);
+    this.prPpl.setLog((ILog) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {ILog.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if (pMth.getReturnType() == boolean.class) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      }));
+    this.rqDt = (IReqDt) Proxy.newProxyInstance(getClass()
+      .getClassLoader(), new Class<?>[] {IReqDt.class},
+        new InvocationHandler() {
+        @Override
+        public Object invoke(final Object pPrx, final Method pMth,
+          final Object[] pArgs) {
+          if ("getReqUrl".equals(pMth.getName())) {
+            return new StringBuffer("https://shop.example/wms/prc");
+          }
+          if ("getParam".equals(pMth.getName())) {
+            return "PrBuCu";
+          }
+          return null;
+        }
+      });
+    this.rvs.put("astg", this.astg);
+  }
+
+  /**
+   * <p>Owner's cart of goods and services with names to escape,
+   * and empty one.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void owner() throws Exception {
+    CuOr ord = mkOrd("USD");
+    addGd(ord, "Tea <green> & \"black\"", "2", "3.5", "0");
+    addGd(ord, "It's a=b\\c\ttab   é", "1", "10", "0");
+    addSr(ord, "Delivery", "1", "4.999", "0");
+    assertSame(ord, null);
+    CuOr emp = mkOrd("USD");
+    emp.setGoods(null);
+    emp.setServs(null);
+    assertSame(emp, null);
+  }
+
+  /**
+   * <p>S.E. seller's cart, redirect URLs carry seller.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void seSel() throws Exception {
+    CuOr ord = mkOrd("EUR");
+    addSr(ord, "Consulting", "3", "25.00", "0");
+    SeSel sel = new SeSel();
+    DbCr dc = new DbCr();
+    dc.setIid(5L);
+    sel.setIid(dc);
+    String pld = assertSame(ord, sel);
+    assertTrue(pld.contains("\\u0026sel5"));
+  }
+
+  /**
+   * <p>Taxed cart, only taxed lines have tax.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void taxed() throws Exception {
+    CuOr ord = mkOrd("USD");
+    addGd(ord, "Book", "2", "12.345", "1.23");
+    addGd(ord, "Bread", "1", "2", "0");
+    addSr(ord, "Repair", "1", "50", "10.005");
+    String pld = assertSame(ord, null);
+    assertTrue(pld.contains("\"tax\": \"11.24\""));
+    CuOr uta = mkOrd("USD");
+    addGd(uta, "Bread", "1", "2", "0");
+    assertFalse(assertSame(uta, null).contains("\"tax\""));
+  }
+
+  /**
+   * <p>Carts in currencies with different minor units and pricing
+   * decimal places.</p>
+   * @throws Exception - an exception
+   **/
+  @Test
+  public final void currencies() throws Exception {
+    String[] curs = {"USD", "EUR", "JPY", "KWD", "BTC"};
+    for (int dp = 0; dp <= 4; dp++) {
+      this.astg.setPrDp(dp);
+      for (String cur : curs) {
+        CuOr ord = mkOrd(cur);
+        addGd(ord, "Item " + cur, "3", "1234.5678", "0.4449");
+        addSr(ord, "Service " + cur, "1", "0.5", "0");
+        assertSame(ord, null);
+      }
+    }
+    this.astg.setPrDp(2);
+    CuOr ord = mkOrd("JPY");
+    addGd(ord, "Sushi", "1", "1234.5", "0");
+    assertTrue(assertSame(ord, null).contains("\"total\": \"1235\""));
+  }
+
+  /**
+   * <p>Checks that streamed payload is the same as SDK's one.</p>
+   * @param pOrd order
+   * @param pSel seller or null
+   * @return payload
+   * @throws Exception - an exception
+   **/
+  private String assertSame(final CuOr pOrd,
+    final SeSel pSel) throws Exception {
+    String sdk = this.prPpl.createPay(this.rvs, this.rqDt, pOrd, pSel)
+      .toJSON();
+    String rz = this.prPpl.crPayLd(this.rvs, this.rqDt, pOrd, pSel);
+    assertEquals(sdk, rz);
+    return rz;
+  }
+
+  /**
+   * <p>Makes order without lines.</p>
+   * @param pCur currency code
+   * @return order
+   **/
+  private CuOr mkOrd(final String pCur) {
+    CuOr rz = new CuOr();
+    Curr cur = new Curr();
+    cur.setStCo(pCur);
+    rz.setCurr(cur);
+    Buyer buyr = new Buyer();
+    buyr.setIid(7L);
+    rz.setBuyr(buyr);
+    rz.setPur(8L);
+    rz.setGoods(new ArrayList<CuOrGdLn>());
+    rz.setServs(new ArrayList<CuOrSrLn>());
+    rz.setSubt(BigDecimal.ZERO);
+    rz.setToTx(BigDecimal.ZERO);
+    rz.setTot(BigDecimal.ZERO);
+    return rz;
+  }
+
+  /**
+   * <p>Adds goods line.</p>
+   * @param pOrd order
+   * @param pNme name
+   * @param pQuan quantity
+   * @param pPri price
+   * @param pTx total tax
+   **/
+  private void addGd(final CuOr pOrd, final String pNme, final String pQuan,
+    final String pPri, final String pTx) {
+    CuOrGdLn ln = new CuOrGdLn();
+    fill(pOrd, ln, pNme, pQuan, pPri, pTx);
+    pOrd.getGoods().add(ln);
+  }
+
+  /**
+   * <p>Adds service line.</p>
+   * @param pOrd order
+   * @param pNme name
+   * @param pQuan quantity
+   * @param pPri price
+   * @param pTx total tax
+   **/
+  private void addSr(final CuOr pOrd, final String pNme, final String pQuan,
+    final String pPri, final String pTx) {
+    CuOrSrLn ln = new CuOrSrLn();
+    fill(pOrd, ln, pNme, pQuan, pPri, pTx);
+    pOrd.getServs().add(ln);
+  }
+
+  /**
+   * <p>Fills line and adds its totals to order.</p>
+   * @param pOrd order
+   * @param pLn line
+   * @param pNme name
+   * @param pQuan quantity
+   * @param pPri price
+   * @param pTx total tax
+   **/
+  private void fill(final CuOr pOrd,
+    final org.beigesoft.ws.mdlb.AOrdLn pLn, final String pNme,
+      final String pQuan, final String pPri, final String pTx) {
+    pLn.setNme(pNme);
+    pLn.setQuan(new BigDecimal(pQuan));
+    pLn.setPri(new BigDecimal(pPri));
+    pLn.setToTx(new BigDecimal(pTx));
+    pLn.setSubt(pLn.getPri().multiply(pLn.getQuan()));
+    pLn.setTot(pLn.getSubt().add(pLn.getToTx()));
+    pOrd.setSubt(pOrd.getSubt().add(pLn.getSubt()));
+    pOrd.setToTx(pOrd.getToTx().add(pLn.getToTx()));
+    pOrd.setTot(pOrd.getTot().add(pLn.getTot()));
+  }
+}